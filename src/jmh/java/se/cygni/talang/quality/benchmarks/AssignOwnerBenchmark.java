@@ -0,0 +1,80 @@
+package se.cygni.talang.quality.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.cygni.talang.quality.application.VehicleService;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.exceptions.NotFoundException;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.repo.FakeRepository;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of VehicleService.assignOwner itself, with the database replaced by an in-memory stand-in.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AssignOwnerBenchmark {
+
+    FakeRepository repository;
+    VehicleService service;
+
+    @Setup
+    public void setUp() {
+        repository = new FakeRepository()
+                .withCustomer("123-456789", false)
+                .withCustomer("987-654321", true)
+                .withVehicle("FREE01", null, Brand.LAMBORGHINI)
+                .withVehicle("OWNED1", "987-654321", Brand.VOLVO)
+                .withPremiumBrand(Brand.LAMBORGHINI);
+        service = new VehicleService(repository, new PremiumBrandCache(repository, Duration.ofMinutes(10)), new SimpleMeterRegistry(), 256, null);
+    }
+
+    @Benchmark
+    public void assigned() {
+        service.assignOwner("123-456789", "FREE01");
+        // Hand the vehicle back so that every invocation takes the assigning path
+        repository.withVehicle("FREE01", null, Brand.LAMBORGHINI);
+    }
+
+    @Benchmark
+    public void unchanged() {
+        service.assignOwner("987-654321", "OWNED1");
+    }
+
+    @Benchmark
+    public Object notAllowed() {
+        try {
+            service.assignOwner("123-456789", "OWNED1");
+            return null;
+        } catch (NotAllowedException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object notFound() {
+        try {
+            service.assignOwner("123-456789", "UNKNOWN");
+            return null;
+        } catch (NotFoundException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package se.cygni.talang.quality.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.cygni.talang.quality.Application;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rejected requests to /assign over HTTP, against the application started in process with the
+ * in-memory repository, so that the cost of the exception and of rendering the error response is
+ * included, and of logging it where that is done.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RejectedAssignmentBenchmark {
+
+    ConfigurableApplicationContext context;
+    HttpClient client;
+    HttpRequest notFound;
+    HttpRequest notAllowed;
+
+    @Setup
+    public void setUp() {
+        context = SpringApplication.run(Application.class,
+                "--spring.profiles.active=memory",
+                "--repository.memory.directory=",
+                "--server.port=0",
+                "--spring.main.banner-mode=off");
+        Repository repository = context.getBean(Repository.class);
+        repository.saveCustomer(new Customer("123-456789"));
+        repository.saveCustomer(new Customer("987-654321"));
+        Vehicle owned = new Vehicle("OWNED1");
+        owned.setOwner("987-654321");
+        owned.setBrand(Brand.VOLVO);
+        repository.saveVehicle(owned);
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        notFound = assign(port, "123-456789", "UNKNOWN");
+        notAllowed = assign(port, "123-456789", "OWNED1");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int notFound() throws IOException, InterruptedException {
+        return client.send(notFound, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+    }
+
+    @Benchmark
+    public int notAllowed() throws IOException, InterruptedException {
+        return client.send(notAllowed, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+    }
+
+    private static HttpRequest assign(int port, String owner, String vehicle) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/assign"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"owner\":\"" + owner + "\",\"vehicle\":\"" + vehicle + "\"}"))
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package se.cygni.talang.quality.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialization of the request bodies of /assign and /assign/batch, with an object mapper
+ * configured the way Spring configures the one used by the endpoints.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBindingBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    ObjectReader assignReader;
+    ObjectReader batchReader;
+    byte[] assignBody;
+    byte[] batchBody;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        assignReader = objectMapper.readerFor(new TypeReference<Map<String, String>>() {
+        });
+        batchReader = objectMapper.readerFor(new TypeReference<List<Map<String, String>>>() {
+        });
+
+        assignBody = "{\"owner\":\"123-456789\",\"vehicle\":\"ABC123\"}".getBytes(StandardCharsets.UTF_8);
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.append(i == 0 ? "" : ",")
+                    .append("{\"owner\":\"123-456789\",\"vehicle\":\"ABC").append(i).append("\"}");
+        }
+        batchBody = batch.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Map<String, String> assignRequest() throws IOException {
+        return assignReader.readValue(assignBody);
+    }
+
+    @Benchmark
+    public List<Map<String, String>> batchAssignRequest() throws IOException {
+        return batchReader.readValue(batchBody);
+    }
+}
@@ -0,0 +1,80 @@
+package se.cygni.talang.quality.benchmarks;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of the row mappers. Each result set is positioned on a single synthetic row that is
+ * mapped over and over, so the numbers exclude the driver's own decoding.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowMapperBenchmark {
+
+    SimpleResultSet vehicleRow;
+    SimpleResultSet customerRow;
+    SimpleResultSet brandRow;
+
+    DatabaseRepository.VehicleRowMapper vehicleMapper = new DatabaseRepository.VehicleRowMapper();
+    DatabaseRepository.CustomerRowMapper customerMapper = new DatabaseRepository.CustomerRowMapper();
+    DatabaseRepository.BrandRowMapper brandMapper = new DatabaseRepository.BrandRowMapper();
+
+    @Setup
+    public void setUp() throws SQLException {
+        vehicleRow = new SimpleResultSet();
+        vehicleRow.addColumn("registrationNumber", Types.VARCHAR, 0, 0);
+        vehicleRow.addColumn("owner", Types.VARCHAR, 0, 0);
+        vehicleRow.addColumn("brand", Types.SMALLINT, 0, 0);
+        vehicleRow.addColumn("version", Types.BIGINT, 0, 0);
+        vehicleRow.addRow("ABC123", "123-456789", Brand.LAMBORGHINI.getCode(), 3L);
+        vehicleRow.next();
+
+        customerRow = new SimpleResultSet();
+        customerRow.addColumn("organisationNumber", Types.VARCHAR, 0, 0);
+        customerRow.addColumn("premiumCustomer", Types.BOOLEAN, 0, 0);
+        customerRow.addColumn("premiumVehicles", Types.INTEGER, 0, 0);
+        customerRow.addRow("123-456789", true, 1);
+        customerRow.next();
+
+        brandRow = new SimpleResultSet();
+        brandRow.addColumn("brand", Types.SMALLINT, 0, 0);
+        brandRow.addRow(Brand.LAMBORGHINI.getCode());
+        brandRow.next();
+    }
+
+    @Benchmark
+    public Vehicle vehicle() throws SQLException {
+        return vehicleMapper.mapRow(vehicleRow, 0);
+    }
+
+    @Benchmark
+    public Customer customer() throws SQLException {
+        return customerMapper.mapRow(customerRow, 0);
+    }
+
+    @Benchmark
+    public Brand brand() throws SQLException {
+        return brandMapper.mapRow(brandRow, 0);
+    }
+}
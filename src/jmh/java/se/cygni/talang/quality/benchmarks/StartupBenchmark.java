@@ -0,0 +1,138 @@
+package se.cygni.talang.quality.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time from launching the packaged application to its first response from /assign, in a new
+ * JVM each time. Runs the jar of the same build, or with cds=true the jar and archive that the cds
+ * profile builds, e.g. {@code -Pcds,benchmarks -Djmh.args="Startup -p cds=false,true"}. Profiles
+ * that use a database need one, its settings can be passed with e.g.
+ * {@code -p profiles=default,fast-startup -p arguments=--spring.datasource.password=x}.
+ * The output of the last launch is in target/startup-benchmark.log.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    @Param({"memory", "memory,fast-startup"})
+    public String profiles;
+
+    @Param({"false"})
+    public boolean cds;
+
+    // More arguments for the application, separated by spaces
+    @Param({""})
+    public String arguments;
+
+    @Benchmark
+    public int firstAssign() throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Process process = new ProcessBuilder(command(port))
+                .redirectErrorStream(true)
+                .redirectOutput(new File("target/startup-benchmark.log"))
+                .start();
+        try {
+            return awaitFirstAssign(process, port);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private List<String> command(int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (cds) {
+            Path archive = Paths.get("target", "cds", "app.jsa");
+            if (!Files.exists(archive)) {
+                throw new IllegalStateException("No " + archive + ", build it with -Pcds");
+            }
+            command.add("-XX:SharedArchiveFile=" + archive);
+            command.add("-jar");
+            command.add(jar(Paths.get("target", "cds"), "*-cds.jar").toString());
+        } else {
+            command.add("-jar");
+            command.add(jar(Paths.get("target"), "*.jar").toString());
+        }
+        command.add("--server.port=" + port);
+        command.add("--spring.profiles.active=" + profiles);
+        // Nothing kept between launches by the in-memory repository
+        command.add("--repository.memory.directory=");
+        if (!arguments.isBlank()) {
+            command.addAll(Arrays.asList(arguments.trim().split("\\s+")));
+        }
+        return command;
+    }
+
+    private static Path jar(Path directory, String glob) throws IOException {
+        try (DirectoryStream<Path> jars = Files.newDirectoryStream(directory, glob)) {
+            for (Path jar : jars) {
+                return jar;
+            }
+        }
+        throw new IllegalStateException("No " + glob + " in " + directory + ", package the application first");
+    }
+
+    // Any response will do, an unknown vehicle is still served by the endpoint
+    private static int awaitFirstAssign(Process process, int port) throws IOException, InterruptedException {
+        URL url = new URL("http://localhost:" + port + "/assign");
+        byte[] body = "{\"owner\":\"123-456789\",\"vehicle\":\"ABC123\"}".getBytes(StandardCharsets.UTF_8);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The application exited with " + process.exitValue()
+                        + ", see target/startup-benchmark.log");
+            }
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+                return connection.getResponseCode();
+            } catch (ConnectException e) {
+                Thread.sleep(10);
+            } finally {
+                connection.disconnect();
+            }
+        }
+        throw new IllegalStateException("No response from /assign within " + TIMEOUT_MILLIS + " ms");
+    }
+}
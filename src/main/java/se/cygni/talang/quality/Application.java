@@ -2,8 +2,10 @@ package se.cygni.talang.quality;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 
-@SpringBootApplication
+// The reactive profile creates its own R2DBC pool, a ConnectionFactory bean would disable the JDBC DataSource
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class Application {
 
     public static void main(String[] args) {
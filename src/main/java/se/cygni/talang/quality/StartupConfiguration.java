@@ -0,0 +1,37 @@
+package se.cygni.talang.quality;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.cygni.talang.quality.application.AssignmentCoalescer;
+import se.cygni.talang.quality.application.IdempotentAssignments;
+import se.cygni.talang.quality.application.ReactiveVehicleService;
+import se.cygni.talang.quality.application.VehicleService;
+import se.cygni.talang.quality.repo.BrandCodeMigration;
+import se.cygni.talang.quality.repo.KnownKeys;
+import se.cygni.talang.quality.repo.OutboxPublisher;
+import se.cygni.talang.quality.repo.ReactiveRepository;
+import se.cygni.talang.quality.repo.ReadReplicas;
+import se.cygni.talang.quality.repo.Repository;
+import se.cygni.talang.quality.repo.SchemaInitializer;
+import se.cygni.talang.quality.rest.Endpoints;
+import se.cygni.talang.quality.rest.ReactiveEndpoints;
+
+@Configuration
+public class StartupConfiguration {
+
+    /**
+     * With lazy initialization, as in the fast-startup profile, these are still created at startup:
+     * the beans that serve /assign, so that the first request does not wait for them, and those that
+     * check the database or work in the background. The rest, such as import, reconciliation and
+     * most of actuator, are created when first used.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(
+                Endpoints.class, ReactiveEndpoints.class,
+                VehicleService.class, ReactiveVehicleService.class, AssignmentCoalescer.class, IdempotentAssignments.class,
+                Repository.class, ReactiveRepository.class, ReadReplicas.class, KnownKeys.class,
+                SchemaInitializer.class, BrandCodeMigration.class, OutboxPublisher.class);
+    }
+}
@@ -0,0 +1,188 @@
+package se.cygni.talang.quality.application;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for single assignments: concurrent assignments are collected for a short window, or
+ * until a batch is full, and written together by {@link Repository#assignOwners}, which the
+ * database repository does in one transaction. Each caller waits until the batch it is part of has
+ * been committed, so an assignment is never acknowledged before it is durable.
+ * <p>
+ * Batches are written one at a time by a single thread, and the assignments that arrive while a
+ * batch is written make up the next one, so the batches grow with the load. Assignments in a batch
+ * are decided in the order they arrived.
+ */
+@Component
+@ConditionalOnProperty(name = "assignment.coalescing.enabled", havingValue = "true")
+public class AssignmentCoalescer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AssignmentCoalescer.class);
+
+    private final Repository repo;
+    private final PremiumBrandCache premiumBrands;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending> queue;
+    private final Thread flusher;
+    private final DistributionSummary batchSizes;
+    private final Timer queueingDelay;
+
+    private volatile boolean closed;
+
+    public AssignmentCoalescer(Repository repo,
+                               PremiumBrandCache premiumBrands,
+                               MeterRegistry meterRegistry,
+                               @Value("${assignment.coalescing.window:PT0.005S}") Duration window,
+                               @Value("${assignment.coalescing.max-batch-size:100}") int maxBatchSize) {
+        this.repo = repo;
+        this.premiumBrands = premiumBrands;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        // Callers block when this many are waiting, instead of queueing up without bound
+        this.queue = new ArrayBlockingQueue<>(maxBatchSize * 16);
+        this.batchSizes = DistributionSummary.builder("assignment.coalescing.batch.size")
+                .description("Number of assignments written per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueingDelay = Timer.builder("assignment.coalescing.queueing.delay")
+                .description("Time assignments wait for their batch to be written")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flusher = new Thread(this::run, "assignment-coalescer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues the assignment and waits until the batch it ends up in has been written. An exception
+     * from the write is rethrown to every caller in the batch.
+     */
+    public AssignmentOutcome assignOwner(String ownerOrgNumber, String vehicleRegistration) {
+        if (closed) {
+            throw new IllegalStateException("The assignment coalescer is closed");
+        }
+        Pending pending = new Pending(new Assignment(ownerOrgNumber, vehicleRegistration));
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing an assignment", e);
+        }
+        // Closed meanwhile, and the flusher may already have stopped
+        if (closed && queue.remove(pending)) {
+            throw new IllegalStateException("The assignment coalescer is closed");
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops accepting assignments, and returns when the ones already queued have been written.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        flusher.join();
+    }
+
+    // Not stopped by interrupting, that could abort a write half way
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (collect(batch)) {
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IllegalStateException closedException = new IllegalStateException("The assignment coalescer is closed");
+        batch.forEach(pending -> pending.result.completeExceptionally(closedException));
+        queue.forEach(pending -> pending.result.completeExceptionally(closedException));
+    }
+
+    /**
+     * Waits for a first assignment, then for more until the window has passed or the batch is full.
+     * Returns false when closed and nothing is queued.
+     */
+    private boolean collect(List<Pending> batch) throws InterruptedException {
+        Pending first = null;
+        while (first == null) {
+            if (closed && queue.isEmpty()) {
+                return false;
+            }
+            first = queue.poll(100, TimeUnit.MILLISECONDS);
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return true;
+    }
+
+    private void flush(List<Pending> batch) {
+        long flushed = System.nanoTime();
+        List<Assignment> assignments = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            assignments.add(pending.assignment);
+            queueingDelay.record(flushed - pending.queuedAt, TimeUnit.NANOSECONDS);
+        }
+        batchSizes.record(batch.size());
+        List<AssignmentOutcome> outcomes;
+        try {
+            outcomes = repo.assignOwners(assignments, premiumBrands.get());
+        } catch (RuntimeException e) {
+            log.warn("Group commit of {} assignments failed", batch.size(), e);
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(outcomes.get(i));
+        }
+    }
+
+    private static class Pending {
+        private final Assignment assignment;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<AssignmentOutcome> result = new CompletableFuture<>();
+
+        private Pending(Assignment assignment) {
+            this.assignment = assignment;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package se.cygni.talang.quality.application;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Assignments with an idempotency key from the client, so that a retry is answered with the outcome
+ * of the first request instead of being assigned again. The outcomes are kept for a while in memory
+ * on this node only. A retry that arrives while the first request is still running waits for it,
+ * rather than running alongside it. Outcomes that failed with an exception are not kept, so the
+ * retry runs again.
+ * <p>
+ * A key is only matched together with the owner and vehicle, a key reused for another assignment
+ * runs that assignment.
+ */
+@Component
+public class IdempotentAssignments {
+
+    private final VehicleService vehicleService;
+    private final AsyncCache<Key, AssignmentOutcome> outcomes;
+    private final Counter joined;
+
+    public IdempotentAssignments(VehicleService vehicleService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${assignment.idempotency.maximum-size:100000}") long maximumSize,
+                                 @Value("${assignment.idempotency.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.vehicleService = vehicleService;
+        // Entries expire from when they completed, a running assignment is never evicted for its age
+        this.outcomes = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, outcomes, "assignment.idempotency");
+        this.joined = Counter.builder("assignment.idempotency.joined")
+                .description("Repeated assignments that waited for the first one to finish")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Like {@link VehicleService#assignOwner}, but only the first request with the key is assigned.
+     */
+    public void assignOwner(String idempotencyKey, String ownerOrgNumber, String vehicleRegistration) {
+        Key key = new Key(idempotencyKey, ownerOrgNumber, vehicleRegistration);
+        CompletableFuture<AssignmentOutcome> execution = new CompletableFuture<>();
+        CompletableFuture<AssignmentOutcome> outcome = outcomes.get(key, (k, executor) -> execution);
+        if (outcome == execution) {
+            try {
+                execution.complete(vehicleService.tryAssignOwner(ownerOrgNumber, vehicleRegistration));
+            } catch (RuntimeException | Error e) {
+                // Also removes the entry, and wakes up the requests waiting for it
+                execution.completeExceptionally(e);
+                throw e;
+            }
+        } else if (!outcome.isDone()) {
+            joined.increment();
+        }
+        vehicleService.checkAssigned(join(outcome), ownerOrgNumber, vehicleRegistration);
+    }
+
+    private static AssignmentOutcome join(CompletableFuture<AssignmentOutcome> outcome) {
+        try {
+            return outcome.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Key {
+        private final String idempotencyKey;
+        private final String ownerOrgNumber;
+        private final String vehicleRegistration;
+
+        private Key(String idempotencyKey, String ownerOrgNumber, String vehicleRegistration) {
+            this.idempotencyKey = idempotencyKey;
+            this.ownerOrgNumber = ownerOrgNumber;
+            this.vehicleRegistration = vehicleRegistration;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return idempotencyKey.equals(other.idempotencyKey)
+                    && Objects.equals(ownerOrgNumber, other.ownerOrgNumber)
+                    && Objects.equals(vehicleRegistration, other.vehicleRegistration);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(idempotencyKey, ownerOrgNumber, vehicleRegistration);
+        }
+    }
+}
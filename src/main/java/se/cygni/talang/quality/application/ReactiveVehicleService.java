@@ -0,0 +1,108 @@
+package se.cygni.talang.quality.application;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.exceptions.NotFoundException;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.ReactiveRepository;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reactive counterpart of {@link VehicleService#assignOwner}, with the same outcomes and timers.
+ * The vehicle and the customer are looked up concurrently, and the vehicle is then claimed with a
+ * conditional write, which settles races with concurrent assignments without any lock.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveVehicleService {
+    Logger log = LoggerFactory.getLogger(ReactiveVehicleService.class);
+
+    ReactiveRepository repo;
+    Mono<Set<Brand>> premiumBrands;
+    Map<AssignmentOutcome, Timer> assignmentTimers = new EnumMap<>(AssignmentOutcome.class);
+    Timer failedAssignmentTimer;
+
+    public ReactiveVehicleService(ReactiveRepository repo,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${premium-brands.cache.ttl:PT10M}") Duration premiumBrandsTtl) {
+        this.repo = repo;
+        this.premiumBrands = repo.getPremiumBrands()
+                .map(brands -> brands.isEmpty() ? EnumSet.noneOf(Brand.class) : (Set<Brand>) EnumSet.copyOf(brands))
+                // A failed lookup is retried by the next assignment instead of being cached
+                .cache(brands -> premiumBrandsTtl, error -> Duration.ZERO, () -> Duration.ZERO);
+        for (AssignmentOutcome outcome : AssignmentOutcome.values()) {
+            assignmentTimers.put(outcome, VehicleService.assignmentTimer(meterRegistry, VehicleService.outcomeTag(outcome)));
+        }
+        this.failedAssignmentTimer = VehicleService.assignmentTimer(meterRegistry, "error");
+    }
+
+    public Mono<Void> assignOwner(String ownerOrgNumber, String vehicleRegistration) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return decide(ownerOrgNumber, vehicleRegistration)
+                    .doOnSuccess(outcome -> assignmentTimers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(e -> failedAssignmentTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }).flatMap(outcome -> {
+            switch (outcome) {
+                case VEHICLE_NOT_FOUND:
+                    return Mono.error(new NotFoundException("No vehicle found for registration " + vehicleRegistration));
+                case CUSTOMER_NOT_FOUND:
+                    return Mono.error(new NotFoundException("No customer found for org number " + ownerOrgNumber));
+                case ALREADY_OWNED:
+                    return Mono.error(new NotAllowedException("Only vehicles without current assignment can be updated"));
+                case UNCHANGED:
+                    log.info("No update needed");
+                    return Mono.empty();
+                default:
+                    log.info("Vehicle updated successfully");
+                    return Mono.empty();
+            }
+        });
+    }
+
+    // Same rules as Repository.assignOwner
+    private Mono<AssignmentOutcome> decide(String ownerOrgNumber, String vehicleRegistration) {
+        return Mono.zip(
+                repo.getVehicleByRegistration(vehicleRegistration).map(Optional::of).defaultIfEmpty(Optional.empty()),
+                repo.getCustomerByOrgNumber(ownerOrgNumber).map(Optional::of).defaultIfEmpty(Optional.empty()),
+                premiumBrands
+        ).flatMap(found -> {
+            Vehicle vehicle = found.getT1().orElse(null);
+            Optional<Customer> customer = found.getT2();
+            if (vehicle == null) {
+                return Mono.just(AssignmentOutcome.VEHICLE_NOT_FOUND);
+            }
+            if (Objects.equals(vehicle.getOwner(), ownerOrgNumber)) {
+                return Mono.just(AssignmentOutcome.UNCHANGED);
+            }
+            if (vehicle.getOwner() != null) {
+                return Mono.just(AssignmentOutcome.ALREADY_OWNED);
+            }
+            if (customer.isEmpty()) {
+                return Mono.just(AssignmentOutcome.CUSTOMER_NOT_FOUND);
+            }
+            boolean premium = found.getT3().contains(vehicle.getBrand());
+            return repo.claimVehicle(ownerOrgNumber, vehicleRegistration, premium)
+                    // Not claimed means that a concurrent assignment got there first
+                    .map(claimed -> claimed ? AssignmentOutcome.ASSIGNED : AssignmentOutcome.ALREADY_OWNED);
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package se.cygni.talang.quality.application;
+
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed number of locks shared by an unbounded number of keys. Keys with the same hash always
+ * map to the same lock, unrelated keys only rarely contend.
+ */
+public class StripedLocks {
+
+    private final Lock[] stripes;
+    private final int mask;
+
+    public StripedLocks(int minimumStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        this.stripes = new Lock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Lock forKey(String key) {
+        int hash = Objects.hashCode(key);
+        // Spread the high bits, String hashes of similar keys mostly differ in the low ones
+        hash ^= hash >>> 16;
+        return stripes[hash & mask];
+    }
+
+    public int size() {
+        return stripes.length;
+    }
+}
@@ -1,64 +1,197 @@
 package se.cygni.talang.quality.application;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import se.cygni.talang.quality.exceptions.NotAllowedException;
 import se.cygni.talang.quality.exceptions.NotFoundException;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
 import se.cygni.talang.quality.model.Brand;
-import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
 import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.model.VehiclePage;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
 import se.cygni.talang.quality.repo.Repository;
 
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 @Component
 public class VehicleService {
     Logger log = LoggerFactory.getLogger(VehicleService.class);
 
     Repository repo;
+    PremiumBrandCache premiumBrands;
+    StripedLocks vehicleLocks;
+    Map<AssignmentOutcome, Timer> assignmentTimers = new EnumMap<>(AssignmentOutcome.class);
+    Timer failedAssignmentTimer;
+    Timer returnTimer;
+    AssignmentCoalescer coalescer;
 
-    public VehicleService(Repository repo) {
+    public VehicleService(Repository repo,
+                          PremiumBrandCache premiumBrands,
+                          MeterRegistry meterRegistry,
+                          @Value("${assignment.lock-stripes:256}") int lockStripes,
+                          @Nullable AssignmentCoalescer coalescer) {
         this.repo = repo;
+        this.premiumBrands = premiumBrands;
+        this.coalescer = coalescer;
+        this.vehicleLocks = new StripedLocks(lockStripes);
+        for (AssignmentOutcome outcome : AssignmentOutcome.values()) {
+            assignmentTimers.put(outcome, assignmentTimer(meterRegistry, outcomeTag(outcome)));
+        }
+        this.failedAssignmentTimer = assignmentTimer(meterRegistry, "error");
+        this.returnTimer = Timer.builder("vehicle.returns")
+                .description("End-to-end latency of vehicle returns")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     public void assignOwner(String ownerOrgNumber, String vehicleRegistration) {
-        Vehicle vehicle = getVehicleIfExists(vehicleRegistration);
-        if (Objects.equals(vehicle.getOwner(), ownerOrgNumber)) {
-            log.info("No update needed");
-            return;
+        checkAssigned(tryAssignOwner(ownerOrgNumber, vehicleRegistration), ownerOrgNumber, vehicleRegistration);
+    }
+
+    /**
+     * Assigns the vehicle and returns the outcome, rather than throwing for those that are rejected.
+     */
+    public AssignmentOutcome tryAssignOwner(String ownerOrgNumber, String vehicleRegistration) {
+        long start = System.nanoTime();
+        AssignmentOutcome outcome = null;
+        try {
+            if (coalescer != null) {
+                // Assignments are decided in arrival order within a group commit, no lock is needed
+                outcome = coalescer.assignOwner(ownerOrgNumber, vehicleRegistration);
+            } else {
+                outcome = assignOwnerLocked(ownerOrgNumber, vehicleRegistration);
+            }
+        } finally {
+            Timer timer = outcome == null ? failedAssignmentTimer : assignmentTimers.get(outcome);
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return outcome;
+    }
+
+    /**
+     * Throws for the outcomes of {@link #tryAssignOwner} that were rejected.
+     */
+    public void checkAssigned(AssignmentOutcome outcome, String ownerOrgNumber, String vehicleRegistration) {
+        switch (outcome) {
+            case VEHICLE_NOT_FOUND:
+                throw new NotFoundException("No vehicle found for registration " + vehicleRegistration);
+            case CUSTOMER_NOT_FOUND:
+                throw new NotFoundException("No customer found for org number " + ownerOrgNumber);
+            case ALREADY_OWNED:
+                throw new NotAllowedException("Only vehicles without current assignment can be updated");
+            case UNCHANGED:
+                log.info("No update needed");
+                break;
+            case ASSIGNED:
+                log.info("Vehicle updated successfully");
+                break;
         }
-        if (vehicle.getOwner() != null) {
-            throw new NotAllowedException("Only vehicles without current assignment can be updated");
+    }
+
+    private AssignmentOutcome assignOwnerLocked(String ownerOrgNumber, String vehicleRegistration) {
+        // Requests for the same vehicle on this node queue up here instead of racing in the database,
+        // the repository's conditional write settles races between nodes
+        Lock lock = vehicleLocks.forKey(vehicleRegistration);
+        lock.lock();
+        try {
+            return repo.assignOwner(ownerOrgNumber, vehicleRegistration, premiumBrands.get());
+        } finally {
+            lock.unlock();
         }
+    }
 
-        Customer newOwner = getCustomerIfExists(ownerOrgNumber);
-        vehicle.setOwner(newOwner.getOrganisationNumber());
+    public void returnVehicle(String ownerOrgNumber, String vehicleRegistration) {
+        ReturnOutcome outcome;
+        Lock lock = vehicleLocks.forKey(vehicleRegistration);
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            outcome = repo.returnVehicle(ownerOrgNumber, vehicleRegistration, premiumBrands.get());
+        } finally {
+            lock.unlock();
+            returnTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
 
-        List<Brand> premiumBrands = repo.getPremiumBrands();
-        if (premiumBrands.contains(vehicle.getBrand())) {
-            newOwner.setPremiumCustomer(true);
-            repo.saveCustomer(newOwner);
+        switch (outcome) {
+            case VEHICLE_NOT_FOUND:
+                throw new NotFoundException("No vehicle found for registration " + vehicleRegistration);
+            case NOT_OWNED_BY_CUSTOMER:
+                throw new NotAllowedException("Only the owner of a vehicle can return it");
+            case UNCHANGED:
+                log.info("No return needed");
+                break;
+            case RETURNED:
+                log.info("Vehicle returned successfully");
+                break;
         }
+    }
+
+    public List<AssignmentOutcome> assignOwners(List<Assignment> assignments) {
+        List<AssignmentOutcome> outcomes = repo.assignOwners(assignments, premiumBrands.get());
+        log.info("Batch of {} assignments processed", assignments.size());
+        return outcomes;
+    }
 
-        repo.saveVehicle(vehicle);
-        log.info("Vehicle updated successfully");
+    public void exportVehicles(String ownerOrgNumber, Brand brand, Consumer<Vehicle> action) {
+        long start = System.nanoTime();
+        long[] count = new long[1];
+        repo.forEachVehicle(ownerOrgNumber, brand, vehicle -> {
+            action.accept(vehicle);
+            count[0]++;
+        });
+        log.info("Exported {} vehicles in {} ms", count[0], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
-    private Vehicle getVehicleIfExists(String registration) {
-        Vehicle vehicle = repo.getVehicleByRegistration(registration);
-        if (vehicle == null) {
-            throw new NotFoundException("No vehicle found for registration " + registration);
+    /**
+     * Returns a page of the customer's vehicles ordered by registration, starting after the given
+     * registration, or with the first one if it is null.
+     */
+    public VehiclePage getVehiclesByOwner(String ownerOrgNumber, String afterRegistration, int limit) {
+        // One extra vehicle tells whether there is a next page
+        List<Vehicle> vehicles = repo.getVehiclesByOwner(ownerOrgNumber, afterRegistration, limit + 1);
+        if (vehicles.isEmpty() && afterRegistration == null && repo.getCustomerByOrgNumber(ownerOrgNumber) == null) {
+            throw new NotFoundException("No customer found for organisation number " + ownerOrgNumber);
+        }
+        if (vehicles.size() <= limit) {
+            return new VehiclePage(vehicles, null);
         }
-        return vehicle;
+        List<Vehicle> page = vehicles.subList(0, limit);
+        return new VehiclePage(page, page.get(limit - 1).getRegistration());
+    }
+
+    static Timer assignmentTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("vehicle.assignments")
+                .description("End-to-end latency of single vehicle assignments")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
-    private Customer getCustomerIfExists(String orgNumber) {
-        Customer customer = repo.getCustomerByOrgNumber(orgNumber);
-        if (customer == null) {
-            throw new NotFoundException("No customer found for org number " + orgNumber);
+    static String outcomeTag(AssignmentOutcome outcome) {
+        switch (outcome) {
+            case ASSIGNED:
+                return "assigned";
+            case UNCHANGED:
+                return "no-op";
+            case VEHICLE_NOT_FOUND:
+            case CUSTOMER_NOT_FOUND:
+                return "not-found";
+            case ALREADY_OWNED:
+                return "not-allowed";
+            default:
+                throw new IllegalArgumentException("Unknown outcome " + outcome);
         }
-        return customer;
     }
 }
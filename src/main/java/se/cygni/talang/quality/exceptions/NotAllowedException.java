@@ -1,8 +1,12 @@
 package se.cygni.talang.quality.exceptions;
 
+/**
+ * A request that the current state does not allow. Like {@link NotFoundException} it has no stack
+ * trace.
+ */
 public class NotAllowedException extends RuntimeException {
 
     public NotAllowedException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
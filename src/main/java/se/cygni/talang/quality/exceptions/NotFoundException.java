@@ -1,8 +1,12 @@
 package se.cygni.talang.quality.exceptions;
 
+/**
+ * An expected outcome rather than a fault, thrown for every lookup of an unknown key, so it has no
+ * stack trace and cannot be suppressed. The message says what was not found.
+ */
 public class NotFoundException extends RuntimeException {
 
     public NotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,76 @@
+package se.cygni.talang.quality.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Posts to the /assign and /return endpoints of a running server.
+ */
+public class HttpLoadTarget implements LoadTarget {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(TIMEOUT)
+            .build();
+    private final URI assign;
+    private final URI returns;
+
+    public HttpLoadTarget(URI baseUri) {
+        this.assign = baseUri.resolve("/assign");
+        this.returns = baseUri.resolve("/return");
+    }
+
+    @Override
+    public Result assignOwner(String owner, String vehicle) {
+        try {
+            int status = post(assign, owner, vehicle);
+            // The statuses that Endpoints maps NotFoundException and NotAllowedException to
+            if (status >= 200 && status < 300) {
+                return Result.OK;
+            } else if (status == 404) {
+                return Result.NOT_FOUND;
+            } else if (status == 403 || status == 409) {
+                return Result.NOT_ALLOWED;
+            }
+            return Result.ERROR;
+        } catch (IOException e) {
+            return Result.ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.ERROR;
+        }
+    }
+
+    @Override
+    public void returnVehicle(String owner, String vehicle) {
+        try {
+            post(returns, owner, vehicle);
+        } catch (IOException e) {
+            // Counted by the next assignment of the vehicle, if it is still assigned
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int post(URI uri, String owner, String vehicle) throws IOException, InterruptedException {
+        // The generated keys need no escaping
+        String body = "{\"owner\":\"" + owner + "\",\"vehicle\":\"" + vehicle + "\"}";
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Override
+    public String toString() {
+        return assign.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package se.cygni.talang.quality.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Picks which of a number of keys the next request is for, 0 being the most requested.
+ */
+public abstract class KeyDistribution {
+
+    private final int keys;
+
+    private KeyDistribution(int keys) {
+        if (keys < 1) {
+            throw new IllegalArgumentException("There must be at least one key");
+        }
+        this.keys = keys;
+    }
+
+    public static KeyDistribution uniform(int keys) {
+        return new KeyDistribution(keys) {
+            @Override
+            public int next(Random random) {
+                return random.nextInt(keys);
+            }
+
+            @Override
+            public String toString() {
+                return "uniform over " + keys;
+            }
+        };
+    }
+
+    /**
+     * Key k is requested in proportion to 1 / (k + 1)^exponent, an exponent around 1 gives a few hot
+     * keys that most requests are for.
+     */
+    public static KeyDistribution zipfian(int keys, double exponent) {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int k = 0; k < keys; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < keys; k++) {
+            cumulative[k] /= sum;
+        }
+        return new KeyDistribution(keys) {
+            @Override
+            public int next(Random random) {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble());
+                return Math.min(index < 0 ? -index - 1 : index, keys - 1);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("zipfian over %d, exponent %.2f", keys, exponent);
+            }
+        };
+    }
+
+    public static KeyDistribution of(String name, int keys, double exponent) {
+        switch (name) {
+            case "uniform":
+                return uniform(keys);
+            case "zipfian":
+                return zipfian(keys, exponent);
+            default:
+                throw new IllegalArgumentException("Unknown key distribution " + name + ", use uniform or zipfian");
+        }
+    }
+
+    public int getKeys() {
+        return keys;
+    }
+
+    public abstract int next(Random random);
+}
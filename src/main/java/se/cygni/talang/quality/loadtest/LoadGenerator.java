@@ -0,0 +1,242 @@
+package se.cygni.talang.quality.loadtest;
+
+import org.HdrHistogram.Histogram;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a mix of assignments to a {@link LoadTarget} from a number of workers, at a fixed total rate.
+ * Each worker has a schedule of when its requests are meant to be sent, and the latency of a request
+ * is measured from then rather than from when it was sent, so a stall also counts against the
+ * requests that queued up behind it, as they would for clients that do not wait for each other.
+ * Without a rate the workers send as fast as they can and only the service time is measured.
+ * <p>
+ * The vehicles come in two sets of the same size, picked from by the same {@link KeyDistribution}:
+ * free vehicles, which an assignment is tried for and which the worker then returns, and vehicles that
+ * are owned from the start, which no-op and not allowed assignments are tried for. The owner of
+ * vehicle k is customer k modulo the number of customers. {@link #seed(Repository)} creates them.
+ * <p>
+ * A free vehicle that was assigned is returned right away by the worker, as a request of its own
+ * that is not on the schedule. The returns are reported apart, with their service time.
+ */
+public class LoadGenerator {
+
+    public enum Operation {
+        ASSIGN(LoadTarget.Result.OK),
+        NO_OP(LoadTarget.Result.OK),
+        NOT_FOUND(LoadTarget.Result.NOT_FOUND),
+        NOT_ALLOWED(LoadTarget.Result.NOT_ALLOWED);
+
+        private final LoadTarget.Result expected;
+
+        Operation(LoadTarget.Result expected) {
+            this.expected = expected;
+        }
+
+        public LoadTarget.Result getExpected() {
+            return expected;
+        }
+    }
+
+    private final LoadTarget target;
+    private final KeyDistribution vehicles;
+    private final int customers;
+    private final Map<Operation, Integer> mix;
+    private final int concurrency;
+    private final double rate;
+    private final Operation[] operations = Operation.values();
+    private final int[] cumulativeWeights = new int[operations.length];
+
+    /**
+     * @param mix   the relative weight of each operation
+     * @param rate  requests per second over all workers, or 0 to send as fast as they can
+     */
+    public LoadGenerator(LoadTarget target, KeyDistribution vehicles, int customers, Map<Operation, Integer> mix,
+                         int concurrency, double rate) {
+        if (customers < 2) {
+            throw new IllegalArgumentException("Not allowed assignments need at least two customers");
+        }
+        if (concurrency < 1 || rate < 0) {
+            throw new IllegalArgumentException("The concurrency must be positive and the rate not negative");
+        }
+        this.target = target;
+        this.vehicles = vehicles;
+        this.customers = customers;
+        this.mix = new EnumMap<>(mix);
+        this.concurrency = concurrency;
+        this.rate = rate;
+        int sum = 0;
+        for (Operation operation : operations) {
+            sum += Math.max(mix.getOrDefault(operation, 0), 0);
+            cumulativeWeights[operation.ordinal()] = sum;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("The mix must have an operation with a positive weight");
+        }
+    }
+
+    public void seed(Repository repository) {
+        for (int i = 0; i < customers; i++) {
+            repository.saveCustomer(new Customer(customer(i)));
+        }
+        Brand[] brands = Brand.values();
+        for (int i = 0; i < vehicles.getKeys(); i++) {
+            Vehicle free = new Vehicle(freeVehicle(i));
+            free.setBrand(brands[i % brands.length]);
+            repository.saveVehicle(free);
+            // Not a premium brand, so that the owners' premium counters are right without counting
+            Vehicle owned = new Vehicle(ownedVehicle(i));
+            owned.setOwner(ownerOf(i));
+            owned.setBrand(Brand.VOLVO);
+            repository.saveVehicle(owned);
+        }
+    }
+
+    /**
+     * Sends requests for the warmup and then the duration, and reports on those sent during the
+     * duration.
+     */
+    public LoadReport run(Duration warmup, Duration duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        List<Worker> workers = new ArrayList<>(concurrency);
+        List<Thread> threads = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Worker worker = new Worker(i, start, measureFrom, end);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "load-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LoadReport report = new LoadReport(description(), rate > 0, end - measureFrom);
+        for (Worker worker : workers) {
+            report.add(worker.latency, worker.serviceTime, worker.returns, worker.results);
+        }
+        return report;
+    }
+
+    static String customer(int i) {
+        return String.format("LT-C%07d", i);
+    }
+
+    static String freeVehicle(int i) {
+        return String.format("LT-F%07d", i);
+    }
+
+    static String ownedVehicle(int i) {
+        return String.format("LT-O%07d", i);
+    }
+
+    static String unknownVehicle(int i) {
+        return String.format("LT-U%07d", i);
+    }
+
+    private String ownerOf(int vehicle) {
+        return customer(vehicle % customers);
+    }
+
+    private Operation nextOperation(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (Operation operation : operations) {
+            if (value < cumulativeWeights[operation.ordinal()]) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private LoadTarget.Result send(Operation operation, int key) {
+        switch (operation) {
+            case ASSIGN:
+                return target.assignOwner(ownerOf(key), freeVehicle(key));
+            case NO_OP:
+                return target.assignOwner(ownerOf(key), ownedVehicle(key));
+            case NOT_FOUND:
+                return target.assignOwner(ownerOf(key), unknownVehicle(key));
+            case NOT_ALLOWED:
+                return target.assignOwner(customer((key + 1) % customers), ownedVehicle(key));
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    private String description() {
+        return String.format("%s, %d workers, %s, %s, keys %s", target, concurrency,
+                rate > 0 ? String.format("%.0f requests/s", rate) : "unthrottled", mix, vehicles);
+    }
+
+    private class Worker implements Runnable {
+        private final long measureFrom;
+        private final long end;
+        private final long interval;
+        private long intended;
+        // Per operation, measured from when the request was meant to be sent
+        private final Histogram[] latency = new Histogram[operations.length];
+        private final Histogram serviceTime = new Histogram(3);
+        private final Histogram returns = new Histogram(3);
+        private final long[][] results = new long[operations.length][LoadTarget.Result.values().length];
+
+        private Worker(int index, long start, long measureFrom, long end) {
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.interval = rate > 0 ? (long) (1e9 * concurrency / rate) : 0;
+            // Spread out over the first interval, so that the workers do not send in lockstep
+            this.intended = start + interval * index / concurrency;
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = new Histogram(3);
+            }
+        }
+
+        @Override
+        public void run() {
+            Random random = ThreadLocalRandom.current();
+            while (true) {
+                long now = System.nanoTime();
+                if (interval > 0) {
+                    // Behind schedule the requests that are due are sent right away, one after another
+                    while (now < intended) {
+                        LockSupport.parkNanos(intended - now);
+                        now = System.nanoTime();
+                    }
+                } else {
+                    intended = now;
+                }
+                if (intended >= end) {
+                    return;
+                }
+                Operation operation = nextOperation(random);
+                int key = vehicles.next(random);
+                LoadTarget.Result result = send(operation, key);
+                long finished = System.nanoTime();
+                if (intended >= measureFrom) {
+                    latency[operation.ordinal()].recordValue(finished - intended);
+                    serviceTime.recordValue(finished - now);
+                    results[operation.ordinal()][result.ordinal()]++;
+                }
+                if (operation == Operation.ASSIGN && result == LoadTarget.Result.OK) {
+                    // Off the schedule, a slow return delays the worker's next request
+                    target.returnVehicle(ownerOf(key), freeVehicle(key));
+                    if (intended >= measureFrom) {
+                        returns.recordValue(System.nanoTime() - finished);
+                    }
+                }
+                intended += interval;
+            }
+        }
+    }
+}
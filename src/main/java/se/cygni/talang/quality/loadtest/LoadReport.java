@@ -0,0 +1,121 @@
+package se.cygni.talang.quality.loadtest;
+
+import org.HdrHistogram.Histogram;
+import se.cygni.talang.quality.loadtest.LoadGenerator.Operation;
+
+import java.io.PrintStream;
+import java.util.Formatter;
+
+/**
+ * The latencies and results of the requests sent during a load test, with latencies in nanoseconds.
+ * The returns of assigned vehicles are counted apart from the scheduled requests.
+ */
+public class LoadReport {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final String description;
+    private final boolean scheduled;
+    private final long nanos;
+    private final Histogram[] latency = new Histogram[Operation.values().length];
+    private final Histogram total = new Histogram(3);
+    private final Histogram serviceTime = new Histogram(3);
+    private final Histogram returns = new Histogram(3);
+    private final long[][] results = new long[Operation.values().length][LoadTarget.Result.values().length];
+
+    LoadReport(String description, boolean scheduled, long nanos) {
+        this.description = description;
+        this.scheduled = scheduled;
+        this.nanos = nanos;
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new Histogram(3);
+        }
+    }
+
+    void add(Histogram[] latency, Histogram serviceTime, Histogram returns, long[][] results) {
+        for (int i = 0; i < latency.length; i++) {
+            this.latency[i].add(latency[i]);
+            total.add(latency[i]);
+        }
+        this.serviceTime.add(serviceTime);
+        this.returns.add(returns);
+        for (int i = 0; i < results.length; i++) {
+            for (int j = 0; j < results[i].length; j++) {
+                this.results[i][j] += results[i][j];
+            }
+        }
+    }
+
+    /**
+     * From when each request was meant to be sent, or the service time if they were not scheduled.
+     */
+    public Histogram getLatency() {
+        return total;
+    }
+
+    public Histogram getLatency(Operation operation) {
+        return latency[operation.ordinal()];
+    }
+
+    // From when each request was sent
+    public Histogram getServiceTime() {
+        return serviceTime;
+    }
+
+    // The service time of the returns of assigned vehicles
+    public Histogram getReturns() {
+        return returns;
+    }
+
+    public long getCount(Operation operation, LoadTarget.Result result) {
+        return results[operation.ordinal()][result.ordinal()];
+    }
+
+    // Including the returns
+    public double getThroughput() {
+        return (total.getTotalCount() + returns.getTotalCount()) * 1e9 / nanos;
+    }
+
+    /**
+     * The latency percentiles in milliseconds, in the format that the HdrHistogram plotter reads.
+     */
+    public void writeLatencyDistribution(PrintStream out) {
+        total.outputPercentileDistribution(out, NANOS_PER_MILLI);
+    }
+
+    @Override
+    public String toString() {
+        Formatter report = new Formatter();
+        report.format("Load test of %s%n", description);
+        report.format("%d requests and %d returns in %.1f s, %.1f requests/s%n", total.getTotalCount(),
+                returns.getTotalCount(), nanos / 1e9, getThroughput());
+        report.format("%-24s %10s %10s %10s %10s %10s%n", scheduled ? "latency (ms)" : "service time (ms)",
+                "count", "p50", "p99", "p99.9", "max");
+        for (Operation operation : Operation.values()) {
+            row(report, operation.name(), getLatency(operation));
+        }
+        row(report, "all", total);
+        if (scheduled) {
+            // What a closed loop benchmark would have reported, the gap is the time spent queued
+            row(report, "all, service time", serviceTime);
+        }
+        row(report, "returns, service time", returns);
+        for (Operation operation : Operation.values()) {
+            for (LoadTarget.Result result : LoadTarget.Result.values()) {
+                long count = getCount(operation, result);
+                if (result != operation.getExpected() && count > 0) {
+                    report.format("%s got %s %d times%n", operation, result, count);
+                }
+            }
+        }
+        return report.toString();
+    }
+
+    private static void row(Formatter report, String name, Histogram histogram) {
+        report.format("%-24s %10d %10.3f %10.3f %10.3f %10.3f%n", name, histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                histogram.getMaxValue() / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,16 @@
+package se.cygni.talang.quality.loadtest;
+
+/**
+ * What the load generator sends its assignments to.
+ */
+public interface LoadTarget {
+
+    enum Result {
+        OK, NOT_FOUND, NOT_ALLOWED, ERROR
+    }
+
+    Result assignOwner(String owner, String vehicle);
+
+    // Hands an assigned vehicle back, so that it can be assigned again
+    void returnVehicle(String owner, String vehicle);
+}
@@ -0,0 +1,68 @@
+package se.cygni.talang.quality.loadtest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.cygni.talang.quality.application.VehicleService;
+import se.cygni.talang.quality.loadtest.LoadGenerator.Operation;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+// See application-loadtest.properties
+@Configuration
+@ConditionalOnProperty(name = "loadtest.enabled", havingValue = "true")
+public class LoadTestConfiguration {
+
+    @Bean
+    public LoadGenerator loadGenerator(VehicleService vehicleService,
+                                       @Value("${loadtest.target:service}") String target,
+                                       @Value("${loadtest.url:http://localhost:${server.port:8080}}") URI url,
+                                       @Value("${loadtest.concurrency:16}") int concurrency,
+                                       @Value("${loadtest.rate:10000}") double rate,
+                                       @Value("${loadtest.vehicles:100000}") int vehicles,
+                                       @Value("${loadtest.customers:10000}") int customers,
+                                       @Value("${loadtest.distribution:zipfian}") String distribution,
+                                       @Value("${loadtest.zipf-exponent:0.99}") double zipfExponent,
+                                       @Value("${loadtest.mix.assign:60}") int assign,
+                                       @Value("${loadtest.mix.no-op:30}") int noOp,
+                                       @Value("${loadtest.mix.not-found:5}") int notFound,
+                                       @Value("${loadtest.mix.not-allowed:5}") int notAllowed) {
+        LoadTarget loadTarget;
+        switch (target) {
+            case "service":
+                loadTarget = new ServiceLoadTarget(vehicleService);
+                break;
+            case "http":
+                loadTarget = new HttpLoadTarget(url);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown load test target " + target + ", use service or http");
+        }
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        mix.put(Operation.ASSIGN, assign);
+        mix.put(Operation.NO_OP, noOp);
+        mix.put(Operation.NOT_FOUND, notFound);
+        mix.put(Operation.NOT_ALLOWED, notAllowed);
+        return new LoadGenerator(loadTarget, KeyDistribution.of(distribution, vehicles, zipfExponent),
+                customers, mix, concurrency, rate);
+    }
+
+    @Bean
+    public LoadTestRunner loadTestRunner(LoadGenerator loadGenerator,
+                                         Repository repository,
+                                         ConfigurableApplicationContext context,
+                                         @Value("${loadtest.seed:true}") boolean seed,
+                                         @Value("${loadtest.warmup:10s}") Duration warmup,
+                                         @Value("${loadtest.duration:30s}") Duration duration,
+                                         @Value("${loadtest.histogram-file:}") String histogramFile,
+                                         @Value("${loadtest.exit:true}") boolean exit) {
+        return new LoadTestRunner(loadGenerator, seed ? repository : null, context, warmup, duration,
+                histogramFile, exit);
+    }
+}
@@ -0,0 +1,69 @@
+package se.cygni.talang.quality.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.lang.Nullable;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+
+/**
+ * Runs the load test once the application has started, so that the HTTP endpoints are up, logs the
+ * report and exits.
+ */
+public class LoadTestRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    private final LoadGenerator loadGenerator;
+    // Seeded with the vehicles and customers of the test, unless null
+    private final Repository repository;
+    private final ConfigurableApplicationContext context;
+    private final Duration warmup;
+    private final Duration duration;
+    private final String histogramFile;
+    private final boolean exit;
+
+    public LoadTestRunner(LoadGenerator loadGenerator,
+                          @Nullable Repository repository,
+                          ConfigurableApplicationContext context,
+                          Duration warmup,
+                          Duration duration,
+                          String histogramFile,
+                          boolean exit) {
+        this.loadGenerator = loadGenerator;
+        this.repository = repository;
+        this.context = context;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.histogramFile = histogramFile;
+        this.exit = exit;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException, IOException {
+        if (repository != null) {
+            log.info("Load test: seeding the repository");
+            loadGenerator.seed(repository);
+        }
+        log.info("Load test: {} of warmup, then measuring for {}", warmup, duration);
+        LoadReport report = loadGenerator.run(warmup, duration);
+        log.info("{}", report);
+        if (!histogramFile.isEmpty()) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(histogramFile))) {
+                report.writeLatencyDistribution(out);
+            }
+            log.info("Load test: latency distribution written to {}", histogramFile);
+        }
+        if (exit) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package se.cygni.talang.quality.loadtest;
+
+import se.cygni.talang.quality.application.VehicleService;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.exceptions.NotFoundException;
+
+/**
+ * Calls the service in process, leaving out the HTTP stack.
+ */
+public class ServiceLoadTarget implements LoadTarget {
+
+    private final VehicleService vehicleService;
+
+    public ServiceLoadTarget(VehicleService vehicleService) {
+        this.vehicleService = vehicleService;
+    }
+
+    @Override
+    public Result assignOwner(String owner, String vehicle) {
+        try {
+            vehicleService.assignOwner(owner, vehicle);
+            return Result.OK;
+        } catch (NotFoundException e) {
+            return Result.NOT_FOUND;
+        } catch (NotAllowedException e) {
+            return Result.NOT_ALLOWED;
+        } catch (RuntimeException e) {
+            return Result.ERROR;
+        }
+    }
+
+    @Override
+    public void returnVehicle(String owner, String vehicle) {
+        try {
+            vehicleService.returnVehicle(owner, vehicle);
+        } catch (RuntimeException e) {
+            // Another worker may have returned it already
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VehicleService";
+    }
+}
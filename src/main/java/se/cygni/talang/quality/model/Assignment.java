@@ -0,0 +1,44 @@
+package se.cygni.talang.quality.model;
+
+import java.util.Objects;
+
+public class Assignment {
+
+    private final String ownerOrgNumber;
+    private final String vehicleRegistration;
+
+    public Assignment(String ownerOrgNumber, String vehicleRegistration) {
+        this.ownerOrgNumber = ownerOrgNumber;
+        this.vehicleRegistration = vehicleRegistration;
+    }
+
+    public String getOwnerOrgNumber() {
+        return ownerOrgNumber;
+    }
+
+    public String getVehicleRegistration() {
+        return vehicleRegistration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Assignment that = (Assignment) o;
+        return Objects.equals(ownerOrgNumber, that.ownerOrgNumber)
+                && Objects.equals(vehicleRegistration, that.vehicleRegistration);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ownerOrgNumber, vehicleRegistration);
+    }
+
+    @Override
+    public String toString() {
+        return "Assignment{" +
+                "ownerOrgNumber='" + ownerOrgNumber + '\'' +
+                ", vehicleRegistration='" + vehicleRegistration + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,9 @@
+package se.cygni.talang.quality.model;
+
+public enum AssignmentOutcome {
+    VEHICLE_NOT_FOUND,
+    CUSTOMER_NOT_FOUND,
+    ALREADY_OWNED,
+    UNCHANGED,
+    ASSIGNED
+}
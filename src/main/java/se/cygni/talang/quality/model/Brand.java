@@ -1,9 +1,44 @@
 package se.cygni.talang.quality.model;
 
+/**
+ * The code is what the database stores. Codes are never reused or changed, new brands get the next
+ * one, whatever their position here.
+ */
 public enum Brand {
-    VOLVO,
-    VOLKSWAGEN,
-    TOYOTA,
-    RENAULT,
-    LAMBORGHINI
+    VOLVO(1),
+    VOLKSWAGEN(2),
+    TOYOTA(3),
+    RENAULT(4),
+    LAMBORGHINI(5);
+
+    private static final Brand[] BY_CODE;
+
+    static {
+        int max = 0;
+        for (Brand brand : values()) {
+            max = Math.max(max, brand.code);
+        }
+        BY_CODE = new Brand[max + 1];
+        for (Brand brand : values()) {
+            BY_CODE[brand.code] = brand;
+        }
+    }
+
+    private final short code;
+
+    Brand(int code) {
+        this.code = (short) code;
+    }
+
+    public short getCode() {
+        return code;
+    }
+
+    public static Brand ofCode(int code) {
+        Brand brand = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (brand == null) {
+            throw new IllegalArgumentException("Unknown brand code " + code);
+        }
+        return brand;
+    }
 }
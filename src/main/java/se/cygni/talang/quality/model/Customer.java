@@ -6,6 +6,7 @@ public class Customer {
 
     private final String organisationNumber;
     private boolean premiumCustomer;
+    private int premiumVehicles;
 
     public Customer(String organisationNumber) {
         this.organisationNumber = organisationNumber;
@@ -23,17 +24,25 @@ public class Customer {
         this.premiumCustomer = premiumCustomer;
     }
 
+    public int getPremiumVehicles() {
+        return premiumVehicles;
+    }
+
+    public void setPremiumVehicles(int premiumVehicles) {
+        this.premiumVehicles = premiumVehicles;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Customer customer = (Customer) o;
-        return premiumCustomer == customer.premiumCustomer && Objects.equals(organisationNumber, customer.organisationNumber);
+        return premiumCustomer == customer.premiumCustomer && premiumVehicles == customer.premiumVehicles && Objects.equals(organisationNumber, customer.organisationNumber);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(organisationNumber, premiumCustomer);
+        return Objects.hash(organisationNumber, premiumCustomer, premiumVehicles);
     }
 
     @Override
@@ -41,6 +50,7 @@ public class Customer {
         return "Customer{" +
                 "organisationNumber='" + organisationNumber + '\'' +
                 ", premiumCustomer=" + premiumCustomer +
+                ", premiumVehicles=" + premiumVehicles +
                 '}';
     }
 }
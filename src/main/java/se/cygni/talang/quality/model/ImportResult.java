@@ -0,0 +1,65 @@
+package se.cygni.talang.quality.model;
+
+import java.util.List;
+
+public class ImportResult {
+
+    private final long rows;
+    private final long rejected;
+    private final List<String> rejectedSamples;
+    private final long vehiclesInserted;
+    private final long vehiclesUpdated;
+    private final long customersCreated;
+    private final long customersUpgraded;
+
+    public ImportResult(long rows, long rejected, List<String> rejectedSamples, long vehiclesInserted,
+                        long vehiclesUpdated, long customersCreated, long customersUpgraded) {
+        this.rows = rows;
+        this.rejected = rejected;
+        this.rejectedSamples = List.copyOf(rejectedSamples);
+        this.vehiclesInserted = vehiclesInserted;
+        this.vehiclesUpdated = vehiclesUpdated;
+        this.customersCreated = customersCreated;
+        this.customersUpgraded = customersUpgraded;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<String> getRejectedSamples() {
+        return rejectedSamples;
+    }
+
+    public long getVehiclesInserted() {
+        return vehiclesInserted;
+    }
+
+    public long getVehiclesUpdated() {
+        return vehiclesUpdated;
+    }
+
+    public long getCustomersCreated() {
+        return customersCreated;
+    }
+
+    public long getCustomersUpgraded() {
+        return customersUpgraded;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "rows=" + rows +
+                ", rejected=" + rejected +
+                ", vehiclesInserted=" + vehiclesInserted +
+                ", vehiclesUpdated=" + vehiclesUpdated +
+                ", customersCreated=" + customersCreated +
+                ", customersUpgraded=" + customersUpgraded +
+                '}';
+    }
+}
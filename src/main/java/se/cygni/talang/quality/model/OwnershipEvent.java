@@ -0,0 +1,74 @@
+package se.cygni.talang.quality.model;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A change of a vehicle's owner. The previous owner is null when the vehicle was assigned, the
+ * owner is null when it was returned. Ids increase in the order the changes were committed on one
+ * database, give or take concurrent transactions.
+ */
+public class OwnershipEvent {
+
+    private final long id;
+    private final String registration;
+    private final String previousOwner;
+    private final String owner;
+    private final Instant occurredAt;
+
+    public OwnershipEvent(long id, String registration, String previousOwner, String owner, Instant occurredAt) {
+        this.id = id;
+        this.registration = registration;
+        this.previousOwner = previousOwner;
+        this.owner = owner;
+        this.occurredAt = occurredAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getRegistration() {
+        return registration;
+    }
+
+    public String getPreviousOwner() {
+        return previousOwner;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Instant getOccurredAt() {
+        return occurredAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OwnershipEvent that = (OwnershipEvent) o;
+        return id == that.id
+                && Objects.equals(registration, that.registration)
+                && Objects.equals(previousOwner, that.previousOwner)
+                && Objects.equals(owner, that.owner)
+                && Objects.equals(occurredAt, that.occurredAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, registration, previousOwner, owner, occurredAt);
+    }
+
+    @Override
+    public String toString() {
+        return "OwnershipEvent{" +
+                "id=" + id +
+                ", registration='" + registration + '\'' +
+                ", previousOwner='" + previousOwner + '\'' +
+                ", owner='" + owner + '\'' +
+                ", occurredAt=" + occurredAt +
+                '}';
+    }
+}
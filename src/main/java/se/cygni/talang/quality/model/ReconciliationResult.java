@@ -0,0 +1,35 @@
+package se.cygni.talang.quality.model;
+
+public class ReconciliationResult {
+
+    private final long chunks;
+    private final long customers;
+    private final long corrected;
+
+    public ReconciliationResult(long chunks, long customers, long corrected) {
+        this.chunks = chunks;
+        this.customers = customers;
+        this.corrected = corrected;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public long getCustomers() {
+        return customers;
+    }
+
+    public long getCorrected() {
+        return corrected;
+    }
+
+    @Override
+    public String toString() {
+        return "ReconciliationResult{" +
+                "chunks=" + chunks +
+                ", customers=" + customers +
+                ", corrected=" + corrected +
+                '}';
+    }
+}
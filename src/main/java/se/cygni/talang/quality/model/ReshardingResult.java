@@ -0,0 +1,35 @@
+package se.cygni.talang.quality.model;
+
+public class ReshardingResult {
+
+    private final int fromShards;
+    private final int toShards;
+    private final long moved;
+
+    public ReshardingResult(int fromShards, int toShards, long moved) {
+        this.fromShards = fromShards;
+        this.toShards = toShards;
+        this.moved = moved;
+    }
+
+    public int getFromShards() {
+        return fromShards;
+    }
+
+    public int getToShards() {
+        return toShards;
+    }
+
+    public long getMoved() {
+        return moved;
+    }
+
+    @Override
+    public String toString() {
+        return "ReshardingResult{" +
+                "fromShards=" + fromShards +
+                ", toShards=" + toShards +
+                ", moved=" + moved +
+                '}';
+    }
+}
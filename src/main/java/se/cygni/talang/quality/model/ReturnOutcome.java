@@ -0,0 +1,8 @@
+package se.cygni.talang.quality.model;
+
+public enum ReturnOutcome {
+    VEHICLE_NOT_FOUND,
+    NOT_OWNED_BY_CUSTOMER,
+    UNCHANGED,
+    RETURNED
+}
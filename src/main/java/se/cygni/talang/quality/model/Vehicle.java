@@ -7,6 +7,7 @@ public class Vehicle {
     private final String registrationNumber;
     private String owner;
     private Brand brand;
+    private long version;
 
     public Vehicle(String registrationNumber) {
         this.registrationNumber = registrationNumber;
@@ -32,6 +33,14 @@ public class Vehicle {
         this.brand = brand;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -39,12 +48,13 @@ public class Vehicle {
         Vehicle vehicle = (Vehicle) o;
         return Objects.equals(registrationNumber, vehicle.registrationNumber)
                 && Objects.equals(owner, vehicle.owner)
-                && brand == vehicle.brand;
+                && brand == vehicle.brand
+                && version == vehicle.version;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(registrationNumber, owner, brand);
+        return Objects.hash(registrationNumber, owner, brand, version);
     }
 
     @Override
@@ -53,6 +63,7 @@ public class Vehicle {
                 "registrationNumber='" + registrationNumber + '\'' +
                 ", owner='" + owner + '\'' +
                 ", brand=" + brand +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,25 @@
+package se.cygni.talang.quality.model;
+
+import java.util.List;
+
+public class VehiclePage {
+
+    private final List<Vehicle> vehicles;
+    private final String next;
+
+    public VehiclePage(List<Vehicle> vehicles, String next) {
+        this.vehicles = vehicles;
+        this.next = next;
+    }
+
+    public List<Vehicle> getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * The registration to continue after to get the next page, or null if this is the last page.
+     */
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,24 @@
+package se.cygni.talang.quality.repo;
+
+import org.springframework.context.ApplicationEventPublisher;
+import se.cygni.talang.quality.model.OwnershipEvent;
+
+import java.util.List;
+
+/**
+ * Publishes each ownership change as a Spring application event, for in-process subscribers with
+ * {@code @EventListener}. Listeners run on the publisher's thread, one that throws fails the batch.
+ */
+public class ApplicationEventOutboxSink implements OutboxSink {
+
+    private final ApplicationEventPublisher publisher;
+
+    public ApplicationEventOutboxSink(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void publish(List<OwnershipEvent> events) {
+        events.forEach(publisher::publishEvent);
+    }
+}
@@ -0,0 +1,114 @@
+package se.cygni.talang.quality.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.cygni.talang.quality.model.Brand;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Converts the brand columns of a database created before brands were stored as
+ * {@link Brand#getCode() codes} from names to codes, at startup and before the repository is used.
+ * Does nothing once converted. Fails, and leaves the columns as they are, if a column holds a name
+ * that is not a brand, as there is no code to convert it to.
+ * <p>
+ * Not for a rolling deploy: the conversion rewrites vehicles under an ACCESS EXCLUSIVE lock, and nodes
+ * of the earlier version, which write names, fail once it is done. Every node must be stopped first.
+ */
+@Component
+@ConditionalOnProperty(name = "repository.type", havingValue = "database", matchIfMissing = true)
+public class BrandCodeMigration implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(BrandCodeMigration.class);
+    private static final List<String> TABLES = List.of("vehicles", "premiumBrands");
+    private static final Set<Integer> CHARACTER_TYPES = Set.of(Types.VARCHAR, Types.CHAR, Types.LONGVARCHAR,
+            Types.NVARCHAR, Types.NCHAR, Types.LONGNVARCHAR);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public BrandCodeMigration(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        migrate();
+    }
+
+    /**
+     * @return the tables whose brand column was converted
+     */
+    public List<String> migrate() {
+        if (TABLES.stream().noneMatch(this::storesNames)) {
+            return List.of();
+        }
+        log.warn("Converting the brands from names to codes, vehicles is locked until done and nodes of the " +
+                "earlier version fail after it, which should all have been stopped");
+        return transactionTemplate.execute(status -> {
+            // Another instance that starts at the same time converts the tables first, or waits for this one
+            jdbcTemplate.getJdbcTemplate().execute("LOCK TABLE " + String.join(", ", TABLES) + " IN ACCESS EXCLUSIVE MODE");
+            List<String> converted = new ArrayList<>();
+            for (String table : TABLES) {
+                if (storesNames(table)) {
+                    convert(table);
+                    converted.add(table);
+                }
+            }
+            return converted;
+        });
+    }
+
+    /**
+     * The code of the brand named by a column or expression, in SQL, or NULL for a name that is not a
+     * brand.
+     */
+    static String codeOf(String expression) {
+        return Arrays.stream(Brand.values())
+                .map(brand -> " WHEN '" + brand.name() + "' THEN " + brand.getCode())
+                .collect(Collectors.joining("", "CASE " + expression, " END"));
+    }
+
+    private void convert(String table) {
+        List<String> unknown = jdbcTemplate.queryForList("SELECT DISTINCT brand FROM " + table +
+                        " WHERE brand IS NOT NULL AND brand NOT IN (:brands)",
+                Map.of("brands", Arrays.stream(Brand.values()).map(Brand::name).collect(Collectors.toList())),
+                String.class);
+        if (!unknown.isEmpty()) {
+            throw new IllegalStateException("Cannot convert the brands of " + table + " to codes, unknown brands: " + unknown);
+        }
+        jdbcTemplate.getJdbcTemplate().execute("ALTER TABLE " + table +
+                " ALTER COLUMN brand TYPE SMALLINT USING " + codeOf("brand"));
+        log.info("Converted the brands of {} from names to codes", table);
+    }
+
+    private boolean storesNames(String table) {
+        Boolean names = jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            boolean upperCase = metaData.storesUpperCaseIdentifiers();
+            try (ResultSet columns = metaData.getColumns(null, connection.getSchema(),
+                    upperCase ? table.toUpperCase(Locale.ROOT) : table.toLowerCase(Locale.ROOT),
+                    upperCase ? "BRAND" : "brand")) {
+                return columns.next() && CHARACTER_TYPES.contains(columns.getInt("DATA_TYPE"));
+            }
+        });
+        return Boolean.TRUE.equals(names);
+    }
+}
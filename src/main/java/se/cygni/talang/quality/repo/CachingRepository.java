@@ -0,0 +1,199 @@
+package se.cygni.talang.quality.repo;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache of vehicles and customers in front of another repository. Saved vehicles write
+ * through to the cache. Saved customers and assignments invalidate the rows they may have changed,
+ * since the repository may keep the stored counters of a customer rather than those saved. Cached objects are copied
+ * on the way in and out, so callers can never modify a cached row.
+ */
+public class CachingRepository implements Repository, MeterBinder {
+
+    private final Repository delegate;
+    private final Cache<String, Vehicle> vehicles;
+    private final Cache<String, Customer> customers;
+
+    public CachingRepository(Repository delegate, long maximumSize, Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.vehicles = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.customers = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Vehicle getVehicleByRegistration(String registration) {
+        return copy(vehicles.get(registration, delegate::getVehicleByRegistration));
+    }
+
+    @Override
+    public Customer getCustomerByOrgNumber(String orgNumber) {
+        return copy(customers.get(orgNumber, delegate::getCustomerByOrgNumber));
+    }
+
+    @Override
+    public List<Brand> getPremiumBrands() {
+        return delegate.getPremiumBrands();
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegistration(Collection<String> registrations) {
+        return vehicles.getAll(registrations, missing -> delegate.getVehiclesByRegistration(toList(missing)).stream()
+                        .collect(Collectors.toMap(Vehicle::getRegistration, vehicle -> vehicle)))
+                .values().stream()
+                .map(CachingRepository::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Customer> getCustomersByOrgNumber(Collection<String> orgNumbers) {
+        return customers.getAll(orgNumbers, missing -> delegate.getCustomersByOrgNumber(toList(missing)).stream()
+                        .collect(Collectors.toMap(Customer::getOrganisationNumber, customer -> customer)))
+                .values().stream()
+                .map(CachingRepository::copy)
+                .collect(Collectors.toList());
+    }
+
+    // Not cached, a scan would only evict the rows that are actually hot
+    @Override
+    public void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action) {
+        delegate.forEachVehicle(owner, brand, action);
+    }
+
+    @Override
+    public void forEachRegistration(Consumer<String> action) {
+        delegate.forEachRegistration(action);
+    }
+
+    @Override
+    public void forEachOrgNumber(Consumer<String> action) {
+        delegate.forEachOrgNumber(action);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByOwner(String owner, String afterRegistration, int limit) {
+        return delegate.getVehiclesByOwner(owner, afterRegistration, limit);
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) {
+        try {
+            delegate.saveVehicle(vehicle);
+        } catch (RuntimeException e) {
+            // The cached row is likely stale if the save was rejected
+            vehicles.invalidate(vehicle.getRegistration());
+            throw e;
+        }
+        vehicles.put(vehicle.getRegistration(), copy(vehicle));
+    }
+
+    @Override
+    public void saveCustomer(Customer customer) {
+        delegate.saveCustomer(customer);
+        customers.invalidate(customer.getOrganisationNumber());
+    }
+
+    @Override
+    public AssignmentOutcome assignOwner(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        try {
+            return delegate.assignOwner(ownerOrgNumber, registration, premiumBrands);
+        } finally {
+            invalidate(ownerOrgNumber, registration);
+        }
+    }
+
+    @Override
+    public ReturnOutcome returnVehicle(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        try {
+            return delegate.returnVehicle(ownerOrgNumber, registration, premiumBrands);
+        } finally {
+            invalidate(ownerOrgNumber, registration);
+        }
+    }
+
+    @Override
+    public List<AssignmentOutcome> assignOwners(List<Assignment> assignments, Set<Brand> premiumBrands) {
+        try {
+            return delegate.assignOwners(assignments, premiumBrands);
+        } finally {
+            assignments.forEach(assignment ->
+                    invalidate(assignment.getOwnerOrgNumber(), assignment.getVehicleRegistration()));
+        }
+    }
+
+    public CacheStats vehicleStats() {
+        return vehicles.stats();
+    }
+
+    public CacheStats customerStats() {
+        return customers.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, vehicles, "vehicles");
+        CaffeineCacheMetrics.monitor(registry, customers, "customers");
+    }
+
+    private void invalidate(String orgNumber, String registration) {
+        if (registration != null) {
+            vehicles.invalidate(registration);
+        }
+        if (orgNumber != null) {
+            customers.invalidate(orgNumber);
+        }
+    }
+
+    private static List<String> toList(Iterable<? extends String> keys) {
+        List<String> list = new ArrayList<>();
+        keys.forEach(list::add);
+        return list;
+    }
+
+    private static Vehicle copy(Vehicle vehicle) {
+        if (vehicle == null) {
+            return null;
+        }
+        Vehicle copy = new Vehicle(vehicle.getRegistration());
+        copy.setOwner(vehicle.getOwner());
+        copy.setBrand(vehicle.getBrand());
+        copy.setVersion(vehicle.getVersion());
+        return copy;
+    }
+
+    private static Customer copy(Customer customer) {
+        if (customer == null) {
+            return null;
+        }
+        Customer copy = new Customer(customer.getOrganisationNumber());
+        copy.setPremiumCustomer(customer.isPremiumCustomer());
+        copy.setPremiumVehicles(customer.getPremiumVehicles());
+        return copy;
+    }
+}
@@ -1,100 +1,475 @@
 package se.cygni.talang.quality.repo;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
 import se.cygni.talang.quality.model.Brand;
 import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
 import se.cygni.talang.quality.model.Vehicle;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @org.springframework.stereotype.Repository
+@ConditionalOnProperty(name = "repository.type", havingValue = "database", matchIfMissing = true)
+@DependsOn("brandCodeMigration")
 public class DatabaseRepository implements Repository {
 
+    private static final int IN_LIST_CHUNK_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 5000;
+
     private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate replicaJdbcTemplate;
+    // Whether ownership changes are written to the outbox, see OutboxPublisher
+    private final boolean outbox;
 
-    public DatabaseRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+    public DatabaseRepository(NamedParameterJdbcTemplate jdbcTemplate, @Nullable ReadReplicas readReplicas,
+                              @Value("${outbox.enabled:false}") boolean outbox) {
         this.jdbcTemplate = jdbcTemplate;
+        this.replicaJdbcTemplate = readReplicas == null
+                ? jdbcTemplate
+                : new NamedParameterJdbcTemplate(readReplicas.getDataSource());
+        this.outbox = outbox;
     }
 
     @Override
     public Vehicle getVehicleByRegistration(String registration) {
         Map<String, String> params = Map.of("registration", registration);
-        String sql = "SELECT registrationNumber, owner, brand FROM vehicles WHERE registrationNumber=:registration";
+        String sql = "SELECT registrationNumber, owner, brand, version FROM vehicles WHERE registrationNumber=:registration";
 
-        List<Vehicle> result = jdbcTemplate.query(sql, params, new VehicleRowMapper());
+        List<Vehicle> result = staleReads().query(sql, params, new VehicleRowMapper());
         return resultOrEmpty(result);
     }
 
     @Override
     public Customer getCustomerByOrgNumber(String orgNumber) {
         Map<String, String> params = Map.of("orgNumber", orgNumber);
-        String sql = "SELECT organisationNumber, premiumCustomer FROM customers WHERE organisationNumber=:orgNumber";
+        String sql = "SELECT organisationNumber, premiumCustomer, premiumVehicles FROM customers WHERE organisationNumber=:orgNumber";
 
-        List<Customer> result = jdbcTemplate.query(sql, params, new CustomerRowMapper());
+        List<Customer> result = staleReads().query(sql, params, new CustomerRowMapper());
         return resultOrEmpty(result);
     }
 
     @Override
     public List<Brand> getPremiumBrands() {
         String sql = "SELECT brand FROM premiumBrands";
-        return jdbcTemplate.query(sql, new BrandRowMapper());
+        return staleReads().query(sql, new BrandRowMapper());
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegistration(Collection<String> registrations) {
+        String sql = "SELECT registrationNumber, owner, brand, version FROM vehicles WHERE registrationNumber IN (:keys)";
+        return queryInChunks(sql, registrations, new VehicleRowMapper());
+    }
+
+    @Override
+    public List<Customer> getCustomersByOrgNumber(Collection<String> orgNumbers) {
+        String sql = "SELECT organisationNumber, premiumCustomer, premiumVehicles FROM customers WHERE organisationNumber IN (:keys)";
+        return queryInChunks(sql, orgNumbers, new CustomerRowMapper());
+    }
+
+    /**
+     * Reads the vehicles through a server side cursor, so that only one fetch of rows is held in
+     * memory at a time. The PostgreSQL driver only uses a cursor for a fetch size when autocommit is
+     * off, hence the transaction.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action) {
+        StringBuilder sql = new StringBuilder("SELECT registrationNumber, owner, brand, version FROM vehicles WHERE 1=1");
+        if (owner != null) {
+            sql.append(" AND owner=?");
+        }
+        if (brand != null) {
+            sql.append(" AND brand=?");
+        }
+        VehicleRowMapper rowMapper = new VehicleRowMapper();
+        jdbcTemplate.getJdbcOperations().query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            int index = 1;
+            if (owner != null) {
+                statement.setString(index++, owner);
+            }
+            if (brand != null) {
+                statement.setShort(index, brand.getCode());
+            }
+            return statement;
+        }, (RowCallbackHandler) rs -> action.accept(rowMapper.mapRow(rs, 0)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachRegistration(Consumer<String> action) {
+        forEachKey("SELECT registrationNumber FROM vehicles", action);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachOrgNumber(Consumer<String> action) {
+        forEachKey("SELECT organisationNumber FROM customers", action);
+    }
+
+    /**
+     * Seeks to the first row after the given registration in the (owner, registrationNumber) index,
+     * so a page costs the same however deep it is, where an OFFSET would read and skip every
+     * earlier row.
+     */
+    @Override
+    public List<Vehicle> getVehiclesByOwner(String owner, String afterRegistration, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("owner", owner)
+                .addValue("limit", limit);
+        StringBuilder sql = new StringBuilder("SELECT registrationNumber, owner, brand, version FROM vehicles WHERE owner=:owner");
+        if (afterRegistration != null) {
+            sql.append(" AND registrationNumber > :after");
+            params.addValue("after", afterRegistration);
+        }
+        sql.append(" ORDER BY registrationNumber LIMIT :limit");
+        return jdbcTemplate.query(sql.toString(), params, new VehicleRowMapper());
     }
 
     @Override
     public void saveVehicle(Vehicle vehicle) {
-        Map<String, String> params = Map.of(
-                "regNum", vehicle.getRegistration(),
-                "owner", vehicle.getOwner(),
-                "brand", vehicle.getBrand().name());
-        String sql = "insert into vehicles(registrationNumber, owner, brand) values (:regNum, :owner, :brand) " +
-                "   on conflict (registrationNumber) DO " +
-                "   UPDATE SET registrationNumber=:regNum, owner=:owner, brand=:brand";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("regNum", vehicle.getRegistration())
+                .addValue("owner", vehicle.getOwner())
+                .addValue("brand", vehicle.getBrand().getCode())
+                .addValue("version", vehicle.getVersion());
+        String sql;
+        if (outbox) {
+            // The previous owner from the snapshot, which the version check guarantees is the one replaced
+            sql = "WITH previous AS (" +
+                    "       SELECT owner FROM vehicles WHERE registrationNumber=:regNum), " +
+                    "   saved AS (" +
+                    "       insert into vehicles(registrationNumber, owner, brand) values (:regNum, :owner, :brand) " +
+                    "       on conflict (registrationNumber) DO " +
+                    "       UPDATE SET owner=:owner, brand=:brand, version=vehicles.version + 1 " +
+                    "       WHERE vehicles.version=:version " +
+                    "       RETURNING version, owner), " +
+                    "   event AS (" +
+                    "       INSERT INTO ownershipEvents (registrationNumber, previousOwner, owner) " +
+                    "       SELECT :regNum, (SELECT owner FROM previous), owner FROM saved " +
+                    "       WHERE owner IS DISTINCT FROM (SELECT owner FROM previous)) " +
+                    "SELECT version FROM saved";
+        } else {
+            sql = "insert into vehicles(registrationNumber, owner, brand) values (:regNum, :owner, :brand) " +
+                    "   on conflict (registrationNumber) DO " +
+                    "   UPDATE SET owner=:owner, brand=:brand, version=vehicles.version + 1 " +
+                    "   WHERE vehicles.version=:version " +
+                    "   RETURNING version";
+        }
 
-        jdbcTemplate.update(sql, params);
+        List<Long> versions = jdbcTemplate.queryForList(sql, params, Long.class);
+        if (versions.isEmpty()) {
+            throw new OptimisticLockingFailureException("Vehicle " + vehicle.getRegistration() +
+                    " has been modified since version " + vehicle.getVersion());
+        }
+        vehicle.setVersion(versions.get(0));
     }
 
     @Override
     public void saveCustomer(Customer customer) {
         Map<String, Object> params = Map.of(
                 "orgNum", customer.getOrganisationNumber(),
-                "premium", customer.isPremiumCustomer());
-        String sql = "insert into customers(organisationNumber, premiumCustomer) values (:orgNum, :premium) " +
-                "    on conflict (organisationNumber) DO  " +
-                "    UPDATE SET organisationNumber=:orgNum, premiumCustomer=:premium";
+                "premium", customer.isPremiumCustomer(),
+                "premiumVehicles", customer.getPremiumVehicles());
+        // The premium counter of an existing customer is only changed by assign, return and
+        // reconcile, never from a Customer that may have been read before they ran
+        String sql = "insert into customers(organisationNumber, premiumCustomer, premiumVehicles) " +
+                "    values (:orgNum, :premium, :premiumVehicles) " +
+                "    on conflict (organisationNumber) DO " +
+                "    UPDATE SET premiumCustomer=:premium";
+
+        jdbcTemplate.update(sql, params);
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        Map<String, Object> params = Map.of(
+                "orgNum", customer.getOrganisationNumber(),
+                "premium", customer.isPremiumCustomer(),
+                "premiumVehicles", customer.getPremiumVehicles());
+        String sql = "insert into customers(organisationNumber, premiumCustomer, premiumVehicles) " +
+                "    values (:orgNum, :premium, :premiumVehicles) " +
+                "    on conflict (organisationNumber) DO NOTHING";
 
         jdbcTemplate.update(sql, params);
     }
 
+    @Override
+    public AssignmentOutcome assignOwner(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("regNum", registration)
+                .addValue("orgNum", ownerOrgNumber)
+                .addValue("premiumBrands", brandCodes(premiumBrands));
+        // All sub-statements see the same snapshot, so target/customer describe the state before the
+        // update. The conditional UPDATE is re-checked against the latest row version, which makes
+        // the owner check and the write a single atomic step.
+        String sql = "WITH target AS (" +
+                "       SELECT owner FROM vehicles WHERE registrationNumber=:regNum), " +
+                "   customer AS (" +
+                "       SELECT organisationNumber FROM customers WHERE organisationNumber=:orgNum), " +
+                "   assigned AS (" +
+                "       UPDATE vehicles SET owner=:orgNum, version=version + 1 " +
+                "       WHERE registrationNumber=:regNum AND owner IS NULL AND EXISTS (SELECT 1 FROM customer) " +
+                "       RETURNING brand), " +
+                "   counted AS (" +
+                "       UPDATE customers SET premiumVehicles=premiumVehicles + 1, premiumCustomer=true " +
+                "       WHERE organisationNumber=:orgNum " +
+                "       AND EXISTS (SELECT 1 FROM assigned WHERE brand IN (:premiumBrands)) " +
+                "       RETURNING organisationNumber) " +
+                (outbox ? ", event AS (" +
+                "       INSERT INTO ownershipEvents (registrationNumber, owner) " +
+                "       SELECT :regNum, :orgNum FROM assigned) " : "") +
+                "SELECT (SELECT count(*) FROM target) AS vehicles, " +
+                "   (SELECT owner FROM target) AS owner, " +
+                "   (SELECT count(*) FROM customer) AS customers, " +
+                "   (SELECT count(*) FROM assigned) AS assigned";
+
+        return jdbcTemplate.queryForObject(sql, params, (rs, rowNum) -> {
+            if (rs.getInt("vehicles") == 0) {
+                return AssignmentOutcome.VEHICLE_NOT_FOUND;
+            }
+            if (rs.getInt("assigned") == 1) {
+                return AssignmentOutcome.ASSIGNED;
+            }
+            String owner = rs.getString("owner");
+            if (Objects.equals(owner, ownerOrgNumber)) {
+                return AssignmentOutcome.UNCHANGED;
+            }
+            if (owner == null && rs.getInt("customers") == 0) {
+                return AssignmentOutcome.CUSTOMER_NOT_FOUND;
+            }
+            // Either owned by someone else, or a concurrent assignment got there first
+            return AssignmentOutcome.ALREADY_OWNED;
+        });
+    }
+
+    @Override
+    public ReturnOutcome returnVehicle(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("regNum", registration)
+                .addValue("orgNum", ownerOrgNumber)
+                .addValue("premiumBrands", brandCodes(premiumBrands));
+        // Same approach as assignOwner. premiumVehicles in the SET clause is the value before the update.
+        String sql = "WITH target AS (" +
+                "       SELECT owner FROM vehicles WHERE registrationNumber=:regNum), " +
+                "   returned AS (" +
+                "       UPDATE vehicles SET owner=NULL, version=version + 1 " +
+                "       WHERE registrationNumber=:regNum AND owner=:orgNum " +
+                "       RETURNING brand), " +
+                "   counted AS (" +
+                "       UPDATE customers SET premiumVehicles=GREATEST(premiumVehicles - 1, 0), " +
+                "           premiumCustomer=premiumVehicles > 1 " +
+                "       WHERE organisationNumber=:orgNum " +
+                "       AND EXISTS (SELECT 1 FROM returned WHERE brand IN (:premiumBrands)) " +
+                "       RETURNING organisationNumber) " +
+                (outbox ? ", event AS (" +
+                "       INSERT INTO ownershipEvents (registrationNumber, previousOwner) " +
+                "       SELECT :regNum, :orgNum FROM returned) " : "") +
+                "SELECT (SELECT count(*) FROM target) AS vehicles, " +
+                "   (SELECT owner FROM target) AS owner, " +
+                "   (SELECT count(*) FROM returned) AS returned";
+
+        return jdbcTemplate.queryForObject(sql, params, (rs, rowNum) -> {
+            if (rs.getInt("vehicles") == 0) {
+                return ReturnOutcome.VEHICLE_NOT_FOUND;
+            }
+            if (rs.getInt("returned") == 1) {
+                return ReturnOutcome.RETURNED;
+            }
+            String owner = rs.getString("owner");
+            // Owned by the customer in the snapshot means that a concurrent return got there first
+            if (owner == null || owner.equals(ownerOrgNumber)) {
+                return ReturnOutcome.UNCHANGED;
+            }
+            return ReturnOutcome.NOT_OWNED_BY_CUSTOMER;
+        });
+    }
+
+    @Override
+    @Transactional
+    public List<AssignmentOutcome> assignOwners(List<Assignment> assignments, Set<Brand> premiumBrands) {
+        Set<String> registrations = new HashSet<>();
+        Set<String> orgNumbers = new HashSet<>();
+        for (Assignment assignment : assignments) {
+            if (assignment.getVehicleRegistration() != null) {
+                registrations.add(assignment.getVehicleRegistration());
+            }
+            if (assignment.getOwnerOrgNumber() != null) {
+                orgNumbers.add(assignment.getOwnerOrgNumber());
+            }
+        }
+        StagedAssignments staged = new StagedAssignments(
+                getVehiclesByRegistration(registrations), getCustomersByOrgNumber(orgNumbers));
+
+        // Decide every assignment against the loaded rows first, so that the writes can be batched
+        List<AssignmentOutcome> outcomes = new ArrayList<>(assignments.size());
+        List<Integer> assigned = new ArrayList<>();
+        for (int i = 0; i < assignments.size(); i++) {
+            Assignment assignment = assignments.get(i);
+            AssignmentOutcome outcome = staged.assignOwner(
+                    assignment.getOwnerOrgNumber(), assignment.getVehicleRegistration());
+            outcomes.add(outcome);
+            if (outcome == AssignmentOutcome.ASSIGNED) {
+                assigned.add(i);
+            }
+        }
+        if (assigned.isEmpty()) {
+            return outcomes;
+        }
+
+        SqlParameterSource[] vehicleParams = new SqlParameterSource[assigned.size()];
+        for (int i = 0; i < assigned.size(); i++) {
+            Assignment assignment = assignments.get(assigned.get(i));
+            vehicleParams[i] = new MapSqlParameterSource()
+                    .addValue("regNum", assignment.getVehicleRegistration())
+                    .addValue("orgNum", assignment.getOwnerOrgNumber());
+        }
+        String vehicleSql = "UPDATE vehicles SET owner=:orgNum, version=version + 1 " +
+                "WHERE registrationNumber=:regNum AND owner IS NULL";
+        int[] updated = jdbcTemplate.batchUpdate(vehicleSql, vehicleParams);
+
+        Map<String, Integer> premiumVehiclesAdded = new LinkedHashMap<>();
+        List<SqlParameterSource> eventParams = new ArrayList<>();
+        for (int i = 0; i < assigned.size(); i++) {
+            Assignment assignment = assignments.get(assigned.get(i));
+            if (updated[i] == 0) {
+                // A concurrent assignment got there first
+                outcomes.set(assigned.get(i), AssignmentOutcome.ALREADY_OWNED);
+                continue;
+            }
+            eventParams.add(vehicleParams[i]);
+            if (premiumBrands.contains(staged.getVehicle(assignment.getVehicleRegistration()).getBrand())) {
+                premiumVehiclesAdded.merge(assignment.getOwnerOrgNumber(), 1, Integer::sum);
+            }
+        }
+        if (outbox && !eventParams.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO ownershipEvents (registrationNumber, owner) VALUES (:regNum, :orgNum)",
+                    eventParams.toArray(SqlParameterSource[]::new));
+        }
+        if (!premiumVehiclesAdded.isEmpty()) {
+            SqlParameterSource[] customerParams = premiumVehiclesAdded.entrySet().stream()
+                    .map(entry -> new MapSqlParameterSource()
+                            .addValue("orgNum", entry.getKey())
+                            .addValue("added", entry.getValue()))
+                    .toArray(SqlParameterSource[]::new);
+            String customerSql = "UPDATE customers SET premiumVehicles=premiumVehicles + :added, premiumCustomer=true " +
+                    "WHERE organisationNumber=:orgNum";
+            jdbcTemplate.batchUpdate(customerSql, customerParams);
+        }
+        return outcomes;
+    }
+
+    // Through a cursor as in forEachVehicle, the callers hold the transaction
+    private void forEachKey(String sql, Consumer<String> action) {
+        jdbcTemplate.getJdbcOperations().query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getString(1)));
+    }
+
+    /**
+     * For reads that tolerate staleness, which go to a read replica when there are any. Decisions
+     * such as the owner checks of assignments are taken on the primary, and so are all reads in a
+     * transaction, which must see the transaction's own writes.
+     */
+    private NamedParameterJdbcTemplate staleReads() {
+        return TransactionSynchronizationManager.isActualTransactionActive() ? jdbcTemplate : replicaJdbcTemplate;
+    }
+
+    /**
+     * Maps by column index, for {@code SELECT registrationNumber, owner, brand, version}, which
+     * saves looking up the column labels for every row.
+     */
     public static class VehicleRowMapper implements RowMapper<Vehicle> {
         @Override
         public Vehicle mapRow(ResultSet rs, int rowNum) throws SQLException {
-            Vehicle vehicle = new Vehicle(rs.getString("registrationNumber"));
-            vehicle.setOwner(rs.getString("owner"));
-            vehicle.setBrand(Brand.valueOf(rs.getString("brand")));
+            Vehicle vehicle = new Vehicle(rs.getString(1));
+            vehicle.setOwner(rs.getString(2));
+            vehicle.setBrand(brand(rs, 3));
+            vehicle.setVersion(rs.getLong(4));
             return vehicle;
         }
     }
 
+    // For SELECT organisationNumber, premiumCustomer, premiumVehicles
     public static class CustomerRowMapper implements RowMapper<Customer> {
 
         @Override
         public Customer mapRow(ResultSet rs, int rowNum) throws SQLException {
-            Customer customer = new Customer(rs.getString("organisationNumber"));
-            customer.setPremiumCustomer(rs.getBoolean("premiumCustomer"));
+            Customer customer = new Customer(rs.getString(1));
+            customer.setPremiumCustomer(rs.getBoolean(2));
+            customer.setPremiumVehicles(rs.getInt(3));
             return customer;
         }
     }
 
+    // For SELECT brand
     public static class BrandRowMapper implements RowMapper<Brand> {
 
         @Override
         public Brand mapRow(ResultSet rs, int rowNum) throws SQLException {
-            return Brand.valueOf(rs.getString("brand"));
+            return brand(rs, 1);
+        }
+    }
+
+    private static Brand brand(ResultSet rs, int column) throws SQLException {
+        short code = rs.getShort(column);
+        return rs.wasNull() ? null : Brand.ofCode(code);
+    }
+
+    private <T> List<T> queryInChunks(String sql, Collection<String> keys, RowMapper<T> rowMapper) {
+        List<T> result = new ArrayList<>(keys.size());
+        List<String> chunk = new ArrayList<>(Math.min(keys.size(), IN_LIST_CHUNK_SIZE));
+        for (String key : keys) {
+            chunk.add(key);
+            if (chunk.size() == IN_LIST_CHUNK_SIZE) {
+                result.addAll(jdbcTemplate.query(sql, Map.of("keys", chunk), rowMapper));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            result.addAll(jdbcTemplate.query(sql, Map.of("keys", chunk), rowMapper));
+        }
+        return result;
+    }
+
+    private static List<Short> brandCodes(Set<Brand> brands) {
+        if (brands.isEmpty()) {
+            // An empty IN () list is not valid SQL, and IN (NULL) never matches
+            return Collections.singletonList(null);
         }
+        return brands.stream().map(Brand::getCode).collect(Collectors.toList());
     }
 
     private <T> T resultOrEmpty(List<T> result) {
@@ -103,4 +478,41 @@ public class DatabaseRepository implements Repository {
         }
         return result.get(0);
     }
+
+    /**
+     * Rows loaded up front for a batch of assignments. Assignments only update the loaded rows, so
+     * that later assignments in the same batch see the effect of earlier ones.
+     */
+    private static class StagedAssignments {
+        private final Map<String, Vehicle> vehicles = new HashMap<>();
+        private final Set<String> orgNumbers = new HashSet<>();
+
+        private StagedAssignments(List<Vehicle> vehicles, List<Customer> customers) {
+            vehicles.forEach(vehicle -> this.vehicles.put(vehicle.getRegistration(), vehicle));
+            customers.forEach(customer -> orgNumbers.add(customer.getOrganisationNumber()));
+        }
+
+        private Vehicle getVehicle(String registration) {
+            return vehicles.get(registration);
+        }
+
+        // Decides as assignOwner does, the premium counters are added up by the caller
+        private AssignmentOutcome assignOwner(String ownerOrgNumber, String registration) {
+            Vehicle vehicle = vehicles.get(registration);
+            if (vehicle == null) {
+                return AssignmentOutcome.VEHICLE_NOT_FOUND;
+            }
+            if (Objects.equals(vehicle.getOwner(), ownerOrgNumber)) {
+                return AssignmentOutcome.UNCHANGED;
+            }
+            if (vehicle.getOwner() != null) {
+                return AssignmentOutcome.ALREADY_OWNED;
+            }
+            if (!orgNumbers.contains(ownerOrgNumber)) {
+                return AssignmentOutcome.CUSTOMER_NOT_FOUND;
+            }
+            vehicle.setOwner(ownerOrgNumber);
+            return AssignmentOutcome.ASSIGNED;
+        }
+    }
 }
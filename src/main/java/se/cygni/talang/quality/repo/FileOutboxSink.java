@@ -0,0 +1,48 @@
+package se.cygni.talang.quality.repo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import se.cygni.talang.quality.model.OwnershipEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Appends the ownership changes to a file as newline delimited JSON. A batch is on disk before the
+ * events are removed from the outbox; if that removal fails, the batch is appended again.
+ */
+public class FileOutboxSink implements OutboxSink, Closeable {
+
+    private final FileOutputStream output;
+    private final ObjectWriter writer;
+
+    public FileOutboxSink(Path file, ObjectMapper objectMapper) throws IOException {
+        this.output = new FileOutputStream(file.toFile(), true);
+        this.writer = objectMapper.writerFor(OwnershipEvent.class);
+    }
+
+    @Override
+    public synchronized void publish(List<OwnershipEvent> events) {
+        try {
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            for (OwnershipEvent event : events) {
+                batch.write(writer.writeValueAsBytes(event));
+                batch.write('\n');
+            }
+            output.write(batch.toByteArray());
+            output.getChannel().force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+}
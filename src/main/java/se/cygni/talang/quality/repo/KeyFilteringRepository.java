@@ -0,0 +1,130 @@
+package se.cygni.talang.quality.repo;
+
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Answers lookups of registration and organisation numbers that {@link KnownKeys} rules out as not
+ * found, without asking the repository behind it. Saves add their keys to the filters.
+ */
+public class KeyFilteringRepository implements Repository {
+
+    private final Repository delegate;
+    private final KnownKeys knownKeys;
+
+    public KeyFilteringRepository(Repository delegate, KnownKeys knownKeys) {
+        this.delegate = delegate;
+        this.knownKeys = knownKeys;
+    }
+
+    @Override
+    public Vehicle getVehicleByRegistration(String registration) {
+        return knownKeys.mightBeVehicle(registration) ? delegate.getVehicleByRegistration(registration) : null;
+    }
+
+    @Override
+    public Customer getCustomerByOrgNumber(String orgNumber) {
+        return knownKeys.mightBeCustomer(orgNumber) ? delegate.getCustomerByOrgNumber(orgNumber) : null;
+    }
+
+    @Override
+    public List<Brand> getPremiumBrands() {
+        return delegate.getPremiumBrands();
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegistration(Collection<String> registrations) {
+        List<String> known = registrations.stream().filter(knownKeys::mightBeVehicle).collect(Collectors.toList());
+        return known.isEmpty() ? new ArrayList<>() : delegate.getVehiclesByRegistration(known);
+    }
+
+    @Override
+    public List<Customer> getCustomersByOrgNumber(Collection<String> orgNumbers) {
+        List<String> known = orgNumbers.stream().filter(knownKeys::mightBeCustomer).collect(Collectors.toList());
+        return known.isEmpty() ? new ArrayList<>() : delegate.getCustomersByOrgNumber(known);
+    }
+
+    @Override
+    public void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action) {
+        delegate.forEachVehicle(owner, brand, action);
+    }
+
+    @Override
+    public void forEachRegistration(Consumer<String> action) {
+        delegate.forEachRegistration(action);
+    }
+
+    @Override
+    public void forEachOrgNumber(Consumer<String> action) {
+        delegate.forEachOrgNumber(action);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByOwner(String owner, String afterRegistration, int limit) {
+        return knownKeys.mightBeCustomer(owner) ? delegate.getVehiclesByOwner(owner, afterRegistration, limit) : new ArrayList<>();
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) {
+        delegate.saveVehicle(vehicle);
+        knownKeys.addVehicle(vehicle.getRegistration());
+    }
+
+    @Override
+    public void saveCustomer(Customer customer) {
+        delegate.saveCustomer(customer);
+        knownKeys.addCustomer(customer.getOrganisationNumber());
+    }
+
+    // Only an unknown vehicle decides the outcome by itself, an unknown customer comes after the owner checks
+    @Override
+    public AssignmentOutcome assignOwner(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        if (!knownKeys.mightBeVehicle(registration)) {
+            return AssignmentOutcome.VEHICLE_NOT_FOUND;
+        }
+        return delegate.assignOwner(ownerOrgNumber, registration, premiumBrands);
+    }
+
+    @Override
+    public ReturnOutcome returnVehicle(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        if (!knownKeys.mightBeVehicle(registration)) {
+            return ReturnOutcome.VEHICLE_NOT_FOUND;
+        }
+        return delegate.returnVehicle(ownerOrgNumber, registration, premiumBrands);
+    }
+
+    @Override
+    public List<AssignmentOutcome> assignOwners(List<Assignment> assignments, Set<Brand> premiumBrands) {
+        List<AssignmentOutcome> outcomes = new ArrayList<>(assignments.size());
+        List<Assignment> known = new ArrayList<>(assignments.size());
+        for (Assignment assignment : assignments) {
+            if (knownKeys.mightBeVehicle(assignment.getVehicleRegistration())) {
+                known.add(assignment);
+                outcomes.add(null);
+            } else {
+                outcomes.add(AssignmentOutcome.VEHICLE_NOT_FOUND);
+            }
+        }
+        if (known.isEmpty()) {
+            return outcomes;
+        }
+        List<AssignmentOutcome> knownOutcomes = delegate.assignOwners(known, premiumBrands);
+        for (int i = 0, k = 0; i < outcomes.size(); i++) {
+            if (outcomes.get(i) == null) {
+                outcomes.set(i, knownOutcomes.get(k++));
+            }
+        }
+        return outcomes;
+    }
+}
@@ -0,0 +1,149 @@
+package se.cygni.talang.quality.repo;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds the registration and organisation numbers inserted in the databases, by any node, to
+ * {@link KnownKeys}. Triggers on vehicles and customers send a notification with each key inserted,
+ * which a thread per database listens for on a connection of its own. While a thread is not listening,
+ * after the connection was lost and until it has reconnected, {@link KnownKeys} does not filter.
+ * <p>
+ * Requires PostgreSQL. Each insert costs a notification, which is queued with the commit.
+ */
+public class KeyNotifications implements AutoCloseable {
+
+    static final String CHANNEL = "fleet_keys";
+
+    private static final Logger log = LoggerFactory.getLogger(KeyNotifications.class);
+    private static final long INSTALL_LOCK = 0x6b657973L;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(1);
+    private static final int POLL_MILLIS = 500;
+
+    private final List<DataSource> dataSources;
+    private final List<Thread> listeners = new ArrayList<>();
+    private volatile boolean closed;
+
+    public KeyNotifications(List<DataSource> dataSources) {
+        this.dataSources = dataSources;
+    }
+
+    /**
+     * Installs the triggers where missing, and starts listening. Keys are added to the filters from
+     * when {@link KnownKeys#feedConnected} is called for each database.
+     */
+    public void start(KnownKeys keys) {
+        for (DataSource dataSource : dataSources) {
+            installTriggers(dataSource);
+        }
+        for (int i = 0; i < dataSources.size(); i++) {
+            DataSource dataSource = dataSources.get(i);
+            keys.addFeed();
+            Thread listener = new Thread(() -> listen(dataSource, keys), "key-notifications-" + i);
+            listener.setDaemon(true);
+            listener.start();
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        listeners.forEach(Thread::interrupt);
+    }
+
+    static void installTriggers(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+                throw new IllegalStateException("The key filter requires PostgreSQL, not "
+                        + connection.getMetaData().getDatabaseProductName());
+            }
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                // Nodes starting together install them once
+                statement.execute("SELECT pg_advisory_xact_lock(" + INSTALL_LOCK + ")");
+                installTrigger(statement, "vehicles", "notifyVehicleKey", "v", "registrationNumber");
+                installTrigger(statement, "customers", "notifyCustomerKey", "c", "organisationNumber");
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not install the key notification triggers", e);
+        }
+    }
+
+    private static void installTrigger(Statement statement, String table, String function, String prefix,
+                                       String column) throws SQLException {
+        try (ResultSet existing = statement.executeQuery(
+                "SELECT 1 FROM pg_trigger WHERE tgname='" + function.toLowerCase() + "'"
+                        + " AND tgrelid='" + table + "'::regclass")) {
+            if (existing.next()) {
+                return;
+            }
+        }
+        statement.execute("CREATE OR REPLACE FUNCTION " + function + "() RETURNS trigger AS"
+                + " 'BEGIN PERFORM pg_notify(''" + CHANNEL + "'', ''" + prefix + "'' || NEW." + column + ");"
+                + " RETURN NULL; END' LANGUAGE plpgsql");
+        statement.execute("CREATE TRIGGER " + function + " AFTER INSERT ON " + table
+                + " FOR EACH ROW EXECUTE FUNCTION " + function + "()");
+    }
+
+    private void listen(DataSource dataSource, KnownKeys keys) {
+        while (!closed) {
+            boolean listening = false;
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                PGConnection notifications = connection.unwrap(PGConnection.class);
+                statement.execute("LISTEN " + CHANNEL);
+                listening = true;
+                keys.feedConnected();
+                while (!closed) {
+                    PGNotification[] received = notifications.getNotifications(POLL_MILLIS);
+                    if (received != null) {
+                        for (PGNotification notification : received) {
+                            add(keys, notification.getParameter());
+                        }
+                    }
+                }
+                statement.execute("UNLISTEN " + CHANNEL);
+            } catch (SQLException e) {
+                if (!closed) {
+                    log.warn("Lost the key notifications, reconnecting", e);
+                }
+            }
+            if (listening) {
+                keys.feedDisconnected();
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void add(KnownKeys keys, String payload) {
+        String key = payload.substring(1);
+        if (payload.startsWith("v")) {
+            keys.addVehicle(key);
+        } else {
+            keys.addCustomer(key);
+        }
+    }
+}
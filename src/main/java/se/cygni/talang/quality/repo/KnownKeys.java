@@ -0,0 +1,242 @@
+package se.cygni.talang.quality.repo;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filters of the registration and organisation numbers in the repository, so that lookups
+ * of keys that do not exist can be answered without a query. Until the filters have been built
+ * every key might exist.
+ * <p>
+ * Keys saved through {@link KeyFilteringRepository} or imported are added as they are written.
+ * Rows inserted around it, such as by another instance of the application or on the shards, are
+ * added from the feeds of {@link KeyNotifications}. The filters are only used while every feed is
+ * listening and since a build that started after they all were, so that no key written elsewhere
+ * is missed; a key only found by the feed is missed from its commit until its notification arrives.
+ */
+@Component
+@ConditionalOnProperty(name = "repository.key-filter.enabled", havingValue = "true")
+public class KnownKeys implements MeterBinder, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KnownKeys.class);
+
+    private final long expectedVehicles;
+    private final long expectedCustomers;
+    private final double falsePositiveRate;
+    private final Duration rebuildInterval;
+    private final LongAdder rejectedVehicles = new LongAdder();
+    private final LongAdder rejectedCustomers = new LongAdder();
+    private final ScheduledExecutorService rebuilds = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "known-keys-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Null until built
+    private volatile Filters filters;
+    // Also receives the keys saved while a rebuild is streaming the keys
+    private volatile Filters building;
+    private volatile Repository repository;
+    // Feeds of the keys written elsewhere that are not listening, the filters are not used while there are any
+    private int disconnectedFeeds;
+    // Counts the times a feed stopped listening, a build that began before is not used
+    private long disconnects;
+
+    public KnownKeys(@Value("${repository.key-filter.expected-vehicles:10000000}") long expectedVehicles,
+                     @Value("${repository.key-filter.expected-customers:1000000}") long expectedCustomers,
+                     @Value("${repository.key-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                     @Value("${repository.key-filter.rebuild-interval:PT1H}") Duration rebuildInterval) {
+        this.expectedVehicles = expectedVehicles;
+        this.expectedCustomers = expectedCustomers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildInterval = rebuildInterval;
+        // Fails at startup rather than at the first build
+        new Filters(expectedVehicles, expectedCustomers, falsePositiveRate);
+    }
+
+    /**
+     * Builds the filters from the repository in the background, and rebuilds them at the
+     * configured interval, which also sheds the false positives of keys that no longer exist.
+     */
+    public void start(Repository repository) {
+        this.repository = repository;
+        rebuilds.execute(() -> rebuild(repository));
+        if (!rebuildInterval.isZero()) {
+            long interval = rebuildInterval.toMillis();
+            rebuilds.scheduleWithFixedDelay(() -> rebuild(repository), interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void rebuild(Repository repository) {
+        long started = System.nanoTime();
+        long disconnectsBefore;
+        synchronized (this) {
+            if (disconnectedFeeds > 0) {
+                log.info("Not building the key filters until every feed of keys is listening");
+                return;
+            }
+            disconnectsBefore = disconnects;
+        }
+        Filters rebuilt = new Filters(expectedVehicles, expectedCustomers, falsePositiveRate);
+        building = rebuilt;
+        try {
+            repository.forEachRegistration(rebuilt::addVehicle);
+            repository.forEachOrgNumber(rebuilt::addCustomer);
+        } catch (RuntimeException e) {
+            building = null;
+            log.warn("Could not build the key filters, {}", filters == null ? "keys are not filtered" : "keeping the previous", e);
+            return;
+        }
+        synchronized (this) {
+            if (disconnects != disconnectsBefore) {
+                building = null;
+                log.info("Discarding the key filters built while a feed of keys stopped listening");
+                return;
+            }
+            // Published before building is cleared, so that a key saved meanwhile is added to it either way
+            filters = rebuilt;
+        }
+        building = null;
+        log.info("Built key filters of {} vehicles and {} customers, {} bytes, in {} ms", rebuilt.vehicleCount,
+                rebuilt.customerCount, rebuilt.sizeInBytes(), (System.nanoTime() - started) / 1_000_000);
+        if (rebuilt.vehicleCount.sum() > expectedVehicles || rebuilt.customerCount.sum() > expectedCustomers) {
+            log.warn("More keys than the key filters are sized for, the false positive rate is above {}", falsePositiveRate);
+        }
+    }
+
+    public boolean mightBeVehicle(String registration) {
+        Filters current = filters;
+        if (current == null || registration == null || current.vehicles.mightContain(registration)) {
+            return true;
+        }
+        rejectedVehicles.increment();
+        return false;
+    }
+
+    public boolean mightBeCustomer(String orgNumber) {
+        Filters current = filters;
+        if (current == null || orgNumber == null || current.customers.mightContain(orgNumber)) {
+            return true;
+        }
+        rejectedCustomers.increment();
+        return false;
+    }
+
+    public void addVehicle(String registration) {
+        Filters rebuilding = building;
+        if (rebuilding != null) {
+            rebuilding.addVehicle(registration);
+        }
+        Filters current = filters;
+        if (current != null) {
+            current.addVehicle(registration);
+        }
+    }
+
+    public void addCustomer(String orgNumber) {
+        Filters rebuilding = building;
+        if (rebuilding != null) {
+            rebuilding.addCustomer(orgNumber);
+        }
+        Filters current = filters;
+        if (current != null) {
+            current.addCustomer(orgNumber);
+        }
+    }
+
+    /**
+     * Registers a feed of the keys written elsewhere, which is not listening yet. The filters are
+     * not built until it is.
+     */
+    public synchronized void addFeed() {
+        disconnectedFeeds++;
+    }
+
+    /**
+     * Called when a feed listens, from then on it adds every key written elsewhere. Builds the
+     * filters again once every feed does, keys written before are found by the build.
+     */
+    public void feedConnected() {
+        boolean allConnected;
+        synchronized (this) {
+            allConnected = --disconnectedFeeds == 0;
+        }
+        Repository current = repository;
+        if (allConnected && current != null) {
+            rebuilds.execute(() -> rebuild(current));
+        }
+    }
+
+    /**
+     * Called when a feed stops listening, keys written elsewhere may be missed from then on so
+     * every key might exist until the filters have been built again.
+     */
+    public void feedDisconnected() {
+        synchronized (this) {
+            disconnectedFeeds++;
+            disconnects++;
+            filters = null;
+        }
+        log.warn("A feed of keys stopped listening, keys are not filtered until it listens again");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("repository.key.filter.rejections", rejectedVehicles, LongAdder::sum)
+                .description("Lookups answered as not found by the key filter")
+                .tag("key", "registration")
+                .register(registry);
+        FunctionCounter.builder("repository.key.filter.rejections", rejectedCustomers, LongAdder::sum)
+                .description("Lookups answered as not found by the key filter")
+                .tag("key", "orgNumber")
+                .register(registry);
+        Gauge.builder("repository.key.filter.size", this, keys -> keys.filters == null ? 0 : keys.filters.sizeInBytes())
+                .description("Memory held by the key filters")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        rebuilds.shutdownNow();
+    }
+
+    private static class Filters {
+        private final BloomFilter vehicles;
+        private final BloomFilter customers;
+        private final LongAdder vehicleCount = new LongAdder();
+        private final LongAdder customerCount = new LongAdder();
+
+        private Filters(long expectedVehicles, long expectedCustomers, double falsePositiveRate) {
+            this.vehicles = new BloomFilter(expectedVehicles, falsePositiveRate);
+            this.customers = new BloomFilter(expectedCustomers, falsePositiveRate);
+        }
+
+        private void addVehicle(String registration) {
+            vehicles.add(registration);
+            vehicleCount.increment();
+        }
+
+        private void addCustomer(String orgNumber) {
+            customers.add(orgNumber);
+            customerCount.increment();
+        }
+
+        private long sizeInBytes() {
+            return vehicles.sizeInBytes() + customers.sizeInBytes();
+        }
+    }
+}
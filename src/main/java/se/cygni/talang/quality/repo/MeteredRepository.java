@@ -0,0 +1,211 @@
+package se.cygni.talang.quality.repo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Records the latency of every call to the underlying repository as a repository.calls timer,
+ * tagged with the method name. The timers are created up front, so a call only costs two
+ * System.nanoTime() calls and a histogram update.
+ */
+public class MeteredRepository implements Repository {
+
+    private final Repository delegate;
+
+    private final Timer getVehicleByRegistration;
+    private final Timer getCustomerByOrgNumber;
+    private final Timer getPremiumBrands;
+    private final Timer getVehiclesByRegistration;
+    private final Timer getCustomersByOrgNumber;
+    private final Timer forEachVehicle;
+    private final Timer forEachRegistration;
+    private final Timer forEachOrgNumber;
+    private final Timer getVehiclesByOwner;
+    private final Timer saveVehicle;
+    private final Timer saveCustomer;
+    private final Timer assignOwner;
+    private final Timer assignOwners;
+    private final Timer returnVehicle;
+
+    public MeteredRepository(Repository delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.getVehicleByRegistration = timer(registry, "getVehicleByRegistration");
+        this.getCustomerByOrgNumber = timer(registry, "getCustomerByOrgNumber");
+        this.getPremiumBrands = timer(registry, "getPremiumBrands");
+        this.getVehiclesByRegistration = timer(registry, "getVehiclesByRegistration");
+        this.getCustomersByOrgNumber = timer(registry, "getCustomersByOrgNumber");
+        this.forEachVehicle = timer(registry, "forEachVehicle");
+        this.forEachRegistration = timer(registry, "forEachRegistration");
+        this.forEachOrgNumber = timer(registry, "forEachOrgNumber");
+        this.getVehiclesByOwner = timer(registry, "getVehiclesByOwner");
+        this.saveVehicle = timer(registry, "saveVehicle");
+        this.saveCustomer = timer(registry, "saveCustomer");
+        this.assignOwner = timer(registry, "assignOwner");
+        this.assignOwners = timer(registry, "assignOwners");
+        this.returnVehicle = timer(registry, "returnVehicle");
+    }
+
+    @Override
+    public Vehicle getVehicleByRegistration(String registration) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getVehicleByRegistration(registration);
+        } finally {
+            stop(getVehicleByRegistration, start);
+        }
+    }
+
+    @Override
+    public Customer getCustomerByOrgNumber(String orgNumber) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCustomerByOrgNumber(orgNumber);
+        } finally {
+            stop(getCustomerByOrgNumber, start);
+        }
+    }
+
+    @Override
+    public List<Brand> getPremiumBrands() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getPremiumBrands();
+        } finally {
+            stop(getPremiumBrands, start);
+        }
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegistration(Collection<String> registrations) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getVehiclesByRegistration(registrations);
+        } finally {
+            stop(getVehiclesByRegistration, start);
+        }
+    }
+
+    @Override
+    public List<Customer> getCustomersByOrgNumber(Collection<String> orgNumbers) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCustomersByOrgNumber(orgNumbers);
+        } finally {
+            stop(getCustomersByOrgNumber, start);
+        }
+    }
+
+    @Override
+    public void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action) {
+        long start = System.nanoTime();
+        try {
+            delegate.forEachVehicle(owner, brand, action);
+        } finally {
+            stop(forEachVehicle, start);
+        }
+    }
+
+    @Override
+    public void forEachRegistration(Consumer<String> action) {
+        long start = System.nanoTime();
+        try {
+            delegate.forEachRegistration(action);
+        } finally {
+            stop(forEachRegistration, start);
+        }
+    }
+
+    @Override
+    public void forEachOrgNumber(Consumer<String> action) {
+        long start = System.nanoTime();
+        try {
+            delegate.forEachOrgNumber(action);
+        } finally {
+            stop(forEachOrgNumber, start);
+        }
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByOwner(String owner, String afterRegistration, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getVehiclesByOwner(owner, afterRegistration, limit);
+        } finally {
+            stop(getVehiclesByOwner, start);
+        }
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) {
+        long start = System.nanoTime();
+        try {
+            delegate.saveVehicle(vehicle);
+        } finally {
+            stop(saveVehicle, start);
+        }
+    }
+
+    @Override
+    public void saveCustomer(Customer customer) {
+        long start = System.nanoTime();
+        try {
+            delegate.saveCustomer(customer);
+        } finally {
+            stop(saveCustomer, start);
+        }
+    }
+
+    @Override
+    public AssignmentOutcome assignOwner(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        long start = System.nanoTime();
+        try {
+            return delegate.assignOwner(ownerOrgNumber, registration, premiumBrands);
+        } finally {
+            stop(assignOwner, start);
+        }
+    }
+
+    @Override
+    public List<AssignmentOutcome> assignOwners(List<Assignment> assignments, Set<Brand> premiumBrands) {
+        long start = System.nanoTime();
+        try {
+            return delegate.assignOwners(assignments, premiumBrands);
+        } finally {
+            stop(assignOwners, start);
+        }
+    }
+
+    @Override
+    public ReturnOutcome returnVehicle(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        long start = System.nanoTime();
+        try {
+            return delegate.returnVehicle(ownerOrgNumber, registration, premiumBrands);
+        } finally {
+            stop(returnVehicle, start);
+        }
+    }
+
+    private static Timer timer(MeterRegistry registry, String method) {
+        return Timer.builder("repository.calls")
+                .description("Latency of calls to the repository")
+                .tag("method", method)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static void stop(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,47 @@
+package se.cygni.talang.quality.repo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxConfiguration {
+
+    // Only DatabaseRepository writes the outbox
+    @Bean
+    @ConditionalOnProperty(name = "repository.type", havingValue = "database", matchIfMissing = true)
+    public OutboxPublisher outboxPublisher(NamedParameterJdbcTemplate jdbcTemplate,
+                                           PlatformTransactionManager transactionManager,
+                                           OutboxSink sink,
+                                           @Value("${outbox.batch-size:500}") int batchSize,
+                                           @Value("${outbox.poll-interval:PT0.5S}") Duration pollInterval) {
+        OutboxPublisher publisher = new OutboxPublisher(jdbcTemplate, transactionManager, sink, batchSize);
+        publisher.start(pollInterval);
+        return publisher;
+    }
+
+    // The file when one is set, in-process subscribers otherwise
+    @Bean
+    @ConditionalOnMissingBean(OutboxSink.class)
+    @ConditionalOnProperty(name = "outbox.file")
+    public FileOutboxSink fileOutboxSink(@Value("${outbox.file}") String file, ObjectMapper objectMapper) throws IOException {
+        return new FileOutboxSink(Paths.get(file), objectMapper);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(OutboxSink.class)
+    public ApplicationEventOutboxSink applicationEventOutboxSink(ApplicationEventPublisher publisher) {
+        return new ApplicationEventOutboxSink(publisher);
+    }
+}
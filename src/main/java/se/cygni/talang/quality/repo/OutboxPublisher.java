@@ -0,0 +1,124 @@
+package se.cygni.talang.quality.repo;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.cygni.talang.quality.model.OwnershipEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the outbox of ownership changes that {@link DatabaseRepository} writes with the changes,
+ * oldest first, into an {@link OutboxSink}. A batch is locked with FOR UPDATE SKIP LOCKED, published
+ * and deleted in one transaction, so that several instances can drain the outbox side by side
+ * without publishing an event twice. If publishing or the delete fails, the batch is rolled back and
+ * published again later, so every event is published at least once.
+ * <p>
+ * Instances publish their batches concurrently, so events are only in order within a batch; a
+ * subscriber that needs the latest owner of a vehicle should compare event ids.
+ */
+public class OutboxPublisher implements MeterBinder, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxPublisher.class);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxSink sink;
+    private final int batchSize;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final ScheduledExecutorService polls = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "outbox-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OutboxPublisher(NamedParameterJdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           OutboxSink sink,
+                           int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sink = sink;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Drains the outbox every poll interval, until closed.
+     */
+    public void start(Duration pollInterval) {
+        long interval = pollInterval.toMillis();
+        polls.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.warn("Could not publish ownership events, retrying in {} ms", interval, e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes batches until the outbox is empty or only has events locked by other instances.
+     * Returns the number of events published.
+     */
+    public long drain() {
+        long drained = 0;
+        int batch;
+        do {
+            batch = publishBatch();
+            drained += batch;
+        } while (batch == batchSize);
+        return drained;
+    }
+
+    private int publishBatch() {
+        Integer count = transactionTemplate.execute(status -> {
+            List<OwnershipEvent> events = jdbcTemplate.query(
+                    "SELECT id, registrationNumber, previousOwner, owner, occurredAt FROM ownershipEvents " +
+                            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+                    Map.of("limit", batchSize),
+                    (rs, rowNum) -> new OwnershipEvent(rs.getLong("id"), rs.getString("registrationNumber"),
+                            rs.getString("previousOwner"), rs.getString("owner"),
+                            rs.getTimestamp("occurredAt").toInstant()));
+            if (events.isEmpty()) {
+                return 0;
+            }
+            sink.publish(events);
+            jdbcTemplate.update("DELETE FROM ownershipEvents WHERE id IN (:ids)",
+                    Map.of("ids", events.stream().map(OwnershipEvent::getId).collect(Collectors.toList())));
+            return events.size();
+        });
+        // Counted after the commit, a rolled back batch is published again
+        published.add(count);
+        return count;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("outbox.events.published", published, LongAdder::sum)
+                .description("Ownership events published from the outbox")
+                .register(registry);
+        FunctionCounter.builder("outbox.publish.failures", failures, LongAdder::sum)
+                .description("Polls of the outbox that failed to publish")
+                .register(registry);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        polls.shutdown();
+        polls.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,14 @@
+package se.cygni.talang.quality.repo;
+
+import se.cygni.talang.quality.model.OwnershipEvent;
+
+import java.util.List;
+
+/**
+ * Where {@link OutboxPublisher} publishes the ownership changes. Called in the transaction that
+ * removes the events from the outbox, so an exception makes them be published again later.
+ */
+public interface OutboxSink {
+
+    void publish(List<OwnershipEvent> events);
+}
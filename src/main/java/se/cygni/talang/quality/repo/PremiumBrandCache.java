@@ -0,0 +1,67 @@
+package se.cygni.talang.quality.repo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.cygni.talang.quality.model.Brand;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class PremiumBrandCache {
+
+    private final Repository repo;
+    private final long ttlNanos;
+
+    private volatile Snapshot snapshot;
+
+    public PremiumBrandCache(Repository repo,
+                             @Value("${premium-brands.cache.ttl:PT10M}") Duration ttl) {
+        this.repo = repo;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public boolean contains(Brand brand) {
+        return brand != null && get().contains(brand);
+    }
+
+    public Set<Brand> get() {
+        Snapshot current = snapshot;
+        if (current == null || current.isExpired(ttlNanos)) {
+            current = reload();
+        }
+        return current.brands;
+    }
+
+    public synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    private synchronized Snapshot reload() {
+        Snapshot current = snapshot;
+        if (current != null && !current.isExpired(ttlNanos)) {
+            return current;
+        }
+        EnumSet<Brand> brands = EnumSet.noneOf(Brand.class);
+        brands.addAll(repo.getPremiumBrands());
+        current = new Snapshot(Collections.unmodifiableSet(brands), System.nanoTime());
+        snapshot = current;
+        return current;
+    }
+
+    private static class Snapshot {
+        private final Set<Brand> brands;
+        private final long loadedAt;
+
+        private Snapshot(Set<Brand> brands, long loadedAt) {
+            this.brands = brands;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired(long ttlNanos) {
+            return System.nanoTime() - loadedAt >= ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package se.cygni.talang.quality.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.cygni.talang.quality.model.ReconciliationResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Recounts every customer's premium vehicles from the vehicles table and corrects the counters and
+ * premium flags that do not match, e.g. after the premium brands have changed. The customers are
+ * split into chunks of consecutive org numbers that are reconciled in parallel, each in a
+ * transaction of its own.
+ * <p>
+ * A chunk locks its customers before counting, so an assignment or return that is in progress
+ * either completes before the count, or is blocked until the corrected counter is committed and
+ * then adjusts it. Running this concurrently with normal traffic is therefore safe.
+ */
+@Component
+@ConditionalOnProperty(name = "repository.type", havingValue = "database", matchIfMissing = true)
+public class PremiumCounterReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(PremiumCounterReconciler.class);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public PremiumCounterReconciler(NamedParameterJdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${premium-reconciliation.chunk-size:10000}") int chunkSize,
+                                    @Value("${premium-reconciliation.parallelism:4}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    public ReconciliationResult reconcile() {
+        long started = System.nanoTime();
+        // Every chunkSize:th org number ends a chunk, the last chunk is open ended
+        List<String> boundaries = jdbcTemplate.queryForList("SELECT organisationNumber FROM (" +
+                        "   SELECT organisationNumber, row_number() OVER (ORDER BY organisationNumber) AS n FROM customers" +
+                        ") numbered WHERE n % :chunkSize = 0 ORDER BY organisationNumber",
+                Map.of("chunkSize", chunkSize), String.class);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ReconciliationResult result;
+        try {
+            result = pool.invoke(new ReconcileChunks(boundaries, 0, boundaries.size() + 1));
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Premium counters reconciled in {} ms: {}", (System.nanoTime() - started) / 1_000_000, result);
+        return result;
+    }
+
+    // Chunk i holds the org numbers after boundary i - 1, up to and including boundary i
+    private ReconciliationResult reconcileChunk(String after, String upTo) {
+        StringBuilder range = new StringBuilder("1=1");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (after != null) {
+            range.append(" AND c.organisationNumber > :after");
+            params.addValue("after", after);
+        }
+        if (upTo != null) {
+            range.append(" AND c.organisationNumber <= :upTo");
+            params.addValue("upTo", upTo);
+        }
+        return transactionTemplate.execute(status -> {
+            Long customers = jdbcTemplate.queryForObject("SELECT count(*) FROM (" +
+                    "   SELECT 1 FROM customers c WHERE " + range + " FOR UPDATE) locked", params, Long.class);
+            Long corrected = jdbcTemplate.queryForObject("WITH actual AS (" +
+                    "   SELECT c.organisationNumber, count(v.registrationNumber) AS premiumVehicles " +
+                    "   FROM customers c " +
+                    "   LEFT JOIN vehicles v ON v.owner=c.organisationNumber " +
+                    "       AND v.brand IN (SELECT brand FROM premiumBrands) " +
+                    "   WHERE " + range +
+                    "   GROUP BY c.organisationNumber), " +
+                    "corrected AS (" +
+                    "   UPDATE customers c SET premiumVehicles=a.premiumVehicles, premiumCustomer=a.premiumVehicles > 0 " +
+                    "   FROM actual a WHERE c.organisationNumber=a.organisationNumber " +
+                    "   AND (c.premiumVehicles <> a.premiumVehicles " +
+                    "       OR c.premiumCustomer IS DISTINCT FROM (a.premiumVehicles > 0)) " +
+                    "   RETURNING 1) " +
+                    "SELECT count(*) FROM corrected", params, Long.class);
+            return new ReconciliationResult(1, customers == null ? 0 : customers, corrected == null ? 0 : corrected);
+        });
+    }
+
+    private class ReconcileChunks extends RecursiveTask<ReconciliationResult> {
+
+        private final List<String> boundaries;
+        private final int from;
+        private final int to;
+
+        private ReconcileChunks(List<String> boundaries, int from, int to) {
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ReconciliationResult compute() {
+            if (to - from == 1) {
+                return reconcileChunk(from == 0 ? null : boundaries.get(from - 1),
+                        from == boundaries.size() ? null : boundaries.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            ReconcileChunks left = new ReconcileChunks(boundaries, from, middle);
+            left.fork();
+            ReconciliationResult right = new ReconcileChunks(boundaries, middle, to).compute();
+            ReconciliationResult done = left.join();
+            return new ReconciliationResult(done.getChunks() + right.getChunks(),
+                    done.getCustomers() + right.getCustomers(), done.getCorrected() + right.getCorrected());
+        }
+    }
+}
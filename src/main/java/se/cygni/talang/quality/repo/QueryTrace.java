@@ -0,0 +1,160 @@
+package se.cygni.talang.quality.repo;
+
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The statements run on the current thread while the trace is started, as recorded by
+ * {@link QueryTracingDataSource}. Statements run on other threads, such as by a group commit or a
+ * shard fan-out, are not part of it. In tests, the round trips of a piece of code are
+ * <pre>
+ * try (QueryTrace trace = QueryTrace.start()) {
+ *     repository.assignOwner(...);
+ *     Assertions.assertEquals(1, trace.getStatementCount(), trace.toString());
+ * }
+ * </pre>
+ * Not thread safe, a trace belongs to one thread.
+ */
+public final class QueryTrace implements AutoCloseable {
+
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+    // Enough to see what a request does, a runaway loop is still counted
+    private static final int MAX_RECORDED = 50;
+    private static final int MAX_SHAPE_LENGTH = 200;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    private final QueryTrace previous;
+    private final List<Statement> statements = new ArrayList<>();
+    private int statementCount;
+    private long nanos;
+    private long rows;
+
+    private QueryTrace(QueryTrace previous) {
+        this.previous = previous;
+    }
+
+    public static QueryTrace start() {
+        QueryTrace trace = new QueryTrace(CURRENT.get());
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    @Nullable
+    public static QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops recording, statements run afterwards are recorded in the trace that was current when
+     * this one was started, if any.
+     */
+    @Override
+    public void close() {
+        if (CURRENT.get() != this) {
+            return;
+        }
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    // The first statements, up to a limit
+    public List<Statement> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Fits in a header, e.g. {@code statements=2; millis=1.31; rows=1}.
+     */
+    public String summary() {
+        return String.format("statements=%d; millis=%.2f; rows=%d", statementCount, nanos / 1e6, rows);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(summary());
+        for (Statement statement : statements) {
+            builder.append("\n  ").append(statement);
+        }
+        if (statementCount > statements.size()) {
+            builder.append("\n  ... ").append(statementCount - statements.size()).append(" more");
+        }
+        return builder.toString();
+    }
+
+    Statement record(@Nullable String sql, long nanos, long rows) {
+        Statement statement = new Statement(this, sql, nanos, rows);
+        statementCount++;
+        this.nanos += nanos;
+        this.rows += rows;
+        if (statements.size() < MAX_RECORDED) {
+            statements.add(statement);
+        }
+        return statement;
+    }
+
+    // The same shape for the same statement whatever its parameters, IN lists of any length included
+    static String shape(@Nullable String sql) {
+        if (sql == null) {
+            return "(batch)";
+        }
+        String shape = PARAMETER_LIST.matcher(WHITESPACE.matcher(sql.trim()).replaceAll(" ")).replaceAll("?, ...");
+        return shape.length() > MAX_SHAPE_LENGTH ? shape.substring(0, MAX_SHAPE_LENGTH) + "..." : shape;
+    }
+
+    public static final class Statement {
+        private final QueryTrace trace;
+        private final String sql;
+        private final long nanos;
+        private long rows;
+
+        private Statement(QueryTrace trace, String sql, long nanos, long rows) {
+            this.trace = trace;
+            this.sql = sql;
+            this.nanos = nanos;
+            this.rows = rows;
+        }
+
+        public String getShape() {
+            return shape(sql);
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        // A row read from the statement's result set
+        void addRow() {
+            rows++;
+            trace.rows++;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.2f ms, %d rows)", getShape(), nanos / 1e6, rows);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.cygni.talang.quality.repo;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+@ConditionalOnProperty(name = "query-tracing.enabled", havingValue = "true")
+public class QueryTracingConfiguration {
+
+    // Static, so that it is registered before the data source is created
+    @Bean
+    public static BeanPostProcessor queryTracingDataSources() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof QueryTracingDataSource)) {
+                    return new QueryTracingDataSource((DataSource) bean);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package se.cygni.talang.quality.repo;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Records each statement run on its connections, with its duration and the number of rows it
+ * updated or that were read from it, in the {@link QueryTrace} that was current on the thread when
+ * the connection was taken. A batch is one statement, as it is one round trip. Connections taken
+ * while nothing is traced are returned as they are, so all it costs then is a thread local lookup
+ * per connection.
+ * <p>
+ * Closes the data source it wraps, as that is what Spring closes on shutdown.
+ */
+public class QueryTracingDataSource extends DelegatingDataSource implements Closeable {
+
+    public QueryTracingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return traced(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return traced(super.getConnection(username, password));
+    }
+
+    @Override
+    public void close() throws IOException {
+        DataSource target = getTargetDataSource();
+        if (target instanceof Closeable) {
+            ((Closeable) target).close();
+        }
+    }
+
+    private static Connection traced(Connection connection) {
+        QueryTrace trace = QueryTrace.current();
+        return trace == null ? connection : proxy(Connection.class, new ConnectionHandler(connection, trace));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(QueryTracingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final QueryTrace trace;
+
+        private ConnectionHandler(Connection target, QueryTrace trace) {
+            this.target = target;
+            this.trace = trace;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "createStatement":
+                    return proxy(Statement.class, new StatementHandler(
+                            (Statement) QueryTracingDataSource.invoke(target, method, args), trace, null));
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class, new StatementHandler(
+                            (Statement) QueryTracingDataSource.invoke(target, method, args), trace, (String) args[0]));
+                case "prepareCall":
+                    return proxy(CallableStatement.class, new StatementHandler(
+                            (Statement) QueryTracingDataSource.invoke(target, method, args), trace, (String) args[0]));
+                default:
+                    return QueryTracingDataSource.invoke(target, method, args);
+            }
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final QueryTrace trace;
+        // Null for a plain statement, whose SQL is given when it is executed
+        private final String sql;
+        private QueryTrace.Statement last;
+
+        private StatementHandler(Statement target, QueryTrace trace, String sql) {
+            this.target = target;
+            this.trace = trace;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+                long started = System.nanoTime();
+                Object result;
+                try {
+                    result = QueryTracingDataSource.invoke(target, method, args);
+                } catch (Throwable e) {
+                    trace.record(executed, System.nanoTime() - started, 0);
+                    throw e;
+                }
+                last = trace.record(executed, System.nanoTime() - started, updatedRows(result));
+                return result instanceof ResultSet ? rowCounting((ResultSet) result, last) : result;
+            }
+            switch (name) {
+                case "getResultSet":
+                    ResultSet resultSet = (ResultSet) QueryTracingDataSource.invoke(target, method, args);
+                    return resultSet == null || last == null ? resultSet : rowCounting(resultSet, last);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return QueryTracingDataSource.invoke(target, method, args);
+            }
+        }
+
+        private static ResultSet rowCounting(ResultSet resultSet, QueryTrace.Statement statement) {
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                Object result = QueryTracingDataSource.invoke(resultSet, method, args);
+                if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                    statement.addRow();
+                }
+                return result;
+            });
+        }
+
+        private static long updatedRows(Object result) {
+            long rows = 0;
+            if (result instanceof Integer || result instanceof Long) {
+                rows = ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    rows += Math.max(count, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    rows += Math.max(count, 0);
+                }
+            }
+            return Math.max(rows, 0);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package se.cygni.talang.quality.repo;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Row;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.List;
+
+/**
+ * R2DBC implementation of {@link ReactiveRepository}. It owns its connection pool, rather than
+ * exposing it as a bean, since Spring Boot does not configure a JDBC DataSource when there is an
+ * R2DBC ConnectionFactory in the context.
+ */
+public class ReactiveDatabaseRepository implements ReactiveRepository, AutoCloseable {
+
+    private final ConnectionPool connectionPool;
+    private final DatabaseClient client;
+    // Whether claims are written to the outbox, as DatabaseRepository does
+    private final boolean outbox;
+
+    public ReactiveDatabaseRepository(ConnectionPool connectionPool) {
+        this(connectionPool, false);
+    }
+
+    public ReactiveDatabaseRepository(ConnectionPool connectionPool, boolean outbox) {
+        this.connectionPool = connectionPool;
+        this.client = DatabaseClient.create(connectionPool);
+        this.outbox = outbox;
+    }
+
+    @Override
+    public Mono<Vehicle> getVehicleByRegistration(String registration) {
+        return client.sql("SELECT registrationNumber, owner, brand, version FROM vehicles WHERE registrationNumber=:registration")
+                .bind("registration", registration)
+                .map(ReactiveDatabaseRepository::vehicle)
+                .one();
+    }
+
+    @Override
+    public Mono<Customer> getCustomerByOrgNumber(String orgNumber) {
+        return client.sql("SELECT organisationNumber, premiumCustomer, premiumVehicles FROM customers WHERE organisationNumber=:orgNumber")
+                .bind("orgNumber", orgNumber)
+                .map(ReactiveDatabaseRepository::customer)
+                .one();
+    }
+
+    @Override
+    public Mono<List<Brand>> getPremiumBrands() {
+        return client.sql("SELECT brand FROM premiumBrands")
+                .map(row -> Brand.ofCode(row.get(0, Short.class)))
+                .all()
+                .collectList();
+    }
+
+    @Override
+    public Mono<Boolean> claimVehicle(String ownerOrgNumber, String registration, boolean premium) {
+        // The customer is only counted if the vehicle was actually claimed by the first sub-statement
+        String sql = "WITH claimed AS (" +
+                "       UPDATE vehicles SET owner=:orgNum, version=version + 1 " +
+                "       WHERE registrationNumber=:regNum AND owner IS NULL " +
+                "       RETURNING registrationNumber), " +
+                "   counted AS (" +
+                "       UPDATE customers SET premiumVehicles=premiumVehicles + 1, premiumCustomer=true " +
+                "       WHERE organisationNumber=:orgNum AND :premium AND EXISTS (SELECT 1 FROM claimed) " +
+                "       RETURNING organisationNumber) " +
+                (outbox ? ", event AS (" +
+                "       INSERT INTO ownershipEvents (registrationNumber, owner) " +
+                "       SELECT :regNum, :orgNum FROM claimed) " : "") +
+                "SELECT count(*) AS claimed FROM claimed";
+        return client.sql(sql)
+                .bind("orgNum", ownerOrgNumber)
+                .bind("regNum", registration)
+                .bind("premium", premium)
+                .map(row -> row.get("claimed", Long.class) == 1)
+                .one();
+    }
+
+    @Override
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    private static Vehicle vehicle(Row row) {
+        Vehicle vehicle = new Vehicle(row.get("registrationNumber", String.class));
+        vehicle.setOwner(row.get("owner", String.class));
+        Short brand = row.get("brand", Short.class);
+        vehicle.setBrand(brand == null ? null : Brand.ofCode(brand));
+        vehicle.setVersion(row.get("version", Long.class));
+        return vehicle;
+    }
+
+    private static Customer customer(Row row) {
+        Customer customer = new Customer(row.get("organisationNumber", String.class));
+        customer.setPremiumCustomer(Boolean.TRUE.equals(row.get("premiumCustomer", Boolean.class)));
+        customer.setPremiumVehicles(row.get("premiumVehicles", Integer.class));
+        return customer;
+    }
+}
@@ -0,0 +1,28 @@
+package se.cygni.talang.quality.repo;
+
+import reactor.core.publisher.Mono;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link Repository}, for the reactive profile. Lookups complete empty
+ * when nothing is found.
+ */
+public interface ReactiveRepository {
+
+    Mono<Vehicle> getVehicleByRegistration(String registration);
+
+    Mono<Customer> getCustomerByOrgNumber(String orgNumber);
+
+    Mono<List<Brand>> getPremiumBrands();
+
+    /**
+     * Assigns the vehicle to the customer if it is not owned by anyone, as one atomic step, and
+     * counts it as one of the customer's premium vehicles if premium is set. Emits whether the
+     * vehicle was assigned.
+     */
+    Mono<Boolean> claimVehicle(String ownerOrgNumber, String registration, boolean premium);
+}
@@ -0,0 +1,33 @@
+package se.cygni.talang.quality.repo;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("reactive")
+public class ReactiveRepositoryConfiguration {
+
+    @Bean
+    public ReactiveDatabaseRepository reactiveRepository(@Value("${reactive.r2dbc.url}") String url,
+                                                         @Value("${reactive.r2dbc.username:${spring.datasource.username:}}") String username,
+                                                         @Value("${reactive.r2dbc.password:${spring.datasource.password:}}") String password,
+                                                         @Value("${reactive.r2dbc.pool.initial-size:4}") int initialSize,
+                                                         @Value("${reactive.r2dbc.pool.max-size:20}") int maxSize,
+                                                         @Value("${outbox.enabled:false}") boolean outbox) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        ConnectionPool pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .build());
+        return new ReactiveDatabaseRepository(pool, outbox);
+    }
+}
@@ -0,0 +1,50 @@
+package se.cygni.talang.quality.repo;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Configuration
+@ConditionalOnProperty(name = "repository.type", havingValue = "database", matchIfMissing = true)
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "repository.replicas.urls")
+    public ReadReplicas readReplicas(DataSource primary,
+                                     @Value("${repository.replicas.urls}") List<String> urls,
+                                     @Value("${repository.replicas.username:${spring.datasource.username:}}") String username,
+                                     @Value("${repository.replicas.password:${spring.datasource.password:}}") String password,
+                                     @Value("${repository.replicas.pool-size:10}") int poolSize,
+                                     @Value("${repository.replicas.connection-timeout:PT1S}") Duration connectionTimeout,
+                                     @Value("${repository.replicas.health-check-interval:PT5S}") Duration healthCheckInterval,
+                                     @Value("${query-tracing.enabled:false}") boolean queryTracing) {
+        List<DataSource> replicas = urls.stream()
+                .<DataSource>map(url -> {
+                    HikariDataSource replica = DataSourceBuilder.create()
+                            .type(HikariDataSource.class)
+                            .url(url)
+                            .username(username)
+                            .password(password)
+                            .build();
+                    replica.setMaximumPoolSize(poolSize);
+                    // Short, a read waiting on a replica that is down could have been served by the primary
+                    replica.setConnectionTimeout(connectionTimeout.toMillis());
+                    // A write sent to a replica by mistake fails instead of diverging from the primary
+                    replica.setReadOnly(true);
+                    // Down replicas are found by the health check, the pool should not block startup
+                    replica.setInitializationFailTimeout(-1);
+                    // Not beans, so the replicas are not wrapped by QueryTracingConfiguration
+                    return queryTracing ? new QueryTracingDataSource(replica) : replica;
+                })
+                .collect(Collectors.toList());
+        return new ReadReplicas(primary, replicas, healthCheckInterval);
+    }
+}
@@ -0,0 +1,133 @@
+package se.cygni.talang.quality.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Read replicas for the reads that tolerate staleness. Connections are taken from the replicas in
+ * turn, skipping replicas that are down, and from the primary when all of them are. A replica is
+ * taken down when a connection cannot be had from it, and up again when a periodic health check
+ * gets a valid connection.
+ * <p>
+ * Not a DataSource bean itself, since Spring Boot would then not configure the primary one.
+ */
+public class ReadReplicas implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReplicas.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    // 1 when up, so that the health check and readers see each other's changes
+    private final AtomicIntegerArray up;
+    private final AtomicInteger next = new AtomicInteger();
+    private final DataSource dataSource = new RoutingDataSource();
+    private final ScheduledExecutorService healthChecks;
+
+    public ReadReplicas(DataSource primary, List<DataSource> replicas, Duration healthCheckInterval) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.up = new AtomicIntegerArray(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            up.set(i, 1);
+        }
+        this.healthChecks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "read-replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = healthCheckInterval.toMillis();
+        healthChecks.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands out connections to the replicas, or to the primary when no replica is up.
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public boolean isUp(int replica) {
+        return up.get(replica) == 1;
+    }
+
+    public void checkHealth() {
+        for (int i = 0; i < replicas.size(); i++) {
+            boolean valid;
+            try (Connection connection = replicas.get(i).getConnection()) {
+                valid = connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException | RuntimeException e) {
+                valid = false;
+            }
+            if (valid && up.getAndSet(i, 1) == 0) {
+                log.info("Read replica {} is up again", i);
+            } else if (!valid) {
+                markDown(i, null);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        healthChecks.shutdownNow();
+        for (DataSource replica : replicas) {
+            if (replica instanceof Closeable) {
+                ((Closeable) replica).close();
+            }
+        }
+    }
+
+    private void markDown(int replica, Exception cause) {
+        if (up.getAndSet(replica, 0) == 1) {
+            log.warn("Read replica {} is down, reading from the other replicas or the primary", replica, cause);
+        }
+    }
+
+    private class RoutingDataSource extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return route(DataSource::getConnection);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return route(target -> target.getConnection(username, password));
+        }
+
+        private Connection route(Connector connector) throws SQLException {
+            int size = replicas.size();
+            int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+            for (int i = 0; i < size; i++) {
+                int replica = (start + i) % size;
+                if (!isUp(replica)) {
+                    continue;
+                }
+                try {
+                    return connector.connect(replicas.get(replica));
+                } catch (SQLException e) {
+                    markDown(replica, e);
+                }
+            }
+            return connector.connect(primary);
+        }
+    }
+
+    private interface Connector {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+}
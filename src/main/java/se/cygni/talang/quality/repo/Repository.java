@@ -1,10 +1,20 @@
 package se.cygni.talang.quality.repo;
 
+import org.springframework.dao.OptimisticLockingFailureException;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
 import se.cygni.talang.quality.model.Brand;
 import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
 import se.cygni.talang.quality.model.Vehicle;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface Repository {
 
@@ -14,7 +24,176 @@ public interface Repository {
 
     List<Brand> getPremiumBrands();
 
+    default List<Vehicle> getVehiclesByRegistration(Collection<String> registrations) {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (String registration : registrations) {
+            Vehicle vehicle = getVehicleByRegistration(registration);
+            if (vehicle != null) {
+                vehicles.add(vehicle);
+            }
+        }
+        return vehicles;
+    }
+
+    default List<Customer> getCustomersByOrgNumber(Collection<String> orgNumbers) {
+        List<Customer> customers = new ArrayList<>();
+        for (String orgNumber : orgNumbers) {
+            Customer customer = getCustomerByOrgNumber(orgNumber);
+            if (customer != null) {
+                customers.add(customer);
+            }
+        }
+        return customers;
+    }
+
+    /**
+     * Passes every vehicle with the given owner and brand to the action, one at a time and in no
+     * particular order, without holding all of them in memory. A null filter matches any value.
+     */
+    void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action);
+
+    /**
+     * Passes the registration number of every vehicle to the action, as {@link #forEachVehicle}
+     * would, but without reading the rest of the rows.
+     */
+    default void forEachRegistration(Consumer<String> action) {
+        forEachVehicle(null, null, vehicle -> action.accept(vehicle.getRegistration()));
+    }
+
+    /**
+     * Passes the organisation number of every customer to the action, one at a time and in no
+     * particular order, without holding all of them in memory.
+     */
+    void forEachOrgNumber(Consumer<String> action);
+
+    /**
+     * Returns at most limit of the owner's vehicles, ordered by registration and starting after the
+     * given registration, or with the first one if it is null. The next page is fetched by passing
+     * the last registration of the previous one. This default scans all of the owner's vehicles.
+     */
+    default List<Vehicle> getVehiclesByOwner(String owner, String afterRegistration, int limit) {
+        List<Vehicle> vehicles = new ArrayList<>();
+        if (owner == null) {
+            return vehicles;
+        }
+        forEachVehicle(owner, null, vehicle -> {
+            if (afterRegistration == null || vehicle.getRegistration().compareTo(afterRegistration) > 0) {
+                vehicles.add(vehicle);
+            }
+        });
+        vehicles.sort(Comparator.comparing(Vehicle::getRegistration));
+        return new ArrayList<>(vehicles.subList(0, Math.min(limit, vehicles.size())));
+    }
+
+    /**
+     * Inserts or updates the vehicle. An update only succeeds if the stored version is still the
+     * version of the given vehicle, otherwise an {@link OptimisticLockingFailureException} is thrown.
+     */
     void saveVehicle(Vehicle vehicle);
 
+    /**
+     * Inserts or updates the customer. Repositories that override {@link #assignOwner} and
+     * {@link #returnVehicle} leave the premium counter of an existing customer as it is, since an
+     * assignment may have changed it after the customer was read. Their defaults save the counter
+     * through here instead.
+     */
     void saveCustomer(Customer customer);
+
+    /**
+     * Saves the customer unless there already is one with its organisation number, which is then
+     * left as it is, premium counter included. This default is not atomic, a customer saved between
+     * the check and the save is overwritten.
+     */
+    default void insertCustomer(Customer customer) {
+        if (getCustomerByOrgNumber(customer.getOrganisationNumber()) == null) {
+            saveCustomer(customer);
+        }
+    }
+
+    /**
+     * Assigns the vehicle to the customer if it is not owned by anyone. If the vehicle is of one of
+     * the given premium brands, the customer's count of premium vehicles is incremented and the
+     * customer is marked as premium. Implementations backed by a database should override this with
+     * an atomic variant; this default relies on {@link #saveVehicle} rejecting a vehicle that has
+     * been modified since it was read, but may lose a count when a customer gets two vehicles at once.
+     */
+    default AssignmentOutcome assignOwner(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        Vehicle vehicle = getVehicleByRegistration(registration);
+        if (vehicle == null) {
+            return AssignmentOutcome.VEHICLE_NOT_FOUND;
+        }
+        if (Objects.equals(vehicle.getOwner(), ownerOrgNumber)) {
+            return AssignmentOutcome.UNCHANGED;
+        }
+        if (vehicle.getOwner() != null) {
+            return AssignmentOutcome.ALREADY_OWNED;
+        }
+
+        Customer customer = getCustomerByOrgNumber(ownerOrgNumber);
+        if (customer == null) {
+            return AssignmentOutcome.CUSTOMER_NOT_FOUND;
+        }
+
+        vehicle.setOwner(customer.getOrganisationNumber());
+        try {
+            saveVehicle(vehicle);
+        } catch (OptimisticLockingFailureException e) {
+            // A concurrent assignment got there first
+            return AssignmentOutcome.ALREADY_OWNED;
+        }
+        if (premiumBrands.contains(vehicle.getBrand())) {
+            customer.setPremiumVehicles(customer.getPremiumVehicles() + 1);
+            customer.setPremiumCustomer(true);
+            saveCustomer(customer);
+        }
+        return AssignmentOutcome.ASSIGNED;
+    }
+
+    /**
+     * Takes the vehicle back from the customer that owns it. If the vehicle is of one of the given
+     * premium brands, the customer's count of premium vehicles is decremented, and the customer is
+     * no longer premium when it reaches zero. The same caveats as for {@link #assignOwner} apply to
+     * this default.
+     */
+    default ReturnOutcome returnVehicle(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        while (true) {
+            Vehicle vehicle = getVehicleByRegistration(registration);
+            if (vehicle == null) {
+                return ReturnOutcome.VEHICLE_NOT_FOUND;
+            }
+            if (vehicle.getOwner() == null) {
+                return ReturnOutcome.UNCHANGED;
+            }
+            if (!vehicle.getOwner().equals(ownerOrgNumber)) {
+                return ReturnOutcome.NOT_OWNED_BY_CUSTOMER;
+            }
+
+            vehicle.setOwner(null);
+            try {
+                saveVehicle(vehicle);
+            } catch (OptimisticLockingFailureException e) {
+                // Changed since it was read, decide again on the current state
+                continue;
+            }
+            Customer customer = getCustomerByOrgNumber(ownerOrgNumber);
+            if (customer != null && premiumBrands.contains(vehicle.getBrand())) {
+                customer.setPremiumVehicles(Math.max(customer.getPremiumVehicles() - 1, 0));
+                customer.setPremiumCustomer(customer.getPremiumVehicles() > 0);
+                saveCustomer(customer);
+            }
+            return ReturnOutcome.RETURNED;
+        }
+    }
+
+    /**
+     * Performs each assignment as {@link #assignOwner} would, in order, and returns one outcome per
+     * assignment. A failed assignment does not prevent the others from being carried out.
+     */
+    default List<AssignmentOutcome> assignOwners(List<Assignment> assignments, Set<Brand> premiumBrands) {
+        List<AssignmentOutcome> outcomes = new ArrayList<>(assignments.size());
+        for (Assignment assignment : assignments) {
+            outcomes.add(assignOwner(assignment.getOwnerOrgNumber(), assignment.getVehicleRegistration(), premiumBrands));
+        }
+        return outcomes;
+    }
 }
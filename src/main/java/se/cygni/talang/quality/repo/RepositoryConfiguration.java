@@ -0,0 +1,82 @@
+package se.cygni.talang.quality.repo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.repo.memory.InMemoryRepository;
+import se.cygni.talang.quality.repo.shard.ShardedRepository;
+import se.cygni.talang.quality.repo.shard.ShardingConfiguration.ShardDataSources;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class RepositoryConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "repository.type", havingValue = "memory")
+    public InMemoryRepository inMemoryRepository(@Value("${repository.memory.initial-capacity:1024}") int initialCapacity,
+                                                 @Value("${repository.memory.premium-brands:}") List<Brand> premiumBrands,
+                                                 @Value("${repository.memory.directory:}") String directory) throws IOException {
+        InMemoryRepository repository = new InMemoryRepository(initialCapacity);
+        repository.setPremiumBrands(premiumBrands);
+        // Without a directory nothing is persisted; the snapshot is written again when the context is closed
+        if (!directory.isEmpty()) {
+            repository.open(Paths.get(directory));
+        }
+        return repository;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "repository.key-filter.enabled", havingValue = "true")
+    public KeyNotifications keyNotifications(ObjectProvider<ShardDataSources> shardDataSources,
+                                             ObjectProvider<DataSource> dataSource) {
+        ShardDataSources shards = shardDataSources.getIfAvailable();
+        return new KeyNotifications(shards != null ? shards.get() : List.of(dataSource.getObject()));
+    }
+
+    @Bean
+    @Primary
+    public Repository repository(ObjectProvider<DatabaseRepository> databaseRepository,
+                                 ObjectProvider<InMemoryRepository> inMemoryRepository,
+                                 ObjectProvider<ShardedRepository> shardedRepository,
+                                 ObjectProvider<KnownKeys> knownKeys,
+                                 ObjectProvider<KeyNotifications> keyNotifications,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${repository.cache.enabled:true}") boolean cacheEnabled,
+                                 @Value("${repository.cache.maximum-size:100000}") long cacheMaximumSize,
+                                 @Value("${repository.cache.expire-after-write:PT30S}") Duration cacheExpireAfterWrite) {
+        Repository storage = inMemoryRepository.getIfAvailable();
+        if (storage == null) {
+            storage = shardedRepository.getIfAvailable();
+        }
+        if (storage == null) {
+            storage = databaseRepository.getObject();
+        }
+        // Metered below the cache, so that the timers only count calls that reach the storage
+        Repository repository = new MeteredRepository(storage, meterRegistry);
+        if (cacheEnabled && !(storage instanceof InMemoryRepository)) {
+            CachingRepository cachingRepository =
+                    new CachingRepository(repository, cacheMaximumSize, cacheExpireAfterWrite);
+            cachingRepository.bindTo(meterRegistry);
+            repository = cachingRepository;
+        }
+        // In front of the cache, which does not keep lookups of keys that were not found
+        KnownKeys keys = knownKeys.getIfAvailable();
+        if (keys != null && !(storage instanceof InMemoryRepository)) {
+            // Listening before the first build, so that no key inserted elsewhere meanwhile is missed
+            keyNotifications.getObject().start(keys);
+            keys.start(repository);
+            repository = new KeyFilteringRepository(repository, keys);
+        }
+        return repository;
+    }
+}
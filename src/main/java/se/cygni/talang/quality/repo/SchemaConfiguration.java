@@ -0,0 +1,20 @@
+package se.cygni.talang.quality.repo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// Replaces Spring Boot's initialization of the DataSource, which always runs schema.sql, wherever there is one
+@Configuration
+@ConditionalOnExpression("'${repository.type:database}' != 'memory'")
+public class SchemaConfiguration {
+
+    @Bean
+    public SchemaInitializer schemaInitializer(DataSource dataSource,
+                                               @Value("${schema.skip-when-current:true}") boolean skipWhenCurrent) {
+        return new SchemaInitializer(dataSource, skipWhenCurrent);
+    }
+}
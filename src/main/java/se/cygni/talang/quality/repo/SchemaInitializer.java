@@ -0,0 +1,95 @@
+package se.cygni.talang.quality.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.jdbc.init.DataSourceScriptDatabaseInitializer;
+import org.springframework.boot.sql.init.DatabaseInitializationMode;
+import org.springframework.boot.sql.init.DatabaseInitializationSettings;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.DigestUtils;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Runs schema.sql at startup, unless the database has had this version of it applied already. The
+ * version is a hash of the script, recorded in the schemaVersion table once it has run, so any change
+ * to the script runs it again. The script must stay safe to run more than once, as instances that
+ * start at the same time may both run it.
+ * <p>
+ * Tables dropped by hand are only created again once the recorded versions are deleted too.
+ */
+public class SchemaInitializer extends DataSourceScriptDatabaseInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaInitializer.class);
+    static final String SCHEMA = "schema.sql";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean skipWhenCurrent;
+
+    public SchemaInitializer(DataSource dataSource, boolean skipWhenCurrent) {
+        super(dataSource, settings());
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.skipWhenCurrent = skipWhenCurrent;
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        String version = version(new ClassPathResource(SCHEMA));
+        if (skipWhenCurrent && isApplied(jdbcTemplate, version)) {
+            log.info("Schema version {} is applied, skipping {}", version, SCHEMA);
+            return false;
+        }
+        boolean initialized = super.initializeDatabase();
+        recordApplied(jdbcTemplate, version);
+        log.info("Applied schema version {}", version);
+        return initialized;
+    }
+
+    /**
+     * The version of a set of scripts, which changes with any change to any of them.
+     */
+    public static String version(Resource... scripts) {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        for (Resource script : scripts) {
+            try (InputStream in = script.getInputStream()) {
+                in.transferTo(contents);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        // Detects changes, it is not a defence against anyone
+        return DigestUtils.md5DigestAsHex(contents.toByteArray());
+    }
+
+    public static boolean isApplied(JdbcTemplate jdbcTemplate, String version) {
+        try {
+            Integer count = jdbcTemplate.queryForObject("SELECT count(*) FROM schemaVersion WHERE version=?",
+                    Integer.class, version);
+            return count != null && count > 0;
+        } catch (DataAccessException e) {
+            // No schemaVersion table, nothing has been applied
+            return false;
+        }
+    }
+
+    public static void recordApplied(JdbcTemplate jdbcTemplate, String version) {
+        if (!isApplied(jdbcTemplate, version)) {
+            jdbcTemplate.update("INSERT INTO schemaVersion (version) VALUES (?)", version);
+        }
+    }
+
+    private static DatabaseInitializationSettings settings() {
+        DatabaseInitializationSettings settings = new DatabaseInitializationSettings();
+        settings.setSchemaLocations(List.of("classpath:" + SCHEMA));
+        settings.setMode(DatabaseInitializationMode.ALWAYS);
+        return settings;
+    }
+}
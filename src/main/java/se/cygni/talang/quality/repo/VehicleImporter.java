@@ -0,0 +1,340 @@
+package se.cygni.talang.quality.repo;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.ImportResult;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Imports vehicles, in the same CSV or NDJSON format as the export, with PostgreSQL's COPY. The
+ * input is streamed into a temporary staging table and then validated and merged into vehicles and
+ * customers with a few set based statements, all in one transaction. Memory use does not depend on
+ * the size of the input.
+ * <p>
+ * Imported rows are authoritative: a vehicle that already exists gets the owner and brand of the
+ * import. Owners that do not exist are created, and the premium vehicle counts of the previous and
+ * new owners are recounted. Rows cached by {@link CachingRepository} may be stale until they expire,
+ * the imported keys are added to {@link KnownKeys}. With the outbox enabled, the changes of owner are
+ * written to ownershipEvents by the same statement that merges the vehicles.
+ */
+@Component
+@ConditionalOnProperty(name = "repository.type", havingValue = "database", matchIfMissing = true)
+public class VehicleImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(VehicleImporter.class);
+
+    static final String CSV_HEADER = "registration,owner,brand";
+    private static final long PROGRESS_INTERVAL = 100_000;
+    private static final int REJECTED_SAMPLES = 10;
+    private static final int KEY_FETCH_SIZE = 5000;
+    private static final String COPY_SQL =
+            "COPY vehicle_import (registrationNumber, owner, brand) FROM STDIN WITH (FORMAT csv)";
+
+    // The existing vehicles of the import, before their owners are read. Within the merge, FOR UPDATE
+    // would skip the rows that the merge itself updates
+    private static final String LOCK_VEHICLES_SQL = "SELECT count(*) FROM (" +
+            "   SELECT 1 FROM vehicles v " +
+            "   JOIN vehicle_import_latest i ON i.registrationNumber=v.registrationNumber " +
+            "   FOR UPDATE OF v) locked";
+
+    // xmax is only zero for rows that were inserted rather than updated
+    private static final String MERGE_SQL = "WITH merged AS (" +
+            "   INSERT INTO vehicles (registrationNumber, owner, brand) " +
+            "   SELECT registrationNumber, owner, brand FROM vehicle_import_latest " +
+            "   ON CONFLICT (registrationNumber) DO " +
+            "   UPDATE SET owner=EXCLUDED.owner, brand=EXCLUDED.brand, version=vehicles.version + 1 " +
+            "   WHERE (vehicles.owner, vehicles.brand) IS DISTINCT FROM (EXCLUDED.owner, EXCLUDED.brand) " +
+            "   RETURNING (xmax = 0) AS inserted) " +
+            "SELECT count(*) FILTER (WHERE inserted) AS inserted, " +
+            "   count(*) FILTER (WHERE NOT inserted) AS updated FROM merged";
+
+    // The previous owners from the snapshot, taken after LOCK_VEHICLES_SQL locked the vehicles
+    private static final String MERGE_WITH_EVENTS_SQL = "WITH previous AS (" +
+            "   SELECT v.registrationNumber, v.owner FROM vehicles v " +
+            "   JOIN vehicle_import_latest i ON i.registrationNumber=v.registrationNumber), " +
+            "merged AS (" +
+            "   INSERT INTO vehicles (registrationNumber, owner, brand) " +
+            "   SELECT registrationNumber, owner, brand FROM vehicle_import_latest " +
+            "   ON CONFLICT (registrationNumber) DO " +
+            "   UPDATE SET owner=EXCLUDED.owner, brand=EXCLUDED.brand, version=vehicles.version + 1 " +
+            "   WHERE (vehicles.owner, vehicles.brand) IS DISTINCT FROM (EXCLUDED.owner, EXCLUDED.brand) " +
+            "   RETURNING registrationNumber, owner, (xmax = 0) AS inserted), " +
+            "events AS (" +
+            "   INSERT INTO ownershipEvents (registrationNumber, previousOwner, owner) " +
+            "   SELECT m.registrationNumber, p.owner, m.owner FROM merged m " +
+            "   LEFT JOIN previous p ON p.registrationNumber=m.registrationNumber " +
+            "   WHERE m.owner IS DISTINCT FROM p.owner " +
+            "   ORDER BY m.registrationNumber) " +
+            "SELECT count(*) FILTER (WHERE inserted) AS inserted, " +
+            "   count(*) FILTER (WHERE NOT inserted) AS updated FROM merged";
+
+    private final DataSource dataSource;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final KnownKeys knownKeys;
+    private final boolean outbox;
+
+    public VehicleImporter(DataSource dataSource,
+                           NamedParameterJdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           ObjectMapper objectMapper,
+                           @Nullable KnownKeys knownKeys,
+                           @Value("${outbox.enabled:false}") boolean outbox) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.knownKeys = knownKeys;
+        this.outbox = outbox;
+    }
+
+    /**
+     * Imports CSV with a registration,owner,brand header. The rows after the header are passed to
+     * COPY as they are; an empty owner means no owner.
+     */
+    public ImportResult importCsv(InputStream input) {
+        String header = readLine(input);
+        if (!CSV_HEADER.equalsIgnoreCase(header.replace("\uFEFF", "").trim())) {
+            throw new IllegalArgumentException("Expected the CSV header " + CSV_HEADER + ", got " + header);
+        }
+        return importVehicles(copy -> {
+            byte[] buffer = new byte[1 << 16];
+            // Only for reporting progress, a quoted value may contain a line break
+            long rows = 0;
+            long reported = 0;
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                copy.write(buffer, 0, read);
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        rows++;
+                    }
+                }
+                if (rows - reported >= PROGRESS_INTERVAL) {
+                    log.info("Import: {} rows streamed", rows);
+                    reported = rows;
+                }
+            }
+        });
+    }
+
+    /**
+     * Imports one JSON object per line with registration, owner and brand fields, converted to CSV
+     * for COPY as they are parsed.
+     */
+    public ImportResult importNdjson(InputStream input) {
+        return importVehicles(copy -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(copy, StandardCharsets.UTF_8), 1 << 16);
+            long rows = 0;
+            try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+                for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new IllegalArgumentException("Expected a JSON object per line, got " + token);
+                    }
+                    String registration = null;
+                    String owner = null;
+                    String brand = null;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.getCurrentName();
+                        parser.nextToken();
+                        if (field.equals("registration")) {
+                            registration = parser.getValueAsString();
+                        } else if (field.equals("owner")) {
+                            owner = parser.getValueAsString();
+                        } else if (field.equals("brand")) {
+                            brand = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    writeCsvField(writer, registration);
+                    writer.write(',');
+                    writeCsvField(writer, owner);
+                    writer.write(',');
+                    writeCsvField(writer, brand);
+                    writer.write('\n');
+                    if (++rows % PROGRESS_INTERVAL == 0) {
+                        log.info("Import: {} rows streamed", rows);
+                    }
+                }
+            }
+            writer.flush();
+        });
+    }
+
+    private ImportResult importVehicles(CopySource source) {
+        long started = System.nanoTime();
+        ImportResult result = transactionTemplate.execute(status -> {
+            jdbcTemplate.getJdbcTemplate().execute("CREATE TEMPORARY TABLE vehicle_import (" +
+                    "line BIGSERIAL, registrationNumber VARCHAR, owner VARCHAR, brand VARCHAR) ON COMMIT DROP");
+            long rows = copy(source);
+            log.info("Import: {} rows staged, validating", rows);
+
+            Map<String, Object> brands = Map.of("brands",
+                    Arrays.stream(Brand.values()).map(Brand::name).collect(Collectors.toList()));
+            String invalid = "registrationNumber IS NULL OR brand IS NULL OR brand NOT IN (:brands)";
+            List<String> rejectedSamples = jdbcTemplate.query(
+                    "SELECT line, registrationNumber, brand FROM vehicle_import WHERE " + invalid +
+                            " ORDER BY line LIMIT " + REJECTED_SAMPLES, brands,
+                    (rs, rowNum) -> "row " + rs.getLong("line") + ": registration " +
+                            rs.getString("registrationNumber") + ", brand " + rs.getString("brand"));
+            long rejected = jdbcTemplate.update("DELETE FROM vehicle_import WHERE " + invalid, brands);
+
+            // The last row for a registration wins, ON CONFLICT cannot update the same row twice
+            jdbcTemplate.getJdbcTemplate().execute("CREATE TEMPORARY TABLE vehicle_import_latest ON COMMIT DROP AS " +
+                    "SELECT DISTINCT ON (registrationNumber) registrationNumber, owner, " +
+                    BrandCodeMigration.codeOf("brand") + " AS brand FROM vehicle_import " +
+                    "ORDER BY registrationNumber, line DESC");
+            jdbcTemplate.getJdbcTemplate().execute("ANALYZE vehicle_import_latest");
+            if (knownKeys != null) {
+                addKnownKeys();
+            }
+            // So that assignments cannot change the owners read from here on, for the recount and the events
+            count(LOCK_VEHICLES_SQL);
+            // Both the previous and the new owners' premium vehicle counts may change
+            jdbcTemplate.getJdbcTemplate().execute("CREATE TEMPORARY TABLE vehicle_import_owners ON COMMIT DROP AS " +
+                    "SELECT v.owner AS organisationNumber FROM vehicles v " +
+                    "   JOIN vehicle_import_latest i ON i.registrationNumber=v.registrationNumber " +
+                    "   WHERE v.owner IS NOT NULL " +
+                    "UNION SELECT owner FROM vehicle_import_latest WHERE owner IS NOT NULL");
+
+            long customersCreated = count("WITH created AS (" +
+                    "   INSERT INTO customers (organisationNumber, premiumCustomer) " +
+                    "   SELECT DISTINCT owner, false FROM vehicle_import_latest WHERE owner IS NOT NULL " +
+                    "   ON CONFLICT (organisationNumber) DO NOTHING " +
+                    "   RETURNING 1) " +
+                    "SELECT count(*) FROM created");
+
+            Map<String, Object> merged = jdbcTemplate.queryForMap(outbox ? MERGE_WITH_EVENTS_SQL : MERGE_SQL, Map.of());
+
+            // Recounted rather than adjusted, the import may move vehicles between any customers
+            long customersUpgraded = count("WITH counted AS (" +
+                    "   SELECT o.organisationNumber, count(v.registrationNumber) AS premiumVehicles " +
+                    "   FROM vehicle_import_owners o " +
+                    "   LEFT JOIN vehicles v ON v.owner=o.organisationNumber " +
+                    "       AND v.brand IN (SELECT brand FROM premiumBrands) " +
+                    "   GROUP BY o.organisationNumber), " +
+                    "updated AS (" +
+                    "   UPDATE customers c SET premiumVehicles=counted.premiumVehicles, " +
+                    "       premiumCustomer=counted.premiumVehicles > 0 " +
+                    "   FROM counted WHERE c.organisationNumber=counted.organisationNumber " +
+                    "   RETURNING 1) " +
+                    "SELECT count(*) FROM counted JOIN customers c ON c.organisationNumber=counted.organisationNumber " +
+                    "WHERE c.premiumCustomer IS NOT TRUE AND counted.premiumVehicles > 0");
+
+            return new ImportResult(rows, rejected, rejectedSamples, ((Number) merged.get("inserted")).longValue(),
+                    ((Number) merged.get("updated")).longValue(), customersCreated, customersUpgraded);
+        });
+        log.info("Import done in {} ms: {}", (System.nanoTime() - started) / 1_000_000, result);
+        return result;
+    }
+
+    // Before the commit, so that the imported keys are never filtered out once they exist
+    private void addKnownKeys() {
+        jdbcTemplate.getJdbcTemplate().query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT registrationNumber, owner FROM vehicle_import_latest",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(KEY_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            knownKeys.addVehicle(rs.getString(1));
+            String owner = rs.getString(2);
+            if (owner != null) {
+                knownKeys.addCustomer(owner);
+            }
+        });
+    }
+
+    private long copy(CopySource source) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (PGCopyOutputStream copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class), COPY_SQL, 1 << 16)) {
+            source.copyTo(copy);
+            return copy.endCopy();
+        } catch (SQLException e) {
+            throw translate(e);
+        } catch (IOException e) {
+            // Errors reported by the server while copying arrive wrapped in an IOException
+            if (e.getCause() instanceof SQLException) {
+                throw translate((SQLException) e.getCause());
+            }
+            throw new UncheckedIOException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private DataAccessException translate(SQLException e) {
+        return jdbcTemplate.getJdbcTemplate().getExceptionTranslator().translate("COPY", COPY_SQL, e);
+    }
+
+    private long count(String sql) {
+        Long count = jdbcTemplate.queryForObject(sql, Map.of(), Long.class);
+        return count == null ? 0 : count;
+    }
+
+    private static String readLine(InputStream input) {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try {
+            for (int b = input.read(); b >= 0 && b != '\n'; b = input.read()) {
+                if (line.size() > 1024) {
+                    throw new IllegalArgumentException("Expected the CSV header " + CSV_HEADER);
+                }
+                line.write(b);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    // An unquoted empty field is NULL to COPY, so empty values are written as NULL as well
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private interface CopySource {
+
+        // Writes the rows as CSV without a header
+        void copyTo(OutputStream copy) throws IOException;
+    }
+}
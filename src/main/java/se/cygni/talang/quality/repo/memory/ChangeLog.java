@@ -0,0 +1,199 @@
+package se.cygni.talang.quality.repo.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the rows changed since the last snapshot. Each record holds the complete new
+ * state of one vehicle or customer, so replaying a record more than once is harmless.
+ * <p>
+ * A record is a payload length, a CRC32 of the payload and the payload. Records are handed to the
+ * operating system as they are appended, and so survive the process dying, but are only forced to
+ * disk when the log is closed.
+ */
+final class ChangeLog implements Closeable {
+
+    interface Target {
+
+        void restoreVehicle(String registration, String owner, byte brand, long version);
+
+        void restoreCustomer(String orgNumber, boolean premium, int premiumVehicles);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeLog.class);
+
+    // Written with the ordinal of the brand rather than its code, rejected like the snapshots of then
+    private static final byte VEHICLE_WITH_ORDINAL = 1;
+    // Written before customers had a premium vehicle count, only replayed
+    private static final byte CUSTOMER_WITHOUT_COUNT = 2;
+    private static final byte CUSTOMER = 3;
+    private static final byte VEHICLE = 4;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + MAX_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 checksum = new CRC32();
+
+    ChangeLog(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    void vehicle(String registration, String owner, byte brand, long version) throws IOException {
+        buffer.clear().position(HEADER_SIZE);
+        buffer.put(VEHICLE);
+        putString(registration);
+        putString(owner);
+        buffer.put(brand);
+        buffer.putLong(version);
+        append();
+    }
+
+    void customer(String orgNumber, boolean premium, int premiumVehicles) throws IOException {
+        buffer.clear().position(HEADER_SIZE);
+        buffer.put(CUSTOMER);
+        putString(orgNumber);
+        buffer.put(premium ? (byte) 1 : 0);
+        buffer.putInt(premiumVehicles);
+        append();
+    }
+
+    void truncate() throws IOException {
+        channel.truncate(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(true);
+        channel.close();
+    }
+
+    /**
+     * Applies all complete records in the log to the target. Replay stops at the first record that
+     * is incomplete or fails its checksum, which is what a write interrupted by a crash leaves
+     * behind, and the log is truncated there, so that the records appended next are replayed.
+     *
+     * @return the number of records applied
+     */
+    static long replay(Path file, Target target) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long records = 0;
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                buffer.clear();
+                channel.read(buffer, position);
+                buffer.flip();
+                int consumed = 0;
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    int expected = buffer.getInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        return stop(file, channel, records, position + start);
+                    }
+                    if (buffer.remaining() < length) {
+                        buffer.position(start);
+                        break;
+                    }
+                    ByteBuffer payload = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    payload.limit(length);
+                    checksum.reset();
+                    checksum.update(payload.duplicate());
+                    if ((int) checksum.getValue() != expected) {
+                        return stop(file, channel, records, position + start);
+                    }
+                    apply(payload, target);
+                    buffer.position(buffer.position() + length);
+                    consumed = buffer.position();
+                    records++;
+                }
+                if (consumed == 0) {
+                    return stop(file, channel, records, position);
+                }
+                position += consumed;
+            }
+        }
+        return records;
+    }
+
+    private static long stop(Path file, FileChannel channel, long records, long position) throws IOException {
+        log.warn("Truncating incomplete or corrupt change log {} at byte {}", file, position);
+        channel.truncate(position);
+        channel.force(true);
+        return records;
+    }
+
+    private static void apply(ByteBuffer payload, Target target) {
+        byte type = payload.get();
+        if (type == VEHICLE) {
+            String registration = getString(payload);
+            String owner = getString(payload);
+            byte brand = payload.get();
+            target.restoreVehicle(registration, owner, brand, payload.getLong());
+        } else if (type == CUSTOMER) {
+            String orgNumber = getString(payload);
+            boolean premium = payload.get() != 0;
+            target.restoreCustomer(orgNumber, premium, payload.getInt());
+        } else if (type == CUSTOMER_WITHOUT_COUNT) {
+            target.restoreCustomer(getString(payload), payload.get() != 0, 0);
+        } else if (type == VEHICLE_WITH_ORDINAL) {
+            throw new IllegalStateException("Change log record of a vehicle with the brand's ordinal, written by an earlier version");
+        } else {
+            throw new IllegalStateException("Unknown change log record type " + type);
+        }
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE || bytes.length > buffer.remaining() - Long.BYTES - Short.BYTES) {
+            throw new IllegalArgumentException("Key too long for the change log: " + value);
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        short length = payload.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length,
+                StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    private void append() throws IOException {
+        int length = buffer.position() - HEADER_SIZE;
+        checksum.reset();
+        checksum.update(buffer.array(), HEADER_SIZE, length);
+        buffer.putInt(0, length);
+        buffer.putInt(Integer.BYTES, (int) checksum.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package se.cygni.talang.quality.repo.memory;
+
+import java.io.IOException;
+
+public class CorruptSnapshotException extends IOException {
+
+    public CorruptSnapshotException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,648 @@
+package se.cygni.talang.quality.repo.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Repository kept entirely in process, for deployments and test rigs without a database.
+ * <p>
+ * Rows are stored column by column in primitive arrays indexed by a dense id, instead of as one
+ * object per row: registrations and org numbers are dictionary encoded, brands are stored as
+ * their codes, owners as the id of the owning customer, the premium flags as a bit set and the premium
+ * vehicle counts as ints. Writes are
+ * serialized by a lock, reads are optimistic and only fall back to a shared read lock when they
+ * overlap a write, so readers never block each other.
+ * <p>
+ * After {@link #open(Path)} the rows survive restarts: they are loaded from a snapshot of the
+ * columns, and every change is appended to a change log that is replayed on top of the snapshot.
+ */
+public class InMemoryRepository implements Repository, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryRepository.class);
+
+    static final String SNAPSHOT_FILE = "fleet.snapshot";
+    static final String CHANGE_LOG_FILE = "fleet.log";
+
+    private static final byte NO_BRAND = -1;
+    private static final int NO_OWNER = -1;
+    private static final int SCAN_CHUNK_SIZE = 1024;
+
+    private final StampedLock lock = new StampedLock();
+    // Held while writing a snapshot next to the read lock, two snapshots would write the same temporary file
+    private final Object snapshotLock = new Object();
+
+    private final int initialCapacity;
+
+    private KeyDictionary registrations;
+    private byte[] brands;
+    private int[] owners;
+    private long[] versions;
+
+    private KeyDictionary orgNumbers;
+    private BitSet premiumCustomers;
+    private int[] premiumVehicles;
+
+    private volatile Set<Brand> premiumBrands = EnumSet.noneOf(Brand.class);
+
+    private Path directory;
+    private ChangeLog changeLog;
+
+    public InMemoryRepository(int initialCapacity) {
+        initialCapacity = Math.max(16, initialCapacity);
+        this.initialCapacity = initialCapacity;
+        this.registrations = new KeyDictionary(initialCapacity);
+        this.brands = new byte[initialCapacity];
+        this.owners = new int[initialCapacity];
+        this.versions = new long[initialCapacity];
+        this.orgNumbers = new KeyDictionary(initialCapacity);
+        this.premiumCustomers = new BitSet(initialCapacity);
+        this.premiumVehicles = new int[initialCapacity];
+    }
+
+    public void setPremiumBrands(Collection<Brand> premiumBrands) {
+        EnumSet<Brand> brands = EnumSet.noneOf(Brand.class);
+        brands.addAll(premiumBrands);
+        this.premiumBrands = brands;
+    }
+
+    /**
+     * Loads the rows persisted in the directory, if any, and starts logging changes to it. The
+     * snapshot is rewritten with the replayed changes, so the change log only ever holds the
+     * changes of one run.
+     */
+    public void open(Path directory) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            if (this.directory != null) {
+                throw new IllegalStateException("Already opened in " + this.directory);
+            }
+            Files.createDirectories(directory);
+            long started = System.nanoTime();
+            Path snapshot = directory.resolve(SNAPSHOT_FILE);
+            if (Files.exists(snapshot)) {
+                load(snapshot);
+            }
+            long replayed = ChangeLog.replay(directory.resolve(CHANGE_LOG_FILE), new Restorer());
+            log.info("Loaded {} vehicles and {} customers from {} in {} ms, {} changes replayed", registrations.size(),
+                    orgNumbers.size(), directory, (System.nanoTime() - started) / 1_000_000, replayed);
+            this.directory = directory;
+            this.changeLog = new ChangeLog(directory.resolve(CHANGE_LOG_FILE));
+            if (replayed > 0) {
+                snapshot();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Writes all rows to the snapshot and empties the change log. Changes are blocked meanwhile,
+     * reads are not. Concurrent calls write one snapshot at a time.
+     */
+    public void writeSnapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long stamp = lock.readLock();
+            try {
+                if (directory == null) {
+                    throw new IllegalStateException("Not opened in a directory");
+                }
+                snapshot();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            if (directory != null) {
+                snapshot();
+                changeLog.close();
+                changeLog = null;
+                directory = null;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int vehicleCount() {
+        return read(registrations::size);
+    }
+
+    public int customerCount() {
+        return read(orgNumbers::size);
+    }
+
+    @Override
+    public Vehicle getVehicleByRegistration(String registration) {
+        if (registration == null) {
+            return null;
+        }
+        return read(() -> {
+            int id = registrations.find(registration);
+            return id < 0 ? null : vehicle(id);
+        });
+    }
+
+    @Override
+    public Customer getCustomerByOrgNumber(String orgNumber) {
+        if (orgNumber == null) {
+            return null;
+        }
+        return read(() -> {
+            int id = orgNumbers.find(orgNumber);
+            return id < 0 ? null : customer(id);
+        });
+    }
+
+    @Override
+    public List<Brand> getPremiumBrands() {
+        return new ArrayList<>(premiumBrands);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegistration(Collection<String> registrations) {
+        return read(() -> {
+            List<Vehicle> vehicles = new ArrayList<>(registrations.size());
+            for (String registration : registrations) {
+                int id = registration == null ? -1 : this.registrations.find(registration);
+                if (id >= 0) {
+                    vehicles.add(vehicle(id));
+                }
+            }
+            return vehicles;
+        });
+    }
+
+    @Override
+    public List<Customer> getCustomersByOrgNumber(Collection<String> orgNumbers) {
+        return read(() -> {
+            List<Customer> customers = new ArrayList<>(orgNumbers.size());
+            for (String orgNumber : orgNumbers) {
+                int id = orgNumber == null ? -1 : this.orgNumbers.find(orgNumber);
+                if (id >= 0) {
+                    customers.add(customer(id));
+                }
+            }
+            return customers;
+        });
+    }
+
+    /**
+     * Scans the vehicles in chunks, and passes each chunk to the action outside of the lock, so
+     * that a slow consumer does not hold up writers. Vehicles added during the scan may or may not
+     * be included.
+     */
+    @Override
+    public void forEachRegistration(Consumer<String> action) {
+        forEachKey(() -> registrations, action);
+    }
+
+    @Override
+    public void forEachOrgNumber(Consumer<String> action) {
+        forEachKey(() -> orgNumbers, action);
+    }
+
+    @Override
+    public void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action) {
+        byte brandFilter = brand == null ? NO_BRAND : code(brand);
+        List<Vehicle> chunk = new ArrayList<>(SCAN_CHUNK_SIZE);
+        for (int from = 0; ; from += SCAN_CHUNK_SIZE) {
+            int start = from;
+            chunk.clear();
+            boolean more = read(() -> {
+                chunk.clear();
+                int ownerFilter = owner == null ? NO_OWNER : orgNumbers.find(owner);
+                if (owner != null && ownerFilter < 0) {
+                    return false;
+                }
+                int end = Math.min(start + SCAN_CHUNK_SIZE, registrations.size());
+                for (int id = start; id < end; id++) {
+                    if ((owner == null || owners[id] == ownerFilter) && (brand == null || brands[id] == brandFilter)) {
+                        chunk.add(vehicle(id));
+                    }
+                }
+                return end < registrations.size();
+            });
+            chunk.forEach(action);
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    // In chunks as in forEachVehicle, so that the action is not called with the lock held
+    private void forEachKey(Supplier<KeyDictionary> dictionary, Consumer<String> action) {
+        List<String> chunk = new ArrayList<>(SCAN_CHUNK_SIZE);
+        for (int from = 0; ; from += SCAN_CHUNK_SIZE) {
+            int start = from;
+            boolean more = read(() -> {
+                chunk.clear();
+                KeyDictionary keys = dictionary.get();
+                int end = Math.min(start + SCAN_CHUNK_SIZE, keys.size());
+                for (int id = start; id < end; id++) {
+                    chunk.add(keys.key(id));
+                }
+                return end < keys.size();
+            });
+            chunk.forEach(action);
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * There is no index by owner, so this scans the owner column. Only the owner's vehicles are
+     * compared, and only the page is kept while scanning: a heap of the smallest registrations seen.
+     */
+    @Override
+    public List<Vehicle> getVehiclesByOwner(String owner, String afterRegistration, int limit) {
+        if (owner == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        return read(() -> {
+            int ownerId = orgNumbers.find(owner);
+            if (ownerId < 0) {
+                return new ArrayList<>();
+            }
+            // The largest registration on top, to be replaced when a smaller one is found
+            PriorityQueue<String> page = new PriorityQueue<>(Comparator.reverseOrder());
+            int size = registrations.size();
+            for (int id = 0; id < size; id++) {
+                if (owners[id] != ownerId) {
+                    continue;
+                }
+                String registration = registrations.key(id);
+                if (afterRegistration != null && registration.compareTo(afterRegistration) <= 0) {
+                    continue;
+                }
+                if (page.size() < limit) {
+                    page.add(registration);
+                } else if (registration.compareTo(page.peek()) < 0) {
+                    page.poll();
+                    page.add(registration);
+                }
+            }
+            List<Vehicle> vehicles = new ArrayList<>(page.size());
+            for (String registration : page) {
+                vehicles.add(vehicle(registrations.find(registration)));
+            }
+            vehicles.sort(Comparator.comparing(Vehicle::getRegistration));
+            return vehicles;
+        });
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) {
+        long stamp = lock.writeLock();
+        try {
+            int owner = NO_OWNER;
+            if (vehicle.getOwner() != null) {
+                owner = orgNumbers.find(vehicle.getOwner());
+                if (owner < 0) {
+                    throw new DataIntegrityViolationException("No customer found for owner " + vehicle.getOwner());
+                }
+            }
+            int id = registrations.find(vehicle.getRegistration());
+            long version = 0;
+            if (id >= 0 && versions[id] != vehicle.getVersion()) {
+                throw new OptimisticLockingFailureException("Vehicle " + vehicle.getRegistration() +
+                        " has been modified since version " + vehicle.getVersion());
+            } else if (id >= 0) {
+                version = versions[id] + 1;
+            }
+            byte brand = vehicle.getBrand() == null ? NO_BRAND : code(vehicle.getBrand());
+            logVehicle(vehicle.getRegistration(), vehicle.getOwner(), brand, version);
+            if (id < 0) {
+                id = registrations.add(vehicle.getRegistration());
+                ensureVehicleCapacity(id + 1);
+            }
+            brands[id] = brand;
+            owners[id] = owner;
+            versions[id] = version;
+            vehicle.setVersion(version);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The premium counter of an existing customer is only changed by assign and return
+    @Override
+    public void saveCustomer(Customer customer) {
+        long stamp = lock.writeLock();
+        try {
+            int id = orgNumbers.find(customer.getOrganisationNumber());
+            int counter = id < 0 ? customer.getPremiumVehicles() : premiumVehicles[id];
+            logCustomer(customer.getOrganisationNumber(), customer.isPremiumCustomer(), counter);
+            if (id < 0) {
+                id = orgNumbers.add(customer.getOrganisationNumber());
+                ensureCustomerCapacity(id + 1);
+            }
+            premiumCustomers.set(id, customer.isPremiumCustomer());
+            premiumVehicles[id] = counter;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        long stamp = lock.writeLock();
+        try {
+            if (orgNumbers.find(customer.getOrganisationNumber()) >= 0) {
+                return;
+            }
+            logCustomer(customer.getOrganisationNumber(), customer.isPremiumCustomer(), customer.getPremiumVehicles());
+            int id = orgNumbers.add(customer.getOrganisationNumber());
+            ensureCustomerCapacity(id + 1);
+            premiumCustomers.set(id, customer.isPremiumCustomer());
+            premiumVehicles[id] = customer.getPremiumVehicles();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public AssignmentOutcome assignOwner(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        long stamp = lock.writeLock();
+        try {
+            return assign(ownerOrgNumber, registration, premiumBrands);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<AssignmentOutcome> assignOwners(List<Assignment> assignments, Set<Brand> premiumBrands) {
+        List<AssignmentOutcome> outcomes = new ArrayList<>(assignments.size());
+        long stamp = lock.writeLock();
+        try {
+            for (Assignment assignment : assignments) {
+                outcomes.add(assign(assignment.getOwnerOrgNumber(), assignment.getVehicleRegistration(), premiumBrands));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return outcomes;
+    }
+
+    // Same rules as Repository.assignOwner, but atomic since the caller holds the write lock
+    private AssignmentOutcome assign(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        int vehicle = registration == null ? -1 : registrations.find(registration);
+        if (vehicle < 0) {
+            return AssignmentOutcome.VEHICLE_NOT_FOUND;
+        }
+        int customer = ownerOrgNumber == null ? -1 : orgNumbers.find(ownerOrgNumber);
+        int owner = owners[vehicle];
+        if (owner != NO_OWNER && owner == customer || owner == NO_OWNER && ownerOrgNumber == null) {
+            return AssignmentOutcome.UNCHANGED;
+        }
+        if (owner != NO_OWNER) {
+            return AssignmentOutcome.ALREADY_OWNED;
+        }
+        if (customer < 0) {
+            return AssignmentOutcome.CUSTOMER_NOT_FOUND;
+        }
+
+        boolean premium = isPremium(brands[vehicle], premiumBrands);
+        logVehicle(registration, ownerOrgNumber, brands[vehicle], versions[vehicle] + 1);
+        if (premium) {
+            logCustomer(ownerOrgNumber, true, premiumVehicles[customer] + 1);
+        }
+        owners[vehicle] = customer;
+        versions[vehicle]++;
+        if (premium) {
+            premiumVehicles[customer]++;
+            premiumCustomers.set(customer);
+        }
+        return AssignmentOutcome.ASSIGNED;
+    }
+
+    @Override
+    public ReturnOutcome returnVehicle(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        long stamp = lock.writeLock();
+        try {
+            int vehicle = registration == null ? -1 : registrations.find(registration);
+            if (vehicle < 0) {
+                return ReturnOutcome.VEHICLE_NOT_FOUND;
+            }
+            int owner = owners[vehicle];
+            if (owner == NO_OWNER) {
+                return ReturnOutcome.UNCHANGED;
+            }
+            if (ownerOrgNumber == null || owner != orgNumbers.find(ownerOrgNumber)) {
+                return ReturnOutcome.NOT_OWNED_BY_CUSTOMER;
+            }
+
+            boolean premium = isPremium(brands[vehicle], premiumBrands);
+            int remaining = Math.max(premiumVehicles[owner] - 1, 0);
+            logVehicle(registration, null, brands[vehicle], versions[vehicle] + 1);
+            if (premium) {
+                logCustomer(ownerOrgNumber, remaining > 0, remaining);
+            }
+            owners[vehicle] = NO_OWNER;
+            versions[vehicle]++;
+            if (premium) {
+                premiumVehicles[owner] = remaining;
+                premiumCustomers.set(owner, remaining > 0);
+            }
+            return ReturnOutcome.RETURNED;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static boolean isPremium(byte brand, Set<Brand> premiumBrands) {
+        return brand != NO_BRAND && premiumBrands.contains(Brand.ofCode(brand));
+    }
+
+    // The codes, unlike the ordinals, stay the same when brands are added
+    private static byte code(Brand brand) {
+        if (brand.getCode() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Brand code " + brand.getCode() + " of " + brand + " does not fit in a byte");
+        }
+        return (byte) brand.getCode();
+    }
+
+    // Changes are logged before they are applied, so a change that cannot be logged is not made either
+    private void logVehicle(String registration, String owner, byte brand, long version) {
+        if (changeLog != null) {
+            try {
+                changeLog.vehicle(registration, owner, brand, version);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Could not log change of vehicle " + registration, e);
+            }
+        }
+    }
+
+    private void logCustomer(String orgNumber, boolean premium, int premiumVehicles) {
+        if (changeLog != null) {
+            try {
+                changeLog.customer(orgNumber, premium, premiumVehicles);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Could not log change of customer " + orgNumber, e);
+            }
+        }
+    }
+
+    // Called with either lock held, so that no change is made between the snapshot and truncating the log
+    private void snapshot() throws IOException {
+        long started = System.nanoTime();
+        try (SnapshotFile.Output output = new SnapshotFile.Output(directory.resolve(SNAPSHOT_FILE))) {
+            orgNumbers.writeTo(output);
+            long[] premiumWords = premiumCustomers.toLongArray();
+            output.putInt(premiumWords.length);
+            output.putLongs(premiumWords, premiumWords.length);
+            output.putInts(premiumVehicles, orgNumbers.size());
+            registrations.writeTo(output);
+            int vehicles = registrations.size();
+            output.putBytes(brands, vehicles);
+            output.putInts(owners, vehicles);
+            output.putLongs(versions, vehicles);
+            output.commit();
+        }
+        changeLog.truncate();
+        log.info("Wrote snapshot of {} vehicles and {} customers to {} in {} ms", registrations.size(),
+                orgNumbers.size(), directory, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void load(Path snapshot) throws IOException {
+        try (SnapshotFile.Input input = new SnapshotFile.Input(snapshot)) {
+            KeyDictionary orgNumbers = KeyDictionary.readFrom(input, initialCapacity);
+            int premiumWords = input.getLength(Long.BYTES);
+            BitSet premiumCustomers = BitSet.valueOf(input.getLongs(premiumWords, 0));
+            int customerCapacity = Math.max(orgNumbers.size(), initialCapacity);
+            int[] premiumVehicles = input.getInts(orgNumbers.size(), customerCapacity);
+            KeyDictionary registrations = KeyDictionary.readFrom(input, initialCapacity);
+            int vehicles = registrations.size();
+            int capacity = Math.max(vehicles, initialCapacity);
+            byte[] brands = input.getBytes(vehicles, capacity);
+            int[] owners = input.getInts(vehicles, capacity);
+            long[] versions = input.getLongs(vehicles, capacity);
+            input.verify();
+
+            this.orgNumbers = orgNumbers;
+            this.premiumCustomers = premiumCustomers;
+            this.premiumVehicles = premiumVehicles;
+            this.registrations = registrations;
+            this.brands = brands;
+            this.owners = owners;
+            this.versions = versions;
+        }
+    }
+
+    private Vehicle vehicle(int id) {
+        Vehicle vehicle = new Vehicle(registrations.key(id));
+        int owner = owners[id];
+        vehicle.setOwner(owner == NO_OWNER ? null : orgNumbers.key(owner));
+        byte brand = brands[id];
+        vehicle.setBrand(brand == NO_BRAND ? null : Brand.ofCode(brand));
+        vehicle.setVersion(versions[id]);
+        return vehicle;
+    }
+
+    private Customer customer(int id) {
+        Customer customer = new Customer(orgNumbers.key(id));
+        customer.setPremiumCustomer(premiumCustomers.get(id));
+        customer.setPremiumVehicles(premiumVehicles[id]);
+        return customer;
+    }
+
+    private void ensureVehicleCapacity(int capacity) {
+        if (capacity > brands.length) {
+            int newCapacity = Math.max(capacity, brands.length * 2);
+            brands = Arrays.copyOf(brands, newCapacity);
+            owners = Arrays.copyOf(owners, newCapacity);
+            versions = Arrays.copyOf(versions, newCapacity);
+        }
+    }
+
+    // Applies change log records, which are known to be valid, without checking versions or logging them again
+    private class Restorer implements ChangeLog.Target {
+
+        @Override
+        public void restoreVehicle(String registration, String owner, byte brand, long version) {
+            int id = registrations.find(registration);
+            if (id < 0) {
+                id = registrations.add(registration);
+                ensureVehicleCapacity(id + 1);
+            }
+            brands[id] = brand;
+            owners[id] = owner == null ? NO_OWNER : customerId(owner);
+            versions[id] = version;
+        }
+
+        @Override
+        public void restoreCustomer(String orgNumber, boolean premium, int premiumVehicles) {
+            int id = customerId(orgNumber);
+            premiumCustomers.set(id, premium);
+            InMemoryRepository.this.premiumVehicles[id] = premiumVehicles;
+        }
+
+        private int customerId(String orgNumber) {
+            int id = orgNumbers.find(orgNumber);
+            if (id < 0) {
+                id = orgNumbers.add(orgNumber);
+                ensureCustomerCapacity(id + 1);
+            }
+            return id;
+        }
+    }
+
+    private void ensureCustomerCapacity(int capacity) {
+        if (capacity > premiumVehicles.length) {
+            premiumVehicles = Arrays.copyOf(premiumVehicles, Math.max(capacity, premiumVehicles.length * 2));
+        }
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Arrays torn by a concurrent write, retried under the read lock below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
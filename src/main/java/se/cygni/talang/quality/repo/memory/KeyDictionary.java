@@ -0,0 +1,163 @@
+package se.cygni.talang.quality.repo.memory;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Dictionary encoding of string keys to dense int ids, without an object per key. The characters of
+ * all keys are stored back to back in one array, looked up through an open-addressing hash table
+ * with linear probing.
+ * <p>
+ * Not thread-safe. Keys are never removed, and the table is never more than half full, so a probe
+ * always terminates, even when {@link #find} races with {@link #add} under an optimistic read. Such
+ * a read may return a wrong result or throw, and must be validated by the caller.
+ */
+final class KeyDictionary {
+
+    private static final int EMPTY = 0;
+
+    private char[] chars;
+    private int charCount;
+    private int[] offsets;
+    private int[] hashes;
+    private int[] slots;
+    private int size;
+
+    KeyDictionary(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.chars = new char[capacity * 8];
+        this.offsets = new int[capacity + 1];
+        this.hashes = new int[capacity];
+        this.slots = new int[tableSize(capacity)];
+    }
+
+    private KeyDictionary(char[] chars, int charCount, int[] offsets, int[] hashes, int[] slots, int size) {
+        this.chars = chars;
+        this.charCount = charCount;
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.slots = slots;
+        this.size = size;
+    }
+
+    // The hash table is written as is, so changing hash() or the table layout changes the snapshot format
+    void writeTo(SnapshotFile.Output output) throws IOException {
+        output.putInt(size);
+        output.putInt(charCount);
+        output.putChars(chars, charCount);
+        output.putInts(offsets, size + 1);
+        output.putInts(hashes, size);
+        output.putInt(slots.length);
+        output.putInts(slots, slots.length);
+    }
+
+    static KeyDictionary readFrom(SnapshotFile.Input input, int initialCapacity) throws IOException {
+        int size = input.getLength(Integer.BYTES);
+        int charCount = input.getLength(Character.BYTES);
+        int capacity = Math.max(16, Math.max(size, initialCapacity));
+        char[] chars = input.getChars(charCount, capacity * 8);
+        int[] offsets = input.getInts(size + 1, capacity + 1);
+        int[] hashes = input.getInts(size, capacity);
+        int tableSize = input.getLength(Integer.BYTES);
+        if (Integer.bitCount(tableSize) != 1 || tableSize < 2 * size) {
+            throw new CorruptSnapshotException("Snapshot has an invalid key table size " + tableSize);
+        }
+        int[] slots = input.getInts(tableSize, 0);
+        KeyDictionary dictionary = new KeyDictionary(chars, charCount, offsets, hashes, slots, size);
+        if (tableSize < tableSize(capacity)) {
+            dictionary.rehash(capacity);
+        }
+        return dictionary;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int find(String key) {
+        int[] slots = this.slots;
+        int[] hashes = this.hashes;
+        int mask = slots.length - 1;
+        int hash = hash(key);
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && keyEquals(id, key)) {
+                return id;
+            }
+        }
+    }
+
+    int add(String key) {
+        if (size == hashes.length) {
+            grow();
+        }
+        int id = size;
+        int length = key.length();
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+        key.getChars(0, length, chars, charCount);
+        charCount += length;
+        offsets[id + 1] = charCount;
+        hashes[id] = hash(key);
+        insert(slots, id);
+        size++;
+        return id;
+    }
+
+    String key(int id) {
+        int start = offsets[id];
+        return new String(chars, start, offsets[id + 1] - start);
+    }
+
+    private boolean keyEquals(int id, String key) {
+        char[] chars = this.chars;
+        int start = offsets[id];
+        int length = offsets[id + 1] - start;
+        if (length != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        rehash(hashes.length * 2);
+    }
+
+    private void rehash(int capacity) {
+        offsets = Arrays.copyOf(offsets, capacity + 1);
+        hashes = Arrays.copyOf(hashes, capacity);
+        int[] resized = new int[tableSize(capacity)];
+        for (int id = 0; id < size; id++) {
+            insert(resized, id);
+        }
+        slots = resized;
+    }
+
+    private void insert(int[] table, int id) {
+        int mask = table.length - 1;
+        int slot = hashes[id] & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(capacity - 1) << 2;
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,272 @@
+package se.cygni.talang.quality.repo.memory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file of primitive arrays: a header with a magic number and the format version, the
+ * arrays, and a trailing CRC32 of everything before it. All values are little endian, so that
+ * arrays can be bulk copied out of a memory mapping on the common platforms.
+ * <p>
+ * A file is written to a temporary file next to the target and moved in place when complete, so a
+ * reader never sees a half written snapshot under the target name.
+ */
+final class SnapshotFile {
+
+    static final int MAGIC = 0x464C5453;
+    // Version 2 added the premium vehicle counts, version 3 stores the brand codes instead of the
+    // ordinals, which the earlier versions cannot be read back with once brands are reordered
+    static final int FORMAT_VERSION = 3;
+    static final int MIN_FORMAT_VERSION = 3;
+
+    private static final int TRAILER_SIZE = Long.BYTES;
+    // Mappings are limited to 2 GB, large arrays are read in windows of this size
+    private static final int MAX_WINDOW = 1 << 30;
+
+    private SnapshotFile() {
+    }
+
+    static final class Output implements Closeable {
+
+        private final Path target;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 checksum = new CRC32();
+        private boolean committed;
+
+        Output(Path target) throws IOException {
+            this.target = target;
+            this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            putInt(MAGIC);
+            putInt(FORMAT_VERSION);
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putBytes(byte[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensureRemaining(1);
+                int count = Math.min(length - offset, buffer.remaining());
+                buffer.put(values, offset, count);
+                offset += count;
+            }
+        }
+
+        void putChars(char[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensureRemaining(Character.BYTES);
+                int count = Math.min(length - offset, buffer.remaining() / Character.BYTES);
+                buffer.asCharBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Character.BYTES);
+                offset += count;
+            }
+        }
+
+        void putInts(int[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensureRemaining(Integer.BYTES);
+                int count = Math.min(length - offset, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
+            }
+        }
+
+        void putLongs(long[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensureRemaining(Long.BYTES);
+                int count = Math.min(length - offset, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                offset += count;
+            }
+        }
+
+        void commit() throws IOException {
+            flush();
+            buffer.putLong(checksum.getValue());
+            buffer.flip();
+            writeFully();
+            channel.force(true);
+            channel.close();
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            writeFully();
+            buffer.clear();
+        }
+
+        private void writeFully() throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    static final class Input implements Closeable {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final long end;
+        private final CRC32 checksum = new CRC32();
+        private final int version;
+        private long position;
+
+        Input(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.end = channel.size() - TRAILER_SIZE;
+            if (end < 2 * Integer.BYTES) {
+                throw corrupt("file is truncated");
+            }
+            if (getInt() != MAGIC) {
+                throw corrupt("not a snapshot file");
+            }
+            this.version = getInt();
+            if (version < MIN_FORMAT_VERSION || version > FORMAT_VERSION) {
+                throw new CorruptSnapshotException("Snapshot " + file + " has format version " + version +
+                        ", only versions " + MIN_FORMAT_VERSION + " to " + FORMAT_VERSION + " are supported");
+            }
+        }
+
+        int version() {
+            return version;
+        }
+
+        int getInt() throws IOException {
+            return map(Integer.BYTES).getInt();
+        }
+
+        long getLong() throws IOException {
+            return map(Long.BYTES).getLong();
+        }
+
+        /**
+         * Reads a length and checks that the file can hold that many values, before anything is
+         * allocated for them.
+         */
+        int getLength(int bytesPerValue) throws IOException {
+            int length = getInt();
+            if (length < 0 || (long) length * bytesPerValue > end - position) {
+                throw corrupt("invalid length " + length);
+            }
+            return length;
+        }
+
+        byte[] getBytes(int length, int capacity) throws IOException {
+            byte[] values = new byte[Math.max(length, capacity)];
+            for (int offset = 0; offset < length; ) {
+                int count = Math.min(length - offset, MAX_WINDOW);
+                map(count).get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+
+        char[] getChars(int length, int capacity) throws IOException {
+            char[] values = new char[Math.max(length, capacity)];
+            for (int offset = 0; offset < length; ) {
+                int count = Math.min(length - offset, MAX_WINDOW / Character.BYTES);
+                map((long) count * Character.BYTES).asCharBuffer().get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+
+        int[] getInts(int length, int capacity) throws IOException {
+            int[] values = new int[Math.max(length, capacity)];
+            for (int offset = 0; offset < length; ) {
+                int count = Math.min(length - offset, MAX_WINDOW / Integer.BYTES);
+                map((long) count * Integer.BYTES).asIntBuffer().get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+
+        long[] getLongs(int length, int capacity) throws IOException {
+            long[] values = new long[Math.max(length, capacity)];
+            for (int offset = 0; offset < length; ) {
+                int count = Math.min(length - offset, MAX_WINDOW / Long.BYTES);
+                map((long) count * Long.BYTES).asLongBuffer().get(values, offset, count);
+                offset += count;
+            }
+            return values;
+        }
+
+        /**
+         * Checks that everything has been read and that the checksum matches. Nothing read from the
+         * file can be trusted before this has returned.
+         */
+        void verify() throws IOException {
+            if (position != end) {
+                throw corrupt((end - position) + " unexpected bytes at the end");
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, end + trailer.position()) < 0) {
+                    throw corrupt("file is truncated");
+                }
+            }
+            if (trailer.flip().getLong() != checksum.getValue()) {
+                throw corrupt("checksum mismatch");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private ByteBuffer map(long bytes) throws IOException {
+            if (bytes > end - position) {
+                throw corrupt("file is truncated");
+            }
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+            position += bytes;
+            checksum.update(window.duplicate());
+            return window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private CorruptSnapshotException corrupt(String reason) {
+            return new CorruptSnapshotException("Snapshot " + file + " is corrupt: " + reason);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package se.cygni.talang.quality.repo.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.ReshardingResult;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the vehicles of a {@link ShardedRepository} to another number of shards while it is in
+ * use. The customers and premium brands are first copied to the shards that are new, then each
+ * shard of the old layout is walked in registration order and the vehicles that belong elsewhere
+ * are moved in batches. A batch is inserted into its new shard before it is deleted from the old
+ * one, and the premium vehicle counts of the owners are recounted on both.
+ * <p>
+ * The layout, including that resharding is in progress, is stored before anything is moved. If it
+ * is interrupted, resharding to the same number of shards again completes it.
+ * <p>
+ * The other application nodes would keep routing with the layout they loaded at startup, so
+ * resharding is refused while any other node is running, see {@link ShardNodes}.
+ * <p>
+ * Only uses SQL that both Postgres and H2 run.
+ */
+public class Resharder {
+
+    private static final Logger log = LoggerFactory.getLogger(Resharder.class);
+
+    private final ShardedRepository repository;
+    private final List<NamedParameterJdbcTemplate> jdbcTemplates;
+    private final List<TransactionTemplate> transactionTemplates;
+    private final ShardNodes nodes;
+    private final int batchSize;
+
+    public Resharder(ShardedRepository repository, List<DataSource> dataSources, ShardNodes nodes, int batchSize) {
+        if (dataSources.size() != repository.getConfiguredShards()) {
+            throw new IllegalArgumentException("Expected a data source for each of the " +
+                    repository.getConfiguredShards() + " shards, got " + dataSources.size());
+        }
+        this.repository = repository;
+        this.jdbcTemplates = dataSources.stream().map(NamedParameterJdbcTemplate::new).collect(Collectors.toList());
+        this.transactionTemplates = dataSources.stream()
+                .map(dataSource -> new TransactionTemplate(new DataSourceTransactionManager(dataSource)))
+                .collect(Collectors.toList());
+        this.nodes = nodes;
+        this.batchSize = batchSize;
+    }
+
+    public synchronized ReshardingResult reshard(int shardCount) {
+        if (shardCount < 1 || shardCount > jdbcTemplates.size()) {
+            throw new IllegalArgumentException("The number of shards must be between 1 and " + jdbcTemplates.size() +
+                    ", was " + shardCount);
+        }
+        ShardLayout current = repository.getLayout();
+        if (current.isResharding() && current.getTargetShardCount() != shardCount) {
+            throw new IllegalStateException("Resharding to " + current.getTargetShardCount() +
+                    " shards is not complete, complete it before resharding to " + shardCount);
+        }
+        ShardLayout layout = new ShardLayout(current.getShardCount(), shardCount);
+        log.info("Resharding from {} to {} shards", layout.getShardCount(), shardCount);
+        layout.save(jdbcTemplates.get(0));
+        // Checked after the layout is stored, a node starting meanwhile then sees that resharding has begun
+        List<String> others = nodes.otherRunningNodes();
+        if (!others.isEmpty()) {
+            current.save(jdbcTemplates.get(0));
+            throw new IllegalStateException("Resharding needs this to be the only node running, stop the others first: " + others);
+        }
+        repository.setLayout(layout);
+
+        for (int shard = layout.getShardCount(); shard < shardCount; shard++) {
+            copyCustomers(shard);
+        }
+        Set<Brand> premiumBrands = Set.copyOf(repository.getPremiumBrands());
+        long moved = 0;
+        for (int shard = 0; shard < layout.getShardCount(); shard++) {
+            moved += moveVehicles(layout, shard, premiumBrands);
+        }
+
+        ShardLayout completed = ShardLayout.of(shardCount);
+        completed.save(jdbcTemplates.get(0));
+        repository.setLayout(completed);
+        log.info("Resharded from {} to {} shards, {} vehicles moved", layout.getShardCount(), shardCount, moved);
+        return new ReshardingResult(layout.getShardCount(), shardCount, moved);
+    }
+
+    /**
+     * Copies the premium brands and the customers that the shard lacks from the first shard, with
+     * no premium vehicles since it has no vehicles yet. Customers saved meanwhile are saved to this
+     * shard by the repository.
+     */
+    private void copyCustomers(int shard) {
+        NamedParameterJdbcTemplate source = jdbcTemplates.get(0);
+        NamedParameterJdbcTemplate target = jdbcTemplates.get(shard);
+
+        Set<Short> brands = new HashSet<>(target.queryForList("SELECT brand FROM premiumBrands",
+                new MapSqlParameterSource(), Short.class));
+        for (Short brand : source.queryForList("SELECT brand FROM premiumBrands", new MapSqlParameterSource(), Short.class)) {
+            if (brands.add(brand)) {
+                target.update("INSERT INTO premiumBrands (brand) VALUES (:brand)", Map.of("brand", brand));
+            }
+        }
+
+        String after = "";
+        while (true) {
+            List<String> orgNumbers = source.queryForList("SELECT organisationNumber FROM customers " +
+                            "WHERE organisationNumber > :after ORDER BY organisationNumber LIMIT :limit",
+                    new MapSqlParameterSource().addValue("after", after).addValue("limit", batchSize), String.class);
+            if (orgNumbers.isEmpty()) {
+                return;
+            }
+            Set<String> existing = new HashSet<>(target.queryForList(
+                    "SELECT organisationNumber FROM customers WHERE organisationNumber IN (:orgNumbers)",
+                    Map.of("orgNumbers", orgNumbers), String.class));
+            SqlParameterSource[] inserts = orgNumbers.stream()
+                    .filter(orgNumber -> !existing.contains(orgNumber))
+                    .map(orgNumber -> new MapSqlParameterSource("orgNum", orgNumber))
+                    .toArray(SqlParameterSource[]::new);
+            if (inserts.length > 0) {
+                target.batchUpdate("INSERT INTO customers (organisationNumber, premiumCustomer, premiumVehicles) " +
+                        "VALUES (:orgNum, false, 0)", inserts);
+            }
+            after = orgNumbers.get(orgNumbers.size() - 1);
+        }
+    }
+
+    private long moveVehicles(ShardLayout layout, int shard, Set<Brand> premiumBrands) {
+        long moved = 0;
+        String after = "";
+        while (true) {
+            String from = after;
+            MoveBatch batch = repository.exclusively(() -> moveBatch(layout, shard, from, premiumBrands));
+            if (batch.last == null) {
+                log.info("Moved {} vehicles off shard {}", moved, shard);
+                return moved;
+            }
+            moved += batch.moved;
+            after = batch.last;
+        }
+    }
+
+    /**
+     * Moves the vehicles that belong elsewhere among the next batch of the shard. Runs while no other
+     * call is made for a vehicle, so the batch cannot change while it is moved.
+     */
+    private MoveBatch moveBatch(ShardLayout layout, int shard, String after, Set<Brand> premiumBrands) {
+        List<Vehicle> vehicles = jdbcTemplates.get(shard).query(
+                "SELECT registrationNumber, owner, brand, version FROM vehicles " +
+                        "WHERE registrationNumber > :after ORDER BY registrationNumber LIMIT :limit",
+                new MapSqlParameterSource().addValue("after", after).addValue("limit", batchSize),
+                new DatabaseRepository.VehicleRowMapper());
+        if (vehicles.isEmpty()) {
+            return new MoveBatch(null, 0);
+        }
+        Map<Integer, List<Vehicle>> byTarget = new HashMap<>();
+        for (Vehicle vehicle : vehicles) {
+            int target = layout.shardOf(vehicle.getRegistration());
+            if (target != shard) {
+                byTarget.computeIfAbsent(target, t -> new ArrayList<>()).add(vehicle);
+            }
+        }
+        int moved = 0;
+        for (Map.Entry<Integer, List<Vehicle>> entry : byTarget.entrySet()) {
+            List<Vehicle> moving = entry.getValue();
+            Set<String> owners = premiumOwners(moving, premiumBrands);
+            // Into the new shard first, so that a vehicle is always in at least one of them
+            inTransaction(entry.getKey(), jdbcTemplate -> {
+                insertVehicles(jdbcTemplate, moving);
+                recountPremiumVehicles(jdbcTemplate, owners, premiumBrands);
+            });
+            inTransaction(shard, jdbcTemplate -> {
+                jdbcTemplate.update("DELETE FROM vehicles WHERE registrationNumber IN (:registrations)",
+                        Map.of("registrations", registrations(moving)));
+                recountPremiumVehicles(jdbcTemplate, owners, premiumBrands);
+            });
+            moved += moving.size();
+        }
+        return new MoveBatch(vehicles.get(vehicles.size() - 1).getRegistration(), moved);
+    }
+
+    // Replaces copies left by an interrupted earlier run, the old shard still has the current rows
+    private static void insertVehicles(NamedParameterJdbcTemplate jdbcTemplate, List<Vehicle> vehicles) {
+        jdbcTemplate.update("DELETE FROM vehicles WHERE registrationNumber IN (:registrations)",
+                Map.of("registrations", registrations(vehicles)));
+        SqlParameterSource[] params = vehicles.stream()
+                .map(vehicle -> new MapSqlParameterSource()
+                        .addValue("regNum", vehicle.getRegistration())
+                        .addValue("owner", vehicle.getOwner())
+                        .addValue("brand", vehicle.getBrand() == null ? null : vehicle.getBrand().getCode())
+                        .addValue("version", vehicle.getVersion()))
+                .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate("INSERT INTO vehicles (registrationNumber, owner, brand, version) " +
+                "VALUES (:regNum, :owner, :brand, :version)", params);
+    }
+
+    /**
+     * Counts the owners' premium vehicles on the shard again rather than adjusting the counts, so
+     * that a batch moved twice after an interruption is not counted twice.
+     */
+    private static void recountPremiumVehicles(NamedParameterJdbcTemplate jdbcTemplate, Set<String> owners,
+                                               Set<Brand> premiumBrands) {
+        if (owners.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("owners", owners)
+                .addValue("premiumBrands", premiumBrands.stream().map(Brand::getCode).collect(Collectors.toList()));
+        jdbcTemplate.update("UPDATE customers SET premiumVehicles=(" +
+                "   SELECT count(*) FROM vehicles WHERE owner=customers.organisationNumber AND brand IN (:premiumBrands)) " +
+                "WHERE organisationNumber IN (:owners)", params);
+        jdbcTemplate.update("UPDATE customers SET premiumCustomer=premiumVehicles > 0 WHERE organisationNumber IN (:owners)",
+                params);
+    }
+
+    private void inTransaction(int shard, Consumer<NamedParameterJdbcTemplate> work) {
+        transactionTemplates.get(shard).executeWithoutResult(status -> work.accept(jdbcTemplates.get(shard)));
+    }
+
+    private static Set<String> premiumOwners(List<Vehicle> vehicles, Set<Brand> premiumBrands) {
+        return vehicles.stream()
+                .filter(vehicle -> vehicle.getOwner() != null && premiumBrands.contains(vehicle.getBrand()))
+                .map(Vehicle::getOwner)
+                .collect(Collectors.toSet());
+    }
+
+    private static List<String> registrations(List<Vehicle> vehicles) {
+        return vehicles.stream().map(Vehicle::getRegistration).collect(Collectors.toList());
+    }
+
+    private static class MoveBatch {
+        // Null when there was nothing left on the shard
+        private final String last;
+        private final int moved;
+
+        private MoveBatch(String last, int moved) {
+            this.last = last;
+            this.moved = moved;
+        }
+    }
+}
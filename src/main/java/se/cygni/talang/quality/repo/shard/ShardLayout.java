@@ -0,0 +1,113 @@
+package se.cygni.talang.quality.repo.shard;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The number of shards the vehicles are partitioned over, and while resharding, the number they
+ * are being moved to. Kept in the shardLayout table of the first shard, so that a restart during
+ * resharding still finds the vehicles that have been moved.
+ */
+public final class ShardLayout {
+
+    private final int shardCount;
+    private final int targetShardCount;
+
+    public ShardLayout(int shardCount, int targetShardCount) {
+        this.shardCount = shardCount;
+        this.targetShardCount = targetShardCount;
+    }
+
+    public static ShardLayout of(int shardCount) {
+        return new ShardLayout(shardCount, shardCount);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getTargetShardCount() {
+        return targetShardCount;
+    }
+
+    public boolean isResharding() {
+        return shardCount != targetShardCount;
+    }
+
+    /**
+     * The shards that may hold vehicles, those of both layouts while resharding.
+     */
+    public int activeShards() {
+        return Math.max(shardCount, targetShardCount);
+    }
+
+    /**
+     * The shard of the registration in the layout being moved to. Vehicles that have not been moved
+     * yet are in {@link #sourceShardOf}.
+     */
+    public int shardOf(String registration) {
+        return shardOf(registration, targetShardCount);
+    }
+
+    public int sourceShardOf(String registration) {
+        return shardOf(registration, shardCount);
+    }
+
+    /**
+     * Jump consistent hash (Lamping and Veach), which moves only the keys that have to move when the
+     * number of shards changes: growing from n shards only moves keys to the new shards, and
+     * shrinking only moves the keys of the removed ones.
+     */
+    static int shardOf(String key, int shardCount) {
+        long hash = hash(key);
+        long shard = -1;
+        long next = 0;
+        while (next < shardCount) {
+            shard = next;
+            hash = hash * 2862933555777941757L + 1;
+            next = (long) ((shard + 1) * ((double) (1L << 31) / (double) ((hash >>> 33) + 1)));
+        }
+        return (int) shard;
+    }
+
+    // FNV-1a of the UTF-8 bytes, stable across JVMs and releases unlike String.hashCode's spread
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Reads the layout, and stores the given number of shards as the layout when there is none yet.
+     */
+    static ShardLayout load(NamedParameterJdbcTemplate jdbcTemplate, int initialShardCount) {
+        List<ShardLayout> layouts = jdbcTemplate.query(
+                "SELECT shardCount, targetShardCount FROM shardLayout WHERE id=0", new MapSqlParameterSource(),
+                (rs, rowNum) -> new ShardLayout(rs.getInt("shardCount"), rs.getInt("targetShardCount")));
+        if (!layouts.isEmpty()) {
+            return layouts.get(0);
+        }
+        ShardLayout layout = of(initialShardCount);
+        jdbcTemplate.update("INSERT INTO shardLayout (id, shardCount, targetShardCount) VALUES (0, :shardCount, :shardCount)",
+                new MapSqlParameterSource("shardCount", initialShardCount));
+        return layout;
+    }
+
+    void save(NamedParameterJdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("UPDATE shardLayout SET shardCount=:shardCount, targetShardCount=:targetShardCount WHERE id=0",
+                new MapSqlParameterSource()
+                        .addValue("shardCount", shardCount)
+                        .addValue("targetShardCount", targetShardCount));
+    }
+
+    @Override
+    public String toString() {
+        return isResharding() ? shardCount + " -> " + targetShardCount + " shards" : shardCount + " shards";
+    }
+}
@@ -0,0 +1,90 @@
+package se.cygni.talang.quality.repo.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application nodes using the shards, registered in the shardNodes table of the first shard and
+ * kept there by a heartbeat. Each node loads the {@link ShardLayout} once at startup, so the
+ * {@link Resharder} only runs while no other node is, and a node does not start while another one
+ * is resharding. A node counts as running until it has missed a few heartbeats.
+ * <p>
+ * The layout and the registrations are written before the other one is read, by the resharding
+ * node and by a starting node alike, so at least one of them sees the other and backs off.
+ */
+public class ShardNodes implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardNodes.class);
+    private static final int MISSED_HEARTBEATS = 3;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Duration heartbeatInterval;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ScheduledExecutorService heartbeats;
+
+    public ShardNodes(NamedParameterJdbcTemplate jdbcTemplate, Duration heartbeatInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.heartbeatInterval = heartbeatInterval;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-node-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers this node, and keeps it registered until closed.
+     */
+    public void start() {
+        heartbeat();
+        long interval = heartbeatInterval.toMillis();
+        heartbeats.scheduleWithFixedDelay(() -> {
+            try {
+                heartbeat();
+            } catch (RuntimeException e) {
+                log.warn("Could not register node {} with the shards", nodeId, e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * The other nodes that have sent a heartbeat recently.
+     */
+    public List<String> otherRunningNodes() {
+        Timestamp since = Timestamp.from(Instant.now().minus(heartbeatInterval.multipliedBy(MISSED_HEARTBEATS)));
+        return jdbcTemplate.queryForList("SELECT nodeId FROM shardNodes WHERE nodeId<>:nodeId AND lastSeen>:since",
+                new MapSqlParameterSource()
+                        .addValue("nodeId", nodeId)
+                        .addValue("since", since), String.class);
+    }
+
+    @Override
+    public void close() {
+        heartbeats.shutdownNow();
+        jdbcTemplate.update("DELETE FROM shardNodes WHERE nodeId=:nodeId", new MapSqlParameterSource("nodeId", nodeId));
+    }
+
+    void heartbeat() {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("nodeId", nodeId)
+                .addValue("now", Timestamp.from(Instant.now()));
+        if (jdbcTemplate.update("UPDATE shardNodes SET lastSeen=:now WHERE nodeId=:nodeId", params) == 0) {
+            jdbcTemplate.update("INSERT INTO shardNodes (nodeId, lastSeen) VALUES (:nodeId, :now)", params);
+        }
+    }
+}
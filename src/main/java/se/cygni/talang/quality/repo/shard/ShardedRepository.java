@@ -0,0 +1,387 @@
+package se.cygni.talang.quality.repo.shard;
+
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Partitions the vehicles over several repositories, usually a database each, by a stable hash of
+ * the registration number, see {@link ShardLayout}. Calls for one vehicle go to its shard only, and
+ * calls for several vehicles are split per shard and run on the shards in parallel.
+ * <p>
+ * Customers are replicated to every shard, so that assigning or returning a vehicle only involves
+ * the vehicle's shard and stays atomic there. Each copy of a customer counts the premium vehicles
+ * on its own shard; reads add the counts up, and a customer is premium if any copy is. The premium
+ * brands are the same on every shard.
+ * <p>
+ * While the {@link Resharder} moves vehicles to another number of shards, a vehicle is in either
+ * its shard of the old layout or that of the new one. Moves are done in batches that exclude every
+ * other call for a vehicle, so each such call sees the vehicle in exactly one of them.
+ */
+public class ShardedRepository implements Repository, AutoCloseable {
+
+    private final List<Repository> shards;
+    private final ExecutorService fanOut;
+    // Held shared by calls for vehicles, and exclusively while a batch of vehicles is moved
+    private final ReentrantReadWriteLock moveLock = new ReentrantReadWriteLock();
+    // Scans can be long, they hold this one instead so that the other calls do not queue behind a move waiting for them
+    private final ReentrantReadWriteLock scanLock = new ReentrantReadWriteLock();
+
+    private volatile ShardLayout layout;
+
+    public ShardedRepository(List<Repository> shards, ShardLayout layout) {
+        if (layout.activeShards() > shards.size()) {
+            throw new IllegalArgumentException("The layout of " + layout + " needs more than the " +
+                    shards.size() + " shards configured");
+        }
+        this.shards = List.copyOf(shards);
+        this.layout = layout;
+        AtomicInteger threads = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-fan-out-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ShardLayout getLayout() {
+        return layout;
+    }
+
+    public int getConfiguredShards() {
+        return shards.size();
+    }
+
+    @Override
+    public Vehicle getVehicleByRegistration(String registration) {
+        return withVehicles(() -> shards.get(locate(registration)).getVehicleByRegistration(registration));
+    }
+
+    @Override
+    public Customer getCustomerByOrgNumber(String orgNumber) {
+        List<Customer> copies = onActiveShards(shard -> shard.getCustomerByOrgNumber(orgNumber));
+        return merge(orgNumber, copies);
+    }
+
+    @Override
+    public List<Brand> getPremiumBrands() {
+        return shards.get(0).getPremiumBrands();
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegistration(Collection<String> registrations) {
+        return withVehicles(() -> {
+            ShardLayout layout = this.layout;
+            if (!layout.isResharding()) {
+                return getVehiclesByRegistration(registrations, layout::shardOf);
+            }
+            // Those not found where they were have been moved, or do not exist
+            List<Vehicle> vehicles = getVehiclesByRegistration(registrations, layout::sourceShardOf);
+            Set<String> found = vehicles.stream().map(Vehicle::getRegistration).collect(Collectors.toSet());
+            List<String> moved = registrations.stream()
+                    .filter(registration -> !found.contains(registration) &&
+                            layout.shardOf(registration) != layout.sourceShardOf(registration))
+                    .collect(Collectors.toList());
+            vehicles.addAll(getVehiclesByRegistration(moved, layout::shardOf));
+            return vehicles;
+        });
+    }
+
+    @Override
+    public List<Customer> getCustomersByOrgNumber(Collection<String> orgNumbers) {
+        Map<String, List<Customer>> copies = new LinkedHashMap<>();
+        for (List<Customer> customers : onActiveShards(shard -> shard.getCustomersByOrgNumber(orgNumbers))) {
+            for (Customer customer : customers) {
+                copies.computeIfAbsent(customer.getOrganisationNumber(), orgNumber -> new ArrayList<>()).add(customer);
+            }
+        }
+        return copies.entrySet().stream()
+                .map(entry -> merge(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Scans the shards one at a time, so that the action is called from one thread. Resharding
+     * waits for running scans before it moves the next batch of vehicles.
+     */
+    @Override
+    public void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action) {
+        Lock lock = scanLock.readLock();
+        lock.lock();
+        try {
+            for (int shard = 0; shard < layout.activeShards(); shard++) {
+                shards.get(shard).forEachVehicle(owner, brand, action);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void forEachRegistration(Consumer<String> action) {
+        Lock lock = scanLock.readLock();
+        lock.lock();
+        try {
+            for (int shard = 0; shard < layout.activeShards(); shard++) {
+                shards.get(shard).forEachRegistration(action);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Every shard has all customers
+    @Override
+    public void forEachOrgNumber(Consumer<String> action) {
+        shards.get(0).forEachOrgNumber(action);
+    }
+
+    /**
+     * Takes a page from every shard and merges them, so a page costs one seek per shard.
+     */
+    @Override
+    public List<Vehicle> getVehiclesByOwner(String owner, String afterRegistration, int limit) {
+        List<List<Vehicle>> pages = withVehicles(() ->
+                onActiveShards(shard -> shard.getVehiclesByOwner(owner, afterRegistration, limit)));
+        return pages.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(Vehicle::getRegistration))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) {
+        withVehicles(() -> {
+            shards.get(locate(vehicle.getRegistration())).saveVehicle(vehicle);
+            return null;
+        });
+    }
+
+    /**
+     * Saves the customer to its own shard and inserts it on every other shard that lacks it. The
+     * premium counters of existing copies are left as they are, since each counts the premium
+     * vehicles that assignments on its own shard have raised. A new copy on the customer's own shard
+     * gets the premium vehicles, the others none, so that the sum read back for a new customer is the
+     * one saved. Holds the move lock, so that a customer saved while resharding begins is also saved
+     * to the new shards.
+     */
+    @Override
+    public void saveCustomer(Customer customer) {
+        saveCustomer(customer, true);
+    }
+
+    // Existing copies are left as they are altogether
+    @Override
+    public void insertCustomer(Customer customer) {
+        saveCustomer(customer, false);
+    }
+
+    private void saveCustomer(Customer customer, boolean update) {
+        withVehicles(() -> {
+            int activeShards = layout.activeShards();
+            int home = ShardLayout.shardOf(customer.getOrganisationNumber(), activeShards);
+            List<Customer> copies = new ArrayList<>(activeShards);
+            for (int shard = 0; shard < activeShards; shard++) {
+                Customer copy = new Customer(customer.getOrganisationNumber());
+                if (shard == home) {
+                    copy.setPremiumCustomer(customer.isPremiumCustomer());
+                    copy.setPremiumVehicles(customer.getPremiumVehicles());
+                }
+                copies.add(copy);
+            }
+            return inParallel(indexes(activeShards), shard -> {
+                if (update && shard == home) {
+                    shards.get(shard).saveCustomer(copies.get(shard));
+                } else {
+                    shards.get(shard).insertCustomer(copies.get(shard));
+                }
+                return null;
+            });
+        });
+    }
+
+    @Override
+    public AssignmentOutcome assignOwner(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        return withVehicles(() -> shards.get(locate(registration)).assignOwner(ownerOrgNumber, registration, premiumBrands));
+    }
+
+    @Override
+    public ReturnOutcome returnVehicle(String ownerOrgNumber, String registration, Set<Brand> premiumBrands) {
+        return withVehicles(() -> shards.get(locate(registration)).returnVehicle(ownerOrgNumber, registration, premiumBrands));
+    }
+
+    /**
+     * Splits the batch per shard, keeping the order within each, and assigns on the shards in
+     * parallel. Each shard's part is atomic, the batch as a whole is not.
+     */
+    @Override
+    public List<AssignmentOutcome> assignOwners(List<Assignment> assignments, Set<Brand> premiumBrands) {
+        return withVehicles(() -> {
+            Map<Integer, List<Integer>> indexesByShard = new HashMap<>();
+            for (int i = 0; i < assignments.size(); i++) {
+                indexesByShard.computeIfAbsent(locate(assignments.get(i).getVehicleRegistration()),
+                        shard -> new ArrayList<>()).add(i);
+            }
+            List<Map.Entry<Integer, List<Integer>>> parts = new ArrayList<>(indexesByShard.entrySet());
+            List<List<AssignmentOutcome>> partOutcomes = inParallel(parts, part -> shards.get(part.getKey()).assignOwners(
+                    part.getValue().stream().map(assignments::get).collect(Collectors.toList()), premiumBrands));
+
+            AssignmentOutcome[] outcomes = new AssignmentOutcome[assignments.size()];
+            for (int i = 0; i < parts.size(); i++) {
+                List<Integer> indexes = parts.get(i).getValue();
+                for (int j = 0; j < indexes.size(); j++) {
+                    outcomes[indexes.get(j)] = partOutcomes.get(i).get(j);
+                }
+            }
+            return List.of(outcomes);
+        });
+    }
+
+    @Override
+    public void close() {
+        fanOut.shutdown();
+    }
+
+    Repository shard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Runs the action while no other call for a vehicle is made, and no scan is running.
+     */
+    <T> T exclusively(Supplier<T> action) {
+        // Scans first, the other calls go on while waiting for them
+        Lock scans = scanLock.writeLock();
+        scans.lock();
+        try {
+            Lock moves = moveLock.writeLock();
+            moves.lock();
+            try {
+                return action.get();
+            } finally {
+                moves.unlock();
+            }
+        } finally {
+            scans.unlock();
+        }
+    }
+
+    void setLayout(ShardLayout layout) {
+        exclusively(() -> {
+            this.layout = layout;
+            return null;
+        });
+    }
+
+    private <T> T withVehicles(Supplier<T> action) {
+        Lock lock = moveLock.readLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The shard the vehicle is in, or should be inserted into. Called with the move lock held, so
+     * the vehicle cannot move meanwhile.
+     */
+    private int locate(String registration) {
+        if (registration == null) {
+            // Not found on whichever shard
+            return 0;
+        }
+        ShardLayout layout = this.layout;
+        int shard = layout.shardOf(registration);
+        if (layout.isResharding()) {
+            int source = layout.sourceShardOf(registration);
+            if (source != shard && shards.get(source).getVehicleByRegistration(registration) != null) {
+                return source;
+            }
+        }
+        return shard;
+    }
+
+    private List<Vehicle> getVehiclesByRegistration(Collection<String> registrations, Function<String, Integer> shardOf) {
+        Map<Integer, List<String>> byShard = registrations.stream().collect(Collectors.groupingBy(shardOf));
+        List<Map.Entry<Integer, List<String>>> parts = new ArrayList<>(byShard.entrySet());
+        List<Vehicle> vehicles = new ArrayList<>(registrations.size());
+        inParallel(parts, part -> shards.get(part.getKey()).getVehiclesByRegistration(part.getValue()))
+                .forEach(vehicles::addAll);
+        return vehicles;
+    }
+
+    private <T> List<T> onActiveShards(Function<Repository, T> call) {
+        return inParallel(shards.subList(0, layout.activeShards()), call);
+    }
+
+    private <S, T> List<T> inParallel(List<S> parts, Function<S, T> call) {
+        if (parts.size() == 1) {
+            return List.of(call.apply(parts.get(0)));
+        }
+        List<CompletableFuture<T>> futures = parts.stream()
+                .map(part -> CompletableFuture.supplyAsync(() -> call.apply(part), fanOut))
+                .collect(Collectors.toList());
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private static List<Integer> indexes(int count) {
+        List<Integer> indexes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private static Customer merge(String orgNumber, List<Customer> copies) {
+        Customer merged = null;
+        for (Customer copy : copies) {
+            if (copy == null) {
+                continue;
+            }
+            if (merged == null) {
+                merged = new Customer(orgNumber);
+            }
+            merged.setPremiumVehicles(merged.getPremiumVehicles() + copy.getPremiumVehicles());
+            merged.setPremiumCustomer(merged.isPremiumCustomer() || copy.isPremiumCustomer());
+        }
+        return merged;
+    }
+}
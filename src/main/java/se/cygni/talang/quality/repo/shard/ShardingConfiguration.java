@@ -0,0 +1,144 @@
+package se.cygni.talang.quality.repo.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.TransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import se.cygni.talang.quality.repo.BrandCodeMigration;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+import se.cygni.talang.quality.repo.Repository;
+import se.cygni.talang.quality.repo.SchemaInitializer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Configuration
+@ConditionalOnProperty(name = "repository.type", havingValue = "sharded")
+public class ShardingConfiguration {
+
+    @Bean
+    public ShardDataSources shardDataSources(@Value("${repository.shards.urls}") List<String> urls,
+                                             @Value("${repository.shards.username:${spring.datasource.username:}}") String username,
+                                             @Value("${repository.shards.password:${spring.datasource.password:}}") String password,
+                                             @Value("${repository.shards.pool-size:10}") int poolSize,
+                                             @Value("${repository.shards.initialize-schema:true}") boolean initializeSchema,
+                                             @Value("${outbox.enabled:false}") boolean outbox) {
+        // The shards do not write the outbox, and no publisher drains them
+        if (outbox) {
+            throw new IllegalStateException("The outbox is not supported with repository.type=sharded, " +
+                    "set outbox.enabled=false");
+        }
+        List<HikariDataSource> dataSources = urls.stream()
+                .map(url -> {
+                    HikariDataSource dataSource = DataSourceBuilder.create()
+                            .type(HikariDataSource.class)
+                            .url(url)
+                            .username(username)
+                            .password(password)
+                            .build();
+                    dataSource.setMaximumPoolSize(poolSize);
+                    return dataSource;
+                })
+                .collect(Collectors.toList());
+        if (initializeSchema) {
+            for (int shard = 0; shard < dataSources.size(); shard++) {
+                Resource[] scripts = shard == 0
+                        ? new Resource[]{new ClassPathResource("schema.sql"), new ClassPathResource("shards.sql")}
+                        : new Resource[]{new ClassPathResource("schema.sql")};
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSources.get(shard));
+                String version = SchemaInitializer.version(scripts);
+                if (!SchemaInitializer.isApplied(jdbcTemplate, version)) {
+                    new ResourceDatabasePopulator(scripts).execute(dataSources.get(shard));
+                    SchemaInitializer.recordApplied(jdbcTemplate, version);
+                }
+                new BrandCodeMigration(new NamedParameterJdbcTemplate(dataSources.get(shard)),
+                        new DataSourceTransactionManager(dataSources.get(shard))).migrate();
+            }
+        }
+        return new ShardDataSources(dataSources);
+    }
+
+    @Bean
+    public ShardNodes shardNodes(ShardDataSources shardDataSources,
+                                 @Value("${repository.shards.node-heartbeat-interval:PT10S}") Duration heartbeatInterval) {
+        ShardNodes nodes = new ShardNodes(new NamedParameterJdbcTemplate(shardDataSources.get().get(0)), heartbeatInterval);
+        nodes.start();
+        return nodes;
+    }
+
+    @Bean
+    public ShardedRepository shardedRepository(ShardDataSources shardDataSources,
+                                               ShardNodes shardNodes,
+                                               @Value("${repository.shards.count:0}") int initialShardCount) {
+        List<DataSource> dataSources = shardDataSources.get();
+        // Only used the first time, after that the layout stored in the first shard is the one in use.
+        // Loaded once, after this node has registered, see ShardNodes
+        ShardLayout layout = ShardLayout.load(new NamedParameterJdbcTemplate(dataSources.get(0)),
+                initialShardCount > 0 ? initialShardCount : dataSources.size());
+        if (layout.isResharding() && !shardNodes.otherRunningNodes().isEmpty()) {
+            throw new IllegalStateException("Resharding to " + layout.getTargetShardCount() + " shards is in progress, " +
+                    "start this node when it has completed");
+        }
+        List<Repository> shards = new ArrayList<>(dataSources.size());
+        for (DataSource dataSource : dataSources) {
+            shards.add(transactional(new DatabaseRepository(new NamedParameterJdbcTemplate(dataSource), null, false), dataSource));
+        }
+        return new ShardedRepository(shards, layout);
+    }
+
+    @Bean
+    public Resharder resharder(ShardedRepository shardedRepository,
+                               ShardDataSources shardDataSources,
+                               ShardNodes shardNodes,
+                               @Value("${repository.shards.resharding.batch-size:1000}") int batchSize) {
+        return new Resharder(shardedRepository, shardDataSources.get(), shardNodes, batchSize);
+    }
+
+    /**
+     * Applies the @Transactional annotations of the repository, which only the beans Spring creates
+     * get by themselves.
+     */
+    private static Repository transactional(DatabaseRepository repository, DataSource dataSource) {
+        ProxyFactory proxyFactory = new ProxyFactory(repository);
+        TransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        proxyFactory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+        return (Repository) proxyFactory.getProxy();
+    }
+
+    /**
+     * The connection pools of the shards, in shard order. Not DataSource beans, which would make
+     * Spring Boot back off from configuring the default one.
+     */
+    public static class ShardDataSources implements AutoCloseable {
+
+        private final List<HikariDataSource> dataSources;
+
+        ShardDataSources(List<HikariDataSource> dataSources) {
+            this.dataSources = dataSources;
+        }
+
+        public List<DataSource> get() {
+            return List.copyOf(dataSources);
+        }
+
+        @Override
+        public void close() {
+            dataSources.forEach(HikariDataSource::close);
+        }
+    }
+}
@@ -1,26 +1,218 @@
 package se.cygni.talang.quality.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import se.cygni.talang.quality.application.IdempotentAssignments;
 import se.cygni.talang.quality.application.VehicleService;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.exceptions.NotFoundException;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.ImportResult;
+import se.cygni.talang.quality.model.ReconciliationResult;
+import se.cygni.talang.quality.model.ReshardingResult;
+import se.cygni.talang.quality.model.VehiclePage;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+import se.cygni.talang.quality.repo.PremiumCounterReconciler;
+import se.cygni.talang.quality.repo.VehicleImporter;
+import se.cygni.talang.quality.repo.shard.Resharder;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
+// Servlet based, the reactive profile serves ReactiveEndpoints instead
 @RestController
+@Profile("!reactive")
 public class Endpoints {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final VehicleService vehicleService;
+    private final IdempotentAssignments idempotentAssignments;
+    private final PremiumBrandCache premiumBrandCache;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<VehicleImporter> vehicleImporter;
+    private final ObjectProvider<PremiumCounterReconciler> premiumCounterReconciler;
+    private final ObjectProvider<Resharder> resharder;
 
-    public Endpoints(VehicleService vehicleService) {
+    public Endpoints(VehicleService vehicleService,
+                     IdempotentAssignments idempotentAssignments,
+                     PremiumBrandCache premiumBrandCache,
+                     ObjectMapper objectMapper,
+                     ObjectProvider<VehicleImporter> vehicleImporter,
+                     ObjectProvider<PremiumCounterReconciler> premiumCounterReconciler,
+                     ObjectProvider<Resharder> resharder) {
         this.vehicleService = vehicleService;
+        this.idempotentAssignments = idempotentAssignments;
+        this.premiumBrandCache = premiumBrandCache;
+        this.objectMapper = objectMapper;
+        this.vehicleImporter = vehicleImporter;
+        this.premiumCounterReconciler = premiumCounterReconciler;
+        this.resharder = resharder;
     }
 
     @PostMapping(path = "/assign",
             consumes = MediaType.APPLICATION_JSON_VALUE)
-    public void assignOwner(@RequestBody Map<String, String> input) {
-        vehicleService.assignOwner(input.get("owner"), input.get("vehicle"));
+    public void assignOwner(@RequestBody Map<String, String> input,
+                            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        // Clients retry with the same key, after a timeout they cannot tell whether the first try was assigned
+        if (idempotencyKey != null && !idempotencyKey.isEmpty()) {
+            idempotentAssignments.assignOwner(idempotencyKey, input.get("owner"), input.get("vehicle"));
+        } else {
+            vehicleService.assignOwner(input.get("owner"), input.get("vehicle"));
+        }
+    }
+
+    @PostMapping(path = "/return",
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void returnVehicle(@RequestBody Map<String, String> input) {
+        vehicleService.returnVehicle(input.get("owner"), input.get("vehicle"));
+    }
+
+    @PostMapping(path = "/assign/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<Map<String, String>> assignOwners(@RequestBody List<Map<String, String>> input) {
+        List<Assignment> assignments = input.stream()
+                .map(item -> new Assignment(item.get("owner"), item.get("vehicle")))
+                .collect(Collectors.toList());
+        List<AssignmentOutcome> outcomes = vehicleService.assignOwners(assignments);
+
+        List<Map<String, String>> result = new ArrayList<>(assignments.size());
+        for (int i = 0; i < assignments.size(); i++) {
+            Map<String, String> item = new LinkedHashMap<>();
+            item.put("owner", assignments.get(i).getOwnerOrgNumber());
+            item.put("vehicle", assignments.get(i).getVehicleRegistration());
+            item.put("outcome", outcomes.get(i).name());
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * Streams the vehicles straight from the repository to the response, so memory use does not
+     * depend on the number of vehicles. Written synchronously rather than as a StreamingResponseBody,
+     * since a large export outlasts the default async request timeout.
+     */
+    @GetMapping(path = "/vehicles/export")
+    public void exportVehicles(@RequestParam(required = false) String owner,
+                               @RequestParam(required = false) Brand brand,
+                               @RequestParam(defaultValue = "ndjson") String format,
+                               HttpServletResponse response) throws IOException {
+        if (!format.equals("ndjson") && !format.equals("csv")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export format " + format);
+        }
+        response.setContentType(format.equals("csv") ? "text/csv" : "application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+        VehicleExportWriter exportWriter = format.equals("csv")
+                ? VehicleExportWriter.csv(writer)
+                : VehicleExportWriter.ndjson(objectMapper.getFactory(), writer);
+        vehicleService.exportVehicles(owner, brand, exportWriter);
+        exportWriter.finish();
+    }
+
+    @GetMapping(path = "/customers/{orgNumber}/vehicles",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public VehiclePage getVehiclesByOwner(@PathVariable String orgNumber,
+                                          @RequestParam(required = false) String after,
+                                          @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return vehicleService.getVehiclesByOwner(orgNumber, after, limit);
+    }
+
+    @PostMapping(path = "/vehicles/import",
+            consumes = {"text/csv", "application/x-ndjson"},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ImportResult importVehicles(HttpServletRequest request) throws IOException {
+        VehicleImporter importer = vehicleImporter.getIfAvailable();
+        if (importer == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Import is only supported with a database");
+        }
+        try {
+            if (MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.parseMediaType("text/csv"))) {
+                return importer.importCsv(request.getInputStream());
+            }
+            return importer.importNdjson(request.getInputStream());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @PostMapping(path = "/premium-brands/refresh")
+    public void refreshPremiumBrands() {
+        premiumBrandCache.invalidate();
+    }
+
+    // The in-memory repository keeps its counters under one lock and has nothing to reconcile
+    @PostMapping(path = "/premium-customers/reconcile",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ReconciliationResult reconcilePremiumCustomers() {
+        PremiumCounterReconciler reconciler = premiumCounterReconciler.getIfAvailable();
+        if (reconciler == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Reconciliation is only supported with a database");
+        }
+        return reconciler.reconcile();
+    }
+
+    // Moves vehicles while the other endpoints are in use, and returns when all have been moved
+    @PostMapping(path = "/shards/reshard",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ReshardingResult reshard(@RequestParam int shardCount) {
+        Resharder sharder = resharder.getIfAvailable();
+        if (sharder == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Resharding is only supported with a sharded repository");
+        }
+        try {
+            return sharder.reshard(shardCount);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // Rejections are answered here rather than forwarded to /error, they are expected and not logged
+    @ExceptionHandler
+    public ResponseEntity<Map<String, Object>> notFound(NotFoundException e) {
+        return error(HttpStatus.NOT_FOUND, e);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<Map<String, Object>> notAllowed(NotAllowedException e) {
+        return error(HttpStatus.CONFLICT, e);
+    }
+
+    static ResponseEntity<Map<String, Object>> error(HttpStatus status, RuntimeException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", status.value());
+        body.put("message", e.getMessage());
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
 }
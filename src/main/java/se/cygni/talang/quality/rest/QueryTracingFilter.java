@@ -0,0 +1,162 @@
+package se.cygni.talang.quality.rest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import se.cygni.talang.quality.repo.QueryTrace;
+import se.cygni.talang.quality.repo.QueryTracingDataSource;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Traces the statements that a sample of the requests run through {@link QueryTracingDataSource},
+ * returns a summary in the {@value #HEADER} header and logs the statements at debug level. Requests
+ * that run more statements than the budget of their endpoint, set as e.g.
+ * {@code query-tracing.budgets.[/assign]=1}, are logged as warnings and counted.
+ * <p>
+ * The header is added when the response starts, so for a response that is streamed while statements
+ * are still run, such as the export, it only counts the statements run before that.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "query-tracing.enabled", havingValue = "true")
+public class QueryTracingFilter extends OncePerRequestFilter {
+
+    static final String HEADER = "X-Query-Trace";
+
+    private static final Logger log = LoggerFactory.getLogger(QueryTracingFilter.class);
+
+    private final MeterRegistry meterRegistry;
+    private final double sampleRate;
+    private final Map<String, Integer> budgets;
+
+    @Autowired
+    public QueryTracingFilter(MeterRegistry meterRegistry,
+                              Environment environment,
+                              @Value("${query-tracing.sample-rate:0.01}") double sampleRate) {
+        this(meterRegistry, sampleRate, Binder.get(environment)
+                .bind("query-tracing.budgets", Bindable.mapOf(String.class, Integer.class))
+                .orElse(Map.of()));
+    }
+
+    QueryTracingFilter(MeterRegistry meterRegistry, double sampleRate, Map<String, Integer> budgets) {
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.budgets = Map.copyOf(budgets);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            chain.doFilter(request, response);
+            return;
+        }
+        QueryTrace trace = QueryTrace.start();
+        TracedResponse traced = new TracedResponse(response, trace);
+        try {
+            chain.doFilter(request, traced);
+        } finally {
+            trace.close();
+            traced.addHeader();
+            check(request, trace);
+        }
+    }
+
+    private void check(HttpServletRequest request, QueryTrace trace) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("http.server.requests.statements")
+                .description("Statements run per traced request")
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(trace.getStatementCount());
+        Integer budget = budgets.get(uri);
+        if (budget != null && trace.getStatementCount() > budget) {
+            Counter.builder("http.server.requests.statements.over.budget")
+                    .description("Traced requests that ran more statements than the budget of their endpoint")
+                    .tag("uri", uri)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("{} {} ran {} statements, the budget is {}: {}", request.getMethod(), uri,
+                    trace.getStatementCount(), budget, trace);
+        } else if (log.isDebugEnabled()) {
+            log.debug("{} {} ran {}", request.getMethod(), uri, trace);
+        }
+    }
+
+    // Adds the header before anything that commits the response
+    private static class TracedResponse extends HttpServletResponseWrapper {
+        private final QueryTrace trace;
+        private boolean headerAdded;
+
+        private TracedResponse(HttpServletResponse response, QueryTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        private void addHeader() {
+            if (!headerAdded && !isCommitted()) {
+                setHeader(HEADER, trace.summary());
+            }
+            headerAdded = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            addHeader();
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            addHeader();
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addHeader();
+            super.sendRedirect(location);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package se.cygni.talang.quality.rest;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import se.cygni.talang.quality.application.ReactiveVehicleService;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.exceptions.NotFoundException;
+
+import java.util.Map;
+
+/**
+ * The WebFlux routes of the reactive profile, which replace {@link Endpoints}.
+ */
+@RestController
+@Profile("reactive")
+public class ReactiveEndpoints {
+
+    private final ReactiveVehicleService vehicleService;
+
+    public ReactiveEndpoints(ReactiveVehicleService vehicleService) {
+        this.vehicleService = vehicleService;
+    }
+
+    @PostMapping(path = "/assign",
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Void> assignOwner(@RequestBody Map<String, String> input) {
+        return vehicleService.assignOwner(input.get("owner"), input.get("vehicle"));
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<Map<String, Object>> notFound(NotFoundException e) {
+        return Endpoints.error(HttpStatus.NOT_FOUND, e);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<Map<String, Object>> notAllowed(NotAllowedException e) {
+        return Endpoints.error(HttpStatus.CONFLICT, e);
+    }
+}
@@ -0,0 +1,88 @@
+package se.cygni.talang.quality.rest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+/**
+ * Writes vehicles one by one as they are read, as either newline delimited JSON or CSV with a
+ * header row. Only the fields that make sense outside this service are written.
+ */
+abstract class VehicleExportWriter implements Consumer<Vehicle> {
+
+    static VehicleExportWriter ndjson(JsonFactory jsonFactory, Writer writer) throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(writer);
+        // Keep the writer open, it belongs to the response
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Objects are separated by the newline written after each of them, not by the default space
+        generator.setRootValueSeparator(null);
+        return new VehicleExportWriter() {
+            @Override
+            void write(Vehicle vehicle) throws IOException {
+                generator.writeStartObject();
+                generator.writeStringField("registration", vehicle.getRegistration());
+                generator.writeStringField("owner", vehicle.getOwner());
+                generator.writeStringField("brand", vehicle.getBrand() == null ? null : vehicle.getBrand().name());
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+
+            @Override
+            void finish() throws IOException {
+                generator.flush();
+            }
+        };
+    }
+
+    static VehicleExportWriter csv(Writer writer) throws IOException {
+        writer.write("registration,owner,brand\n");
+        return new VehicleExportWriter() {
+            @Override
+            void write(Vehicle vehicle) throws IOException {
+                writeCsvField(writer, vehicle.getRegistration());
+                writer.write(',');
+                writeCsvField(writer, vehicle.getOwner());
+                writer.write(',');
+                writeCsvField(writer, vehicle.getBrand() == null ? null : vehicle.getBrand().name());
+                writer.write('\n');
+            }
+
+            @Override
+            void finish() throws IOException {
+                writer.flush();
+            }
+        };
+    }
+
+    abstract void write(Vehicle vehicle) throws IOException;
+
+    abstract void finish() throws IOException;
+
+    @Override
+    public void accept(Vehicle vehicle) {
+        try {
+            write(vehicle);
+        } catch (IOException e) {
+            // Typically the client going away, which also ends the read
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
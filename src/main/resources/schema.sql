@@ -5,17 +5,48 @@
 CREATE TABLE IF NOT EXISTS customers (
     organisationNumber VARCHAR NOT NULL,
     premiumCustomer BOOLEAN,
+    premiumVehicles INT NOT NULL DEFAULT 0,
     PRIMARY KEY (organisationNumber)
 );
 
 CREATE TABLE IF NOT EXISTS vehicles (
     registrationNumber VARCHAR NOT NULL,
     owner VARCHAR REFERENCES customers(organisationNumber),
-    brand VARCHAR,
+    -- The code of the brand, see Brand, a database that stored the name is converted by BrandCodeMigration
+    brand SMALLINT,
+    version BIGINT NOT NULL DEFAULT 0,
     PRIMARY KEY (registrationNumber)
 );
 
 CREATE TABLE IF NOT EXISTS premiumBrands (
-    brand VARCHAR NOT NULL,
+    brand SMALLINT NOT NULL,
     PRIMARY KEY (brand)
 );
+
+ALTER TABLE vehicles ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+-- Counts the vehicles of premium brands owned, existing customers are counted when the column is added
+ALTER TABLE customers ADD COLUMN IF NOT EXISTS premiumVehicles INT;
+UPDATE customers SET premiumVehicles=(SELECT count(*) FROM vehicles v
+        WHERE v.owner=customers.organisationNumber AND v.brand IN (SELECT brand FROM premiumBrands))
+    WHERE premiumVehicles IS NULL;
+ALTER TABLE customers ALTER COLUMN premiumVehicles SET DEFAULT 0;
+ALTER TABLE customers ALTER COLUMN premiumVehicles SET NOT NULL;
+-- Serves lookups by owner, and pages of an owner's vehicles ordered by registration
+CREATE INDEX IF NOT EXISTS vehicles_owner_registration ON vehicles (owner, registrationNumber);
+
+-- Outbox of ownership changes, written with the change when outbox.enabled and drained by OutboxPublisher
+CREATE TABLE IF NOT EXISTS ownershipEvents (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    registrationNumber VARCHAR NOT NULL,
+    previousOwner VARCHAR,
+    owner VARCHAR,
+    occurredAt TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id)
+);
+
+-- The versions of this script that have been applied, SchemaInitializer skips it when the current one has
+CREATE TABLE IF NOT EXISTS schemaVersion (
+    version VARCHAR NOT NULL,
+    appliedAt TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (version)
+);
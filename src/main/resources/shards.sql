@@ -0,0 +1,14 @@
+-- Only in the first shard, see ShardLayout
+CREATE TABLE IF NOT EXISTS shardLayout (
+    id INT NOT NULL,
+    shardCount INT NOT NULL,
+    targetShardCount INT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+-- The application nodes using the shards, see ShardNodes
+CREATE TABLE IF NOT EXISTS shardNodes (
+    nodeId VARCHAR NOT NULL,
+    lastSeen TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (nodeId)
+);
@@ -0,0 +1,132 @@
+package se.cygni.talang.quality.application;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.repo.FakeRepository;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class AssignmentCoalescerTest {
+
+    static final int CALLERS = 20;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AssignmentCoalescer sut; // System Under Test
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        sut.close();
+    }
+
+    @Test
+    void assignOwner_concurrentCallers_areWrittenInFewerBatches() throws Exception {
+        // Arrange
+        FakeRepository repository = repository();
+        sut = coalescer(repository, Duration.ofMillis(200), 100);
+        // Act
+        List<AssignmentOutcome> outcomes = assignConcurrently();
+        // Assert
+        outcomes.forEach(outcome -> Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome));
+        for (int i = 0; i < CALLERS; i++) {
+            Assertions.assertEquals("ORG" + i, repository.getVehicleByRegistration("REG" + i).getOwner());
+        }
+        DistributionSummary batchSizes = meterRegistry.get("assignment.coalescing.batch.size").summary();
+        Assertions.assertEquals(CALLERS, batchSizes.totalAmount());
+        Assertions.assertTrue(batchSizes.count() < CALLERS, "Batches: " + batchSizes.count());
+        Assertions.assertEquals(CALLERS, meterRegistry.get("assignment.coalescing.queueing.delay").timer().count());
+    }
+
+    @Test
+    void assignOwner_moreCallersThanBatchSize_batchesAreLimited() throws Exception {
+        // Arrange
+        sut = coalescer(repository(), Duration.ofMillis(200), 3);
+        // Act
+        assignConcurrently();
+        // Assert
+        DistributionSummary batchSizes = meterRegistry.get("assignment.coalescing.batch.size").summary();
+        Assertions.assertEquals(CALLERS, batchSizes.totalAmount());
+        Assertions.assertTrue(batchSizes.max() <= 3, "Largest batch: " + batchSizes.max());
+    }
+
+    @Test
+    void assignOwner_sameVehicleInOneBatch_laterAssignmentSeesEarlierOne() {
+        // Arrange
+        sut = coalescer(repository(), Duration.ofMillis(1), 100);
+        // Act
+        AssignmentOutcome first = sut.assignOwner("ORG1", "REG1");
+        AssignmentOutcome second = sut.assignOwner("ORG2", "REG1");
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, first);
+        Assertions.assertEquals(AssignmentOutcome.ALREADY_OWNED, second);
+    }
+
+    @Test
+    void assignOwner_groupCommitFails_callerGetsTheException() {
+        // Arrange
+        Repository repository = Mockito.mock(Repository.class);
+        Mockito.when(repository.assignOwners(Mockito.any(), Mockito.any()))
+                .thenThrow(new DataAccessResourceFailureException("Connection lost"));
+        sut = coalescer(repository, Duration.ofMillis(1), 100);
+        // Act & Assert
+        Assertions.assertThrows(DataAccessResourceFailureException.class, () -> sut.assignOwner("ORG1", "REG1"));
+    }
+
+    @Test
+    void assignOwner_afterClose_isRejected() throws InterruptedException {
+        // Arrange
+        sut = coalescer(repository(), Duration.ofMillis(1), 100);
+        sut.close();
+        // Act & Assert
+        Assertions.assertThrows(IllegalStateException.class, () -> sut.assignOwner("ORG1", "REG1"));
+    }
+
+    private List<AssignmentOutcome> assignConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<AssignmentOutcome>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            int caller = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                return sut.assignOwner("ORG" + caller, "REG" + caller);
+            }));
+        }
+        start.countDown();
+        List<AssignmentOutcome> outcomes = new ArrayList<>();
+        for (Future<AssignmentOutcome> future : futures) {
+            outcomes.add(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return outcomes;
+    }
+
+    private AssignmentCoalescer coalescer(Repository repository, Duration window, int maxBatchSize) {
+        return new AssignmentCoalescer(repository, new PremiumBrandCache(repository, Duration.ofMinutes(10)),
+                meterRegistry, window, maxBatchSize);
+    }
+
+    private static FakeRepository repository() {
+        FakeRepository repository = new FakeRepository();
+        for (int i = 0; i < CALLERS; i++) {
+            repository.withCustomer("ORG" + i, false).withVehicle("REG" + i, null, Brand.VOLVO);
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,119 @@
+package se.cygni.talang.quality.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotentAssignmentsTest {
+
+    @Mock
+    DatabaseRepository repositoryMock;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    IdempotentAssignments sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        VehicleService vehicleService = new VehicleService(repositoryMock,
+                new PremiumBrandCache(repositoryMock, Duration.ofMinutes(10)), meterRegistry, 16, null);
+        sut = new IdempotentAssignments(vehicleService, meterRegistry, 1000, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void assignOwner_repeatedKey_assignsOnce() {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ASSIGNED);
+        // Act
+        sut.assignOwner("key-1", "123-456789", "ABC123");
+        sut.assignOwner("key-1", "123-456789", "ABC123");
+        // Assert
+        Mockito.verify(repositoryMock, Mockito.times(1)).assignOwner(Mockito.any(), Mockito.any(), Mockito.any());
+        Assertions.assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tag("cache", "assignment.idempotency").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void assignOwner_repeatedKeyOfRejectedAssignment_rejectsAgainWithoutAssigning() {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ALREADY_OWNED);
+        Assertions.assertThrows(NotAllowedException.class, () ->
+                sut.assignOwner("key-1", "123-456789", "ABC123"));
+        // Act & Assert
+        Assertions.assertThrows(NotAllowedException.class, () ->
+                sut.assignOwner("key-1", "123-456789", "ABC123"));
+        Mockito.verify(repositoryMock, Mockito.times(1)).assignOwner(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void assignOwner_keyReusedForOtherVehicle_assignsBoth() {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.any(), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ASSIGNED);
+        // Act
+        sut.assignOwner("key-1", "123-456789", "ABC123");
+        sut.assignOwner("key-1", "123-456789", "DEF456");
+        // Assert
+        Mockito.verify(repositoryMock).assignOwner(Mockito.any(), Mockito.eq("ABC123"), Mockito.any());
+        Mockito.verify(repositoryMock).assignOwner(Mockito.any(), Mockito.eq("DEF456"), Mockito.any());
+    }
+
+    @Test
+    void assignOwner_firstAttemptFailed_retryAssigns() {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenThrow(new DataAccessResourceFailureException("Connection lost"))
+                .thenReturn(AssignmentOutcome.ASSIGNED);
+        Assertions.assertThrows(DataAccessResourceFailureException.class, () ->
+                sut.assignOwner("key-1", "123-456789", "ABC123"));
+        // Act & Assert
+        Assertions.assertDoesNotThrow(() ->
+                sut.assignOwner("key-1", "123-456789", "ABC123"));
+        Mockito.verify(repositoryMock, Mockito.times(2)).assignOwner(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void assignOwner_duplicateWhileFirstIsRunning_waitsForFirst() throws Exception {
+        // Arrange
+        CountDownLatch assigning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    assigning.countDown();
+                    release.await();
+                    return AssignmentOutcome.ASSIGNED;
+                });
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() ->
+                sut.assignOwner("key-1", "123-456789", "ABC123"));
+        Assertions.assertTrue(assigning.await(5, TimeUnit.SECONDS));
+        // Act
+        CompletableFuture<Void> duplicate = CompletableFuture.runAsync(() ->
+                sut.assignOwner("key-1", "123-456789", "ABC123"));
+        while (meterRegistry.get("assignment.idempotency.joined").counter().count() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        // Assert
+        first.get(5, TimeUnit.SECONDS);
+        duplicate.get(5, TimeUnit.SECONDS);
+        Mockito.verify(repositoryMock, Mockito.times(1)).assignOwner(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+}
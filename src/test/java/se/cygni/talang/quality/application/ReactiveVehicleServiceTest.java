@@ -0,0 +1,119 @@
+package se.cygni.talang.quality.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.exceptions.NotFoundException;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.ReactiveRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveVehicleServiceTest {
+
+    @Mock
+    ReactiveRepository repositoryMock;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    ReactiveVehicleService sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        Mockito.lenient().when(repositoryMock.getPremiumBrands()).thenReturn(Mono.just(List.of(Brand.LAMBORGHINI)));
+        sut = new ReactiveVehicleService(repositoryMock, meterRegistry, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void assignOwner_premiumVehicleWithoutOwner_isClaimedAsPremium() {
+        // Arrange
+        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(Mono.just(vehicle(null, Brand.LAMBORGHINI)));
+        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(Mono.just(new Customer("123-456789")));
+        Mockito.when(repositoryMock.claimVehicle("123-456789", "ABC123", true)).thenReturn(Mono.just(true));
+        // Act & Assert
+        StepVerifier.create(sut.assignOwner("123-456789", "ABC123")).verifyComplete();
+        Assertions.assertEquals(1, meterRegistry.get("vehicle.assignments").tag("outcome", "assigned").timer().count());
+    }
+
+    @Test
+    void assignOwner_lookups_runConcurrently() {
+        // Arrange
+        Sinks.One<Vehicle> vehicle = Sinks.one();
+        AtomicBoolean customerRequested = new AtomicBoolean();
+        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(vehicle.asMono());
+        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(
+                Mono.fromSupplier(() -> new Customer("123-456789")).doOnSubscribe(s -> customerRequested.set(true)));
+        Mockito.when(repositoryMock.claimVehicle("123-456789", "ABC123", false)).thenReturn(Mono.just(true));
+        // Act & Assert
+        StepVerifier.create(sut.assignOwner("123-456789", "ABC123"))
+                .then(() -> {
+                    // The vehicle has not been found yet
+                    Assertions.assertTrue(customerRequested.get());
+                    vehicle.tryEmitValue(vehicle(null, Brand.VOLVO));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void assignOwner_vehicleOwnedByOther_notAllowed() {
+        // Arrange
+        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(Mono.just(vehicle("987-654321", Brand.VOLVO)));
+        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(Mono.just(new Customer("123-456789")));
+        // Act & Assert
+        StepVerifier.create(sut.assignOwner("123-456789", "ABC123")).verifyError(NotAllowedException.class);
+        Mockito.verify(repositoryMock, Mockito.never()).claimVehicle(Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void assignOwner_concurrentAssignmentClaimedFirst_notAllowed() {
+        // Arrange
+        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(Mono.just(vehicle(null, Brand.VOLVO)));
+        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(Mono.just(new Customer("123-456789")));
+        Mockito.when(repositoryMock.claimVehicle("123-456789", "ABC123", false)).thenReturn(Mono.just(false));
+        // Act & Assert
+        StepVerifier.create(sut.assignOwner("123-456789", "ABC123")).verifyError(NotAllowedException.class);
+    }
+
+    @Test
+    void assignOwner_vehicleOrCustomerNotFound_throwError() {
+        // Arrange
+        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(Mono.just(vehicle(null, Brand.VOLVO)));
+        Mockito.when(repositoryMock.getVehicleByRegistration("XXX999")).thenReturn(Mono.empty());
+        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(Mono.empty());
+        // Act & Assert
+        StepVerifier.create(sut.assignOwner("123-456789", "XXX999")).verifyError(NotFoundException.class);
+        StepVerifier.create(sut.assignOwner("123-456789", "ABC123")).verifyError(NotFoundException.class);
+        Assertions.assertEquals(2, meterRegistry.get("vehicle.assignments").tag("outcome", "not-found").timer().count());
+    }
+
+    @Test
+    void assignOwner_vehicleAlreadyOwnedByCustomer_noEffect() {
+        // Arrange
+        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(Mono.just(vehicle("123-456789", Brand.VOLVO)));
+        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(Mono.just(new Customer("123-456789")));
+        // Act & Assert
+        StepVerifier.create(sut.assignOwner("123-456789", "ABC123")).verifyComplete();
+        Mockito.verify(repositoryMock, Mockito.never()).claimVehicle(Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    private static Vehicle vehicle(String owner, Brand brand) {
+        Vehicle vehicle = new Vehicle("ABC123");
+        vehicle.setOwner(owner);
+        vehicle.setBrand(brand);
+        return vehicle;
+    }
+}
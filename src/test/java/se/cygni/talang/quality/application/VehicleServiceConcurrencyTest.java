@@ -0,0 +1,147 @@
+package se.cygni.talang.quality.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import se.cygni.talang.quality.exceptions.NotAllowedException;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+import se.cygni.talang.quality.repo.FakeRepository;
+import se.cygni.talang.quality.repo.PostgresTestDatabase;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+class VehicleServiceConcurrencyTest {
+
+    static final int CONTENDERS = 16;
+
+    @Test
+    void assignOwner_concurrentRequestsOnOneNode_exactlyOneWinner() throws Exception {
+        // Arrange
+        FakeRepository repository = repositoryWithContendedVehicle();
+        VehicleService node = service(repository);
+        // Act
+        List<Boolean> results = race(i -> node);
+        // Assert
+        assertExactlyOneWinner(results, repository);
+    }
+
+    @Test
+    void assignOwner_concurrentRequestsOnSeveralNodes_exactlyOneWinner() throws Exception {
+        // Arrange
+        FakeRepository repository = repositoryWithContendedVehicle();
+        List<VehicleService> nodes = List.of(service(repository), service(repository), service(repository));
+        // Act
+        List<Boolean> results = race(i -> nodes.get(i % nodes.size()));
+        // Assert
+        assertExactlyOneWinner(results, repository);
+    }
+
+    @Test
+    void assignOwner_concurrentRequestsCoalesced_exactlyOneWinner() throws Exception {
+        // Arrange
+        FakeRepository repository = repositoryWithContendedVehicle();
+        PremiumBrandCache premiumBrands = new PremiumBrandCache(repository, Duration.ofMinutes(10));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        try (AssignmentCoalescer coalescer = new AssignmentCoalescer(repository, premiumBrands, meterRegistry,
+                Duration.ofMillis(20), 4)) {
+            VehicleService node = new VehicleService(repository, premiumBrands, meterRegistry, 16, coalescer);
+            // Act
+            List<Boolean> results = race(i -> node);
+            // Assert
+            assertExactlyOneWinner(results, repository);
+        }
+    }
+
+    // The conditional UPDATE of the database repository decides the race, rather than the optimistic save of the fake
+    @Test
+    @EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+    void assignOwner_concurrentRequestsOnSeveralNodesAgainstPostgres_exactlyOneWinnerIsCounted() throws Exception {
+        // Arrange
+        NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(PostgresTestDatabase.createEmpty());
+        jdbcTemplate.update("INSERT INTO premiumBrands (brand) VALUES (:brand)", Map.of("brand", Brand.LAMBORGHINI.getCode()));
+        List<VehicleService> nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            nodes.add(service(new DatabaseRepository(jdbcTemplate, null, false)));
+        }
+        Repository repository = new DatabaseRepository(jdbcTemplate, null, false);
+        for (int i = 0; i < CONTENDERS; i++) {
+            repository.saveCustomer(new Customer(owner(i)));
+        }
+        Vehicle vehicle = new Vehicle("ABC123");
+        vehicle.setBrand(Brand.LAMBORGHINI);
+        repository.saveVehicle(vehicle);
+        // Act
+        List<Boolean> results = race(i -> nodes.get(i % nodes.size()));
+        // Assert
+        assertExactlyOneWinner(results, repository);
+        for (int i = 0; i < CONTENDERS; i++) {
+            Assertions.assertEquals(results.get(i) ? 1 : 0, repository.getCustomerByOrgNumber(owner(i)).getPremiumVehicles());
+        }
+    }
+
+    private FakeRepository repositoryWithContendedVehicle() {
+        FakeRepository repository = new FakeRepository()
+                .withVehicle("ABC123", null, Brand.VOLVO)
+                .withReadDelay(5);
+        for (int i = 0; i < CONTENDERS; i++) {
+            repository.withCustomer(owner(i), false);
+        }
+        return repository;
+    }
+
+    private VehicleService service(Repository repository) {
+        return new VehicleService(repository, new PremiumBrandCache(repository, Duration.ofMinutes(10)), new SimpleMeterRegistry(), 16, null);
+    }
+
+    // Returns, per contender, whether its assignment went through
+    private List<Boolean> race(IntFunction<VehicleService> nodeForContender) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONTENDERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < CONTENDERS; i++) {
+            int contender = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    nodeForContender.apply(contender).assignOwner(owner(contender), "ABC123");
+                    return true;
+                } catch (NotAllowedException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        List<Boolean> results = new ArrayList<>();
+        for (Future<Boolean> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    private void assertExactlyOneWinner(List<Boolean> results, Repository repository) {
+        int winner = results.indexOf(true);
+        Assertions.assertEquals(1, results.stream().filter(won -> won).count());
+        Assertions.assertEquals(owner(winner), repository.getVehicleByRegistration("ABC123").getOwner());
+    }
+
+    private static String owner(int contender) {
+        return "customer-" + contender;
+    }
+}
@@ -0,0 +1,101 @@
+package se.cygni.talang.quality.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+import se.cygni.talang.quality.repo.PostgresTestDatabase;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+import se.cygni.talang.quality.repo.QueryTrace;
+import se.cygni.talang.quality.repo.QueryTracingDataSource;
+
+import java.time.Duration;
+
+/**
+ * The statements per request against the budgets in application.properties, query-tracing.budgets.
+ */
+// Uses PostgreSQL specific SQL, see DatabaseRepositoryContractTest for how to run this
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class VehicleServiceQueryBudgetTest {
+
+    private static final int ASSIGN_BUDGET = 2;
+    private static final int RETURN_BUDGET = 2;
+    private static final int VEHICLES_BY_OWNER_BUDGET = 2;
+
+    NamedParameterJdbcTemplate jdbcTemplate;
+
+    VehicleService sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new NamedParameterJdbcTemplate(new QueryTracingDataSource(PostgresTestDatabase.createEmpty()));
+        sut = service(false);
+    }
+
+    @Test
+    void assignOwner_withinBudget() {
+        // Act
+        QueryTrace trace = traced(() -> sut.assignOwner("123-456789", "ABC123"));
+        // Assert
+        Assertions.assertTrue(trace.getStatementCount() <= ASSIGN_BUDGET, trace.summary());
+    }
+
+    @Test
+    void assignOwner_outboxEnabled_withinBudget() {
+        // Arrange
+        sut = service(true);
+        // Act
+        QueryTrace trace = traced(() -> sut.assignOwner("123-456789", "ABC123"));
+        // Assert
+        Assertions.assertTrue(trace.getStatementCount() <= ASSIGN_BUDGET, trace.summary());
+    }
+
+    @Test
+    void returnVehicle_withinBudget() {
+        // Arrange
+        sut.assignOwner("123-456789", "ABC123");
+        // Act
+        QueryTrace trace = traced(() -> sut.returnVehicle("123-456789", "ABC123"));
+        // Assert
+        Assertions.assertTrue(trace.getStatementCount() <= RETURN_BUDGET, trace.summary());
+    }
+
+    @Test
+    void getVehiclesByOwner_withinBudget() {
+        // Arrange
+        sut.assignOwner("123-456789", "ABC123");
+        // Act
+        QueryTrace trace = traced(() -> sut.getVehiclesByOwner("123-456789", null, 10));
+        // Assert
+        Assertions.assertTrue(trace.getStatementCount() <= VEHICLES_BY_OWNER_BUDGET, trace.summary());
+    }
+
+    private VehicleService service(boolean outbox) {
+        DatabaseRepository repository = new DatabaseRepository(jdbcTemplate, null, outbox);
+        if (repository.getCustomerByOrgNumber("123-456789") == null) {
+            repository.saveCustomer(new Customer("123-456789"));
+            Vehicle vehicle = new Vehicle("ABC123");
+            vehicle.setBrand(Brand.VOLVO);
+            repository.saveVehicle(vehicle);
+        }
+        PremiumBrandCache premiumBrands = new PremiumBrandCache(repository, Duration.ofMinutes(10));
+        // Loaded once per node and then cached, not part of the requests
+        premiumBrands.get();
+        return new VehicleService(repository, premiumBrands, new SimpleMeterRegistry(), 16, null);
+    }
+
+    private static QueryTrace traced(Runnable request) {
+        try (QueryTrace trace = QueryTrace.start()) {
+            request.run();
+            // Not a budget met by tracing nothing
+            Assertions.assertTrue(trace.getStatementCount() > 0, "No statements were traced");
+            return trace;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package se.cygni.talang.quality.application;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,11 +10,16 @@ import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import se.cygni.talang.quality.exceptions.NotAllowedException;
 import se.cygni.talang.quality.exceptions.NotFoundException;
+import se.cygni.talang.quality.model.AssignmentOutcome;
 import se.cygni.talang.quality.model.Brand;
-import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
 import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.model.VehiclePage;
 import se.cygni.talang.quality.repo.DatabaseRepository;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
 
+import java.time.Duration;
+import java.util.EnumSet;
 import java.util.List;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,31 +28,30 @@ class VehicleServiceTest {
     @Mock
     DatabaseRepository repositoryMock;
 
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     VehicleService sut; // System Under Test
 
     @BeforeEach
     void setUp() {
-        sut = new VehicleService(repositoryMock);
+        sut = new VehicleService(repositoryMock, new PremiumBrandCache(repositoryMock, Duration.ofMinutes(10)), meterRegistry, 16, null);
     }
 
     @Test
     void assignOwner_vehicleIsAlreadyAssignedToNewOwner_noEffect() {
         // Arrange
-        Vehicle storedVehicle = new Vehicle("ABC123");
-        storedVehicle.setOwner("123-456789");
-        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
-        // Act
-        sut.assignOwner("123-456789", "ABC123");
-        // Assert
-        Mockito.verify(repositoryMock, Mockito.never()).saveVehicle(Mockito.any());
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.UNCHANGED);
+        // Act & Assert
+        Assertions.assertDoesNotThrow(() ->
+                sut.assignOwner("123-456789", "ABC123"));
     }
 
     @Test
     void assignOwner_vehicleIsAlreadyAssignedToDifferentOwner_notAllowed() {
         // Arrange
-        Vehicle storedVehicle = new Vehicle("ABC123");
-        storedVehicle.setOwner("other-owner");
-        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ALREADY_OWNED);
         // Act & Assert
         Assertions.assertThrows(NotAllowedException.class, () ->
                 sut.assignOwner("123-456789", "ABC123"));
@@ -54,116 +59,123 @@ class VehicleServiceTest {
 
     @Test
     void assignOwner_vehicleNotFound_throwError() {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.VEHICLE_NOT_FOUND);
         // Act & Assert
         Assertions.assertThrows(NotFoundException.class, () ->
                 sut.assignOwner("123-456789", "ABC123"));
     }
 
+    @Test
+    void assignOwner_vehicleNotFound_exceptionHasNoStackTrace() {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.VEHICLE_NOT_FOUND);
+        // Act
+        NotFoundException exception = Assertions.assertThrows(NotFoundException.class, () ->
+                sut.assignOwner("123-456789", "ABC123"));
+        // Assert
+        Assertions.assertEquals(0, exception.getStackTrace().length);
+        Assertions.assertEquals("No vehicle found for registration ABC123", exception.getMessage());
+    }
+
     @Test
     void assignOwner_customerNotFound_throwError() {
         // Arrange
-        Vehicle storedVehicle = new Vehicle("ABC123");
-        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.CUSTOMER_NOT_FOUND);
         // Act & Assert
         Assertions.assertThrows(NotFoundException.class, () ->
                 sut.assignOwner("123-456789", "ABC123"));
     }
 
     @Test
-    void assignOwner_normalVehicleAssignedToNonPremiumCustomer_onlyVehicleIsUpdated() {
+    void assignOwner_vehicleAssigned_cachedPremiumBrandsAreUsed() {
         // Arrange
-        Vehicle storedVehicle = new Vehicle("ABC123");
-        storedVehicle.setBrand(Brand.VOLVO);
-        List<Brand> premiumBrands = List.of(Brand.LAMBORGHINI);
-        Customer storedCustomer = new Customer("123-456789");
-        storedCustomer.setPremiumCustomer(false);
-
-        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
-        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(premiumBrands);
-        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
-
+        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(List.of(Brand.LAMBORGHINI));
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.any(), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ASSIGNED);
         // Act
         sut.assignOwner("123-456789", "ABC123");
-
+        sut.assignOwner("123-456789", "DEF456");
         // Assert
-        Vehicle expectedVehicle = new Vehicle("ABC123");
-        expectedVehicle.setBrand(Brand.VOLVO);
-        expectedVehicle.setOwner("123-456789");
-        Mockito.verify(repositoryMock).saveVehicle(expectedVehicle);
-        Mockito.verify(repositoryMock, Mockito.never()).saveCustomer(Mockito.any());
+        Mockito.verify(repositoryMock).assignOwner("123-456789", "ABC123", EnumSet.of(Brand.LAMBORGHINI));
+        Mockito.verify(repositoryMock).assignOwner("123-456789", "DEF456", EnumSet.of(Brand.LAMBORGHINI));
+        Mockito.verify(repositoryMock, Mockito.times(1)).getPremiumBrands();
     }
 
     @Test
-    void assignOwner_premiumVehicleAssignedToNonPremiumCustomer_vehicleAndCustomerIsUpdated() {
+    void returnVehicle_vehicleOwnedByOther_notAllowed() {
         // Arrange
-        Vehicle storedVehicle = new Vehicle("ABC123");
-        storedVehicle.setBrand(Brand.LAMBORGHINI);
-        List<Brand> premiumBrands = List.of(Brand.LAMBORGHINI);
-        Customer storedCustomer = new Customer("123-456789");
-        storedCustomer.setPremiumCustomer(false);
-
-        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
-        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(premiumBrands);
-        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
-
-        // Act
-        sut.assignOwner("123-456789", "ABC123");
-
-        // Assert
-        Vehicle expectedVehicle = new Vehicle("ABC123");
-        expectedVehicle.setBrand(Brand.LAMBORGHINI);
-        expectedVehicle.setOwner("123-456789");
-        Mockito.verify(repositoryMock).saveVehicle(expectedVehicle);
-        Customer expectedCustomer = new Customer("123-456789");
-        expectedCustomer.setPremiumCustomer(true);
-        Mockito.verify(repositoryMock).saveCustomer(expectedCustomer);
+        Mockito.when(repositoryMock.returnVehicle(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(ReturnOutcome.NOT_OWNED_BY_CUSTOMER);
+        // Act & Assert
+        Assertions.assertThrows(NotAllowedException.class, () ->
+                sut.returnVehicle("123-456789", "ABC123"));
     }
 
     @Test
-    void assignOwner_normalVehicleAssignedToPremiumCustomer_onlyVehicleIsUpdated() {
+    void returnVehicle_vehicleNotFound_throwError() {
         // Arrange
-        Vehicle storedVehicle = new Vehicle("ABC123");
-        storedVehicle.setBrand(Brand.VOLVO);
-        List<Brand> premiumBrands = List.of(Brand.LAMBORGHINI);
-        Customer storedCustomer = new Customer("123-456789");
-        storedCustomer.setPremiumCustomer(true);
+        Mockito.when(repositoryMock.returnVehicle(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(ReturnOutcome.VEHICLE_NOT_FOUND);
+        // Act & Assert
+        Assertions.assertThrows(NotFoundException.class, () ->
+                sut.returnVehicle("123-456789", "ABC123"));
+    }
 
-        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
-        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(premiumBrands);
-        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
+    @Test
+    void returnVehicle_vehicleNotOwned_noEffect() {
+        // Arrange
+        Mockito.when(repositoryMock.returnVehicle(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(ReturnOutcome.UNCHANGED);
+        // Act & Assert
+        Assertions.assertDoesNotThrow(() ->
+                sut.returnVehicle("123-456789", "ABC123"));
+    }
 
+    @Test
+    void getVehiclesByOwner_moreVehiclesThanLimit_nextIsLastRegistrationOfPage() {
+        // Arrange
+        Mockito.when(repositoryMock.getVehiclesByOwner("123-456789", "ABC123", 3))
+                .thenReturn(List.of(new Vehicle("BCD234"), new Vehicle("CDE345"), new Vehicle("DEF456")));
         // Act
-        sut.assignOwner("123-456789", "ABC123");
-
+        VehiclePage page = sut.getVehiclesByOwner("123-456789", "ABC123", 2);
         // Assert
-        Vehicle expectedVehicle = new Vehicle("ABC123");
-        expectedVehicle.setBrand(Brand.VOLVO);
-        expectedVehicle.setOwner("123-456789");
-        Mockito.verify(repositoryMock).saveVehicle(expectedVehicle);
-        Mockito.verify(repositoryMock, Mockito.never()).saveCustomer(Mockito.any());
+        Assertions.assertEquals(List.of(new Vehicle("BCD234"), new Vehicle("CDE345")), page.getVehicles());
+        Assertions.assertEquals("CDE345", page.getNext());
     }
 
     @Test
-    void assignOwner_premiumVehicleAssignedToPremiumCustomer_onlyVehicleIsUpdated() {
+    void getVehiclesByOwner_lastPage_noNext() {
         // Arrange
-        Vehicle storedVehicle = new Vehicle("ABC123");
-        storedVehicle.setBrand(Brand.LAMBORGHINI);
-        List<Brand> premiumBrands = List.of(Brand.LAMBORGHINI);
-        Customer storedCustomer = new Customer("123-456789");
-        storedCustomer.setPremiumCustomer(true);
+        Mockito.when(repositoryMock.getVehiclesByOwner("123-456789", "ABC123", 3))
+                .thenReturn(List.of(new Vehicle("BCD234")));
+        // Act
+        VehiclePage page = sut.getVehiclesByOwner("123-456789", "ABC123", 2);
+        // Assert
+        Assertions.assertEquals(List.of(new Vehicle("BCD234")), page.getVehicles());
+        Assertions.assertNull(page.getNext());
+    }
 
-        Mockito.when(repositoryMock.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
-        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(premiumBrands);
-        Mockito.when(repositoryMock.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
+    @Test
+    void getVehiclesByOwner_customerNotFound_throwError() {
+        // Act & Assert
+        Assertions.assertThrows(NotFoundException.class, () ->
+                sut.getVehiclesByOwner("123-456789", null, 2));
+    }
 
+    @Test
+    void assignOwner_vehicleNotFound_recordedAsNotFound() {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.VEHICLE_NOT_FOUND);
         // Act
-        sut.assignOwner("123-456789", "ABC123");
-
+        Assertions.assertThrows(NotFoundException.class, () ->
+                sut.assignOwner("123-456789", "ABC123"));
         // Assert
-        Vehicle expectedVehicle = new Vehicle("ABC123");
-        expectedVehicle.setBrand(Brand.LAMBORGHINI);
-        expectedVehicle.setOwner("123-456789");
-        Mockito.verify(repositoryMock).saveVehicle(expectedVehicle);
-        Mockito.verify(repositoryMock).saveCustomer(storedCustomer);
+        Assertions.assertEquals(1, meterRegistry.get("vehicle.assignments").tag("outcome", "not-found").timer().count());
+        Assertions.assertEquals(0, meterRegistry.get("vehicle.assignments").tag("outcome", "assigned").timer().count());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+package se.cygni.talang.quality.loadtest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class KeyDistributionTest {
+
+    @Test
+    void next_zipfian_firstKeysGetMostRequests() {
+        // Arrange
+        KeyDistribution sut = KeyDistribution.zipfian(1000, 1.0);
+        Random random = new Random(42);
+        int[] counts = new int[1000];
+        // Act
+        for (int i = 0; i < 100_000; i++) {
+            counts[sut.next(random)]++;
+        }
+        // Assert
+        // 1 / H(1000), H(1000) is about 7.49
+        Assertions.assertEquals(13_350, counts[0], 500);
+        Assertions.assertEquals(counts[0] / 2.0, counts[1], 500);
+        int firstTen = 0;
+        for (int k = 0; k < 10; k++) {
+            firstTen += counts[k];
+        }
+        Assertions.assertTrue(firstTen > 35_000, "The first ten keys got " + firstTen);
+    }
+
+    @Test
+    void next_uniform_allKeysWithinRange() {
+        // Arrange
+        KeyDistribution sut = KeyDistribution.uniform(10);
+        Random random = new Random(42);
+        int[] counts = new int[10];
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            counts[sut.next(random)]++;
+        }
+        // Assert
+        for (int count : counts) {
+            Assertions.assertEquals(1_000, count, 150);
+        }
+    }
+
+    @Test
+    void of_unknownDistribution_throws() {
+        // Act & Assert
+        Assertions.assertThrows(IllegalArgumentException.class, () -> KeyDistribution.of("normal", 10, 1.0));
+    }
+}
@@ -0,0 +1,88 @@
+package se.cygni.talang.quality.loadtest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.cygni.talang.quality.application.VehicleService;
+import se.cygni.talang.quality.loadtest.LoadGenerator.Operation;
+import se.cygni.talang.quality.loadtest.LoadTarget.Result;
+import se.cygni.talang.quality.repo.FakeRepository;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LoadGeneratorTest {
+
+    private static final Map<Operation, Integer> MIX = Map.of(
+            Operation.ASSIGN, 60, Operation.NO_OP, 30, Operation.NOT_FOUND, 5, Operation.NOT_ALLOWED, 5);
+
+    @Test
+    void run_serviceWithSeededRepository_everyOperationGetsItsExpectedResult() throws InterruptedException {
+        // Arrange
+        FakeRepository repository = new FakeRepository();
+        LoadTarget target = new ServiceLoadTarget(new VehicleService(repository,
+                new PremiumBrandCache(repository, Duration.ofMinutes(10)), new SimpleMeterRegistry(), 16, null));
+        LoadGenerator sut = new LoadGenerator(target, KeyDistribution.zipfian(100, 0.99), 10, MIX, 4, 0);
+        sut.seed(repository);
+        // Act
+        LoadReport report = sut.run(Duration.ZERO, Duration.ofMillis(300));
+        // Assert
+        for (Operation operation : Operation.values()) {
+            Assertions.assertTrue(report.getCount(operation, operation.getExpected()) > 0, operation.name());
+            for (Result result : Result.values()) {
+                if (result != operation.getExpected()) {
+                    Assertions.assertEquals(0, report.getCount(operation, result), operation + " got " + result);
+                }
+            }
+        }
+        Assertions.assertNull(repository.getVehicleByRegistration(LoadGenerator.freeVehicle(0)).getOwner(),
+                "Assigned vehicles are returned");
+    }
+
+    @Test
+    void run_stall_latencyIncludesTheRequestsQueuedBehindIt() throws InterruptedException {
+        // Arrange
+        AtomicBoolean stalled = new AtomicBoolean();
+        AtomicInteger returned = new AtomicInteger();
+        LoadTarget target = new LoadTarget() {
+            @Override
+            public Result assignOwner(String owner, String vehicle) {
+                if (stalled.compareAndSet(false, true)) {
+                    sleep(200);
+                }
+                return Result.OK;
+            }
+
+            @Override
+            public void returnVehicle(String owner, String vehicle) {
+                returned.incrementAndGet();
+            }
+        };
+        LoadGenerator sut = new LoadGenerator(target, KeyDistribution.uniform(100), 10,
+                Map.of(Operation.ASSIGN, 1), 1, 1000);
+        // Act
+        LoadReport report = sut.run(Duration.ZERO, Duration.ofSeconds(1));
+        // Assert
+        // About 200 requests were due while the first one stalled, so about a fifth of them waited
+        Assertions.assertTrue(report.getLatency().getTotalCount() > 900, report.toString());
+        Assertions.assertTrue(report.getLatency().getValueAtPercentile(90) > TimeUnit.MILLISECONDS.toNanos(50),
+                report.toString());
+        Assertions.assertTrue(report.getServiceTime().getValueAtPercentile(99) < TimeUnit.MILLISECONDS.toNanos(50),
+                report.toString());
+        Assertions.assertEquals(report.getLatency().getTotalCount(), returned.get());
+        Assertions.assertEquals(returned.get(), report.getReturns().getTotalCount());
+        Assertions.assertEquals(2 * report.getLatency().getTotalCount(), report.getThroughput(), 1.0);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
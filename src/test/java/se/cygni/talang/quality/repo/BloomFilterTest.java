@@ -0,0 +1,45 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+    @Test
+    void mightContain_addedKeys_allFound() {
+        // Arrange
+        BloomFilter sut = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            sut.add("ABC" + i);
+        }
+        // Act & Assert
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(sut.mightContain("ABC" + i), "ABC" + i);
+        }
+    }
+
+    @Test
+    void mightContain_keysNotAdded_falsePositivesNearConfiguredRate() {
+        // Arrange
+        BloomFilter sut = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            sut.add("ABC" + i);
+        }
+        // Act
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (sut.mightContain("XYZ" + i)) {
+                falsePositives++;
+            }
+        }
+        // Assert
+        Assertions.assertEquals(7, sut.hashes());
+        Assertions.assertTrue(falsePositives < 1_500, "False positives: " + falsePositives);
+    }
+
+    @Test
+    void constructor_falsePositiveRateOfOne_throws() {
+        // Act & Assert
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10_000, 1));
+    }
+}
@@ -0,0 +1,86 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Vehicle;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Uses PostgreSQL specific SQL, see DatabaseRepositoryContractTest for how to run this
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class BrandCodeMigrationTest {
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private BrandCodeMigration sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = PostgresTestDatabase.createEmpty();
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        // The brand columns as they were before brands were stored as codes
+        jdbcTemplate.getJdbcTemplate().execute("ALTER TABLE vehicles ALTER COLUMN brand TYPE VARCHAR");
+        jdbcTemplate.getJdbcTemplate().execute("ALTER TABLE premiumBrands ALTER COLUMN brand TYPE VARCHAR");
+        jdbcTemplate.update("INSERT INTO premiumBrands (brand) VALUES ('LAMBORGHINI')", Map.of());
+        jdbcTemplate.update("INSERT INTO vehicles (registrationNumber, brand) VALUES " +
+                "('ABC123', 'VOLVO'), ('DEF456', 'LAMBORGHINI'), ('GHI789', null)", Map.of());
+        sut = new BrandCodeMigration(jdbcTemplate, new DataSourceTransactionManager(dataSource));
+    }
+
+    @Test
+    void migrate_brandNames_areConvertedToCodes() {
+        // Act
+        List<String> converted = sut.migrate();
+        // Assert
+        Assertions.assertEquals(List.of("vehicles", "premiumBrands"), converted);
+        DatabaseRepository repository = new DatabaseRepository(jdbcTemplate, null, false);
+        Assertions.assertEquals(Brand.VOLVO, repository.getVehicleByRegistration("ABC123").getBrand());
+        Assertions.assertEquals(Brand.LAMBORGHINI, repository.getVehicleByRegistration("DEF456").getBrand());
+        Assertions.assertNull(repository.getVehicleByRegistration("GHI789").getBrand());
+        Assertions.assertEquals(Set.of(Brand.LAMBORGHINI), Set.copyOf(repository.getPremiumBrands()));
+    }
+
+    @Test
+    void migrate_alreadyConverted_doesNothing() {
+        // Arrange
+        sut.migrate();
+        // Act
+        List<String> converted = sut.migrate();
+        // Assert
+        Assertions.assertEquals(List.of(), converted);
+    }
+
+    @Test
+    void migrate_unknownBrandName_failsAndLeavesTheNames() {
+        // Arrange
+        jdbcTemplate.update("INSERT INTO vehicles (registrationNumber, brand) VALUES ('JKL012', 'SAAB')", Map.of());
+        // Act
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> sut.migrate());
+        // Assert
+        Assertions.assertTrue(e.getMessage().contains("SAAB"), e.getMessage());
+        Assertions.assertEquals("VOLVO", jdbcTemplate.queryForObject(
+                "SELECT brand FROM vehicles WHERE registrationNumber='ABC123'", Map.of(), String.class));
+    }
+
+    @Test
+    void saveVehicle_afterMigration_storesTheCode() {
+        // Arrange
+        sut.migrate();
+        DatabaseRepository repository = new DatabaseRepository(jdbcTemplate, null, false);
+        Vehicle vehicle = new Vehicle("MNO345");
+        vehicle.setBrand(Brand.TOYOTA);
+        // Act
+        repository.saveVehicle(vehicle);
+        // Assert
+        Assertions.assertEquals(Brand.TOYOTA.getCode(), jdbcTemplate.queryForObject(
+                "SELECT brand FROM vehicles WHERE registrationNumber='MNO345'", Map.of(), Short.class));
+    }
+}
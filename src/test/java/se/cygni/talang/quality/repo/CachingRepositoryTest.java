@@ -0,0 +1,113 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.time.Duration;
+import java.util.EnumSet;
+
+@ExtendWith(MockitoExtension.class)
+class CachingRepositoryTest {
+
+    @Mock
+    Repository delegateMock;
+
+    CachingRepository sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        sut = new CachingRepository(delegateMock, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void getVehicleByRegistration_repeatedLookup_delegateIsCalledOnce() {
+        // Arrange
+        Mockito.when(delegateMock.getVehicleByRegistration("ABC123")).thenReturn(vehicle("ABC123", null));
+        // Act
+        sut.getVehicleByRegistration("ABC123");
+        Vehicle vehicle = sut.getVehicleByRegistration("ABC123");
+        // Assert
+        Assertions.assertEquals(vehicle("ABC123", null), vehicle);
+        Mockito.verify(delegateMock, Mockito.times(1)).getVehicleByRegistration("ABC123");
+        Assertions.assertEquals(1, sut.vehicleStats().hitCount());
+        Assertions.assertEquals(1, sut.vehicleStats().missCount());
+    }
+
+    @Test
+    void getVehicleByRegistration_returnedVehicleIsModified_cachedVehicleIsUnchanged() {
+        // Arrange
+        Mockito.when(delegateMock.getVehicleByRegistration("ABC123")).thenReturn(vehicle("ABC123", null));
+        // Act
+        sut.getVehicleByRegistration("ABC123").setOwner("123-456789");
+        // Assert
+        Assertions.assertNull(sut.getVehicleByRegistration("ABC123").getOwner());
+    }
+
+    @Test
+    void getVehicleByRegistration_unknownVehicle_isNotCached() {
+        // Act
+        sut.getVehicleByRegistration("ABC123");
+        sut.getVehicleByRegistration("ABC123");
+        // Assert
+        Mockito.verify(delegateMock, Mockito.times(2)).getVehicleByRegistration("ABC123");
+    }
+
+    @Test
+    void saveVehicle_cachedVehicle_cacheIsUpdated() {
+        // Arrange
+        Mockito.when(delegateMock.getVehicleByRegistration("ABC123")).thenReturn(vehicle("ABC123", null));
+        sut.getVehicleByRegistration("ABC123");
+        // Act
+        sut.saveVehicle(vehicle("ABC123", "123-456789"));
+        // Assert
+        Mockito.verify(delegateMock).saveVehicle(vehicle("ABC123", "123-456789"));
+        Assertions.assertEquals("123-456789", sut.getVehicleByRegistration("ABC123").getOwner());
+        Mockito.verify(delegateMock, Mockito.times(1)).getVehicleByRegistration("ABC123");
+    }
+
+    @Test
+    void saveCustomer_cachedCustomer_customerIsReloaded() {
+        // Arrange, the delegate keeps the stored premium counter
+        Customer stored = new Customer("123-456789");
+        stored.setPremiumVehicles(2);
+        stored.setPremiumCustomer(true);
+        Mockito.when(delegateMock.getCustomerByOrgNumber("123-456789")).thenReturn(stored);
+        sut.getCustomerByOrgNumber("123-456789");
+        // Act
+        sut.saveCustomer(new Customer("123-456789"));
+        // Assert
+        Assertions.assertEquals(stored, sut.getCustomerByOrgNumber("123-456789"));
+        Mockito.verify(delegateMock, Mockito.times(2)).getCustomerByOrgNumber("123-456789");
+    }
+
+    @Test
+    void assignOwner_cachedVehicle_vehicleIsReloaded() {
+        // Arrange
+        Mockito.when(delegateMock.getVehicleByRegistration("ABC123"))
+                .thenReturn(vehicle("ABC123", null))
+                .thenReturn(vehicle("ABC123", "123-456789"));
+        Mockito.when(delegateMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ASSIGNED);
+        sut.getVehicleByRegistration("ABC123");
+        // Act
+        sut.assignOwner("123-456789", "ABC123", EnumSet.of(Brand.LAMBORGHINI));
+        // Assert
+        Assertions.assertEquals("123-456789", sut.getVehicleByRegistration("ABC123").getOwner());
+    }
+
+    private static Vehicle vehicle(String registration, String owner) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setOwner(owner);
+        vehicle.setBrand(Brand.VOLVO);
+        return vehicle;
+    }
+}
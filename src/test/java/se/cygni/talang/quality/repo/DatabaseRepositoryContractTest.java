@@ -0,0 +1,40 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the repository contract against a real Postgres, e.g.
+ * {@code ./mvnw test -Dpostgres.url=jdbc:postgresql://localhost:5432/postgres}. All tables in the
+ * database are dropped.
+ */
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class DatabaseRepositoryContractTest extends RepositoryContractTest {
+
+    @Override
+    protected Repository createRepository(Set<Brand> premiumBrands) {
+        NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(PostgresTestDatabase.createEmpty());
+        premiumBrands.forEach(brand -> jdbcTemplate.update("INSERT INTO premiumBrands (brand) VALUES (:brand)",
+                Map.of("brand", brand.getCode())));
+        return new DatabaseRepository(jdbcTemplate, null, false);
+    }
+
+    @Test
+    void saveCustomer_staleCustomer_premiumCounterIsKept() {
+        // Arrange
+        Customer stale = sut.getCustomerByOrgNumber("123-456789");
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, sut.assignOwner("123-456789", "DEF456", premiumBrands));
+        // Act
+        sut.saveCustomer(stale);
+        // Assert
+        Assertions.assertEquals(1, sut.getCustomerByOrgNumber("123-456789").getPremiumVehicles());
+    }
+}
@@ -0,0 +1,128 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Only covers the statements that are portable to H2, the upserts and CTEs need a real Postgres
+class DatabaseRepositoryTest {
+
+    EmbeddedDatabase database;
+    NamedParameterJdbcTemplate jdbcTemplate;
+
+    DatabaseRepository sut; // System Under Test
+
+    Set<Brand> premiumBrands = EnumSet.of(Brand.LAMBORGHINI);
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbcTemplate = new NamedParameterJdbcTemplate(database);
+        sut = new DatabaseRepository(jdbcTemplate, null, false);
+
+        insertCustomer("123-456789", false);
+        insertCustomer("987-654321", false);
+        insertVehicle("ABC123", null, Brand.VOLVO);
+        insertVehicle("DEF456", null, Brand.LAMBORGHINI);
+        insertVehicle("GHI789", "987-654321", Brand.TOYOTA);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void getVehiclesByRegistration_someUnknown_onlyKnownAreReturned() {
+        // Act
+        List<Vehicle> vehicles = sut.getVehiclesByRegistration(List.of("ABC123", "GHI789", "XXX999"));
+        // Assert
+        Assertions.assertEquals(2, vehicles.size());
+    }
+
+    @Test
+    void assignOwners_mixedBatch_outcomeIsReportedPerAssignment() {
+        // Arrange
+        List<Assignment> assignments = List.of(
+                new Assignment("123-456789", "ABC123"),
+                new Assignment("123-456789", "XXX999"),
+                new Assignment("123-456789", "GHI789"),
+                new Assignment("000-000000", "DEF456"),
+                new Assignment("987-654321", "GHI789"));
+        // Act
+        List<AssignmentOutcome> outcomes = sut.assignOwners(assignments, premiumBrands);
+        // Assert
+        Assertions.assertEquals(List.of(
+                AssignmentOutcome.ASSIGNED,
+                AssignmentOutcome.VEHICLE_NOT_FOUND,
+                AssignmentOutcome.ALREADY_OWNED,
+                AssignmentOutcome.CUSTOMER_NOT_FOUND,
+                AssignmentOutcome.UNCHANGED), outcomes);
+        Assertions.assertEquals("123-456789", sut.getVehicleByRegistration("ABC123").getOwner());
+        Assertions.assertNull(sut.getVehicleByRegistration("DEF456").getOwner());
+    }
+
+    @Test
+    void assignOwners_sameVehicleTwice_laterAssignmentSeesEarlierOne() {
+        // Arrange
+        List<Assignment> assignments = List.of(
+                new Assignment("123-456789", "ABC123"),
+                new Assignment("987-654321", "ABC123"));
+        // Act
+        List<AssignmentOutcome> outcomes = sut.assignOwners(assignments, premiumBrands);
+        // Assert
+        Assertions.assertEquals(List.of(AssignmentOutcome.ASSIGNED, AssignmentOutcome.ALREADY_OWNED), outcomes);
+    }
+
+    @Test
+    void assignOwners_premiumVehicle_customerIsUpgraded() {
+        // Act
+        sut.assignOwners(List.of(new Assignment("123-456789", "DEF456")), premiumBrands);
+        // Assert
+        Customer expectedCustomer = new Customer("123-456789");
+        expectedCustomer.setPremiumCustomer(true);
+        expectedCustomer.setPremiumVehicles(1);
+        Assertions.assertEquals(expectedCustomer, sut.getCustomerByOrgNumber("123-456789"));
+    }
+
+    @Test
+    void assignOwners_normalVehicle_customerIsNotUpgraded() {
+        // Act
+        sut.assignOwners(List.of(new Assignment("123-456789", "ABC123")), premiumBrands);
+        // Assert
+        Assertions.assertFalse(sut.getCustomerByOrgNumber("123-456789").isPremiumCustomer());
+    }
+
+    private void insertCustomer(String orgNumber, boolean premium) {
+        jdbcTemplate.update("INSERT INTO customers (organisationNumber, premiumCustomer) VALUES (:orgNum, :premium)",
+                Map.of("orgNum", orgNumber, "premium", premium));
+    }
+
+    private void insertVehicle(String registration, String owner, Brand brand) {
+        jdbcTemplate.update("INSERT INTO vehicles (registrationNumber, owner, brand) VALUES (:regNum, :owner, :brand)",
+                new MapSqlParameterSource()
+                        .addValue("regNum", registration)
+                        .addValue("owner", owner)
+                        .addValue("brand", brand.getCode()));
+    }
+}
@@ -0,0 +1,127 @@
+package se.cygni.talang.quality.repo;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory stand-in for the database. Relies on the default, non-atomic assignOwner, so that
+ * races between reading and saving a vehicle are only settled by the version check.
+ */
+public class FakeRepository implements Repository {
+
+    private final Map<String, Vehicle> vehicles = new ConcurrentHashMap<>();
+    private final Map<String, Customer> customers = new ConcurrentHashMap<>();
+    private final Set<Brand> premiumBrands = EnumSet.noneOf(Brand.class);
+    private volatile long readDelayMillis;
+
+    public FakeRepository withVehicle(String registration, String owner, Brand brand) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setOwner(owner);
+        vehicle.setBrand(brand);
+        vehicles.put(registration, vehicle);
+        return this;
+    }
+
+    public FakeRepository withCustomer(String orgNumber, boolean premium) {
+        Customer customer = new Customer(orgNumber);
+        customer.setPremiumCustomer(premium);
+        customers.put(orgNumber, customer);
+        return this;
+    }
+
+    public FakeRepository withPremiumBrand(Brand brand) {
+        premiumBrands.add(brand);
+        return this;
+    }
+
+    // Widens the window between reading and saving a vehicle
+    public FakeRepository withReadDelay(long millis) {
+        this.readDelayMillis = millis;
+        return this;
+    }
+
+    @Override
+    public Vehicle getVehicleByRegistration(String registration) {
+        Vehicle vehicle = vehicles.get(registration);
+        sleep();
+        return vehicle == null ? null : copy(vehicle);
+    }
+
+    @Override
+    public Customer getCustomerByOrgNumber(String orgNumber) {
+        Customer customer = customers.get(orgNumber);
+        return customer == null ? null : copy(customer);
+    }
+
+    @Override
+    public List<Brand> getPremiumBrands() {
+        return new ArrayList<>(premiumBrands);
+    }
+
+    @Override
+    public void forEachVehicle(String owner, Brand brand, Consumer<Vehicle> action) {
+        vehicles.values().stream()
+                .filter(vehicle -> owner == null || owner.equals(vehicle.getOwner()))
+                .filter(vehicle -> brand == null || brand == vehicle.getBrand())
+                .map(FakeRepository::copy)
+                .forEach(action);
+    }
+
+    @Override
+    public void forEachOrgNumber(Consumer<String> action) {
+        customers.keySet().forEach(action);
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) {
+        vehicles.compute(vehicle.getRegistration(), (registration, stored) -> {
+            if (stored != null && stored.getVersion() != vehicle.getVersion()) {
+                throw new OptimisticLockingFailureException("Vehicle " + registration + " has been modified");
+            }
+            Vehicle saved = copy(vehicle);
+            saved.setVersion(stored == null ? 0 : stored.getVersion() + 1);
+            vehicle.setVersion(saved.getVersion());
+            return saved;
+        });
+    }
+
+    @Override
+    public void saveCustomer(Customer customer) {
+        customers.put(customer.getOrganisationNumber(), copy(customer));
+    }
+
+    private void sleep() {
+        if (readDelayMillis > 0) {
+            try {
+                Thread.sleep(readDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Vehicle copy(Vehicle vehicle) {
+        Vehicle copy = new Vehicle(vehicle.getRegistration());
+        copy.setOwner(vehicle.getOwner());
+        copy.setBrand(vehicle.getBrand());
+        copy.setVersion(vehicle.getVersion());
+        return copy;
+    }
+
+    private static Customer copy(Customer customer) {
+        Customer copy = new Customer(customer.getOrganisationNumber());
+        copy.setPremiumCustomer(customer.isPremiumCustomer());
+        copy.setPremiumVehicles(customer.getPremiumVehicles());
+        return copy;
+    }
+}
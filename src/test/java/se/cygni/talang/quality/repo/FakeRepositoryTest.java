@@ -0,0 +1,16 @@
+package se.cygni.talang.quality.repo;
+
+import se.cygni.talang.quality.model.Brand;
+
+import java.util.Set;
+
+// Keeps the fake used by other tests honest
+class FakeRepositoryTest extends RepositoryContractTest {
+
+    @Override
+    protected Repository createRepository(Set<Brand> premiumBrands) {
+        FakeRepository repository = new FakeRepository();
+        premiumBrands.forEach(repository::withPremiumBrand);
+        return repository;
+    }
+}
@@ -0,0 +1,41 @@
+package se.cygni.talang.quality.repo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.cygni.talang.quality.model.OwnershipEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+class FileOutboxSinkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void publish_twoBatches_eventsAreAppendedOnePerLine() throws IOException {
+        // Arrange
+        Path file = directory.resolve("events.ndjson");
+        Instant now = Instant.parse("2021-09-01T12:00:00Z");
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        // Act
+        try (FileOutboxSink sut = new FileOutboxSink(file, objectMapper)) {
+            sut.publish(List.of(new OwnershipEvent(1, "ABC123", null, "123-456789", now)));
+            sut.publish(List.of(new OwnershipEvent(2, "ABC123", "123-456789", null, now)));
+        }
+        // Assert
+        List<String> lines = Files.readAllLines(file);
+        Assertions.assertEquals(2, lines.size());
+        JsonNode returned = objectMapper.readTree(lines.get(1));
+        Assertions.assertEquals(2, returned.get("id").asLong());
+        Assertions.assertEquals("123-456789", returned.get("previousOwner").asText());
+        Assertions.assertTrue(returned.get("owner").isNull());
+    }
+}
@@ -0,0 +1,110 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+
+class KeyFilteringRepositoryTest {
+
+    FakeRepository delegate;
+    KnownKeys knownKeys;
+
+    KeyFilteringRepository sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        delegate = Mockito.spy(new FakeRepository()
+                .withCustomer("123-456789", false)
+                .withVehicle("ABC123", null, Brand.VOLVO));
+        knownKeys = new KnownKeys(1000, 1000, 0.001, Duration.ZERO);
+        sut = new KeyFilteringRepository(delegate, knownKeys);
+    }
+
+    @Test
+    void getVehicleByRegistration_filtersNotBuilt_delegateIsAsked() {
+        // Act
+        Vehicle vehicle = sut.getVehicleByRegistration("XYZ999");
+        // Assert
+        Assertions.assertNull(vehicle);
+        Mockito.verify(delegate).getVehicleByRegistration("XYZ999");
+    }
+
+    @Test
+    void getVehicleByRegistration_unknownVehicle_delegateIsNotAsked() {
+        // Arrange
+        knownKeys.rebuild(delegate);
+        // Act
+        Vehicle vehicle = sut.getVehicleByRegistration("XYZ999");
+        // Assert
+        Assertions.assertNull(vehicle);
+        Mockito.verify(delegate, Mockito.never()).getVehicleByRegistration("XYZ999");
+    }
+
+    @Test
+    void getVehicleByRegistration_vehicleSavedAfterBuild_isFound() {
+        // Arrange
+        knownKeys.rebuild(delegate);
+        sut.saveVehicle(new Vehicle("XYZ999"));
+        // Act
+        Vehicle vehicle = sut.getVehicleByRegistration("XYZ999");
+        // Assert
+        Assertions.assertEquals("XYZ999", vehicle.getRegistration());
+    }
+
+    @Test
+    void getVehicleByRegistration_feedDisconnected_delegateIsAsked() {
+        // Arrange
+        knownKeys.rebuild(delegate);
+        knownKeys.feedDisconnected();
+        // Act
+        Vehicle vehicle = sut.getVehicleByRegistration("XYZ999");
+        // Assert
+        Assertions.assertNull(vehicle);
+        Mockito.verify(delegate).getVehicleByRegistration("XYZ999");
+    }
+
+    @Test
+    void rebuild_feedNotListening_filtersAreNotBuilt() {
+        // Arrange
+        knownKeys.addFeed();
+        // Act
+        knownKeys.rebuild(delegate);
+        // Assert
+        Assertions.assertTrue(knownKeys.mightBeVehicle("XYZ999"));
+    }
+
+    @Test
+    void getCustomerByOrgNumber_knownCustomer_isFound() {
+        // Arrange
+        knownKeys.rebuild(delegate);
+        // Act & Assert
+        Assertions.assertNotNull(sut.getCustomerByOrgNumber("123-456789"));
+        Assertions.assertNull(sut.getCustomerByOrgNumber("999-999999"));
+        Mockito.verify(delegate, Mockito.never()).getCustomerByOrgNumber("999-999999");
+    }
+
+    @Test
+    void assignOwners_knownAndUnknownVehicles_outcomesInOrder() {
+        // Arrange
+        knownKeys.rebuild(delegate);
+        List<Assignment> assignments = List.of(
+                new Assignment("123-456789", "XYZ999"),
+                new Assignment("123-456789", "ABC123"),
+                new Assignment("123-456789", "XYZ998"));
+        // Act
+        List<AssignmentOutcome> outcomes = sut.assignOwners(assignments, EnumSet.noneOf(Brand.class));
+        // Assert
+        Assertions.assertEquals(List.of(AssignmentOutcome.VEHICLE_NOT_FOUND, AssignmentOutcome.ASSIGNED,
+                AssignmentOutcome.VEHICLE_NOT_FOUND), outcomes);
+        Mockito.verify(delegate).assignOwners(List.of(new Assignment("123-456789", "ABC123")), EnumSet.noneOf(Brand.class));
+    }
+}
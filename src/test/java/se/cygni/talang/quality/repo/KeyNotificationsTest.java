@@ -0,0 +1,83 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// Uses PostgreSQL specific SQL, see DatabaseRepositoryContractTest for how to run this
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class KeyNotificationsTest {
+
+    private DataSource dataSource;
+    private KnownKeys knownKeys;
+    // Another node, writing to the same database
+    private DatabaseRepository otherNode;
+
+    private KeyNotifications sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        dataSource = PostgresTestDatabase.createEmpty();
+        otherNode = new DatabaseRepository(new NamedParameterJdbcTemplate(dataSource), null, false);
+        knownKeys = new KnownKeys(1000, 1000, 0.001, Duration.ZERO);
+        sut = new KeyNotifications(List.of(dataSource));
+    }
+
+    @AfterEach
+    void tearDown() {
+        sut.close();
+        knownKeys.close();
+    }
+
+    @Test
+    void start_keysInsertedByOtherNode_areKnown() throws InterruptedException {
+        // Arrange
+        sut.start(knownKeys);
+        knownKeys.start(otherNode);
+        await(() -> !knownKeys.mightBeVehicle("XYZ999"));
+        // Act
+        otherNode.saveCustomer(new Customer("123-456789"));
+        otherNode.saveVehicle(vehicle("ABC123"));
+        // Assert
+        await(() -> knownKeys.mightBeVehicle("ABC123") && knownKeys.mightBeCustomer("123-456789"));
+        Assertions.assertFalse(knownKeys.mightBeVehicle("XYZ999"));
+    }
+
+    @Test
+    void start_triggersAlreadyInstalled_keysAreKnown() throws InterruptedException {
+        // Arrange
+        KeyNotifications.installTriggers(dataSource);
+        sut.start(knownKeys);
+        knownKeys.start(otherNode);
+        await(() -> !knownKeys.mightBeVehicle("XYZ999"));
+        // Act
+        otherNode.saveVehicle(vehicle("ABC123"));
+        // Assert
+        await(() -> knownKeys.mightBeVehicle("ABC123"));
+    }
+
+    private static Vehicle vehicle(String registration) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setBrand(Brand.VOLVO);
+        return vehicle;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+}
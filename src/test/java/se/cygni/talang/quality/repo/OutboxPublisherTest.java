@@ -0,0 +1,137 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.OwnershipEvent;
+import se.cygni.talang.quality.model.Vehicle;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+// Uses PostgreSQL specific SQL, see DatabaseRepositoryContractTest for how to run this
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class OutboxPublisherTest {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private DatabaseRepository repository;
+    private final List<OwnershipEvent> published = Collections.synchronizedList(new ArrayList<>());
+
+    private OutboxPublisher sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        dataSource = PostgresTestDatabase.createEmpty();
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        repository = new DatabaseRepository(jdbcTemplate, null, true);
+        repository.saveCustomer(new Customer("ORG1"));
+        repository.saveCustomer(new Customer("ORG2"));
+        sut = publisher(published::addAll, 3);
+    }
+
+    @Test
+    void drain_assignedAndReturned_eventsArePublishedInOrder() {
+        // Arrange
+        repository.saveVehicle(vehicle("REG1"));
+        repository.assignOwner("ORG1", "REG1", EnumSet.noneOf(Brand.class));
+        repository.assignOwner("ORG2", "REG1", EnumSet.noneOf(Brand.class));
+        repository.returnVehicle("ORG1", "REG1", EnumSet.noneOf(Brand.class));
+        // Act
+        long drained = sut.drain();
+        // Assert
+        Assertions.assertEquals(2, drained);
+        Assertions.assertEquals(List.of("null->ORG1", "ORG1->null"), changes(published));
+        Assertions.assertEquals(0, outboxSize());
+    }
+
+    @Test
+    void drain_savedAndBatchAssigned_onlyOwnerChangesArePublished() {
+        // Arrange
+        repository.saveVehicle(vehicle("REG1"));
+        repository.saveVehicle(vehicle("REG2"));
+        Vehicle vehicle = repository.getVehicleByRegistration("REG1");
+        vehicle.setBrand(Brand.TOYOTA);
+        repository.saveVehicle(vehicle);
+        vehicle.setOwner("ORG2");
+        repository.saveVehicle(vehicle);
+        repository.assignOwners(List.of(new Assignment("ORG1", "REG1"), new Assignment("ORG1", "REG2")),
+                EnumSet.noneOf(Brand.class));
+        // Act
+        sut.drain();
+        // Assert
+        Assertions.assertEquals(List.of("null->ORG2", "null->ORG1"), changes(published));
+        Assertions.assertEquals("REG2", published.get(1).getRegistration());
+    }
+
+    @Test
+    void drain_sinkFails_eventsAreKeptForTheNextDrain() {
+        // Arrange
+        repository.saveVehicle(vehicle("REG1"));
+        repository.assignOwner("ORG1", "REG1", EnumSet.noneOf(Brand.class));
+        OutboxPublisher failing = publisher(events -> {
+            throw new IllegalStateException("Sink is down");
+        }, 3);
+        // Act
+        Assertions.assertThrows(IllegalStateException.class, failing::drain);
+        sut.drain();
+        // Assert
+        Assertions.assertEquals(List.of("null->ORG1"), changes(published));
+    }
+
+    @Test
+    void drain_twoPublishersConcurrently_eachEventIsPublishedOnce() {
+        // Arrange
+        jdbcTemplate.update("INSERT INTO ownershipEvents (registrationNumber, owner) " +
+                "SELECT 'REG' || i, 'ORG1' FROM generate_series(1, 2000) AS i", Map.of());
+        List<OwnershipEvent> other = Collections.synchronizedList(new ArrayList<>());
+        OutboxPublisher sut2 = publisher(other::addAll, 50);
+        sut = publisher(published::addAll, 50);
+        // Act
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(sut::drain);
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(sut2::drain);
+        long drained = first.join() + second.join();
+        // Assert
+        Set<Long> ids = new HashSet<>();
+        published.forEach(event -> ids.add(event.getId()));
+        other.forEach(event -> ids.add(event.getId()));
+        Assertions.assertEquals(2000, drained);
+        Assertions.assertEquals(2000, published.size() + other.size());
+        Assertions.assertEquals(2000, ids.size());
+        Assertions.assertEquals(0, outboxSize());
+    }
+
+    private OutboxPublisher publisher(OutboxSink sink, int batchSize) {
+        return new OutboxPublisher(jdbcTemplate, new DataSourceTransactionManager(dataSource), sink, batchSize);
+    }
+
+    private int outboxSize() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM ownershipEvents", Map.of(), Integer.class);
+    }
+
+    private static List<String> changes(List<OwnershipEvent> events) {
+        return events.stream()
+                .map(event -> event.getPreviousOwner() + "->" + event.getOwner())
+                .collect(Collectors.toList());
+    }
+
+    private static Vehicle vehicle(String registration) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setBrand(Brand.VOLVO);
+        return vehicle;
+    }
+}
@@ -0,0 +1,49 @@
+package se.cygni.talang.quality.repo;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+/**
+ * The Postgres given by -Dpostgres.url, for tests of SQL that H2 does not support. All tables in
+ * the database are dropped.
+ */
+public final class PostgresTestDatabase {
+
+    private PostgresTestDatabase() {
+    }
+
+    public static DataSource createEmpty() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("postgres.url"),
+                username(), password());
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        populator.addScript(new ClassPathResource("drop-schema.sql"));
+        populator.addScript(new ClassPathResource("schema.sql"));
+        populator.execute(dataSource);
+        return dataSource;
+    }
+
+    // The same database through R2DBC
+    static ConnectionPool connectionPool() {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(
+                System.getProperty("postgres.url").replaceFirst("^jdbc:", "r2dbc:")).mutate()
+                .option(ConnectionFactoryOptions.USER, username())
+                .option(ConnectionFactoryOptions.PASSWORD, password())
+                .build();
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options)).build());
+    }
+
+    private static String username() {
+        return System.getProperty("postgres.username", "postgres");
+    }
+
+    private static String password() {
+        return System.getProperty("postgres.password", "password");
+    }
+}
@@ -0,0 +1,70 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import se.cygni.talang.quality.model.Brand;
+
+import java.time.Duration;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class PremiumBrandCacheTest {
+
+    @Mock
+    Repository repositoryMock;
+
+    @Test
+    void contains_repeatedLookups_brandsAreLoadedOnce() {
+        // Arrange
+        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(List.of(Brand.LAMBORGHINI));
+        PremiumBrandCache sut = new PremiumBrandCache(repositoryMock, Duration.ofMinutes(10));
+        // Act
+        boolean lamborghini = sut.contains(Brand.LAMBORGHINI);
+        boolean volvo = sut.contains(Brand.VOLVO);
+        // Assert
+        Assertions.assertTrue(lamborghini);
+        Assertions.assertFalse(volvo);
+        Mockito.verify(repositoryMock, Mockito.times(1)).getPremiumBrands();
+    }
+
+    @Test
+    void contains_afterInvalidate_brandsAreReloaded() {
+        // Arrange
+        Mockito.when(repositoryMock.getPremiumBrands())
+                .thenReturn(List.of(Brand.LAMBORGHINI))
+                .thenReturn(List.of(Brand.VOLVO));
+        PremiumBrandCache sut = new PremiumBrandCache(repositoryMock, Duration.ofMinutes(10));
+        sut.contains(Brand.LAMBORGHINI);
+        // Act
+        sut.invalidate();
+        // Assert
+        Assertions.assertTrue(sut.contains(Brand.VOLVO));
+        Assertions.assertFalse(sut.contains(Brand.LAMBORGHINI));
+    }
+
+    @Test
+    void contains_ttlElapsed_brandsAreReloaded() {
+        // Arrange
+        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(List.of(Brand.LAMBORGHINI));
+        PremiumBrandCache sut = new PremiumBrandCache(repositoryMock, Duration.ZERO);
+        // Act
+        sut.contains(Brand.LAMBORGHINI);
+        sut.contains(Brand.LAMBORGHINI);
+        // Assert
+        Mockito.verify(repositoryMock, Mockito.times(2)).getPremiumBrands();
+    }
+
+    @Test
+    void get_snapshot_cannotBeModified() {
+        // Arrange
+        Mockito.when(repositoryMock.getPremiumBrands()).thenReturn(List.of(Brand.LAMBORGHINI));
+        PremiumBrandCache sut = new PremiumBrandCache(repositoryMock, Duration.ofMinutes(10));
+        // Act & Assert
+        Assertions.assertThrows(UnsupportedOperationException.class, () ->
+                sut.get().add(Brand.VOLVO));
+    }
+}
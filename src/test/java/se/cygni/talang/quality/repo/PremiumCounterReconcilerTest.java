@@ -0,0 +1,88 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReconciliationResult;
+import se.cygni.talang.quality.model.Vehicle;
+
+import javax.sql.DataSource;
+import java.util.EnumSet;
+import java.util.Map;
+
+// Uses PostgreSQL specific SQL, see DatabaseRepositoryContractTest for how to run this
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class PremiumCounterReconcilerTest {
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private DatabaseRepository repository;
+
+    private PremiumCounterReconciler sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = PostgresTestDatabase.createEmpty();
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO premiumBrands (brand) VALUES (:brand)", Map.of("brand", Brand.LAMBORGHINI.getCode()));
+        repository = new DatabaseRepository(jdbcTemplate, null, false);
+        // Small chunks, so that the customers are spread over several
+        sut = new PremiumCounterReconciler(jdbcTemplate, new DataSourceTransactionManager(dataSource), 3, 2);
+    }
+
+    @Test
+    void reconcile_wrongCounters_areCorrected() {
+        // Arrange
+        for (int i = 0; i < 10; i++) {
+            repository.saveCustomer(customer("ORG" + i, 0, false));
+        }
+        // Saving an existing customer keeps its counter, so the wrong ones are written directly
+        jdbcTemplate.update("UPDATE customers SET premiumVehicles=5, premiumCustomer=true WHERE organisationNumber='ORG1'",
+                Map.of());
+        jdbcTemplate.update("UPDATE customers SET premiumCustomer=true WHERE organisationNumber='ORG2'", Map.of());
+        repository.saveVehicle(vehicle("REG1", "ORG3", Brand.LAMBORGHINI));
+        repository.saveVehicle(vehicle("REG2", "ORG3", Brand.LAMBORGHINI));
+        repository.saveVehicle(vehicle("REG3", "ORG4", Brand.VOLVO));
+        // Act
+        ReconciliationResult result = sut.reconcile();
+        // Assert
+        Assertions.assertEquals(4, result.getChunks());
+        Assertions.assertEquals(10, result.getCustomers());
+        Assertions.assertEquals(3, result.getCorrected());
+        Assertions.assertEquals(customer("ORG1", 0, false), repository.getCustomerByOrgNumber("ORG1"));
+        Assertions.assertEquals(customer("ORG2", 0, false), repository.getCustomerByOrgNumber("ORG2"));
+        Assertions.assertEquals(customer("ORG3", 2, true), repository.getCustomerByOrgNumber("ORG3"));
+        Assertions.assertEquals(customer("ORG4", 0, false), repository.getCustomerByOrgNumber("ORG4"));
+    }
+
+    @Test
+    void reconcile_countersAreCorrect_nothingIsCorrected() {
+        // Arrange
+        repository.saveCustomer(customer("ORG1", 0, false));
+        repository.saveVehicle(vehicle("REG1", null, Brand.LAMBORGHINI));
+        repository.assignOwner("ORG1", "REG1", EnumSet.of(Brand.LAMBORGHINI));
+        // Act
+        ReconciliationResult result = sut.reconcile();
+        // Assert
+        Assertions.assertEquals(1, result.getCustomers());
+        Assertions.assertEquals(0, result.getCorrected());
+    }
+
+    private static Customer customer(String orgNumber, int premiumVehicles, boolean premium) {
+        Customer customer = new Customer(orgNumber);
+        customer.setPremiumVehicles(premiumVehicles);
+        customer.setPremiumCustomer(premium);
+        return customer;
+    }
+
+    private static Vehicle vehicle(String registration, String owner, Brand brand) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setOwner(owner);
+        vehicle.setBrand(brand);
+        return vehicle;
+    }
+}
@@ -0,0 +1,114 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+class QueryTracingDataSourceTest {
+
+    EmbeddedDatabase database;
+    NamedParameterJdbcTemplate jdbcTemplate;
+
+    QueryTracingDataSource sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        sut = new QueryTracingDataSource(database);
+        jdbcTemplate = new NamedParameterJdbcTemplate(sut);
+        jdbcTemplate.update("INSERT INTO customers (organisationNumber, premiumCustomer) VALUES ('123-456789', false)", Map.of());
+        jdbcTemplate.update("INSERT INTO vehicles (registrationNumber, brand) VALUES ('ABC123', 1), ('DEF456', 3)", Map.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void getConnection_noTrace_connectionIsNotWrapped() throws SQLException {
+        // Act
+        try (Connection connection = sut.getConnection()) {
+            // Assert
+            Assertions.assertFalse(Proxy.isProxyClass(connection.getClass()));
+        }
+    }
+
+    @Test
+    void query_traced_statementAndRowsAreRecorded() {
+        // Act
+        List<String> registrations;
+        try (QueryTrace trace = QueryTrace.start()) {
+            registrations = jdbcTemplate.queryForList("SELECT registrationNumber FROM vehicles WHERE brand IN (:brands)",
+                    Map.of("brands", List.of(1, 3, 9)), String.class);
+            // Assert
+            Assertions.assertEquals(2, registrations.size());
+            Assertions.assertEquals(1, trace.getStatementCount());
+            Assertions.assertEquals(2, trace.getRows());
+            Assertions.assertEquals("SELECT registrationNumber FROM vehicles WHERE brand IN (?, ...)",
+                    trace.getStatements().get(0).getShape());
+        }
+    }
+
+    @Test
+    void batchUpdate_traced_isOneStatementWithTheUpdatedRows() {
+        // Arrange
+        SqlParameterSource[] params = {
+                new MapSqlParameterSource("regNum", "ABC123"),
+                new MapSqlParameterSource("regNum", "DEF456"),
+                new MapSqlParameterSource("regNum", "XXX999")};
+        // Act
+        try (QueryTrace trace = QueryTrace.start()) {
+            jdbcTemplate.batchUpdate("UPDATE vehicles SET owner='123-456789' WHERE registrationNumber=:regNum", params);
+            // Assert
+            Assertions.assertEquals(1, trace.getStatementCount());
+            Assertions.assertEquals(2, trace.getRows());
+        }
+    }
+
+    @Test
+    void getVehiclesByRegistration_manyRegistrations_isWithinBudgetOfOneStatement() {
+        // Arrange
+        DatabaseRepository repository = new DatabaseRepository(jdbcTemplate, null, false);
+        // Act
+        try (QueryTrace trace = QueryTrace.start()) {
+            List<Vehicle> vehicles = repository.getVehiclesByRegistration(List.of("ABC123", "DEF456", "XXX999"));
+            // Assert
+            Assertions.assertEquals(2, vehicles.size());
+            Assertions.assertEquals(1, trace.getStatementCount(), trace.toString());
+        }
+    }
+
+    @Test
+    void close_nestedTrace_outerTraceIsCurrentAgain() {
+        // Arrange
+        try (QueryTrace outer = QueryTrace.start()) {
+            // Act
+            try (QueryTrace inner = QueryTrace.start()) {
+                jdbcTemplate.queryForList("SELECT brand FROM premiumBrands", Map.of(), Short.class);
+            }
+            // Assert
+            Assertions.assertSame(outer, QueryTrace.current());
+            Assertions.assertEquals(0, outer.getStatementCount());
+        }
+        Assertions.assertNull(QueryTrace.current());
+    }
+}
@@ -0,0 +1,75 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import reactor.test.StepVerifier;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.List;
+import java.util.Map;
+
+// Runs against the Postgres given by -Dpostgres.url, see DatabaseRepositoryContractTest
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class ReactiveDatabaseRepositoryTest {
+
+    private DatabaseRepository repository;
+
+    private ReactiveDatabaseRepository sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(PostgresTestDatabase.createEmpty());
+        jdbcTemplate.update("INSERT INTO premiumBrands (brand) VALUES (:brand)", Map.of("brand", Brand.LAMBORGHINI.getCode()));
+        repository = new DatabaseRepository(jdbcTemplate, null, false);
+        repository.saveCustomer(new Customer("123-456789"));
+        Vehicle vehicle = new Vehicle("ABC123");
+        vehicle.setBrand(Brand.LAMBORGHINI);
+        repository.saveVehicle(vehicle);
+        sut = new ReactiveDatabaseRepository(PostgresTestDatabase.connectionPool());
+    }
+
+    @AfterEach
+    void tearDown() {
+        sut.close();
+    }
+
+    @Test
+    void getVehicleByRegistration_savedAndUnknownVehicle_foundOrEmpty() {
+        StepVerifier.create(sut.getVehicleByRegistration("ABC123"))
+                .expectNext(repository.getVehicleByRegistration("ABC123"))
+                .verifyComplete();
+        StepVerifier.create(sut.getVehicleByRegistration("XXX999")).verifyComplete();
+    }
+
+    @Test
+    void getCustomerByOrgNumber_savedAndUnknownCustomer_foundOrEmpty() {
+        StepVerifier.create(sut.getCustomerByOrgNumber("123-456789"))
+                .expectNext(new Customer("123-456789"))
+                .verifyComplete();
+        StepVerifier.create(sut.getCustomerByOrgNumber("000-000000")).verifyComplete();
+    }
+
+    @Test
+    void getPremiumBrands_configuredBrands_areEmitted() {
+        StepVerifier.create(sut.getPremiumBrands())
+                .expectNext(List.of(Brand.LAMBORGHINI))
+                .verifyComplete();
+    }
+
+    @Test
+    void claimVehicle_premiumVehicleClaimedTwice_onlyFirstClaimsAndCounts() {
+        // Act & Assert
+        StepVerifier.create(sut.claimVehicle("123-456789", "ABC123", true)).expectNext(true).verifyComplete();
+        StepVerifier.create(sut.claimVehicle("123-456789", "ABC123", true)).expectNext(false).verifyComplete();
+        Assertions.assertEquals("123-456789", repository.getVehicleByRegistration("ABC123").getOwner());
+        Customer customer = repository.getCustomerByOrgNumber("123-456789");
+        Assertions.assertEquals(1, customer.getPremiumVehicles());
+        Assertions.assertTrue(customer.isPremiumCustomer());
+    }
+}
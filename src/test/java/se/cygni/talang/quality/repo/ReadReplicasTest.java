@@ -0,0 +1,212 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Vehicle;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+
+class ReadReplicasTest {
+
+    EmbeddedDatabase primary;
+    EmbeddedDatabase replica;
+    FailingDataSource failingReplica;
+    ReadReplicas readReplicas;
+
+    DatabaseRepository sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        primary = database();
+        replica = database();
+        // The same vehicle on both, with different owners to tell them apart
+        insertVehicle(primary, "ABC123", "PRIMARY");
+        insertVehicle(replica, "ABC123", "REPLICA");
+        failingReplica = new FailingDataSource(replica);
+        readReplicas = new ReadReplicas(primary, List.of(failingReplica), Duration.ofHours(1));
+        sut = new DatabaseRepository(new NamedParameterJdbcTemplate(primary), readReplicas, false);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        readReplicas.close();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    void getVehicleByRegistration_replicaIsUp_isReadFromReplica() {
+        // Act
+        Vehicle vehicle = sut.getVehicleByRegistration("ABC123");
+        // Assert
+        Assertions.assertEquals("REPLICA", vehicle.getOwner());
+    }
+
+    @Test
+    void getVehicleByRegistration_inTransaction_isReadFromPrimary() {
+        // Arrange
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(primary));
+        // Act
+        Vehicle vehicle = transactionTemplate.execute(status -> sut.getVehicleByRegistration("ABC123"));
+        // Assert
+        Assertions.assertEquals("PRIMARY", vehicle.getOwner());
+    }
+
+    @Test
+    void assignOwners_replicaIsUp_isWrittenToPrimary() {
+        // Arrange
+        insertVehicle(primary, "DEF456", null);
+        insertVehicle(replica, "DEF456", null);
+        insertCustomer(primary, "123-456789");
+        // Act
+        sut.assignOwners(List.of(new Assignment("123-456789", "DEF456")), EnumSet.noneOf(Brand.class));
+        // Assert
+        Assertions.assertEquals("123-456789", ownerOf(primary, "DEF456"));
+        Assertions.assertNull(ownerOf(replica, "DEF456"));
+    }
+
+    @Test
+    void getVehicleByRegistration_replicaIsDown_isReadFromPrimary() {
+        // Arrange
+        failingReplica.failing = true;
+        // Act
+        Vehicle vehicle = sut.getVehicleByRegistration("ABC123");
+        // Assert
+        Assertions.assertEquals("PRIMARY", vehicle.getOwner());
+        Assertions.assertFalse(readReplicas.isUp(0));
+    }
+
+    @Test
+    void checkHealth_replicaIsBack_isReadFromReplicaAgain() {
+        // Arrange
+        failingReplica.failing = true;
+        sut.getVehicleByRegistration("ABC123");
+        failingReplica.failing = false;
+        // Act
+        readReplicas.checkHealth();
+        // Assert
+        Assertions.assertTrue(readReplicas.isUp(0));
+        Assertions.assertEquals("REPLICA", sut.getVehicleByRegistration("ABC123").getOwner());
+    }
+
+    @Test
+    void getConnection_withCredentials_isRoutedLikeWithout() throws SQLException {
+        // Arrange
+        DataSource dataSource = readReplicas.getDataSource();
+        // Act
+        String fromReplica = ownerOf(dataSource.getConnection("sa", ""), "ABC123");
+        failingReplica.failing = true;
+        String fromPrimary = ownerOf(dataSource.getConnection("sa", ""), "ABC123");
+        // Assert
+        Assertions.assertEquals("REPLICA", fromReplica);
+        Assertions.assertEquals("PRIMARY", fromPrimary);
+        Assertions.assertFalse(readReplicas.isUp(0));
+    }
+
+    @Test
+    void getVehicleByRegistration_twoReplicas_areReadInTurn() throws IOException {
+        // Arrange
+        EmbeddedDatabase secondReplica = database();
+        insertVehicle(secondReplica, "ABC123", "SECOND");
+        try (ReadReplicas twoReplicas = new ReadReplicas(primary, List.of(replica, secondReplica), Duration.ofHours(1))) {
+            DatabaseRepository repository = new DatabaseRepository(new NamedParameterJdbcTemplate(primary), twoReplicas, false);
+            // Act
+            String first = repository.getVehicleByRegistration("ABC123").getOwner();
+            String second = repository.getVehicleByRegistration("ABC123").getOwner();
+            String third = repository.getVehicleByRegistration("ABC123").getOwner();
+            // Assert
+            Assertions.assertNotEquals(first, second);
+            Assertions.assertEquals(first, third);
+        } finally {
+            secondReplica.shutdown();
+        }
+    }
+
+    private static EmbeddedDatabase database() {
+        return new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+    }
+
+    private static void insertVehicle(DataSource database, String registration, String owner) {
+        if (owner != null) {
+            insertCustomer(database, owner);
+        }
+        new NamedParameterJdbcTemplate(database).update(
+                "INSERT INTO vehicles (registrationNumber, owner, brand) VALUES (:regNum, :owner, :brand)",
+                new MapSqlParameterSource()
+                        .addValue("regNum", registration)
+                        .addValue("owner", owner)
+                        .addValue("brand", Brand.VOLVO.getCode()));
+    }
+
+    private static void insertCustomer(DataSource database, String orgNumber) {
+        new NamedParameterJdbcTemplate(database).update(
+                "INSERT INTO customers (organisationNumber, premiumCustomer) VALUES (:orgNum, false)",
+                new MapSqlParameterSource("orgNum", orgNumber));
+    }
+
+    private static String ownerOf(DataSource database, String registration) {
+        return new NamedParameterJdbcTemplate(database).queryForObject(
+                "SELECT owner FROM vehicles WHERE registrationNumber=:regNum",
+                new MapSqlParameterSource("regNum", registration), String.class);
+    }
+
+    private static String ownerOf(Connection connection, String registration) throws SQLException {
+        try (connection; PreparedStatement statement = connection.prepareStatement(
+                "SELECT owner FROM vehicles WHERE registrationNumber=?")) {
+            statement.setString(1, registration);
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                return result.getString(1);
+            }
+        }
+    }
+
+    private static class FailingDataSource extends DelegatingDataSource {
+
+        volatile boolean failing;
+
+        FailingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (failing) {
+                throw new SQLException("Connection refused");
+            }
+            return super.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            if (failing) {
+                throw new SQLException("Connection refused");
+            }
+            return super.getConnection(username, password);
+        }
+    }
+}
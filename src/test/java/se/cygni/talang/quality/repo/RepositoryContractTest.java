@@ -0,0 +1,342 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Behaviour every Repository implementation must have. Subclasses provide an empty repository.
+ */
+public abstract class RepositoryContractTest {
+
+    protected Set<Brand> premiumBrands = EnumSet.of(Brand.LAMBORGHINI);
+
+    protected Repository sut; // System Under Test
+
+    protected abstract Repository createRepository(Set<Brand> premiumBrands);
+
+    @BeforeEach
+    void setUpRepository() {
+        sut = createRepository(premiumBrands);
+        sut.saveCustomer(customer("123-456789", false));
+        sut.saveCustomer(customer("987-654321", true));
+        sut.saveVehicle(vehicle("ABC123", null, Brand.VOLVO));
+        sut.saveVehicle(vehicle("DEF456", null, Brand.LAMBORGHINI));
+        sut.saveVehicle(vehicle("GHI789", "987-654321", Brand.TOYOTA));
+    }
+
+    @Test
+    void getVehicleByRegistration_unknownVehicle_null() {
+        Assertions.assertNull(sut.getVehicleByRegistration("XXX999"));
+    }
+
+    @Test
+    void getVehicleByRegistration_savedVehicle_isReturned() {
+        Assertions.assertEquals(vehicle("GHI789", "987-654321", Brand.TOYOTA), sut.getVehicleByRegistration("GHI789"));
+    }
+
+    @Test
+    void getCustomerByOrgNumber_savedCustomer_isReturned() {
+        Assertions.assertEquals(customer("987-654321", true), sut.getCustomerByOrgNumber("987-654321"));
+        Assertions.assertNull(sut.getCustomerByOrgNumber("000-000000"));
+    }
+
+    @Test
+    void getPremiumBrands_configuredBrands_areReturned() {
+        Assertions.assertEquals(List.of(Brand.LAMBORGHINI), sut.getPremiumBrands());
+    }
+
+    @Test
+    void getVehiclesByRegistration_someUnknown_onlyKnownAreReturned() {
+        // Act
+        List<Vehicle> vehicles = sut.getVehiclesByRegistration(List.of("ABC123", "XXX999", "GHI789"));
+        // Assert
+        Assertions.assertEquals(2, vehicles.size());
+        Assertions.assertTrue(vehicles.contains(vehicle("ABC123", null, Brand.VOLVO)));
+    }
+
+    @Test
+    void getCustomersByOrgNumber_someUnknown_onlyKnownAreReturned() {
+        Assertions.assertEquals(List.of(customer("123-456789", false)),
+                sut.getCustomersByOrgNumber(List.of("123-456789", "000-000000")));
+    }
+
+    @Test
+    void forEachVehicle_noFilter_allVehiclesAreVisited() {
+        // Arrange
+        List<Vehicle> visited = new ArrayList<>();
+        // Act
+        sut.forEachVehicle(null, null, visited::add);
+        // Assert
+        Assertions.assertEquals(Set.of(
+                vehicle("ABC123", null, Brand.VOLVO),
+                vehicle("DEF456", null, Brand.LAMBORGHINI),
+                vehicle("GHI789", "987-654321", Brand.TOYOTA)), new HashSet<>(visited));
+        Assertions.assertEquals(3, visited.size());
+    }
+
+    @Test
+    void forEachVehicle_ownerAndBrandFilters_onlyMatchingVehiclesAreVisited() {
+        // Arrange
+        sut.saveVehicle(vehicle("JKL012", "987-654321", Brand.VOLVO));
+        List<Vehicle> byOwner = new ArrayList<>();
+        List<Vehicle> byBrand = new ArrayList<>();
+        List<Vehicle> byBoth = new ArrayList<>();
+        List<Vehicle> byUnknownOwner = new ArrayList<>();
+        // Act
+        sut.forEachVehicle("987-654321", null, byOwner::add);
+        sut.forEachVehicle(null, Brand.VOLVO, byBrand::add);
+        sut.forEachVehicle("987-654321", Brand.VOLVO, byBoth::add);
+        sut.forEachVehicle("000-000000", null, byUnknownOwner::add);
+        // Assert
+        Assertions.assertEquals(Set.of("GHI789", "JKL012"), registrations(byOwner));
+        Assertions.assertEquals(Set.of("ABC123", "JKL012"), registrations(byBrand));
+        Assertions.assertEquals(Set.of("JKL012"), registrations(byBoth));
+        Assertions.assertTrue(byUnknownOwner.isEmpty());
+    }
+
+    @Test
+    void getVehiclesByOwner_pagedAfterLastRegistration_allVehiclesAreReturnedInOrder() {
+        // Arrange
+        for (int i = 9; i >= 0; i--) {
+            sut.saveVehicle(vehicle("OWN00" + i, "123-456789", Brand.VOLVO));
+        }
+        List<String> visited = new ArrayList<>();
+        // Act
+        List<Vehicle> page = sut.getVehiclesByOwner("123-456789", null, 4);
+        while (!page.isEmpty()) {
+            page.forEach(vehicle -> visited.add(vehicle.getRegistration()));
+            page = sut.getVehiclesByOwner("123-456789", page.get(page.size() - 1).getRegistration(), 4);
+        }
+        // Assert
+        Assertions.assertEquals(List.of("OWN000", "OWN001", "OWN002", "OWN003", "OWN004",
+                "OWN005", "OWN006", "OWN007", "OWN008", "OWN009"), visited);
+    }
+
+    @Test
+    void getVehiclesByOwner_otherOwnersAndUnknownOwner_areNotReturned() {
+        Assertions.assertEquals(List.of(vehicle("GHI789", "987-654321", Brand.TOYOTA)),
+                sut.getVehiclesByOwner("987-654321", null, 10));
+        Assertions.assertTrue(sut.getVehiclesByOwner("987-654321", "GHI789", 10).isEmpty());
+        Assertions.assertTrue(sut.getVehiclesByOwner("000-000000", null, 10).isEmpty());
+    }
+
+    @Test
+    void saveVehicle_readVehicleIsSaved_versionIsIncremented() {
+        // Arrange
+        Vehicle vehicle = sut.getVehicleByRegistration("ABC123");
+        vehicle.setOwner("123-456789");
+        // Act
+        sut.saveVehicle(vehicle);
+        // Assert
+        Assertions.assertEquals(1, vehicle.getVersion());
+        Assertions.assertEquals(vehicle, sut.getVehicleByRegistration("ABC123"));
+    }
+
+    @Test
+    void saveVehicle_staleVersion_isRejected() {
+        // Arrange
+        Vehicle first = sut.getVehicleByRegistration("ABC123");
+        Vehicle second = sut.getVehicleByRegistration("ABC123");
+        first.setOwner("123-456789");
+        sut.saveVehicle(first);
+        second.setOwner("987-654321");
+        // Act & Assert
+        Assertions.assertThrows(OptimisticLockingFailureException.class, () -> sut.saveVehicle(second));
+        Assertions.assertEquals("123-456789", sut.getVehicleByRegistration("ABC123").getOwner());
+    }
+
+    @Test
+    protected void saveCustomer_existingCustomer_isUpdated() {
+        // Act
+        sut.saveCustomer(customer("123-456789", true));
+        // Assert
+        Assertions.assertTrue(sut.getCustomerByOrgNumber("123-456789").isPremiumCustomer());
+    }
+
+    @Test
+    void insertCustomer_existingCustomer_isKept() {
+        // Act
+        sut.insertCustomer(customer("123-456789", true));
+        // Assert
+        Assertions.assertFalse(sut.getCustomerByOrgNumber("123-456789").isPremiumCustomer());
+    }
+
+    @Test
+    void insertCustomer_newCustomer_isSaved() {
+        // Act
+        sut.insertCustomer(customer("555-555555", true));
+        // Assert
+        Assertions.assertEquals(customer("555-555555", true), sut.getCustomerByOrgNumber("555-555555"));
+    }
+
+    @Test
+    void assignOwner_unknownVehicle_vehicleNotFound() {
+        Assertions.assertEquals(AssignmentOutcome.VEHICLE_NOT_FOUND, sut.assignOwner("123-456789", "XXX999", premiumBrands));
+    }
+
+    @Test
+    void assignOwner_unknownCustomer_customerNotFound() {
+        Assertions.assertEquals(AssignmentOutcome.CUSTOMER_NOT_FOUND, sut.assignOwner("000-000000", "ABC123", premiumBrands));
+        Assertions.assertNull(sut.getVehicleByRegistration("ABC123").getOwner());
+    }
+
+    @Test
+    void assignOwner_vehicleOwnedByOther_alreadyOwned() {
+        Assertions.assertEquals(AssignmentOutcome.ALREADY_OWNED, sut.assignOwner("123-456789", "GHI789", premiumBrands));
+        Assertions.assertEquals("987-654321", sut.getVehicleByRegistration("GHI789").getOwner());
+    }
+
+    @Test
+    void assignOwner_vehicleOwnedBySameCustomer_unchanged() {
+        Assertions.assertEquals(AssignmentOutcome.UNCHANGED, sut.assignOwner("987-654321", "GHI789", premiumBrands));
+    }
+
+    @Test
+    void assignOwner_normalVehicle_onlyVehicleIsUpdated() {
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome);
+        Assertions.assertEquals("123-456789", sut.getVehicleByRegistration("ABC123").getOwner());
+        Assertions.assertFalse(sut.getCustomerByOrgNumber("123-456789").isPremiumCustomer());
+    }
+
+    @Test
+    void assignOwner_premiumVehicle_customerBecomesPremium() {
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "DEF456", premiumBrands);
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome);
+        Assertions.assertTrue(sut.getCustomerByOrgNumber("123-456789").isPremiumCustomer());
+    }
+
+    @Test
+    void assignOwner_assignedVehicle_versionIsIncremented() {
+        // Arrange
+        Vehicle before = sut.getVehicleByRegistration("ABC123");
+        // Act
+        sut.assignOwner("123-456789", "ABC123", premiumBrands);
+        // Assert
+        before.setOwner("987-654321");
+        Assertions.assertThrows(OptimisticLockingFailureException.class, () -> sut.saveVehicle(before));
+    }
+
+    @Test
+    void assignOwners_mixedBatch_outcomeIsReportedPerAssignment() {
+        // Arrange
+        List<Assignment> assignments = List.of(
+                new Assignment("123-456789", "ABC123"),
+                new Assignment("123-456789", "XXX999"),
+                new Assignment("123-456789", "GHI789"),
+                new Assignment("000-000000", "DEF456"),
+                new Assignment("987-654321", "GHI789"),
+                new Assignment("987-654321", "ABC123"));
+        // Act
+        List<AssignmentOutcome> outcomes = sut.assignOwners(assignments, premiumBrands);
+        // Assert
+        Assertions.assertEquals(List.of(
+                AssignmentOutcome.ASSIGNED,
+                AssignmentOutcome.VEHICLE_NOT_FOUND,
+                AssignmentOutcome.ALREADY_OWNED,
+                AssignmentOutcome.CUSTOMER_NOT_FOUND,
+                AssignmentOutcome.UNCHANGED,
+                AssignmentOutcome.ALREADY_OWNED), outcomes);
+        Assertions.assertEquals("123-456789", sut.getVehicleByRegistration("ABC123").getOwner());
+    }
+
+    @Test
+    void assignOwner_premiumVehicles_areCounted() {
+        // Arrange
+        sut.saveVehicle(vehicle("JKL012", null, Brand.LAMBORGHINI));
+        // Act
+        sut.assignOwner("123-456789", "DEF456", premiumBrands);
+        sut.assignOwner("123-456789", "JKL012", premiumBrands);
+        sut.assignOwner("123-456789", "ABC123", premiumBrands);
+        // Assert
+        Assertions.assertEquals(2, sut.getCustomerByOrgNumber("123-456789").getPremiumVehicles());
+    }
+
+    @Test
+    void assignOwners_premiumVehicles_areCounted() {
+        // Arrange
+        sut.saveVehicle(vehicle("JKL012", null, Brand.LAMBORGHINI));
+        // Act
+        sut.assignOwners(List.of(
+                new Assignment("123-456789", "DEF456"),
+                new Assignment("123-456789", "JKL012")), premiumBrands);
+        // Assert
+        Customer customer = sut.getCustomerByOrgNumber("123-456789");
+        Assertions.assertEquals(2, customer.getPremiumVehicles());
+        Assertions.assertTrue(customer.isPremiumCustomer());
+    }
+
+    @Test
+    void returnVehicle_outcomes() {
+        Assertions.assertEquals(ReturnOutcome.VEHICLE_NOT_FOUND, sut.returnVehicle("987-654321", "XXX999", premiumBrands));
+        Assertions.assertEquals(ReturnOutcome.UNCHANGED, sut.returnVehicle("987-654321", "ABC123", premiumBrands));
+        Assertions.assertEquals(ReturnOutcome.NOT_OWNED_BY_CUSTOMER, sut.returnVehicle("123-456789", "GHI789", premiumBrands));
+        Assertions.assertEquals("987-654321", sut.getVehicleByRegistration("GHI789").getOwner());
+        Assertions.assertEquals(ReturnOutcome.RETURNED, sut.returnVehicle("987-654321", "GHI789", premiumBrands));
+        Assertions.assertNull(sut.getVehicleByRegistration("GHI789").getOwner());
+    }
+
+    @Test
+    void returnVehicle_normalVehicle_premiumStatusIsKept() {
+        // Act
+        sut.returnVehicle("987-654321", "GHI789", premiumBrands);
+        // Assert
+        Assertions.assertTrue(sut.getCustomerByOrgNumber("987-654321").isPremiumCustomer());
+    }
+
+    @Test
+    void returnVehicle_premiumVehicles_customerIsPremiumUntilTheLastIsReturned() {
+        // Arrange
+        sut.saveVehicle(vehicle("JKL012", null, Brand.LAMBORGHINI));
+        sut.assignOwner("123-456789", "DEF456", premiumBrands);
+        sut.assignOwner("123-456789", "JKL012", premiumBrands);
+        // Act & Assert
+        Assertions.assertEquals(ReturnOutcome.RETURNED, sut.returnVehicle("123-456789", "DEF456", premiumBrands));
+        Customer customer = sut.getCustomerByOrgNumber("123-456789");
+        Assertions.assertEquals(1, customer.getPremiumVehicles());
+        Assertions.assertTrue(customer.isPremiumCustomer());
+
+        Assertions.assertEquals(ReturnOutcome.RETURNED, sut.returnVehicle("123-456789", "JKL012", premiumBrands));
+        customer = sut.getCustomerByOrgNumber("123-456789");
+        Assertions.assertEquals(0, customer.getPremiumVehicles());
+        Assertions.assertFalse(customer.isPremiumCustomer());
+        // A returned vehicle can be assigned again
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, sut.assignOwner("987-654321", "JKL012", premiumBrands));
+    }
+
+    private static Set<String> registrations(List<Vehicle> vehicles) {
+        return vehicles.stream().map(Vehicle::getRegistration).collect(Collectors.toSet());
+    }
+
+    protected static Vehicle vehicle(String registration, String owner, Brand brand) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setOwner(owner);
+        vehicle.setBrand(brand);
+        return vehicle;
+    }
+
+    protected static Customer customer(String orgNumber, boolean premium) {
+        Customer customer = new Customer(orgNumber);
+        customer.setPremiumCustomer(premium);
+        return customer;
+    }
+}
@@ -0,0 +1,212 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@ExtendWith(MockitoExtension.class)
+class RepositoryTest {
+
+    // Only the default assignOwner is real, the storage methods are mocked
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
+    Repository sut;
+
+    Set<Brand> premiumBrands = EnumSet.of(Brand.LAMBORGHINI);
+
+    @Test
+    void assignOwner_vehicleIsAlreadyAssignedToNewOwner_noEffect() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setOwner("123-456789");
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.UNCHANGED, outcome);
+        Mockito.verify(sut, Mockito.never()).saveVehicle(Mockito.any());
+    }
+
+    @Test
+    void assignOwner_vehicleIsAlreadyAssignedToDifferentOwner_notAllowed() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setOwner("other-owner");
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ALREADY_OWNED, outcome);
+        Mockito.verify(sut, Mockito.never()).saveVehicle(Mockito.any());
+    }
+
+    @Test
+    void assignOwner_vehicleNotFound_vehicleNotFound() {
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.VEHICLE_NOT_FOUND, outcome);
+    }
+
+    @Test
+    void assignOwner_customerNotFound_customerNotFound() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.CUSTOMER_NOT_FOUND, outcome);
+        Mockito.verify(sut, Mockito.never()).saveVehicle(Mockito.any());
+    }
+
+    @Test
+    void assignOwner_normalVehicleAssignedToNonPremiumCustomer_onlyVehicleIsUpdated() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setBrand(Brand.VOLVO);
+        Customer storedCustomer = new Customer("123-456789");
+        storedCustomer.setPremiumCustomer(false);
+
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        Mockito.when(sut.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
+
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome);
+        Vehicle expectedVehicle = new Vehicle("ABC123");
+        expectedVehicle.setBrand(Brand.VOLVO);
+        expectedVehicle.setOwner("123-456789");
+        Mockito.verify(sut).saveVehicle(expectedVehicle);
+        Mockito.verify(sut, Mockito.never()).saveCustomer(Mockito.any());
+    }
+
+    @Test
+    void assignOwner_premiumVehicleAssignedToNonPremiumCustomer_vehicleAndCustomerIsUpdated() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setBrand(Brand.LAMBORGHINI);
+        Customer storedCustomer = new Customer("123-456789");
+        storedCustomer.setPremiumCustomer(false);
+
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        Mockito.when(sut.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
+
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome);
+        Vehicle expectedVehicle = new Vehicle("ABC123");
+        expectedVehicle.setBrand(Brand.LAMBORGHINI);
+        expectedVehicle.setOwner("123-456789");
+        Mockito.verify(sut).saveVehicle(expectedVehicle);
+        Customer expectedCustomer = new Customer("123-456789");
+        expectedCustomer.setPremiumCustomer(true);
+        expectedCustomer.setPremiumVehicles(1);
+        Mockito.verify(sut).saveCustomer(expectedCustomer);
+    }
+
+    @Test
+    void assignOwner_normalVehicleAssignedToPremiumCustomer_onlyVehicleIsUpdated() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setBrand(Brand.VOLVO);
+        Customer storedCustomer = new Customer("123-456789");
+        storedCustomer.setPremiumCustomer(true);
+
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        Mockito.when(sut.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
+
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome);
+        Vehicle expectedVehicle = new Vehicle("ABC123");
+        expectedVehicle.setBrand(Brand.VOLVO);
+        expectedVehicle.setOwner("123-456789");
+        Mockito.verify(sut).saveVehicle(expectedVehicle);
+        Mockito.verify(sut, Mockito.never()).saveCustomer(Mockito.any());
+    }
+
+    @Test
+    void assignOwner_premiumVehicleAssignedToPremiumCustomer_premiumVehiclesAreCounted() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setBrand(Brand.LAMBORGHINI);
+        Customer storedCustomer = new Customer("123-456789");
+        storedCustomer.setPremiumCustomer(true);
+        storedCustomer.setPremiumVehicles(1);
+
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        Mockito.when(sut.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
+
+        // Act
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", "ABC123", premiumBrands);
+
+        // Assert
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome);
+        Vehicle expectedVehicle = new Vehicle("ABC123");
+        expectedVehicle.setBrand(Brand.LAMBORGHINI);
+        expectedVehicle.setOwner("123-456789");
+        Mockito.verify(sut).saveVehicle(expectedVehicle);
+        Customer expectedCustomer = new Customer("123-456789");
+        expectedCustomer.setPremiumCustomer(true);
+        expectedCustomer.setPremiumVehicles(2);
+        Mockito.verify(sut).saveCustomer(expectedCustomer);
+    }
+
+    @Test
+    void returnVehicle_lastPremiumVehicleReturned_customerIsNoLongerPremium() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setBrand(Brand.LAMBORGHINI);
+        storedVehicle.setOwner("123-456789");
+        Customer storedCustomer = new Customer("123-456789");
+        storedCustomer.setPremiumCustomer(true);
+        storedCustomer.setPremiumVehicles(1);
+
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+        Mockito.when(sut.getCustomerByOrgNumber("123-456789")).thenReturn(storedCustomer);
+
+        // Act
+        ReturnOutcome outcome = sut.returnVehicle("123-456789", "ABC123", premiumBrands);
+
+        // Assert
+        Assertions.assertEquals(ReturnOutcome.RETURNED, outcome);
+        Vehicle expectedVehicle = new Vehicle("ABC123");
+        expectedVehicle.setBrand(Brand.LAMBORGHINI);
+        Mockito.verify(sut).saveVehicle(expectedVehicle);
+        Mockito.verify(sut).saveCustomer(new Customer("123-456789"));
+    }
+
+    @Test
+    void returnVehicle_vehicleOwnedByOther_notOwnedByCustomer() {
+        // Arrange
+        Vehicle storedVehicle = new Vehicle("ABC123");
+        storedVehicle.setBrand(Brand.VOLVO);
+        storedVehicle.setOwner("987-654321");
+        Mockito.when(sut.getVehicleByRegistration("ABC123")).thenReturn(storedVehicle);
+
+        // Act
+        ReturnOutcome outcome = sut.returnVehicle("123-456789", "ABC123", premiumBrands);
+
+        // Assert
+        Assertions.assertEquals(ReturnOutcome.NOT_OWNED_BY_CUSTOMER, outcome);
+        Mockito.verify(sut, Mockito.never()).saveVehicle(Mockito.any());
+    }
+}
@@ -0,0 +1,111 @@
+package se.cygni.talang.quality.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import se.cygni.talang.quality.model.Brand;
+
+import java.nio.charset.StandardCharsets;
+
+class SchemaInitializerTest {
+
+    EmbeddedDatabase database;
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void initializeDatabase_emptyDatabase_runsSchemaAndRecordsItsVersion() {
+        // Arrange
+        SchemaInitializer sut = new SchemaInitializer(database, true);
+        // Act
+        boolean initialized = sut.initializeDatabase();
+        // Assert
+        Assertions.assertTrue(initialized);
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM vehicles", Integer.class));
+        Assertions.assertTrue(SchemaInitializer.isApplied(jdbcTemplate,
+                SchemaInitializer.version(new ClassPathResource(SchemaInitializer.SCHEMA))));
+    }
+
+    @Test
+    void initializeDatabase_versionApplied_skipsSchema() {
+        // Arrange
+        new SchemaInitializer(database, true).initializeDatabase();
+        // Only running the script again would bring it back
+        jdbcTemplate.execute("DROP TABLE premiumBrands");
+        SchemaInitializer sut = new SchemaInitializer(database, true);
+        // Act
+        boolean initialized = sut.initializeDatabase();
+        // Assert
+        Assertions.assertFalse(initialized);
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM information_schema.tables WHERE table_name='PREMIUMBRANDS'", Integer.class));
+    }
+
+    @Test
+    void initializeDatabase_skippingDisabled_runsSchema() {
+        // Arrange
+        new SchemaInitializer(database, true).initializeDatabase();
+        jdbcTemplate.execute("DROP TABLE premiumBrands");
+        SchemaInitializer sut = new SchemaInitializer(database, false);
+        // Act
+        boolean initialized = sut.initializeDatabase();
+        // Assert
+        Assertions.assertTrue(initialized);
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM premiumBrands", Integer.class));
+    }
+
+    @Test
+    void initializeDatabase_customersWithoutPremiumCounter_counterIsBackfilled() {
+        // Arrange, as created before customers counted their premium vehicles
+        jdbcTemplate.execute("CREATE TABLE customers (organisationNumber VARCHAR NOT NULL, " +
+                "premiumCustomer BOOLEAN, PRIMARY KEY (organisationNumber))");
+        jdbcTemplate.execute("CREATE TABLE vehicles (registrationNumber VARCHAR NOT NULL, " +
+                "owner VARCHAR REFERENCES customers(organisationNumber), brand SMALLINT, PRIMARY KEY (registrationNumber))");
+        jdbcTemplate.execute("CREATE TABLE premiumBrands (brand SMALLINT NOT NULL, PRIMARY KEY (brand))");
+        jdbcTemplate.update("INSERT INTO premiumBrands VALUES (?)", Brand.LAMBORGHINI.getCode());
+        jdbcTemplate.update("INSERT INTO customers VALUES ('123-456789', true), ('987-654321', false)");
+        jdbcTemplate.update("INSERT INTO vehicles VALUES ('ABC123', '123-456789', ?), ('DEF456', '123-456789', ?), " +
+                "('GHI789', '987-654321', ?)", Brand.LAMBORGHINI.getCode(), Brand.LAMBORGHINI.getCode(), Brand.VOLVO.getCode());
+        SchemaInitializer sut = new SchemaInitializer(database, true);
+        // Act
+        sut.initializeDatabase();
+        // Assert
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT premiumVehicles FROM customers WHERE organisationNumber='123-456789'", Integer.class));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT premiumVehicles FROM customers WHERE organisationNumber='987-654321'", Integer.class));
+        jdbcTemplate.update("INSERT INTO customers (organisationNumber) VALUES ('555-555555')");
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT premiumVehicles FROM customers WHERE organisationNumber='555-555555'", Integer.class));
+    }
+
+    @Test
+    void version_changedScript_differs() {
+        // Arrange
+        ByteArrayResource script = new ByteArrayResource("CREATE TABLE a (b INT);".getBytes(StandardCharsets.UTF_8));
+        ByteArrayResource changed = new ByteArrayResource("CREATE TABLE a (b BIGINT);".getBytes(StandardCharsets.UTF_8));
+        // Act & Assert
+        Assertions.assertEquals(SchemaInitializer.version(script), SchemaInitializer.version(script));
+        Assertions.assertNotEquals(SchemaInitializer.version(script), SchemaInitializer.version(changed));
+    }
+}
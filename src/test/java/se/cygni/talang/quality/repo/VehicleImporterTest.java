@@ -0,0 +1,202 @@
+package se.cygni.talang.quality.repo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.ImportResult;
+import se.cygni.talang.quality.model.Vehicle;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// COPY is PostgreSQL specific, see DatabaseRepositoryContractTest for how to run this
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+class VehicleImporterTest {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private DatabaseRepository repository;
+
+    private VehicleImporter sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        dataSource = PostgresTestDatabase.createEmpty();
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO premiumBrands (brand) VALUES (:brand)", Map.of("brand", Brand.LAMBORGHINI.getCode()));
+        repository = new DatabaseRepository(jdbcTemplate, null, false);
+        sut = new VehicleImporter(dataSource, jdbcTemplate, new DataSourceTransactionManager(dataSource), new ObjectMapper(),
+                null, false);
+
+        Customer customer = new Customer("111-111111");
+        repository.saveCustomer(customer);
+        Vehicle vehicle = new Vehicle("OLD001");
+        vehicle.setOwner("111-111111");
+        vehicle.setBrand(Brand.VOLVO);
+        repository.saveVehicle(vehicle);
+    }
+
+    @Test
+    void importCsv_newAndExistingVehicles_areMerged() {
+        // Arrange
+        InputStream input = input("registration,owner,brand\n" +
+                "NEW001,222-222222,LAMBORGHINI\n" +
+                "NEW002,,TOYOTA\n" +
+                "OLD001,111-111111,TOYOTA\n");
+        // Act
+        ImportResult result = sut.importCsv(input);
+        // Assert
+        Assertions.assertEquals(3, result.getRows());
+        Assertions.assertEquals(0, result.getRejected());
+        Assertions.assertEquals(2, result.getVehiclesInserted());
+        Assertions.assertEquals(1, result.getVehiclesUpdated());
+        Assertions.assertEquals(1, result.getCustomersCreated());
+        Assertions.assertEquals(1, result.getCustomersUpgraded());
+        Assertions.assertEquals("222-222222", repository.getVehicleByRegistration("NEW001").getOwner());
+        Assertions.assertNull(repository.getVehicleByRegistration("NEW002").getOwner());
+        Assertions.assertEquals(Brand.TOYOTA, repository.getVehicleByRegistration("OLD001").getBrand());
+        Assertions.assertEquals(1, repository.getVehicleByRegistration("OLD001").getVersion());
+        Assertions.assertTrue(repository.getCustomerByOrgNumber("222-222222").isPremiumCustomer());
+        Assertions.assertFalse(repository.getCustomerByOrgNumber("111-111111").isPremiumCustomer());
+    }
+
+    @Test
+    void importCsv_invalidRows_areRejectedAndTheRestImported() {
+        // Arrange
+        InputStream input = input("registration,owner,brand\n" +
+                "NEW001,,FORD\n" +
+                ",,VOLVO\n" +
+                "NEW003,,VOLVO\n");
+        // Act
+        ImportResult result = sut.importCsv(input);
+        // Assert
+        Assertions.assertEquals(2, result.getRejected());
+        Assertions.assertEquals(1, result.getVehiclesInserted());
+        Assertions.assertEquals("row 1: registration NEW001, brand FORD", result.getRejectedSamples().get(0));
+        Assertions.assertNull(repository.getVehicleByRegistration("NEW001"));
+    }
+
+    @Test
+    void importCsv_unchangedAndDuplicateRows_lastRowWinsAndUnchangedIsNotUpdated() {
+        // Arrange
+        InputStream input = input("registration,owner,brand\n" +
+                "OLD001,111-111111,VOLVO\n" +
+                "NEW001,,VOLVO\n" +
+                "NEW001,,TOYOTA\n");
+        // Act
+        ImportResult result = sut.importCsv(input);
+        // Assert
+        Assertions.assertEquals(1, result.getVehiclesInserted());
+        Assertions.assertEquals(0, result.getVehiclesUpdated());
+        Assertions.assertEquals(Brand.TOYOTA, repository.getVehicleByRegistration("NEW001").getBrand());
+        Assertions.assertEquals(0, repository.getVehicleByRegistration("OLD001").getVersion());
+    }
+
+    @Test
+    void importCsv_premiumVehicleChangesOwner_bothCustomersAreRecounted() {
+        // Arrange
+        sut.importCsv(input("registration,owner,brand\nNEW001,111-111111,LAMBORGHINI\n"));
+        // Act
+        sut.importCsv(input("registration,owner,brand\nNEW001,222-222222,LAMBORGHINI\n"));
+        // Assert
+        Customer previous = repository.getCustomerByOrgNumber("111-111111");
+        Assertions.assertEquals(0, previous.getPremiumVehicles());
+        Assertions.assertFalse(previous.isPremiumCustomer());
+        Customer current = repository.getCustomerByOrgNumber("222-222222");
+        Assertions.assertEquals(1, current.getPremiumVehicles());
+        Assertions.assertTrue(current.isPremiumCustomer());
+    }
+
+    @Test
+    void importCsv_outboxEnabled_ownerChangesAreWrittenAsEvents() {
+        // Arrange
+        sut = new VehicleImporter(dataSource, jdbcTemplate, new DataSourceTransactionManager(dataSource),
+                new ObjectMapper(), null, true);
+        InputStream input = input("registration,owner,brand\n" +
+                "NEW001,222-222222,VOLVO\n" +
+                "NEW002,,TOYOTA\n" +
+                "OLD001,333-333333,VOLVO\n");
+        // Act
+        sut.importCsv(input);
+        sut.importCsv(input("registration,owner,brand\nOLD001,333-333333,TOYOTA\n"));
+        // Assert
+        List<Map<String, Object>> events = jdbcTemplate.queryForList(
+                "SELECT registrationNumber, previousOwner, owner FROM ownershipEvents ORDER BY registrationNumber", Map.of());
+        Assertions.assertEquals(2, events.size());
+        Assertions.assertEquals("NEW001", events.get(0).get("registrationNumber"));
+        Assertions.assertNull(events.get(0).get("previousOwner"));
+        Assertions.assertEquals("222-222222", events.get(0).get("owner"));
+        Assertions.assertEquals("OLD001", events.get(1).get("registrationNumber"));
+        Assertions.assertEquals("111-111111", events.get(1).get("previousOwner"));
+        Assertions.assertEquals("333-333333", events.get(1).get("owner"));
+    }
+
+    @Test
+    void importCsv_assignmentCommittedDuringImport_itsOwnerIsRecounted() throws Exception {
+        // Arrange
+        repository.saveCustomer(new Customer("333-333333"));
+        Vehicle premium = new Vehicle("PREM001");
+        premium.setBrand(Brand.LAMBORGHINI);
+        repository.saveVehicle(premium);
+        CompletableFuture<ImportResult> imported;
+        try (Connection assignment = dataSource.getConnection()) {
+            assignment.setAutoCommit(false);
+            try (Statement statement = assignment.createStatement()) {
+                statement.executeUpdate("UPDATE vehicles SET owner='333-333333', version=version + 1 " +
+                        "WHERE registrationNumber='PREM001'");
+                statement.executeUpdate("UPDATE customers SET premiumVehicles=premiumVehicles + 1, premiumCustomer=true " +
+                        "WHERE organisationNumber='333-333333'");
+            }
+            // Act
+            imported = CompletableFuture.supplyAsync(() ->
+                    sut.importCsv(input("registration,owner,brand\nPREM001,222-222222,LAMBORGHINI\n")));
+            while (jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity WHERE wait_event_type='Lock'",
+                    Map.of(), Integer.class) == 0) {
+                Assertions.assertFalse(imported.isDone(), "The import did not wait for the assignment");
+                Thread.sleep(10);
+            }
+            assignment.commit();
+        }
+        imported.get(10, TimeUnit.SECONDS);
+        // Assert
+        Assertions.assertEquals(0, repository.getCustomerByOrgNumber("333-333333").getPremiumVehicles());
+        Assertions.assertEquals(1, repository.getCustomerByOrgNumber("222-222222").getPremiumVehicles());
+    }
+
+    @Test
+    void importCsv_wrongHeader_isRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> sut.importCsv(input("owner,registration,brand\n111-111111,NEW001,VOLVO\n")));
+    }
+
+    @Test
+    void importNdjson_objectsPerLine_areImported() {
+        // Arrange
+        InputStream input = input("{\"registration\":\"NEW001\",\"owner\":\"111-111111\",\"brand\":\"LAMBORGHINI\"}\n" +
+                "{\"registration\":\"NEW,\\\"002\",\"owner\":null,\"brand\":\"VOLVO\",\"extra\":{\"a\":1}}\n");
+        // Act
+        ImportResult result = sut.importNdjson(input);
+        // Assert
+        Assertions.assertEquals(2, result.getVehiclesInserted());
+        Assertions.assertNotNull(repository.getVehicleByRegistration("NEW,\"002"));
+        Assertions.assertTrue(repository.getCustomerByOrgNumber("111-111111").isPremiumCustomer());
+    }
+
+    private static InputStream input(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
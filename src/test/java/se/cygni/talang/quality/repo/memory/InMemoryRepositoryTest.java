@@ -0,0 +1,87 @@
+package se.cygni.talang.quality.repo.memory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.Repository;
+import se.cygni.talang.quality.repo.RepositoryContractTest;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class InMemoryRepositoryTest extends RepositoryContractTest {
+
+    @Override
+    protected Repository createRepository(Set<Brand> premiumBrands) {
+        // Starts small so that the tests also exercise growing the columns
+        InMemoryRepository repository = new InMemoryRepository(1);
+        repository.setPremiumBrands(premiumBrands);
+        return repository;
+    }
+
+    @Test
+    void saveCustomer_staleCustomer_premiumCounterIsKept() {
+        // Arrange
+        Customer stale = sut.getCustomerByOrgNumber("123-456789");
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, sut.assignOwner("123-456789", "DEF456", premiumBrands));
+        // Act
+        sut.saveCustomer(stale);
+        // Assert
+        Assertions.assertEquals(1, sut.getCustomerByOrgNumber("123-456789").getPremiumVehicles());
+    }
+
+    @Test
+    void saveVehicle_manyVehicles_allCanBeFound() {
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            sut.saveVehicle(vehicle("REG" + i, i % 2 == 0 ? "123-456789" : null, Brand.values()[i % Brand.values().length]));
+        }
+        // Assert
+        for (int i = 0; i < 10_000; i++) {
+            Vehicle vehicle = sut.getVehicleByRegistration("REG" + i);
+            Assertions.assertEquals("REG" + i, vehicle.getRegistration());
+            Assertions.assertEquals(Brand.values()[i % Brand.values().length], vehicle.getBrand());
+        }
+        Assertions.assertEquals(10_003, ((InMemoryRepository) sut).vehicleCount());
+    }
+
+    @Test
+    void getVehicleByRegistration_concurrentWrites_readsAreConsistent() throws Exception {
+        // Arrange
+        int writes = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        CountDownLatch start = new CountDownLatch(1);
+        // Act
+        Future<?> writer = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < writes; i++) {
+                sut.saveVehicle(vehicle("REG" + i, null, Brand.VOLVO));
+            }
+            return null;
+        });
+        Future<Integer> reader = executor.submit(() -> {
+            start.await();
+            int inconsistent = 0;
+            while (!writer.isDone()) {
+                Vehicle known = sut.getVehicleByRegistration("GHI789");
+                if (known == null || !"987-654321".equals(known.getOwner()) || known.getBrand() != Brand.TOYOTA) {
+                    inconsistent++;
+                }
+            }
+            return inconsistent;
+        });
+        start.countDown();
+        writer.get(30, TimeUnit.SECONDS);
+        // Assert
+        Assertions.assertEquals(0, reader.get(30, TimeUnit.SECONDS));
+        Assertions.assertNotNull(sut.getVehicleByRegistration("REG" + (writes - 1)));
+        executor.shutdown();
+    }
+}
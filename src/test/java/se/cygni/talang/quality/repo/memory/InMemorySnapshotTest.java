@@ -0,0 +1,246 @@
+package se.cygni.talang.quality.repo.memory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Customer;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class InMemorySnapshotTest {
+
+    private final Set<Brand> premiumBrands = EnumSet.of(Brand.LAMBORGHINI);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void open_afterClose_rowsAreRestoredFromSnapshot() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        populate(repository, 1_000);
+        repository.close();
+        // Act
+        InMemoryRepository sut = new InMemoryRepository(16);
+        sut.open(directory);
+        // Assert
+        Assertions.assertEquals(0, Files.size(directory.resolve(InMemoryRepository.CHANGE_LOG_FILE)));
+        assertPopulated(sut, 1_000);
+    }
+
+    @Test
+    void open_afterCrash_changesAreReplayedFromLog() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        populate(repository, 100);
+        repository.writeSnapshot();
+        repository.saveVehicle(vehicle("NEW001", null, Brand.VOLVO));
+        repository.assignOwner("ORG1", "NEW001", premiumBrands);
+        // Act, the first repository is never closed
+        InMemoryRepository sut = new InMemoryRepository(16);
+        sut.open(directory);
+        // Assert
+        assertPopulated(sut, 100);
+        Vehicle replayed = sut.getVehicleByRegistration("NEW001");
+        Assertions.assertEquals("ORG1", replayed.getOwner());
+        Assertions.assertEquals(1, replayed.getVersion());
+    }
+
+    @Test
+    void writeSnapshot_concurrentCalls_snapshotIsIntact() throws Exception {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        populate(repository, 1_000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> snapshots = new ArrayList<>();
+        // Act
+        for (int i = 0; i < 8; i++) {
+            snapshots.add(executor.submit(() -> {
+                start.await();
+                repository.writeSnapshot();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> snapshot : snapshots) {
+            snapshot.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        // Assert, the first repository is never closed so that only the snapshots are read
+        InMemoryRepository sut = new InMemoryRepository(16);
+        sut.open(directory);
+        assertPopulated(sut, 1_000);
+    }
+
+    @Test
+    void open_tornLogRecord_completeRecordsAreReplayed() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        repository.saveCustomer(customer("ORG1", false));
+        repository.saveCustomer(customer("ORG2", true));
+        Path log = directory.resolve(InMemoryRepository.CHANGE_LOG_FILE);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        // Act
+        InMemoryRepository sut = new InMemoryRepository(16);
+        sut.open(directory);
+        // Assert
+        Assertions.assertNotNull(sut.getCustomerByOrgNumber("ORG1"));
+        Assertions.assertNull(sut.getCustomerByOrgNumber("ORG2"));
+    }
+
+    @Test
+    void open_tornLogRecordThenChanges_changesAreReplayed() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        repository.saveCustomer(customer("ORG1", false));
+        repository.close();
+        Path log = directory.resolve(InMemoryRepository.CHANGE_LOG_FILE);
+        Files.write(log, new byte[]{20, 0, 0, 0, 1, 2}, StandardOpenOption.APPEND);
+        InMemoryRepository reopened = new InMemoryRepository(16);
+        reopened.open(directory);
+        reopened.saveVehicle(vehicle("NEW001", "ORG1", Brand.VOLVO));
+        // Act, the reopened repository is never closed
+        InMemoryRepository sut = new InMemoryRepository(16);
+        sut.open(directory);
+        // Assert
+        Assertions.assertEquals("ORG1", sut.getVehicleByRegistration("NEW001").getOwner());
+        Assertions.assertNotNull(sut.getCustomerByOrgNumber("ORG1"));
+    }
+
+    @Test
+    void open_corruptSnapshot_isRejected() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        populate(repository, 100);
+        repository.close();
+        Path snapshot = directory.resolve(InMemoryRepository.SNAPSHOT_FILE);
+        // In the vehicle versions, just before the checksum
+        flipByte(snapshot, Files.size(snapshot) - 16);
+        InMemoryRepository sut = new InMemoryRepository(16);
+        // Act & Assert
+        CorruptSnapshotException e = Assertions.assertThrows(CorruptSnapshotException.class, () -> sut.open(directory));
+        Assertions.assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+
+    @Test
+    void open_unknownFormatVersion_isRejected() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        repository.close();
+        flipByte(directory.resolve(InMemoryRepository.SNAPSHOT_FILE), Integer.BYTES);
+        InMemoryRepository sut = new InMemoryRepository(16);
+        // Act & Assert
+        CorruptSnapshotException e = Assertions.assertThrows(CorruptSnapshotException.class, () -> sut.open(directory));
+        Assertions.assertTrue(e.getMessage().contains("format version"), e.getMessage());
+    }
+
+    @Test
+    void open_snapshotWithBrandOrdinals_isRejected() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        repository.close();
+        // Format version 2 stored the ordinals of the brands
+        try (FileChannel channel = FileChannel.open(directory.resolve(InMemoryRepository.SNAPSHOT_FILE),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 2), Integer.BYTES);
+        }
+        InMemoryRepository sut = new InMemoryRepository(16);
+        // Act & Assert
+        CorruptSnapshotException e = Assertions.assertThrows(CorruptSnapshotException.class, () -> sut.open(directory));
+        Assertions.assertTrue(e.getMessage().contains("format version 2"), e.getMessage());
+    }
+
+    @Test
+    void open_truncatedSnapshot_isRejected() throws IOException {
+        // Arrange
+        InMemoryRepository repository = new InMemoryRepository(16);
+        repository.open(directory);
+        populate(repository, 100);
+        repository.close();
+        try (FileChannel channel = FileChannel.open(directory.resolve(InMemoryRepository.SNAPSHOT_FILE),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        InMemoryRepository sut = new InMemoryRepository(16);
+        // Act & Assert
+        Assertions.assertThrows(CorruptSnapshotException.class, () -> sut.open(directory));
+    }
+
+    private void populate(InMemoryRepository repository, int vehicles) {
+        repository.saveCustomer(customer("ORG1", false));
+        repository.saveCustomer(customer("ORG2", false));
+        for (int i = 0; i < vehicles; i++) {
+            repository.saveVehicle(vehicle("REG" + i, null, i % 10 == 0 ? Brand.LAMBORGHINI : Brand.VOLVO));
+        }
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, repository.assignOwner("ORG2", "REG0", premiumBrands));
+    }
+
+    private void assertPopulated(InMemoryRepository repository, int vehicles) {
+        Assertions.assertEquals(vehicles, repository.getVehiclesByRegistration(
+                IntStream.range(0, vehicles).mapToObj(i -> "REG" + i)
+                        .collect(Collectors.toList())).size());
+        Vehicle assigned = repository.getVehicleByRegistration("REG0");
+        Assertions.assertEquals("ORG2", assigned.getOwner());
+        Assertions.assertEquals(Brand.LAMBORGHINI, assigned.getBrand());
+        Assertions.assertEquals(1, assigned.getVersion());
+        Assertions.assertTrue(repository.getCustomerByOrgNumber("ORG2").isPremiumCustomer());
+        Assertions.assertFalse(repository.getCustomerByOrgNumber("ORG1").isPremiumCustomer());
+        // Still writable after being restored
+        repository.saveVehicle(vehicle("REG" + vehicles, "ORG1", Brand.TOYOTA));
+        Assertions.assertEquals("ORG1", repository.getVehicleByRegistration("REG" + vehicles).getOwner());
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) (value.get(0) ^ 0x55));
+            value.rewind();
+            channel.write(value, position);
+        }
+    }
+
+    private static Vehicle vehicle(String registration, String owner, Brand brand) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setOwner(owner);
+        vehicle.setBrand(brand);
+        return vehicle;
+    }
+
+    private static Customer customer(String orgNumber, boolean premium) {
+        Customer customer = new Customer(orgNumber);
+        customer.setPremiumCustomer(premium);
+        return customer;
+    }
+}
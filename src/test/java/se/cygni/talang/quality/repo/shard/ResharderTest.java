@@ -0,0 +1,233 @@
+package se.cygni.talang.quality.repo.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.ReshardingResult;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+import se.cygni.talang.quality.repo.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Shards are H2 databases, which only run the portable statements; assignments are made in batches
+class ResharderTest {
+
+    private static final int VEHICLES = 1000;
+    private static final String OWNER = "123-456789";
+
+    List<EmbeddedDatabase> databases = new ArrayList<>();
+    List<NamedParameterJdbcTemplate> jdbcTemplates = new ArrayList<>();
+    Set<Brand> premiumBrands = EnumSet.of(Brand.LAMBORGHINI);
+
+    ShardNodes nodes;
+    ShardedRepository repository;
+    Resharder sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        for (int shard = 0; shard < 3; shard++) {
+            EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder()
+                    .setType(EmbeddedDatabaseType.H2)
+                    .generateUniqueName(true)
+                    .addScript("schema.sql");
+            if (shard == 0) {
+                builder.addScript("shards.sql");
+            }
+            EmbeddedDatabase database = builder.build();
+            databases.add(database);
+            jdbcTemplates.add(new NamedParameterJdbcTemplate(database));
+        }
+        // Two shards in use, the third is empty
+        for (int shard = 0; shard < 2; shard++) {
+            insertCustomer(shard, OWNER, 0);
+            jdbcTemplates.get(shard).update("INSERT INTO premiumBrands (brand) VALUES (5)", Map.of());
+        }
+        int[] premiumVehicles = new int[2];
+        for (int i = 0; i < VEHICLES; i++) {
+            String registration = "REG" + i;
+            int shard = ShardLayout.shardOf(registration, 2);
+            boolean owned = i % 2 == 0;
+            Brand brand = i % 5 == 0 ? Brand.LAMBORGHINI : Brand.VOLVO;
+            insertVehicle(shard, registration, owned ? OWNER : null, brand);
+            if (owned && brand == Brand.LAMBORGHINI) {
+                premiumVehicles[shard]++;
+            }
+        }
+        for (int shard = 0; shard < 2; shard++) {
+            jdbcTemplates.get(shard).update("UPDATE customers SET premiumVehicles=:count, premiumCustomer=:count > 0",
+                    Map.of("count", premiumVehicles[shard]));
+        }
+        nodes = new ShardNodes(jdbcTemplates.get(0), Duration.ofHours(1));
+        nodes.start();
+        createRepository();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+        nodes.close();
+        databases.forEach(EmbeddedDatabase::shutdown);
+    }
+
+    @Test
+    void reshard_growToThreeShards_onlyVehiclesOfTheNewShardAreMoved() {
+        // Act
+        ReshardingResult result = sut.reshard(3);
+        // Assert
+        long expectedMoved = IntStream.range(0, VEHICLES).filter(i -> ShardLayout.shardOf("REG" + i, 3) == 2).count();
+        Assertions.assertEquals(expectedMoved, result.getMoved());
+        assertEveryVehicleIsInItsShard(3);
+        Assertions.assertEquals(ShardLayout.of(3).toString(), ShardLayout.load(jdbcTemplates.get(0), 1).toString());
+        Assertions.assertEquals(List.of(Brand.LAMBORGHINI), repository.shard(2).getPremiumBrands());
+        Assertions.assertEquals(100, repository.getCustomerByOrgNumber(OWNER).getPremiumVehicles());
+        Assertions.assertTrue(repository.shard(2).getCustomerByOrgNumber(OWNER).getPremiumVehicles() > 0);
+    }
+
+    @Test
+    void reshard_shrinkToOneShard_allVehiclesAreInTheFirstShard() {
+        // Act
+        sut.reshard(1);
+        // Assert
+        assertEveryVehicleIsInItsShard(1);
+        Assertions.assertEquals(100, repository.shard(0).getCustomerByOrgNumber(OWNER).getPremiumVehicles());
+        Assertions.assertEquals(100, repository.getCustomerByOrgNumber(OWNER).getPremiumVehicles());
+    }
+
+    @Test
+    void reshard_whileAssigning_noAssignmentIsLost() throws Exception {
+        // Arrange, moves in small batches so that they interleave with the assignments
+        sut = new Resharder(repository, List.copyOf(databases), nodes, 10);
+        List<String> unowned = IntStream.range(0, VEHICLES).filter(i -> i % 2 == 1)
+                .mapToObj(i -> "REG" + i).collect(Collectors.toList());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // Act
+        Future<List<AssignmentOutcome>> assigning = executor.submit(() -> {
+            List<AssignmentOutcome> outcomes = new ArrayList<>();
+            for (int i = 0; i < unowned.size(); i += 5) {
+                List<Assignment> batch = unowned.subList(i, i + 5).stream()
+                        .map(registration -> new Assignment(OWNER, registration))
+                        .collect(Collectors.toList());
+                outcomes.addAll(repository.assignOwners(batch, premiumBrands));
+            }
+            return outcomes;
+        });
+        sut.reshard(3);
+        List<AssignmentOutcome> outcomes = assigning.get();
+        executor.shutdown();
+        // Assert
+        Assertions.assertTrue(outcomes.stream().allMatch(outcome -> outcome == AssignmentOutcome.ASSIGNED));
+        assertEveryVehicleIsInItsShard(3);
+        for (int i = 0; i < VEHICLES; i++) {
+            Assertions.assertEquals(OWNER, repository.getVehicleByRegistration("REG" + i).getOwner(), "REG" + i);
+        }
+        Assertions.assertEquals(VEHICLES / 5, repository.getCustomerByOrgNumber(OWNER).getPremiumVehicles());
+    }
+
+    @Test
+    void reshard_interrupted_isCompletedByReshardingAgain() {
+        // Arrange, stopped after copying a vehicle, which was then assigned in the old shard
+        String registration = IntStream.range(0, VEHICLES).filter(i -> i % 2 == 1)
+                .mapToObj(i -> "REG" + i)
+                .filter(reg -> ShardLayout.shardOf(reg, 3) == 2)
+                .findFirst().orElseThrow();
+        new ShardLayout(2, 3).save(jdbcTemplates.get(0));
+        insertCustomer(2, OWNER, 0);
+        insertVehicle(2, registration, null, Brand.VOLVO);
+        createRepository();
+        repository.assignOwners(List.of(new Assignment(OWNER, registration)), premiumBrands);
+        // Act
+        sut.reshard(3);
+        // Assert
+        assertEveryVehicleIsInItsShard(3);
+        Assertions.assertEquals(OWNER, repository.shard(2).getVehicleByRegistration(registration).getOwner());
+    }
+
+    @Test
+    void reshard_otherNodeRunning_isRefusedAndLayoutIsKept() {
+        // Arrange
+        try (ShardNodes otherNode = new ShardNodes(jdbcTemplates.get(0), Duration.ofHours(1))) {
+            otherNode.start();
+            // Act
+            IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> sut.reshard(3));
+            // Assert
+            Assertions.assertTrue(e.getMessage().contains(otherNode.getNodeId()), e.getMessage());
+        }
+        Assertions.assertEquals(ShardLayout.of(2).toString(), ShardLayout.load(jdbcTemplates.get(0), 1).toString());
+        Assertions.assertEquals(ShardLayout.of(2).toString(), repository.getLayout().toString());
+        assertEveryVehicleIsInItsShard(2);
+    }
+
+    @Test
+    void reshard_otherNodeStopped_isResharded() {
+        // Arrange
+        new ShardNodes(jdbcTemplates.get(0), Duration.ofHours(1)).close();
+        // Act
+        sut.reshard(3);
+        // Assert
+        assertEveryVehicleIsInItsShard(3);
+    }
+
+    private void createRepository() {
+        if (repository != null) {
+            repository.close();
+        }
+        List<Repository> shards = jdbcTemplates.stream()
+                .map(jdbcTemplate -> new DatabaseRepository(jdbcTemplate, null, false))
+                .collect(Collectors.toList());
+        repository = new ShardedRepository(shards, ShardLayout.load(jdbcTemplates.get(0), 2));
+        sut = new Resharder(repository, List.copyOf(databases), nodes, 100);
+    }
+
+    private void assertEveryVehicleIsInItsShard(int shardCount) {
+        int vehicles = 0;
+        for (int shard = 0; shard < databases.size(); shard++) {
+            List<Vehicle> stored = jdbcTemplates.get(shard).query("SELECT registrationNumber, owner, brand, version FROM vehicles",
+                    new DatabaseRepository.VehicleRowMapper());
+            for (Vehicle vehicle : stored) {
+                Assertions.assertEquals(ShardLayout.shardOf(vehicle.getRegistration(), shardCount), shard,
+                        vehicle.getRegistration());
+            }
+            vehicles += stored.size();
+        }
+        Assertions.assertEquals(VEHICLES, vehicles);
+        Assertions.assertEquals(VEHICLES, repository.getVehiclesByRegistration(
+                IntStream.range(0, VEHICLES).mapToObj(i -> "REG" + i).collect(Collectors.toList())).size());
+    }
+
+    private void insertCustomer(int shard, String orgNumber, int premiumVehicles) {
+        jdbcTemplates.get(shard).update("INSERT INTO customers (organisationNumber, premiumCustomer, premiumVehicles) " +
+                        "VALUES (:orgNum, :premium, :premiumVehicles)",
+                new MapSqlParameterSource()
+                        .addValue("orgNum", orgNumber)
+                        .addValue("premium", premiumVehicles > 0)
+                        .addValue("premiumVehicles", premiumVehicles));
+    }
+
+    private void insertVehicle(int shard, String registration, String owner, Brand brand) {
+        jdbcTemplates.get(shard).update("INSERT INTO vehicles (registrationNumber, owner, brand) VALUES (:regNum, :owner, :brand)",
+                new MapSqlParameterSource()
+                        .addValue("regNum", registration)
+                        .addValue("owner", owner)
+                        .addValue("brand", brand.getCode()));
+    }
+}
@@ -0,0 +1,40 @@
+package se.cygni.talang.quality.repo.shard;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ShardLayoutTest {
+
+    @Test
+    void shardOf_growingByOneShard_keysOnlyMoveToTheNewShard() {
+        // Arrange
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String key = "REG" + i;
+            // Act
+            int before = ShardLayout.shardOf(key, 4);
+            int after = ShardLayout.shardOf(key, 5);
+            // Assert
+            if (before != after) {
+                Assertions.assertEquals(4, after, key);
+                moved++;
+            }
+        }
+        // About a fifth
+        Assertions.assertTrue(moved > 1_700 && moved < 2_300, "Moved " + moved);
+    }
+
+    @Test
+    void shardOf_manyKeys_areSpreadEvenly() {
+        // Arrange
+        int[] keysPerShard = new int[8];
+        // Act
+        for (int i = 0; i < 80_000; i++) {
+            keysPerShard[ShardLayout.shardOf("REG" + i, 8)]++;
+        }
+        // Assert
+        for (int keys : keysPerShard) {
+            Assertions.assertTrue(keys > 9_000 && keys < 11_000, "A shard got " + keys);
+        }
+    }
+}
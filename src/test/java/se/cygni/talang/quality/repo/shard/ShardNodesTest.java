@@ -0,0 +1,68 @@
+package se.cygni.talang.quality.repo.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+class ShardNodesTest {
+
+    EmbeddedDatabase database;
+    NamedParameterJdbcTemplate jdbcTemplate;
+
+    ShardNodes sut; // System Under Test
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .addScript("shards.sql")
+                .build();
+        jdbcTemplate = new NamedParameterJdbcTemplate(database);
+        sut = new ShardNodes(jdbcTemplate, Duration.ofSeconds(10));
+        sut.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sut.close();
+        database.shutdown();
+    }
+
+    @Test
+    void otherRunningNodes_onlyThisNode_none() {
+        Assertions.assertEquals(List.of(), sut.otherRunningNodes());
+    }
+
+    @Test
+    void otherRunningNodes_otherNodeStarted_isListedUntilClosed() {
+        // Arrange
+        ShardNodes other = new ShardNodes(jdbcTemplate, Duration.ofSeconds(10));
+        other.start();
+        // Act & Assert
+        Assertions.assertEquals(List.of(other.getNodeId()), sut.otherRunningNodes());
+        other.close();
+        Assertions.assertEquals(List.of(), sut.otherRunningNodes());
+    }
+
+    @Test
+    void otherRunningNodes_nodeMissedHeartbeats_isNotListed() {
+        // Arrange, as left behind by a node that was killed
+        jdbcTemplate.update("INSERT INTO shardNodes (nodeId, lastSeen) VALUES ('killed', :lastSeen)",
+                new MapSqlParameterSource("lastSeen", Timestamp.from(Instant.now().minusSeconds(31))));
+        // Act & Assert
+        Assertions.assertEquals(List.of(), sut.otherRunningNodes());
+    }
+}
@@ -0,0 +1,126 @@
+package se.cygni.talang.quality.repo.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.cygni.talang.quality.model.Assignment;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.Repository;
+import se.cygni.talang.quality.repo.RepositoryContractTest;
+import se.cygni.talang.quality.repo.memory.InMemoryRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class ShardedRepositoryTest extends RepositoryContractTest {
+
+    private static final int SHARDS = 3;
+
+    @Override
+    protected Repository createRepository(Set<Brand> premiumBrands) {
+        List<Repository> shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            InMemoryRepository shard = new InMemoryRepository(16);
+            shard.setPremiumBrands(premiumBrands);
+            shards.add(shard);
+        }
+        return new ShardedRepository(shards, ShardLayout.of(SHARDS));
+    }
+
+    @AfterEach
+    void closeRepository() {
+        sharded().close();
+    }
+
+    @Test
+    void saveVehicle_manyVehicles_eachIsStoredInItsShardOnly() {
+        // Act
+        for (int i = 0; i < 300; i++) {
+            sut.saveVehicle(vehicle("REG" + i, null, Brand.VOLVO));
+        }
+        // Assert
+        for (int shard = 0; shard < SHARDS; shard++) {
+            List<String> stored = new ArrayList<>();
+            sharded().shard(shard).forEachVehicle(null, null, vehicle -> stored.add(vehicle.getRegistration()));
+            Assertions.assertTrue(stored.size() > 50, "Shard " + shard + " has " + stored.size() + " vehicles");
+            for (String registration : stored) {
+                Assertions.assertEquals(shard, ShardLayout.shardOf(registration, SHARDS), registration);
+            }
+        }
+    }
+
+    @Test
+    void assignOwners_premiumVehiclesOnSeveralShards_countsAreAddedUp() {
+        // Arrange
+        List<Assignment> assignments = IntStream.range(0, 30)
+                .mapToObj(i -> "LAMBO" + i)
+                .peek(registration -> sut.saveVehicle(vehicle(registration, null, Brand.LAMBORGHINI)))
+                .map(registration -> new Assignment("123-456789", registration))
+                .collect(Collectors.toList());
+        // Act
+        List<AssignmentOutcome> outcomes = sut.assignOwners(assignments, premiumBrands);
+        // Assert
+        Assertions.assertTrue(outcomes.stream().allMatch(outcome -> outcome == AssignmentOutcome.ASSIGNED), outcomes.toString());
+        Assertions.assertEquals(30, sut.getCustomerByOrgNumber("123-456789").getPremiumVehicles());
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Assertions.assertTrue(sharded().shard(shard).getCustomerByOrgNumber("123-456789").getPremiumVehicles() < 30);
+        }
+    }
+
+    @Test
+    void saveCustomer_premiumVehiclesOnSeveralShards_countsAreKept() {
+        // Arrange
+        List<Assignment> assignments = IntStream.range(0, 30)
+                .mapToObj(i -> "LAMBO" + i)
+                .peek(registration -> sut.saveVehicle(vehicle(registration, null, Brand.LAMBORGHINI)))
+                .map(registration -> new Assignment("123-456789", registration))
+                .collect(Collectors.toList());
+        sut.assignOwners(assignments, premiumBrands);
+        // Act
+        sut.saveCustomer(customer("123-456789", false));
+        // Assert
+        Assertions.assertEquals(30, sut.getCustomerByOrgNumber("123-456789").getPremiumVehicles());
+        Assertions.assertEquals(ReturnOutcome.RETURNED, sut.returnVehicle("123-456789", "LAMBO0", premiumBrands));
+        Assertions.assertEquals(29, sut.getCustomerByOrgNumber("123-456789").getPremiumVehicles());
+    }
+
+    @Test
+    void getVehicleByRegistration_resharding_isFoundInOldOrNewShard() {
+        // Arrange, one vehicle that has been moved and one that has not
+        ShardLayout layout = new ShardLayout(2, 3);
+        String moved = registrationMovingTo(2);
+        String notMoved = registrationMovingTo(2, moved);
+        sharded().setLayout(layout);
+        sharded().shard(2).saveVehicle(vehicle(moved, null, Brand.VOLVO));
+        sharded().shard(layout.sourceShardOf(notMoved)).saveVehicle(vehicle(notMoved, null, Brand.VOLVO));
+        // Act
+        List<Vehicle> vehicles = sut.getVehiclesByRegistration(List.of(moved, notMoved));
+        AssignmentOutcome outcome = sut.assignOwner("123-456789", notMoved, premiumBrands);
+        // Assert
+        Assertions.assertEquals(2, vehicles.size());
+        Assertions.assertNotNull(sut.getVehicleByRegistration(moved));
+        Assertions.assertEquals(AssignmentOutcome.ASSIGNED, outcome);
+        Assertions.assertEquals("123-456789",
+                sharded().shard(layout.sourceShardOf(notMoved)).getVehicleByRegistration(notMoved).getOwner());
+    }
+
+    private ShardedRepository sharded() {
+        return (ShardedRepository) sut;
+    }
+
+    // A registration that is on another shard with two shards, and on the given one with three
+    private static String registrationMovingTo(int shard, String... except) {
+        return IntStream.range(0, 1000)
+                .mapToObj(i -> "MOV" + i)
+                .filter(registration -> ShardLayout.shardOf(registration, 3) == shard)
+                .filter(registration -> !List.of(except).contains(registration))
+                .findFirst()
+                .orElseThrow();
+    }
+}
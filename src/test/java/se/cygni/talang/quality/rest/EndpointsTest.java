@@ -0,0 +1,185 @@
+package se.cygni.talang.quality.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import se.cygni.talang.quality.application.IdempotentAssignments;
+import se.cygni.talang.quality.application.VehicleService;
+import se.cygni.talang.quality.model.AssignmentOutcome;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.ReturnOutcome;
+import se.cygni.talang.quality.model.Vehicle;
+import se.cygni.talang.quality.repo.DatabaseRepository;
+import se.cygni.talang.quality.repo.PremiumBrandCache;
+import se.cygni.talang.quality.repo.PremiumCounterReconciler;
+import se.cygni.talang.quality.repo.VehicleImporter;
+import se.cygni.talang.quality.repo.shard.Resharder;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class EndpointsTest {
+
+    @Mock
+    DatabaseRepository repositoryMock;
+
+    MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PremiumBrandCache premiumBrandCache = new PremiumBrandCache(repositoryMock, Duration.ofMinutes(10));
+        VehicleService vehicleService = new VehicleService(repositoryMock, premiumBrandCache, meterRegistry, 16, null);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        Endpoints sut = new Endpoints(vehicleService, // System Under Test
+                new IdempotentAssignments(vehicleService, meterRegistry, 1000, Duration.ofMinutes(10)),
+                premiumBrandCache,
+                new ObjectMapper(),
+                beans.getBeanProvider(VehicleImporter.class),
+                beans.getBeanProvider(PremiumCounterReconciler.class),
+                beans.getBeanProvider(Resharder.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(sut).build();
+    }
+
+    @Test
+    void assignOwner_assigned_ok() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ASSIGNED);
+        // Act & Assert
+        mockMvc.perform(post("/assign").contentType(MediaType.APPLICATION_JSON).content(body("123-456789", "ABC123")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void assignOwner_unknownVehicle_notFoundWithStatusAndMessage() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("XXX999"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.VEHICLE_NOT_FOUND);
+        // Act & Assert
+        mockMvc.perform(post("/assign").contentType(MediaType.APPLICATION_JSON).content(body("123-456789", "XXX999")))
+                .andExpect(status().isNotFound())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(404))
+                .andExpect(jsonPath("$.message").value("No vehicle found for registration XXX999"));
+    }
+
+    @Test
+    void assignOwner_unknownCustomer_notFound() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("000-000000"), Mockito.eq("ABC123"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.CUSTOMER_NOT_FOUND);
+        // Act & Assert
+        mockMvc.perform(post("/assign").contentType(MediaType.APPLICATION_JSON).content(body("000-000000", "ABC123")))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(404));
+    }
+
+    @Test
+    void assignOwner_vehicleOwnedByOther_conflictWithStatusAndMessage() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("GHI789"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ALREADY_OWNED);
+        // Act & Assert
+        mockMvc.perform(post("/assign").contentType(MediaType.APPLICATION_JSON).content(body("123-456789", "GHI789")))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status").value(409))
+                .andExpect(jsonPath("$.message").value("Only vehicles without current assignment can be updated"));
+    }
+
+    @Test
+    void assignOwner_rejectedWithIdempotencyKey_conflict() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.assignOwner(Mockito.eq("123-456789"), Mockito.eq("GHI789"), Mockito.any()))
+                .thenReturn(AssignmentOutcome.ALREADY_OWNED);
+        // Act & Assert
+        mockMvc.perform(post("/assign").contentType(MediaType.APPLICATION_JSON).header("Idempotency-Key", "key-1")
+                        .content(body("123-456789", "GHI789")))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status").value(409));
+    }
+
+    @Test
+    void returnVehicle_unknownVehicle_notFoundWithStatusAndMessage() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.returnVehicle(Mockito.eq("123-456789"), Mockito.eq("XXX999"), Mockito.any()))
+                .thenReturn(ReturnOutcome.VEHICLE_NOT_FOUND);
+        // Act & Assert
+        mockMvc.perform(post("/return").contentType(MediaType.APPLICATION_JSON).content(body("123-456789", "XXX999")))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(404))
+                .andExpect(jsonPath("$.message").value("No vehicle found for registration XXX999"));
+    }
+
+    @Test
+    void returnVehicle_notOwnedByCustomer_conflictWithStatusAndMessage() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.returnVehicle(Mockito.eq("123-456789"), Mockito.eq("GHI789"), Mockito.any()))
+                .thenReturn(ReturnOutcome.NOT_OWNED_BY_CUSTOMER);
+        // Act & Assert
+        mockMvc.perform(post("/return").contentType(MediaType.APPLICATION_JSON).content(body("123-456789", "GHI789")))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status").value(409))
+                .andExpect(jsonPath("$.message").value("Only the owner of a vehicle can return it"));
+    }
+
+    @Test
+    void getVehiclesByOwner_customerWithVehicles_pageIsReturned() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.getVehiclesByOwner("123-456789", null, 2))
+                .thenReturn(List.of(vehicle("ABC123", "123-456789"), vehicle("DEF456", "123-456789")));
+        // Act & Assert
+        mockMvc.perform(get("/customers/123-456789/vehicles").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.vehicles[0].registration").value("ABC123"))
+                .andExpect(jsonPath("$.next").value("ABC123"));
+    }
+
+    @Test
+    void getVehiclesByOwner_unknownCustomer_notFound() throws Exception {
+        // Arrange
+        Mockito.when(repositoryMock.getVehiclesByOwner("000-000000", null, 101)).thenReturn(List.of());
+        // Act & Assert
+        mockMvc.perform(get("/customers/000-000000/vehicles"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(404))
+                .andExpect(jsonPath("$.message").value("No customer found for organisation number 000-000000"));
+    }
+
+    @Test
+    void getVehiclesByOwner_limitOutOfRange_badRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/customers/123-456789/vehicles").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/customers/123-456789/vehicles").param("limit", "1001"))
+                .andExpect(status().isBadRequest());
+        Mockito.verifyNoInteractions(repositoryMock);
+    }
+
+    private static String body(String owner, String vehicle) {
+        return "{\"owner\":\"" + owner + "\",\"vehicle\":\"" + vehicle + "\"}";
+    }
+
+    private static Vehicle vehicle(String registration, String owner) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setOwner(owner);
+        vehicle.setBrand(Brand.VOLVO);
+        return vehicle;
+    }
+}
@@ -0,0 +1,69 @@
+package se.cygni.talang.quality.rest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+import se.cygni.talang.quality.repo.QueryTrace;
+import se.cygni.talang.quality.repo.QueryTracingDataSource;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+class QueryTracingFilterTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    QueryTracingFilter sut = new QueryTracingFilter(meterRegistry, 1.0, Map.of("/assign", 0)); // System Under Test
+
+    @Test
+    void doFilter_responseWithBody_headerIsAddedBeforeTheBody() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/customers/1/vehicles");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        // Act
+        sut.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.getWriter().write("[]");
+                resp.flushBuffer();
+            }
+        }));
+        // Assert
+        Assertions.assertEquals("statements=0; millis=0.00; rows=0", response.getHeader(QueryTracingFilter.HEADER));
+        Assertions.assertNull(QueryTrace.current());
+    }
+
+    @Test
+    void doFilter_overBudget_isCounted() throws Exception {
+        // Arrange
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new QueryTracingDataSource(database));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/assign");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/assign");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        // Act
+        try {
+            sut.doFilter(request, response, (req, resp) -> jdbcTemplate.queryForObject("SELECT 1", Integer.class));
+        } finally {
+            database.shutdown();
+        }
+        // Assert
+        Assertions.assertEquals("statements=1", response.getHeader(QueryTracingFilter.HEADER).split(";")[0]);
+        Assertions.assertEquals(1, meterRegistry.get("http.server.requests.statements.over.budget")
+                .tag("uri", "/assign").counter().count());
+    }
+}
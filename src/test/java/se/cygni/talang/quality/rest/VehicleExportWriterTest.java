@@ -0,0 +1,51 @@
+package se.cygni.talang.quality.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.cygni.talang.quality.model.Brand;
+import se.cygni.talang.quality.model.Vehicle;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+class VehicleExportWriterTest {
+
+    @Test
+    void ndjson_twoVehicles_oneObjectPerLine() throws IOException {
+        // Arrange
+        StringWriter output = new StringWriter();
+        VehicleExportWriter sut = VehicleExportWriter.ndjson(new ObjectMapper().getFactory(), output);
+        // Act
+        sut.accept(vehicle("ABC123", "123-456789", Brand.VOLVO));
+        sut.accept(vehicle("DEF\"456", null, Brand.TOYOTA));
+        sut.finish();
+        // Assert
+        Assertions.assertEquals(
+                "{\"registration\":\"ABC123\",\"owner\":\"123-456789\",\"brand\":\"VOLVO\"}\n" +
+                "{\"registration\":\"DEF\\\"456\",\"owner\":null,\"brand\":\"TOYOTA\"}\n",
+                output.toString());
+    }
+
+    @Test
+    void csv_valuesWithSeparators_areQuoted() throws IOException {
+        // Arrange
+        StringWriter output = new StringWriter();
+        VehicleExportWriter sut = VehicleExportWriter.csv(output);
+        // Act
+        sut.accept(vehicle("ABC123", null, Brand.VOLVO));
+        sut.accept(vehicle("DEF,456", "12\"3", Brand.TOYOTA));
+        sut.finish();
+        // Assert
+        Assertions.assertEquals("registration,owner,brand\n" +
+                "ABC123,,VOLVO\n" +
+                "\"DEF,456\",\"12\"\"3\",TOYOTA\n", output.toString());
+    }
+
+    private static Vehicle vehicle(String registration, String owner, Brand brand) {
+        Vehicle vehicle = new Vehicle(registration);
+        vehicle.setOwner(owner);
+        vehicle.setBrand(brand);
+        return vehicle;
+    }
+}
@@ -1,5 +1,5 @@
 -- Example table input
 
-INSERT INTO vehicles (registrationNumber, owner, brand) VALUES ('ABC123', null, 'VOLVO');
+INSERT INTO vehicles (registrationNumber, owner, brand) VALUES ('ABC123', null, 1);
 INSERT INTO customers (organisationNumber, premiumCustomer) VALUES ('123-456789', false);
-INSERT INTO premiumBrands (brand) VALUES ('LAMBORGHINI');
\ No newline at end of file
+INSERT INTO premiumBrands (brand) VALUES (5);
\ No newline at end of file